@@ -67,6 +67,7 @@ public class CleanupCommand extends Command {
 		OptionSpec<Void> optionNoRemoveTempFiles = parser.acceptsAll(asList("T", "no-temp-removal"));
 		OptionSpec<String> optionKeepMinTime = parser.acceptsAll(asList("o", "delete-older-than"))
 				.withRequiredArg().ofType(String.class);
+		OptionSpec<Double> optionRepack = parser.acceptsAll(asList("r", "repack")).withOptionalArg().ofType(Double.class);
 
 		OptionSet options = parser.parse(operationArgs);
 
@@ -93,6 +94,21 @@ public class CleanupCommand extends Command {
 			operationOptions.setMinKeepSeconds(keepDeletedFilesForSeconds);
 		}
 
+		// -r, --repack[=<ratio>]
+		if (options.has(optionRepack)) {
+			operationOptions.setRepackMultiChunks(true);
+
+			if (options.hasArgument(optionRepack)) {
+				double repackMaxUsageRatio = options.valueOf(optionRepack);
+
+				if (repackMaxUsageRatio <= 0 || repackMaxUsageRatio > 1) {
+					throw new Exception("Invalid value for --repack=" + repackMaxUsageRatio + "; must be > 0 and <= 1");
+				}
+
+				operationOptions.setRepackMultiChunksMaxUsageRatio(repackMaxUsageRatio);
+			}
+		}
+
 		// Parse 'status' options
 		operationOptions.setStatusOptions(parseStatusOptions(operationArgs));
 
@@ -143,6 +159,12 @@ public class CleanupCommand extends Command {
 						(double) concreteOperationResult.getRemovedMultiChunksSize() / 1024 / 1024);
 			}
 
+			if (concreteOperationResult.getRepackedMultiChunksCount() > 0) {
+				out.printf("%d multichunk(s) repacked on remote storage (freed %.2f MB)\n",
+						concreteOperationResult.getRepackedMultiChunksCount(),
+						(double) concreteOperationResult.getRepackedMultiChunksFreedSize() / 1024 / 1024);
+			}
+
 			if (concreteOperationResult.getRemovedOldVersionsCount() > 0) {
 				out.println(concreteOperationResult.getRemovedOldVersionsCount() + " file histories shortened.");
 				// TODO [low] This counts only the file histories, not file versions; not very helpful!
@@ -20,9 +20,20 @@ package org.syncany.cli;
 import static java.util.Arrays.asList;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.syncany.chunk.Blake2bDigest;
+import org.syncany.chunk.ChunkDigest;
+import org.syncany.chunk.Chunker;
+import org.syncany.chunk.FastCdcChunker;
+import org.syncany.chunk.FixedChunker;
+import org.syncany.chunk.IndexedMultiChunker;
+import org.syncany.chunk.MultiChunker;
+import org.syncany.chunk.TttdChunker;
+import org.syncany.chunk.ZipMultiChunker;
+import org.syncany.config.Config;
 import org.syncany.config.to.ConfigTO;
 import org.syncany.config.to.DefaultRepoTOFactory;
 import org.syncany.config.to.RepoTO;
@@ -30,6 +41,7 @@ import org.syncany.config.to.RepoTOFactory;
 import org.syncany.crypto.CipherSpec;
 import org.syncany.crypto.CipherSpecs;
 import org.syncany.crypto.CipherUtil;
+import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseFormat;
 import org.syncany.operations.OperationResult;
 import org.syncany.operations.init.GenlinkOperationOptions;
 import org.syncany.operations.init.InitOperation;
@@ -97,6 +109,10 @@ public class InitCommand extends AbstractInitCommand {
 		OptionSpec<Void> optionShortUrl = parser.acceptsAll(asList("s", "short"));
 		OptionSpec<Void> optionHeadlessMode = parser.acceptsAll(asList("l", "headless"));
 		OptionSpec<String> optionPassword = parser.acceptsAll(asList("password")).withRequiredArg();
+		OptionSpec<String> optionMultiChunker = parser.acceptsAll(asList("M", "multichunker")).withRequiredArg();
+		OptionSpec<String> optionChunker = parser.acceptsAll(asList("C", "chunker")).withRequiredArg();
+		OptionSpec<String> optionChunkerDigest = parser.acceptsAll(asList("H", "digest")).withRequiredArg();
+		OptionSpec<String> optionDatabaseFormat = parser.acceptsAll(asList("D", "database-format")).withRequiredArg();
 
 		OptionSet options = parser.parse(operationArguments);
 
@@ -118,9 +134,17 @@ public class InitCommand extends AbstractInitCommand {
 		// Cipher specs: --no-encryption, --advanced
 		List<CipherSpec> cipherSpecs = getCipherSpecs(encryptionEnabled, advancedModeEnabled);
 
+		// Multichunk format: --multichunker=<type>
+		String multiChunkerType = getMultiChunkerType(options, optionMultiChunker);
+
+		// Chunking method: --chunker=<type>
+		String chunkerType = getChunkerType(options, optionChunker);
+
+		// Checksum algorithm: --digest=<algorithm>
+		String chunkerDigest = getChunkerDigest(options, optionChunkerDigest);
+
 		// Compression: --no-compression
-		// DefaultRepoTOFactory also creates default chunkers
-		RepoTOFactory repoTOFactory = new DefaultRepoTOFactory(compressionEnabled, cipherSpecs);
+		RepoTOFactory repoTOFactory = new DefaultRepoTOFactory(compressionEnabled, cipherSpecs, multiChunkerType, chunkerType, chunkerDigest);
 
 		// Genlink options: --short
 		GenlinkOperationOptions genlinkOptions = new GenlinkOperationOptions();
@@ -134,6 +158,9 @@ public class InitCommand extends AbstractInitCommand {
 		ConfigTO configTO = createConfigTO(transferSettings);
 		RepoTO repoTO = repoTOFactory.createRepoTO();
 
+		// Database format: --database-format=<format>
+		repoTO.setDatabaseFormat(getDatabaseFormat(options, optionDatabaseFormat));
+
 		operationOptions.setLocalDir(localDir);
 		operationOptions.setConfigTO(configTO);
 		operationOptions.setRepoTO(repoTO);
@@ -173,6 +200,69 @@ public class InitCommand extends AbstractInitCommand {
 		}
 	}
 
+	private String getMultiChunkerType(OptionSet options, OptionSpec<String> optionMultiChunker) {
+		if (!options.has(optionMultiChunker)) {
+			return ZipMultiChunker.TYPE;
+		}
+
+		String multiChunkerType = options.valueOf(optionMultiChunker);
+
+		if (MultiChunker.getInstance(multiChunkerType) == null) {
+			throw new IllegalArgumentException("Invalid multichunker type: " + multiChunkerType + ". Valid types are '" + ZipMultiChunker.TYPE
+					+ "' and '" + IndexedMultiChunker.TYPE + "'.");
+		}
+
+		return multiChunkerType;
+	}
+
+	private String getChunkerType(OptionSet options, OptionSpec<String> optionChunker) {
+		if (!options.has(optionChunker)) {
+			return FixedChunker.TYPE;
+		}
+
+		String chunkerType = options.valueOf(optionChunker).toLowerCase();
+		Map<String, String> chunkerSettings = new HashMap<String, String>();
+		chunkerSettings.put(Chunker.PROPERTY_SIZE, Integer.toString(Config.DEFAULT_CHUNK_SIZE));
+
+		if (Chunker.getInstance(chunkerType, chunkerSettings) == null) {
+			throw new IllegalArgumentException("Invalid chunker type: " + chunkerType + ". Valid types are '" + FixedChunker.TYPE + "', '"
+					+ TttdChunker.TYPE + "' and '" + FastCdcChunker.TYPE + "'.");
+		}
+
+		return chunkerType;
+	}
+
+	private String getChunkerDigest(OptionSet options, OptionSpec<String> optionChunkerDigest) {
+		if (!options.has(optionChunkerDigest)) {
+			return null; // Default
+		}
+
+		String chunkerDigest = options.valueOf(optionChunkerDigest).toUpperCase();
+
+		if (!ChunkDigest.DEFAULT_ALGORITHM.equals(chunkerDigest) && !Blake2bDigest.ALGORITHM.equals(chunkerDigest)) {
+			throw new IllegalArgumentException("Invalid checksum algorithm: " + chunkerDigest + ". Valid algorithms are '"
+					+ ChunkDigest.DEFAULT_ALGORITHM.toLowerCase() + "' and '" + Blake2bDigest.ALGORITHM.toLowerCase() + "'.");
+		}
+
+		return chunkerDigest;
+	}
+
+	private String getDatabaseFormat(OptionSet options, OptionSpec<String> optionDatabaseFormat) {
+		if (!options.has(optionDatabaseFormat)) {
+			return null; // Default
+		}
+
+		String databaseFormat = options.valueOf(optionDatabaseFormat).toLowerCase();
+
+		try {
+			DatabaseFormat.valueOf(databaseFormat.toUpperCase());
+			return databaseFormat;
+		}
+		catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid database format: " + databaseFormat + ". Valid formats are 'xml' and 'binary'.");
+		}
+	}
+
 	@Override
 	public void printResults(OperationResult operationResult) {
 		InitOperationResult concreteOperationResult = (InitOperationResult) operationResult;
@@ -60,6 +60,7 @@ public class StatusCommand extends Command {
 		
 		OptionSpec<Void> optionForceChecksum = parser.acceptsAll(asList("f", "force-checksum"));
 		OptionSpec<Void> optionNoDeleteUpload = parser.acceptsAll(asList("D", "no-delete"));
+		OptionSpec<Void> optionQuick = parser.acceptsAll(asList("q", "quick"));
 		
 		OptionSet options = parser.parse(operationArgs);	
 		
@@ -69,6 +70,9 @@ public class StatusCommand extends Command {
 		// -D, --no-delete
 		operationOptions.setDelete(!options.has(optionNoDeleteUpload));
 		
+		// -q, --quick
+		operationOptions.setQuick(options.has(optionQuick));
+		
 		return operationOptions;
 	}	
 
@@ -0,0 +1,224 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Pure Java implementation of the BLAKE2b hash function as specified in RFC 7693,
+ * producing a 160 bit digest. BLAKE2b is designed for 64-bit platforms and is
+ * typically faster than SHA-1 while offering a much higher security level.
+ *
+ * <p>The digest length of 160 bits was chosen so that checksums have the same
+ * length as SHA-1 checksums and fit into the existing database columns.
+ *
+ * <p>The digest is registered under the name {@link #ALGORITHM} by the
+ * {@link ChunkDigest} class, so it can be used via {@link MessageDigest#getInstance(String)}.
+ *
+ * @see <a href="https://tools.ietf.org/html/rfc7693">RFC 7693: The BLAKE2 Cryptographic Hash and Message Authentication Code (MAC)</a>
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class Blake2bDigest extends MessageDigest {
+	public static final String ALGORITHM = "BLAKE2B-160";
+
+	private static final int DIGEST_LENGTH = 20;
+	private static final int BLOCK_SIZE = 128;
+	private static final int ROUNDS = 12;
+
+	private static final long[] IV = new long[] {
+		0x6a09e667f3bcc908L, 0xbb67ae8584caa73bL, 0x3c6ef372fe94f82bL, 0xa54ff53a5f1d36f1L,
+		0x510e527fade682d1L, 0x9b05688c2b3e6c1fL, 0x1f83d9abfb41bd6bL, 0x5be0cd19137e2179L
+	};
+
+	private static final byte[][] SIGMA = new byte[][] {
+		{ 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15 },
+		{ 14, 10, 4, 8, 9, 15, 13, 6, 1, 12, 0, 2, 11, 7, 5, 3 },
+		{ 11, 8, 12, 0, 5, 2, 15, 13, 10, 14, 3, 6, 7, 1, 9, 4 },
+		{ 7, 9, 3, 1, 13, 12, 11, 14, 2, 6, 5, 10, 4, 0, 15, 8 },
+		{ 9, 0, 5, 7, 2, 4, 10, 15, 14, 1, 11, 12, 6, 8, 3, 13 },
+		{ 2, 12, 6, 10, 0, 11, 8, 3, 4, 13, 7, 5, 15, 14, 1, 9 },
+		{ 12, 5, 1, 15, 14, 13, 4, 10, 0, 7, 6, 3, 9, 2, 8, 11 },
+		{ 13, 11, 7, 14, 12, 1, 3, 9, 5, 0, 15, 4, 8, 6, 2, 10 },
+		{ 6, 15, 14, 9, 11, 3, 0, 8, 12, 2, 13, 7, 1, 4, 10, 5 },
+		{ 10, 2, 8, 4, 7, 6, 1, 5, 15, 11, 9, 14, 3, 12, 13, 0 },
+		{ 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15 },
+		{ 14, 10, 4, 8, 9, 15, 13, 6, 1, 12, 0, 2, 11, 7, 5, 3 }
+	};
+
+	private final long[] h;
+	private final long[] m;
+	private final long[] v;
+
+	private final byte[] block;
+	private int blockLength;
+
+	private long counterLow;
+	private long counterHigh;
+
+	public Blake2bDigest() {
+		super(ALGORITHM);
+
+		this.h = new long[8];
+		this.m = new long[16];
+		this.v = new long[16];
+		this.block = new byte[BLOCK_SIZE];
+
+		engineReset();
+	}
+
+	@Override
+	protected int engineGetDigestLength() {
+		return DIGEST_LENGTH;
+	}
+
+	@Override
+	protected void engineReset() {
+		System.arraycopy(IV, 0, h, 0, IV.length);
+		h[0] ^= 0x01010000L ^ DIGEST_LENGTH;
+
+		blockLength = 0;
+		counterLow = 0;
+		counterHigh = 0;
+	}
+
+	@Override
+	protected void engineUpdate(byte input) {
+		engineUpdate(new byte[] { input }, 0, 1);
+	}
+
+	@Override
+	protected void engineUpdate(byte[] input, int offset, int length) {
+		if (length <= 0) {
+			return;
+		}
+
+		// Fill the partially filled block first; the last block must
+		// not be compressed until we know that no more data follows
+		if (blockLength > 0) {
+			int fillLength = BLOCK_SIZE - blockLength;
+
+			if (length <= fillLength) {
+				System.arraycopy(input, offset, block, blockLength, length);
+				blockLength += length;
+
+				return;
+			}
+
+			System.arraycopy(input, offset, block, blockLength, fillLength);
+			incrementCounter(BLOCK_SIZE);
+			compress(block, 0, false);
+
+			blockLength = 0;
+			offset += fillLength;
+			length -= fillLength;
+		}
+
+		// Compress full blocks directly from the input array
+		while (length > BLOCK_SIZE) {
+			incrementCounter(BLOCK_SIZE);
+			compress(input, offset, false);
+
+			offset += BLOCK_SIZE;
+			length -= BLOCK_SIZE;
+		}
+
+		System.arraycopy(input, offset, block, 0, length);
+		blockLength = length;
+	}
+
+	@Override
+	protected byte[] engineDigest() {
+		incrementCounter(blockLength);
+		Arrays.fill(block, blockLength, BLOCK_SIZE, (byte) 0);
+		compress(block, 0, true);
+
+		byte[] digest = new byte[DIGEST_LENGTH];
+
+		for (int i = 0; i < DIGEST_LENGTH; i++) {
+			digest[i] = (byte) (h[i >>> 3] >>> (8 * (i & 7)));
+		}
+
+		engineReset();
+		return digest;
+	}
+
+	private void incrementCounter(int length) {
+		counterLow += length;
+
+		// Unsigned overflow of the lower 64 bits
+		if ((counterLow ^ Long.MIN_VALUE) < (length ^ Long.MIN_VALUE)) {
+			counterHigh++;
+		}
+	}
+
+	private void compress(byte[] input, int offset, boolean lastBlock) {
+		for (int i = 0; i < 16; i++) {
+			m[i] = readLongLittleEndian(input, offset + i * 8);
+		}
+
+		System.arraycopy(h, 0, v, 0, 8);
+		System.arraycopy(IV, 0, v, 8, 8);
+
+		v[12] ^= counterLow;
+		v[13] ^= counterHigh;
+
+		if (lastBlock) {
+			v[14] = ~v[14];
+		}
+
+		for (int round = 0; round < ROUNDS; round++) {
+			byte[] s = SIGMA[round];
+
+			mix(0, 4, 8, 12, m[s[0]], m[s[1]]);
+			mix(1, 5, 9, 13, m[s[2]], m[s[3]]);
+			mix(2, 6, 10, 14, m[s[4]], m[s[5]]);
+			mix(3, 7, 11, 15, m[s[6]], m[s[7]]);
+			mix(0, 5, 10, 15, m[s[8]], m[s[9]]);
+			mix(1, 6, 11, 12, m[s[10]], m[s[11]]);
+			mix(2, 7, 8, 13, m[s[12]], m[s[13]]);
+			mix(3, 4, 9, 14, m[s[14]], m[s[15]]);
+		}
+
+		for (int i = 0; i < 8; i++) {
+			h[i] ^= v[i] ^ v[i + 8];
+		}
+	}
+
+	private void mix(int a, int b, int c, int d, long x, long y) {
+		v[a] = v[a] + v[b] + x;
+		v[d] = Long.rotateRight(v[d] ^ v[a], 32);
+		v[c] = v[c] + v[d];
+		v[b] = Long.rotateRight(v[b] ^ v[c], 24);
+		v[a] = v[a] + v[b] + y;
+		v[d] = Long.rotateRight(v[d] ^ v[a], 16);
+		v[c] = v[c] + v[d];
+		v[b] = Long.rotateRight(v[b] ^ v[c], 63);
+	}
+
+	private static long readLongLittleEndian(byte[] input, int offset) {
+		return (input[offset] & 0xffL)
+				| (input[offset + 1] & 0xffL) << 8
+				| (input[offset + 2] & 0xffL) << 16
+				| (input[offset + 3] & 0xffL) << 24
+				| (input[offset + 4] & 0xffL) << 32
+				| (input[offset + 5] & 0xffL) << 40
+				| (input[offset + 6] & 0xffL) << 48
+				| (input[offset + 7] & 0xffL) << 56;
+	}
+}
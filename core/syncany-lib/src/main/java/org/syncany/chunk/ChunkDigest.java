@@ -0,0 +1,149 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The chunk digest calculates the chunk checksums and the file checksum of a
+ * {@link Chunker} in a single pass: Each buffer passed to {@link #update(byte[], int, int) update()}
+ * is fed to both underlying digests in small slices, so that the second digest reads
+ * the data from the CPU cache instead of from memory.
+ *
+ * <p>Besides the algorithms of the installed JCA providers (e.g. SHA1), the chunk digest
+ * supports the {@link Blake2bDigest#ALGORITHM BLAKE2B-160} algorithm. The algorithm is
+ * registered as a JCA provider when this class is initialized, so that other components
+ * (such as the file checksum calculation in the <tt>FileUtil</tt> class) can use it
+ * via {@link MessageDigest#getInstance(String)} as well.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class ChunkDigest {
+	public static final String DEFAULT_ALGORITHM = "SHA1";
+	public static final String PROVIDER_ID = "Syncany";
+
+	/**
+	 * Size of the slices in which the chunk and file digests are updated
+	 * alternately. Must be small enough for the slice to stay in the L1/L2 cache.
+	 */
+	private static final int FUSED_SLICE_SIZE = 8 * 1024;
+
+	private static final AtomicBoolean initialized = new AtomicBoolean(false);
+
+	private String algorithm;
+	private MessageDigest chunkDigest;
+	private MessageDigest fileDigest;
+
+	static {
+		init();
+	}
+
+	private ChunkDigest(String algorithm, MessageDigest chunkDigest, MessageDigest fileDigest) {
+		this.algorithm = algorithm;
+		this.chunkDigest = chunkDigest;
+		this.fileDigest = fileDigest;
+	}
+
+	/**
+	 * Registers the additional digest algorithms as a JCA provider. The method is
+	 * called in the <tt>static</tt> block of this class and by the {@link Chunker} class,
+	 * so the algorithms are available whenever a chunker is used.
+	 */
+	public static synchronized void init() {
+		if (!initialized.get()) {
+			if (Security.getProvider(PROVIDER_ID) == null) {
+				Security.addProvider(new ChunkDigestProvider());
+			}
+
+			initialized.set(true);
+		}
+	}
+
+	/**
+	 * Creates a new chunk digest for the given algorithm, e.g. SHA1 or
+	 * {@link Blake2bDigest#ALGORITHM BLAKE2B-160}.
+	 *
+	 * @param algorithm Name of the digest algorithm (case insensitive)
+	 * @return A new chunk digest, with both the chunk and the file digest reset
+	 * @throws NoSuchAlgorithmException If the algorithm is not supported
+	 */
+	public static ChunkDigest getInstance(String algorithm) throws NoSuchAlgorithmException {
+		return new ChunkDigest(algorithm, MessageDigest.getInstance(algorithm), MessageDigest.getInstance(algorithm));
+	}
+
+	/**
+	 * Returns whether the given digest algorithm is supported, i.e. whether
+	 * {@link #getInstance(String)} would succeed.
+	 */
+	public static boolean isSupported(String algorithm) {
+		try {
+			MessageDigest.getInstance(algorithm);
+			return true;
+		}
+		catch (NoSuchAlgorithmException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Updates the chunk and the file digest with the given bytes.
+	 */
+	public void update(byte[] buffer, int offset, int length) {
+		int end = offset + length;
+
+		for (int sliceOffset = offset; sliceOffset < end; sliceOffset += FUSED_SLICE_SIZE) {
+			int sliceLength = Math.min(FUSED_SLICE_SIZE, end - sliceOffset);
+
+			chunkDigest.update(buffer, sliceOffset, sliceLength);
+			fileDigest.update(buffer, sliceOffset, sliceLength);
+		}
+	}
+
+	/**
+	 * Completes the checksum of the current chunk and resets the chunk digest
+	 * for the next chunk. The file digest is not affected.
+	 */
+	public byte[] digestChunk() {
+		return chunkDigest.digest();
+	}
+
+	/**
+	 * Completes the checksum of the entire file. Must only be called after
+	 * the last chunk of the file has been passed to {@link #update(byte[], int, int) update()}.
+	 */
+	public byte[] digestFile() {
+		return fileDigest.digest();
+	}
+
+	public String getAlgorithm() {
+		return algorithm;
+	}
+
+	private static class ChunkDigestProvider extends Provider {
+		private static final long serialVersionUID = -5937112632440478519L;
+
+		public ChunkDigestProvider() {
+			super(PROVIDER_ID, 1.0, "Syncany chunk digest provider (" + Blake2bDigest.ALGORITHM + ")");
+			put("MessageDigest." + Blake2bDigest.ALGORITHM, Blake2bDigest.class.getName());
+		}
+	}
+}
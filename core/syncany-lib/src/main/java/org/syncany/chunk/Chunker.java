@@ -20,6 +20,7 @@ package org.syncany.chunk;
 import java.io.File;
 import java.io.IOException;
 import java.util.Enumeration;
+import java.util.Map;
 
 /**
  * The chunker implements a core part of the deduplication process by breaking
@@ -38,6 +39,17 @@ public abstract class Chunker {
 	 */
 	public static final String PROPERTY_SIZE = "size";
 	
+	/**
+	 * Optional property used by the config to set the checksum algorithm
+	 * of the chunk and file checksums, e.g. SHA1 or BLAKE2B-160. 
+	 */
+	public static final String PROPERTY_DIGEST = "digest";
+	
+	static {
+		// Make additional digest algorithms available to all users of getChecksumAlgorithm()
+		ChunkDigest.init();
+	}
+	
     /**
      * Opens the given file and creates enumeration of {@link Chunk}s. This method 
      * should not read the file into memory at once, but instead read and emit new 
@@ -87,4 +99,60 @@ public abstract class Chunker {
     	 */
     	public void close();   
     }
-}
\ No newline at end of file
+    
+	/**
+	 * Instantiates a chunker by its type and initializes it using the given settings map.
+	 * Supported types are {@link FixedChunker#TYPE}, {@link TttdChunker#TYPE} and 
+	 * {@link FastCdcChunker#TYPE}.
+	 * <br>
+	 * Required settings are: 
+	 * <ul>
+	 *  <li> key: {@link #PROPERTY_SIZE}, value: exact (fixed) or average chunk size in bytes, encoded as String
+	 * </ul>
+	 * 
+	 * Optional settings are:
+	 * <ul>
+	 *  <li> key: {@link #PROPERTY_DIGEST}, value: checksum algorithm (default: SHA1), 
+	 *       see {@link ChunkDigest} for the supported algorithms
+	 * </ul>
+	 * 
+	 * @param type Type/name of the chunker
+	 * @param settings Settings map containing the chunk size and the checksum algorithm
+	 * @return a new chunker, or <tt>null</tt> if the type is unknown
+	 * @throws IllegalArgumentException If the settings are missing or invalid
+	 */
+	public static Chunker getInstance(String type, Map<String, String> settings) {
+		String size = (settings != null) ? settings.get(PROPERTY_SIZE) : null;
+		String digest = (settings != null && settings.get(PROPERTY_DIGEST) != null) ? settings.get(PROPERTY_DIGEST) : ChunkDigest.DEFAULT_ALGORITHM;
+		
+		if (size == null) {
+			throw new IllegalArgumentException(String.format("Property %s must not be null.", PROPERTY_SIZE));
+		}
+		
+		int chunkSize;
+		
+		try {
+			chunkSize = Integer.parseInt(size);
+		}
+		catch (NumberFormatException nfe) {
+			throw new IllegalArgumentException(String.format("Property %s could not be parsed as Integer.", PROPERTY_SIZE));
+		}
+		
+		if (!ChunkDigest.isSupported(digest)) {
+			throw new IllegalArgumentException(String.format("Property %s contains an unsupported checksum algorithm: %s", PROPERTY_DIGEST, digest));
+		}
+		
+		if (FixedChunker.TYPE.equals(type)) {
+			return new FixedChunker(chunkSize, digest);
+		}
+		else if (TttdChunker.TYPE.equals(type)) {
+			return new TttdChunker(chunkSize, TttdChunker.DEFAULT_WINDOW_SIZE, digest, TttdChunker.DEFAULT_FINGERPRINT_ALG);
+		}
+		else if (FastCdcChunker.TYPE.equals(type)) {
+			return new FastCdcChunker(chunkSize, digest);
+		}
+		else {
+			return null;
+		}
+	}
+}
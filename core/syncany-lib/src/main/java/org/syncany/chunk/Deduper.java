@@ -20,7 +20,19 @@ package org.syncany.chunk;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.syncany.chunk.Chunker.ChunkEnumeration;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
@@ -36,6 +48,12 @@ import org.syncany.database.MultiChunkEntry.MultiChunkId;
  * <p>This class does not maintain a chunk index itself. Instead, it calls a listener to
  * lookup a chunk, and skips further chunk processing if the chunk already exists. 
  * 
+ * <p>If more than one chunker thread is configured, files are read and chunked (incl. the
+ * chunk and file checksums) by a pool of worker threads ahead of time. All listener calls
+ * and all multichunk writes are still performed by the calling thread, and in the order of
+ * the given file list, so the resulting multichunks and database versions are identical to 
+ * the single-threaded mode.
+ * 
  * <p>For a detailed description of the algorithm, please refer to chapter 5.3 of the thesis:
  * <i>"Minimizing remote storage usage and synchronization time using deduplication and
  * multichunking: Syncany as an example"</i>
@@ -44,18 +62,35 @@ import org.syncany.database.MultiChunkEntry.MultiChunkId;
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class Deduper {	
+	private static final Logger logger = Logger.getLogger(Deduper.class.getSimpleName());
+	
+	private static final int PREFETCH_CHUNK_QUEUE_SIZE = 4;
+	private static final Chunk PREFETCH_END_OF_FILE = new Chunk(null, null, 0, null);
+	
 	private Chunker chunker;
 	private MultiChunker multiChunker;
 	private Transformer transformer;
 	private long maxTotalSize;
 	private long maxNumberOfFiles;
+	private int chunkerThreads;
 
 	public Deduper(Chunker chunker, MultiChunker multiChunker, Transformer transformer, long maxTotalSize, long maxNumberOfFiles) {
+		this(chunker, multiChunker, transformer, maxTotalSize, maxNumberOfFiles, 1);
+	}
+
+	/**
+	 * Creates a new deduper.
+	 * 
+	 * @param chunkerThreads Number of threads reading and chunking files in parallel; 
+	 *        if <tt>1</tt>, files are chunked by the calling thread
+	 */
+	public Deduper(Chunker chunker, MultiChunker multiChunker, Transformer transformer, long maxTotalSize, long maxNumberOfFiles, int chunkerThreads) {
 		this.chunker = chunker;
 		this.multiChunker = multiChunker;
 		this.transformer = transformer;
 		this.maxTotalSize = maxTotalSize;
 		this.maxNumberOfFiles = maxNumberOfFiles;
+		this.chunkerThreads = Math.max(1, chunkerThreads);
 	}
 	
 	/**
@@ -69,12 +104,27 @@ public class Deduper {
 	 * @throws IOException If a file cannot be read or an unexpected exception occurs
 	 */
 	public void deduplicate(List<File> files, DeduperListener listener) throws IOException {
+		ChunkPrefetcher chunkPrefetcher = (chunkerThreads > 1) ? new ChunkPrefetcher() : null;
+		
+		try {
+			deduplicate(files, listener, chunkPrefetcher);
+		}
+		finally {
+			if (chunkPrefetcher != null) {
+				chunkPrefetcher.shutdown();
+			}
+		}
+	}
+	
+	private void deduplicate(List<File> files, DeduperListener listener, ChunkPrefetcher chunkPrefetcher) throws IOException {
 		Chunk chunk = null;
 		MultiChunk multiChunk = null;
 		long totalMultiChunkSize = 0L;
 		long totalNumFiles = 0L;
 		
 		while (!files.isEmpty()) {
+			PrefetchChunkEnumeration prefetchedChunks = (chunkPrefetcher != null) ? chunkPrefetcher.next(files) : null;
+			
 			File file = files.remove(0);
 			totalNumFiles++;
 			
@@ -82,6 +132,7 @@ public class Deduper {
 			boolean fileAccepted = listener.onFileFilter(file);
 			
 			if (!fileAccepted) {
+				closePrefetchedChunks(prefetchedChunks);
 				continue;
 			}
 			
@@ -90,7 +141,7 @@ public class Deduper {
 
 			if (dedupContents) {
 				// Create chunks from file
-				ChunkEnumeration chunksEnum = chunker.createChunks(file);
+				ChunkEnumeration chunksEnum = createChunks(file, prefetchedChunks);
 
 				while (chunksEnum.hasMoreElements()) {
 					chunk = chunksEnum.nextElement();
@@ -135,6 +186,9 @@ public class Deduper {
 				chunksEnum.close();
 
 			}
+			else {
+				closePrefetchedChunks(prefetchedChunks);
+			}
 
 			if (chunk != null) {			
 				listener.onFileEnd(file, chunk.getFileChecksum());
@@ -172,4 +226,204 @@ public class Deduper {
 
 		return;
 	}	
+
+	private ChunkEnumeration createChunks(File file, PrefetchChunkEnumeration prefetchedChunks) throws IOException {
+		if (prefetchedChunks != null) {
+			if (prefetchedChunks.isUsable()) {
+				return prefetchedChunks;
+			}
+			
+			// Fall back to chunking the file in this thread, e.g. if it was changed after the worker opened it
+			logger.log(Level.FINE, "- Prefetched chunks for {0} not usable, chunking file again.", file);
+			prefetchedChunks.close();
+		}
+		
+		return chunker.createChunks(file);
+	}
+	
+	private void closePrefetchedChunks(PrefetchChunkEnumeration prefetchedChunks) {
+		if (prefetchedChunks != null) {
+			prefetchedChunks.close();
+		}
+	}
+	
+	/**
+	 * The chunk prefetcher runs the {@link Chunker} for the next files of the file list in a 
+	 * thread pool. It keeps at most one file per thread in flight, and each file's chunks are 
+	 * buffered in a small bounded queue, so memory usage does not depend on the file sizes.
+	 */
+	private class ChunkPrefetcher {
+		private ExecutorService executor;
+		private LinkedList<PrefetchChunkEnumeration> prefetchQueue;
+		
+		public ChunkPrefetcher() {
+			this.executor = Executors.newFixedThreadPool(chunkerThreads);
+			this.prefetchQueue = new LinkedList<PrefetchChunkEnumeration>();
+		}
+		
+		/**
+		 * Starts prefetching the next files and returns the enumeration for 
+		 * the first file in the given list.
+		 */
+		public PrefetchChunkEnumeration next(List<File> files) {
+			while (prefetchQueue.size() < chunkerThreads && prefetchQueue.size() < files.size()) {
+				PrefetchChunkEnumeration prefetchedChunks = new PrefetchChunkEnumeration(files.get(prefetchQueue.size()));
+				
+				prefetchQueue.add(prefetchedChunks);
+				executor.execute(prefetchedChunks);
+			}
+			
+			return prefetchQueue.poll();
+		}
+		
+		/**
+		 * Cancels all files that have been prefetched, but not been processed. These files
+		 * are still in the file list and will be chunked again by the next run.  
+		 */
+		public void shutdown() {
+			for (PrefetchChunkEnumeration prefetchedChunks : prefetchQueue) {
+				prefetchedChunks.close();
+			}
+			
+			prefetchQueue.clear();
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Chunk enumeration filled by a worker thread. The worker copies the chunk contents, 
+	 * because chunkers may reuse their chunk buffers.
+	 */
+	private class PrefetchChunkEnumeration implements ChunkEnumeration, Runnable {
+		private File file;
+		private BlockingQueue<Chunk> chunkQueue;
+		private CountDownLatch startedLatch;		
+		
+		private volatile boolean opened;
+		private volatile boolean failed;
+		private volatile boolean closed;
+		private volatile long lastModified;
+		private volatile long size;
+		
+		private Chunk nextChunk;
+		
+		public PrefetchChunkEnumeration(File file) {
+			this.file = file;
+			this.chunkQueue = new ArrayBlockingQueue<Chunk>(PREFETCH_CHUNK_QUEUE_SIZE);
+			this.startedLatch = new CountDownLatch(1);
+			this.opened = false;
+			this.failed = false;
+			this.closed = false;
+			this.nextChunk = null;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				if (closed || !Files.isRegularFile(file.toPath(), LinkOption.NOFOLLOW_LINKS)) {
+					return;
+				}
+				
+				lastModified = file.lastModified();
+				size = file.length();
+
+				ChunkEnumeration chunksEnum = chunker.createChunks(file);
+				opened = true;
+				startedLatch.countDown();
+
+				try {
+					while (!closed && chunksEnum.hasMoreElements()) {
+						Chunk chunk = chunksEnum.nextElement();
+
+						if (chunk == null) {
+							failed = true;
+							break;
+						}
+
+						byte[] chunkContents = Arrays.copyOf(chunk.getContent(), chunk.getSize());
+						put(new Chunk(chunk.getChecksum(), chunkContents, chunk.getSize(), chunk.getFileChecksum()));
+					}
+				}
+				finally {
+					chunksEnum.close();
+				}
+			}
+			catch (InterruptedException e) {
+				failed = true;
+			}
+			catch (Exception e) {
+				logger.log(Level.WARNING, "Error while prefetching chunks of file " + file, e);
+				failed = true;
+			}
+			finally {
+				startedLatch.countDown();
+				
+				try {
+					put(PREFETCH_END_OF_FILE);
+				}
+				catch (InterruptedException e) {
+					// Nothing to do, enumeration was closed
+				}
+			}
+		}
+		
+		private void put(Chunk chunk) throws InterruptedException {
+			while (!closed && !chunkQueue.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+				// Wait until there is space in the queue, or the enumeration is closed
+			}
+		}
+
+		/**
+		 * Returns true if the worker opened the file, and the file has not been modified since. 
+		 * If it returns false, the file has to be chunked again.
+		 */
+		public boolean isUsable() throws IOException {
+			try {
+				startedLatch.await();
+			}
+			catch (InterruptedException e) {
+				throw new IOException("Interrupted while waiting for chunker thread.", e);
+			}
+			
+			return opened && file.lastModified() == lastModified && file.length() == size;
+		}
+
+		@Override
+		public boolean hasMoreElements() {
+			if (nextChunk == null && !closed) {
+				try {
+					nextChunk = chunkQueue.take();
+				}
+				catch (InterruptedException e) {
+					throw new RuntimeException("Interrupted while waiting for chunker thread.", e);
+				}
+			}
+			
+			// Like the chunkers, emit one 'null' chunk if chunking failed 
+			return nextChunk != null && (nextChunk != PREFETCH_END_OF_FILE || failed);
+		}
+
+		@Override
+		public Chunk nextElement() {
+			if (!hasMoreElements()) {
+				return null;
+			}
+			
+			Chunk chunk = nextChunk;
+			
+			if (chunk == PREFETCH_END_OF_FILE) {
+				failed = false;
+				return null;
+			}
+			
+			nextChunk = null;			
+			return chunk;
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+			chunkQueue.clear();
+		}
+	}
 }
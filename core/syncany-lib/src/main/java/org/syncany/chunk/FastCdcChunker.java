@@ -0,0 +1,359 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The FastCDC chunker is a content-based {@link Chunker} implementing the FastCDC
+ * algorithm by Wen Xia et al., 2016. Like the {@link TttdChunker}, it determines
+ * breakpoints based on the content rather than on the offset, so inserting or removing
+ * bytes only affects the chunks around the modification.
+ *
+ * <p>Instead of a windowed rolling checksum, FastCDC uses a gear hash: For each byte,
+ * the hash is shifted left by one bit and a random 64-bit value from a fixed table is
+ * added (<tt>hash = (hash &lt;&lt; 1) + GEAR[b]</tt>). Because of the shift, only the last
+ * 64 bytes influence the hash value, i.e. it behaves like a rolling hash without having
+ * to remove the outgoing byte. A breakpoint is found if the masked bits of the hash are zero.
+ *
+ * <p>To speed up the boundary detection and to normalize the chunk size distribution,
+ * the chunker (a) skips the first <i>min</i> bytes of each chunk, (b) uses a mask with
+ * more bits (harder to match) before the average chunk size, and a mask with less bits
+ * (easier to match) after it, and (c) cuts at <i>max</i> bytes if no breakpoint was found.
+ *
+ * <p><b>Important:</b> The gear table and masks define the chunk boundaries. They must never
+ * be changed, because otherwise existing chunks are not found again when a file is re-indexed.
+ *
+ * <p>Like in the {@link TttdChunker}, the chunk buffer is reused for all chunks of an
+ * enumeration, i.e. the contents of a {@link Chunk} are only valid until the next chunk is requested.
+ * If the file length is known, the read and chunk buffers are sized for the file, so that small
+ * files do not allocate the full read buffer.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ * @see <a href="https://www.usenix.org/conference/atc16/technical-sessions/presentation/xia">FastCDC: a Fast and Efficient Content-Defined Chunking Approach for Data Deduplication (2016, Wen Xia et al.)</a>
+ */
+public class FastCdcChunker extends Chunker {
+	private static final Logger logger = Logger.getLogger(FastCdcChunker.class.getSimpleName());
+
+	public static final String TYPE = "fastcdc";
+	public static final String DEFAULT_DIGEST_ALG = ChunkDigest.DEFAULT_ALGORITHM;
+	public static final int DEFAULT_READ_BUFFER_SIZE = 1024 * 1024;
+
+	private static final int MIN_AVG_CHUNK_SIZE = 256;
+	private static final int NORMALIZATION_LEVEL = 2;
+	private static final long GEAR_SEED = 0x5359434443L; // "SYCDC"
+	private static final long[] GEAR = createGearTable();
+
+	private int minChunkSize;
+	private int avgChunkSize;
+	private int maxChunkSize;
+	private long maskSmall;
+	private long maskLarge;
+	private String checksumAlgorithm;
+
+	/**
+	 * Creates a new FastCDC chunker with the given average chunk size, a minimum
+	 * chunk size of a quarter, and a maximum chunk size of eight times the average
+	 * chunk size.
+	 *
+	 * @param avgChunkSize Average (expected) chunk size in bytes; rounded to the next power of two
+	 */
+	public FastCdcChunker(int avgChunkSize) {
+		this(avgChunkSize, DEFAULT_DIGEST_ALG);
+	}
+
+	public FastCdcChunker(int avgChunkSize, String checksumAlgorithm) {
+		this(avgChunkSize / 4, avgChunkSize, avgChunkSize * 8, checksumAlgorithm);
+	}
+
+	/**
+	 * Creates a new FastCDC chunker.
+	 *
+	 * @param minChunkSize Minimum chunk size in bytes (except for the last chunk of a file)
+	 * @param avgChunkSize Average (expected) chunk size in bytes; rounded to the next power of two
+	 * @param maxChunkSize Maximum chunk size in bytes
+	 * @param checksumAlgorithm Algorithm to calculate the chunk and file checksums (e.g. SHA1, MD5)
+	 */
+	public FastCdcChunker(int minChunkSize, int avgChunkSize, int maxChunkSize, String checksumAlgorithm) {
+		if (avgChunkSize < MIN_AVG_CHUNK_SIZE) {
+			throw new IllegalArgumentException("Average chunk size must be at least " + MIN_AVG_CHUNK_SIZE + " bytes.");
+		}
+
+		int avgChunkSizeBits = 32 - Integer.numberOfLeadingZeros(avgChunkSize - 1);
+
+		this.avgChunkSize = 1 << avgChunkSizeBits;
+		this.minChunkSize = minChunkSize;
+		this.maxChunkSize = maxChunkSize;
+		this.maskSmall = createMask(avgChunkSizeBits + NORMALIZATION_LEVEL);
+		this.maskLarge = createMask(avgChunkSizeBits - NORMALIZATION_LEVEL);
+		this.checksumAlgorithm = checksumAlgorithm;
+
+		if (minChunkSize < 0 || minChunkSize >= this.avgChunkSize || this.avgChunkSize >= maxChunkSize) {
+			throw new IllegalArgumentException("Chunk sizes must satisfy 0 <= min < avg < max; given: " + minChunkSize + ", "
+					+ this.avgChunkSize + ", " + maxChunkSize);
+		}
+	}
+
+	@Override
+	public ChunkEnumeration createChunks(File file) throws IOException {
+		return new FastCdcEnumeration(new FileInputStream(file), file.length());
+	}
+
+	@Override
+	public String getChecksumAlgorithm() {
+		return checksumAlgorithm;
+	}
+
+	@Override
+	public String toString() {
+		return "FastCDC-" + minChunkSize + "-" + avgChunkSize + "-" + maxChunkSize + "-" + checksumAlgorithm;
+	}
+
+	/**
+	 * Returns the length of the next chunk in the given buffer, starting at the offset
+	 * and considering at most <tt>length</tt> bytes. If no breakpoint is found, the
+	 * entire length is returned.
+	 */
+	private int findBreakpoint(byte[] buffer, int offset, int length) {
+		if (length <= minChunkSize) {
+			return length;
+		}
+
+		int normalLength = Math.min(length, avgChunkSize);
+		long hash = 0;
+		int i = minChunkSize;
+
+		for (; i < normalLength; i++) {
+			hash = (hash << 1) + GEAR[buffer[offset + i] & 0xff];
+
+			if ((hash & maskSmall) == 0) {
+				return i + 1;
+			}
+		}
+
+		for (; i < length; i++) {
+			hash = (hash << 1) + GEAR[buffer[offset + i] & 0xff];
+
+			if ((hash & maskLarge) == 0) {
+				return i + 1;
+			}
+		}
+
+		return length;
+	}
+
+	/**
+	 * Creates a mask with the given number of bits set, using the upper bits of the
+	 * hash (because they depend on the most bytes of the gear hash).
+	 */
+	private static long createMask(int bits) {
+		return (bits <= 0) ? 0L : ((1L << bits) - 1) << (64 - bits);
+	}
+
+	/**
+	 * Creates the gear table using a fixed seed. Because the algorithm of {@link Random}
+	 * is fully specified, the table is identical on all platforms and JVMs.
+	 */
+	private static long[] createGearTable() {
+		Random random = new Random(GEAR_SEED);
+		long[] gear = new long[256];
+
+		for (int i = 0; i < gear.length; i++) {
+			gear[i] = random.nextLong();
+		}
+
+		return gear;
+	}
+
+	public class FastCdcEnumeration implements ChunkEnumeration {
+		private InputStream in;
+		private boolean closed;
+		private boolean eof;
+
+		private byte[] c;
+		private int cpos;
+		private int clen;
+		private byte[] buf;
+
+		private int readBufferSize;
+		private ChunkDigest digest;
+
+		public FastCdcEnumeration(InputStream in) {
+			this(in, Long.MAX_VALUE);
+		}
+
+		/**
+		 * Creates a new enumeration for the given input stream. The expected length is only
+		 * used to size the buffers; if the stream turns out to be longer, the buffers are
+		 * grown to their full size.
+		 *
+		 * @param in Input stream to chunk
+		 * @param expectedLength Expected number of bytes in the stream
+		 */
+		public FastCdcEnumeration(InputStream in, long expectedLength) {
+			this.in = in;
+			this.closed = false;
+			this.eof = false;
+			this.readBufferSize = Math.max(DEFAULT_READ_BUFFER_SIZE, 4 * maxChunkSize);
+			this.c = new byte[(int) Math.min(readBufferSize - 1, Math.max(expectedLength, 0)) + 1]; // +1 to detect EOF without growing
+			this.cpos = 0;
+			this.clen = 0;
+			this.buf = new byte[Math.min(maxChunkSize, c.length)];
+
+			try {
+				digest = ChunkDigest.getInstance(checksumAlgorithm);
+			}
+			catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public boolean hasMoreElements() {
+			if (closed) {
+				return false;
+			}
+
+			try {
+				fillReadBuffer();
+			}
+			catch (IOException ex) {
+				logger.log(Level.WARNING, "Error while reading from input stream.", ex);
+				return false;
+			}
+
+			if (cpos == clen) {
+				close();
+				return false;
+			}
+
+			return true;
+		}
+
+		@Override
+		public Chunk nextElement() {
+			if (closed) {
+				return null;
+			}
+
+			try {
+				fillReadBuffer();
+
+				if (cpos == clen) {
+					close();
+					return null;
+				}
+
+				// Find breakpoint, and copy chunk to chunk buffer
+				int chunkSize = findBreakpoint(c, cpos, Math.min(maxChunkSize, clen - cpos));
+
+				if (chunkSize > buf.length) {
+					buf = new byte[maxChunkSize];
+				}
+
+				System.arraycopy(c, cpos, buf, 0, chunkSize);
+				cpos += chunkSize;
+
+				digest.update(buf, 0, chunkSize);
+				byte[] chunkChecksum = digest.digestChunk();
+
+				// Close if this was the last chunk (read ahead to find out)
+				if (cpos == clen) {
+					fillReadBuffer();
+				}
+
+				byte[] fileChecksum = null;
+
+				if (cpos == clen && eof) {
+					fileChecksum = digest.digestFile();
+					close();
+				}
+
+				return new Chunk(chunkChecksum, buf, chunkSize, fileChecksum);
+			}
+			catch (IOException ex) {
+				logger.log(Level.SEVERE, "Error while retrieving next chunk.", ex);
+				return null;
+			}
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+
+			try {
+				in.close();
+			}
+			catch (IOException e) {
+				logger.log(Level.INFO, "Error while closing", e);
+			}
+		}
+
+		/**
+		 * Makes sure that at least {@link FastCdcChunker#maxChunkSize maxChunkSize} bytes are available
+		 * in the read buffer (unless the end of the stream is reached). To avoid copying, the remaining
+		 * bytes are only moved to the beginning of the read buffer if there is not enough space left.
+		 */
+		private void fillReadBuffer() throws IOException {
+			if (eof || clen - cpos >= maxChunkSize) {
+				return;
+			}
+
+			if (c.length - cpos < maxChunkSize) {
+				System.arraycopy(c, cpos, c, 0, clen - cpos);
+
+				clen -= cpos;
+				cpos = 0;
+			}
+
+			while (clen - cpos < maxChunkSize) {
+				if (clen == c.length) {
+					growReadBuffer();
+				}
+
+				int read = in.read(c, clen, c.length - clen);
+
+				if (read == -1) {
+					eof = true;
+					break;
+				}
+
+				clen += read;
+			}
+		}
+
+		/**
+		 * Grows the read buffer to its full size. This is only necessary if the buffer was
+		 * sized for a shorter stream, e.g. if the file was appended to while it is chunked.
+		 */
+		private void growReadBuffer() {
+			byte[] newReadBuffer = new byte[readBufferSize];
+			System.arraycopy(c, cpos, newReadBuffer, 0, clen - cpos);
+
+			c = newReadBuffer;
+			clen -= cpos;
+			cpos = 0;
+		}
+	}
+}
@@ -21,7 +21,6 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.MessageDigest;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,7 +40,7 @@ import java.util.logging.Logger;
 public class FixedChunker extends Chunker {
 	private static final Logger logger = Logger.getLogger(FixedChunker.class.getSimpleName());
 
-	public static final String DEFAULT_DIGEST_ALG = "SHA1";
+	public static final String DEFAULT_DIGEST_ALG = ChunkDigest.DEFAULT_ALGORITHM;
 	public static final String TYPE = "fixed";
 
 	private int chunkSize;
@@ -84,8 +83,7 @@ public class FixedChunker extends Chunker {
 	}
 
 	public class FixedChunkEnumeration implements ChunkEnumeration {
-		private MessageDigest digest;
-		private MessageDigest fileDigest;
+		private ChunkDigest digest;
 
 		private InputStream in;
 		private byte[] buffer;
@@ -97,10 +95,7 @@ public class FixedChunker extends Chunker {
 			this.closed = false;
 
 			try {
-				this.digest = MessageDigest.getInstance(checksumAlgorithm);
-				this.fileDigest = MessageDigest.getInstance(checksumAlgorithm);
-
-				this.fileDigest.reset();
+				this.digest = ChunkDigest.getInstance(checksumAlgorithm);
 			}
 			catch (Exception e) {
 				throw new RuntimeException(e);
@@ -140,16 +135,14 @@ public class FixedChunker extends Chunker {
 					closed = true;
 				}
 
-				// Chunk checksum
-				digest.reset();
+				// Chunk and file checksum (one pass)
 				digest.update(buffer, 0, read);
 
-				// File checksum
-				fileDigest.update(buffer, 0, read);
-				byte[] fileChecksum = (closed) ? fileDigest.digest() : null;
+				byte[] chunkChecksum = digest.digestChunk();
+				byte[] fileChecksum = (closed) ? digest.digestFile() : null;
 
 				// Create chunk
-				return new Chunk(digest.digest(), buffer, read, fileChecksum);
+				return new Chunk(chunkChecksum, buffer, read, fileChecksum);
 			}
 			catch (IOException ex) {
 				logger.log(Level.SEVERE, "Error while retrieving next chunk.", ex);
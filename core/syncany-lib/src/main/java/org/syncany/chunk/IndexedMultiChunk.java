@@ -0,0 +1,373 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+
+/**
+ * An indexed multichunk is a multichunk container format that allows reading
+ * a single chunk with a binary search in an in-memory index and one positioned read.
+ * 
+ * <p>The binary layout is as follows (all numbers big endian):
+ * 
+ * <pre>
+ *   header:   magic (4 bytes), version (4 bytes), reserved (8 bytes)
+ *   payloads: chunk data, concatenated without any separators
+ *   index:    one entry per chunk, sorted by checksum (unsigned byte order):
+ *             checksum (checksum length bytes), offset (8 bytes), length (4 bytes)
+ *   trailer:  index offset (8 bytes), entry count (4 bytes), checksum length (4 bytes), 
+ *             reserved (4 bytes), magic (4 bytes)
+ * </pre>
+ * 
+ * <p>When opened from a file, only the trailer and the index are read. Chunk data is
+ * read on demand. When opened from an input stream (sequential read mode), the
+ * whole multichunk is read into memory first, because the index is located at the end.
+ *
+ * @see IndexedMultiChunker
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class IndexedMultiChunk extends MultiChunk {
+	private static final int MAGIC = 0x53594d43; // "SYMC"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final int TRAILER_SIZE = 24;
+	private static final int INDEX_ENTRY_FIXED_SIZE = 12;
+	private static final int MAX_CHECKSUM_LENGTH = 1024;
+
+	// Write mode
+	private DataOutputStream dataOutputStream;
+	private List<IndexEntry> writtenEntries;
+	private long writeOffset;
+	
+	// Read mode
+	private InputStream inputStream;
+	private RandomAccessFile randomAccessFile;
+	private FileChannel fileChannel;
+	private ByteBuffer inMemoryData;
+	private ByteBuffer index;
+	private int entryCount;
+	private int checksumLength;
+	private long indexOffset;
+	private Integer[] entriesByOffset;
+	private int nextReadEntry;
+
+	public IndexedMultiChunk(InputStream is) {
+		super(0);
+		this.inputStream = is;
+	}
+
+	public IndexedMultiChunk(File file) throws IOException {
+		super(0);
+		
+		this.randomAccessFile = new RandomAccessFile(file, "r");
+		this.fileChannel = randomAccessFile.getChannel();
+		
+		try {
+			readIndex(fileChannel.size());
+		}
+		catch (IOException e) {
+			randomAccessFile.close();
+			throw new IOException("Invalid indexed multichunk " + file, e);
+		}
+	}
+
+	public IndexedMultiChunk(MultiChunkId id, int minSize, OutputStream os) throws IOException {
+		super(id, minSize);
+		
+		this.dataOutputStream = new DataOutputStream(new BufferedOutputStream(os, 64 * 1024));
+		this.writtenEntries = new ArrayList<IndexEntry>();
+		this.writeOffset = HEADER_SIZE;
+		
+		dataOutputStream.writeInt(MAGIC);
+		dataOutputStream.writeInt(VERSION);
+		dataOutputStream.writeLong(0); // Reserved
+	}
+
+	@Override
+	public boolean isFull() {
+		return size >= minSize * 1024; // minSize is in KB!
+	}
+
+	@Override
+	public void write(Chunk chunk) throws IOException {
+		byte[] checksum = chunk.getChecksum();
+		
+		if (writtenEntries.size() > 0 && writtenEntries.get(0).checksum.length != checksum.length) {
+			throw new IOException("All chunks in a multichunk must have the same checksum length.");
+		}
+		
+		dataOutputStream.write(chunk.getContent(), 0, chunk.getSize());
+		writtenEntries.add(new IndexEntry(checksum.clone(), writeOffset, chunk.getSize()));
+		
+		writeOffset += chunk.getSize();
+		size += chunk.getSize();
+	}
+
+	@Override
+	public InputStream getChunkInputStream(byte[] checksum) throws IOException {
+		ensureIndexRead();
+		
+		int entry = findEntry(checksum);
+		
+		if (entry < 0) {
+			return null;
+		}
+		
+		return new ByteArrayInputStream(readChunkData(entry));
+	}
+
+	@Override
+	public Chunk read() throws IOException {
+		ensureIndexRead();
+		
+		if (entriesByOffset == null) {
+			entriesByOffset = new Integer[entryCount];
+			
+			for (int i = 0; i < entryCount; i++) {
+				entriesByOffset[i] = i;
+			}
+			
+			Arrays.sort(entriesByOffset, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer entry1, Integer entry2) {
+					return Long.compare(getEntryOffset(entry1), getEntryOffset(entry2));
+				}				
+			});
+		}
+		
+		if (nextReadEntry >= entryCount) {
+			return null;
+		}
+		
+		int entry = entriesByOffset[nextReadEntry++];
+		byte[] content = readChunkData(entry);
+		
+		return new Chunk(getEntryChecksum(entry), content, content.length, null);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (dataOutputStream != null) {
+			writeIndex();
+			dataOutputStream.close();
+		}
+		
+		if (inputStream != null) {
+			inputStream.close();
+		}
+		
+		if (randomAccessFile != null) {
+			randomAccessFile.close();
+		}
+	}
+	
+	private void writeIndex() throws IOException {
+		Collections.sort(writtenEntries);
+		
+		int checksumLength = (writtenEntries.size() > 0) ? writtenEntries.get(0).checksum.length : 0;
+		long indexOffset = writeOffset;
+		
+		for (IndexEntry entry : writtenEntries) {
+			dataOutputStream.write(entry.checksum);
+			dataOutputStream.writeLong(entry.offset);
+			dataOutputStream.writeInt(entry.length);
+		}
+		
+		dataOutputStream.writeLong(indexOffset);
+		dataOutputStream.writeInt(writtenEntries.size());
+		dataOutputStream.writeInt(checksumLength);
+		dataOutputStream.writeInt(0); // Reserved
+		dataOutputStream.writeInt(MAGIC);
+	}
+	
+	private void ensureIndexRead() throws IOException {
+		if (index == null) {
+			if (inputStream == null) {
+				throw new IOException("Multichunk not opened for reading.");
+			}
+			
+			inMemoryData = ByteBuffer.wrap(IOUtils.toByteArray(inputStream));
+			readIndex(inMemoryData.capacity());
+		}
+	}
+
+	private void readIndex(long fileSize) throws IOException {
+		if (fileSize < HEADER_SIZE + TRAILER_SIZE) {
+			throw new IOException("Multichunk too small: " + fileSize + " bytes");
+		}
+		
+		ByteBuffer header = readFully(0, HEADER_SIZE);
+		ByteBuffer trailer = readFully(fileSize - TRAILER_SIZE, TRAILER_SIZE);
+		
+		int headerMagic = header.getInt();
+		int version = header.getInt();
+		
+		indexOffset = trailer.getLong();
+		entryCount = trailer.getInt();
+		checksumLength = trailer.getInt();
+		trailer.getInt(); // Reserved
+		int trailerMagic = trailer.getInt();
+		
+		if (headerMagic != MAGIC || trailerMagic != MAGIC) {
+			throw new IOException("Invalid multichunk magic number.");
+		}
+		else if (version != VERSION) {
+			throw new IOException("Unsupported multichunk version " + version);
+		}
+		else if (entryCount < 0 || checksumLength < 0 || checksumLength > MAX_CHECKSUM_LENGTH
+				|| indexOffset < HEADER_SIZE || indexOffset + (long) entryCount * (checksumLength + INDEX_ENTRY_FIXED_SIZE) != fileSize - TRAILER_SIZE) {
+			
+			throw new IOException("Invalid multichunk index.");
+		}
+		
+		index = readFully(indexOffset, entryCount * (checksumLength + INDEX_ENTRY_FIXED_SIZE));
+		
+		for (int i = 0; i < entryCount; i++) {
+			long offset = getEntryOffset(i);
+			int length = getEntryLength(i);
+			
+			if (offset < HEADER_SIZE || length < 0 || offset + length > indexOffset) {
+				throw new IOException("Invalid multichunk index entry " + i);
+			}
+		}
+	}
+	
+	private int findEntry(byte[] checksum) {
+		if (checksum.length != checksumLength) {
+			return -1;
+		}
+		
+		int low = 0;
+		int high = entryCount - 1;
+		
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int compared = compareEntryChecksum(middle, checksum);
+			
+			if (compared < 0) {
+				low = middle + 1;
+			}
+			else if (compared > 0) {
+				high = middle - 1;
+			}
+			else {
+				return middle;
+			}
+		}
+		
+		return -1;
+	}
+	
+	private int compareEntryChecksum(int entry, byte[] checksum) {
+		int entryPosition = entry * (checksumLength + INDEX_ENTRY_FIXED_SIZE);
+		
+		for (int i = 0; i < checksumLength; i++) {
+			int compared = (index.get(entryPosition + i) & 0xff) - (checksum[i] & 0xff);
+			
+			if (compared != 0) {
+				return compared;
+			}
+		}
+		
+		return 0;
+	}
+	
+	private byte[] getEntryChecksum(int entry) {
+		byte[] checksum = new byte[checksumLength];
+		int entryPosition = entry * (checksumLength + INDEX_ENTRY_FIXED_SIZE);
+		
+		for (int i = 0; i < checksumLength; i++) {
+			checksum[i] = index.get(entryPosition + i);
+		}
+		
+		return checksum;
+	}
+	
+	private long getEntryOffset(int entry) {
+		return index.getLong(entry * (checksumLength + INDEX_ENTRY_FIXED_SIZE) + checksumLength);
+	}
+	
+	private int getEntryLength(int entry) {
+		return index.getInt(entry * (checksumLength + INDEX_ENTRY_FIXED_SIZE) + checksumLength + 8);
+	}
+	
+	private byte[] readChunkData(int entry) throws IOException {
+		return readFully(getEntryOffset(entry), getEntryLength(entry)).array();
+	}
+	
+	private ByteBuffer readFully(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		
+		if (inMemoryData != null) {
+			buffer.put(inMemoryData.array(), (int) position, length);
+		}
+		else {
+			while (buffer.hasRemaining()) {
+				if (fileChannel.read(buffer, position + buffer.position()) < 0) {
+					throw new EOFException("Unexpected end of multichunk.");
+				}
+			}
+		}
+		
+		buffer.flip();
+		return buffer;
+	}
+	
+	private static class IndexEntry implements Comparable<IndexEntry> {
+		private byte[] checksum;
+		private long offset;
+		private int length;
+		
+		public IndexEntry(byte[] checksum, long offset, int length) {
+			this.checksum = checksum;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public int compareTo(IndexEntry other) {
+			for (int i = 0; i < checksum.length; i++) {
+				int compared = (checksum[i] & 0xff) - (other.checksum[i] & 0xff);
+				
+				if (compared != 0) {
+					return compared;
+				}
+			}
+			
+			return 0;
+		}
+	}
+}
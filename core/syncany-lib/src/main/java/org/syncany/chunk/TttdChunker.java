@@ -21,7 +21,6 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.MessageDigest;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -50,15 +49,22 @@ import java.util.logging.Logger;
  * breakpoints, TTTD simply cuts the chunk at the maximum chunk size. TTTD hence guarantees
  * to emit chunks with a minimum and maximum size.
  *
+ * <p>Files are read in blocks of {@link #DEFAULT_READ_BUFFER_SIZE} bytes using bulk reads, and
+ * the first <i>Tmin</i> bytes of each chunk are copied without fingerprinting them (they cannot
+ * contain a breakpoint anyway). The chunk buffer is reused for all chunks of an enumeration, i.e.
+ * the contents of a {@link Chunk} are only valid until the next chunk is requested.
+ *
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  * @see <a href="http://www.hpl.hp.com/techreports/2005/HPL-2005-30R1.html">Original TTTD paper: A framework for analyzing and improving content-based chunking algorithms (2005, Kave Eshghi and Hsiu Khuern Tang)</a>
  */
 public class TttdChunker extends Chunker {
 	private static final Logger logger = Logger.getLogger(TttdChunker.class.getSimpleName());
 
+	public static final String TYPE = "tttd";
 	public static final int DEFAULT_WINDOW_SIZE = 48; // like LBFS
-	public static final String DEFAULT_DIGEST_ALG = "SHA1";
+	public static final String DEFAULT_DIGEST_ALG = ChunkDigest.DEFAULT_ALGORITHM;
 	public static final String DEFAULT_FINGERPRINT_ALG = "Adler32";
+	public static final int DEFAULT_READ_BUFFER_SIZE = 64 * 1024;
 
 	private int Tmin;
 	private int Tmax;
@@ -116,7 +122,7 @@ public class TttdChunker extends Chunker {
 
 	@Override
 	public ChunkEnumeration createChunks(File file) throws IOException {
-		return new TTTDEnumeration(new FileInputStream(file));
+		return new TTTDEnumeration(new FileInputStream(file), false);
 	}
 
 	@Override
@@ -131,28 +137,45 @@ public class TttdChunker extends Chunker {
 
 	public class TTTDEnumeration implements ChunkEnumeration {
 		private InputStream in;
+		private boolean singleByteReads;
 		private boolean closed;
 		private byte[] c;
 		private int clen;
 		private int cpos;
+		private byte[] buf;
 
-		private MessageDigest chunkDigest;
-		private MessageDigest fileDigest;
+		private ChunkDigest digest;
 		private Fingerprinter fingerprinter;
 
+		/**
+		 * Creates a chunk enumeration for an arbitrary input stream. Because the given
+		 * stream might be a cipher stream, it is read byte by byte.
+		 *
+		 * @see #TTTDEnumeration(InputStream, boolean)
+		 */
 		public TTTDEnumeration(InputStream in) throws IOException {
+			this(in, true);
+		}
+
+		/**
+		 * Creates a chunk enumeration for the given input stream.
+		 *
+		 * @param in Stream to read the chunks from
+		 * @param singleByteReads If true, the stream is read using {@link InputStream#read()} only, to
+		 *        work around read errors occurring with Cipher streams; if false, bulk reads are used
+		 */
+		public TTTDEnumeration(InputStream in, boolean singleByteReads) throws IOException {
 			this.in = in;
+			this.singleByteReads = singleByteReads;
 			this.closed = false;
-			this.c = new byte[8192];
+			this.c = new byte[DEFAULT_READ_BUFFER_SIZE];
 			this.clen = -1;
 			this.cpos = -1;
+			this.buf = new byte[Tmax];
 
 			try {
 				fingerprinter = Fingerprinter.getInstance(fingerprintAlgorithm);
-				chunkDigest = MessageDigest.getInstance(checksumAlgorithm);
-				fileDigest = MessageDigest.getInstance(checksumAlgorithm);
-
-				fileDigest.reset();
+				digest = ChunkDigest.getInstance(checksumAlgorithm);
 			}
 			catch (Exception e) {
 				throw new RuntimeException(e);
@@ -170,26 +193,33 @@ public class TttdChunker extends Chunker {
 				return null;
 			}
 
-			chunkDigest.reset();
 			fingerprinter.reset();
 
 			try {
 				int backupBreak = 0;
 				int breakpoint = -1;
 
-				byte[] buf = new byte[Tmax];
 				int bufpos = -1;
 
 				while (bufpos < buf.length - 1) {
 					if (cpos == -1 || cpos == clen - 1) {
 						cpos = -1;
-						clen = readFromInputStreamFixed(c, in);//in.read(c);
+						clen = (singleByteReads) ? readFromInputStreamFixed(c, in) : readFromInputStreamBulk(c, in);
 
 						if (clen == -1) {
 							break;
 						}
+					}
+
+					// Bytes before Tmin cannot be breakpoints, copy them at once
+					if (bufpos + 1 < Tmin) {
+						int copyLength = Math.min(Tmin - bufpos - 1, clen - cpos - 1);
+						System.arraycopy(c, cpos + 1, buf, bufpos + 1, copyLength);
 
-						fileDigest.update(c, 0, clen);
+						bufpos += copyLength;
+						cpos += copyLength;
+
+						continue;
 					}
 
 					bufpos++;
@@ -246,13 +276,14 @@ public class TttdChunker extends Chunker {
 				// Increase breakpoint
 				breakpoint++;
 
-				// Create chunk
-				chunkDigest.update(buf, 0, breakpoint);
+				// Create chunk; chunks are contiguous, so the file checksum
+				// is calculated in the same pass as the chunk checksum
+				digest.update(buf, 0, breakpoint);
 
-				byte[] chunkChecksum = chunkDigest.digest();
+				byte[] chunkChecksum = digest.digestChunk();
 				byte[] chunkContents = buf;
 				int chunkSize = breakpoint;
-				byte[] fileChecksum = (clen == -1) ? fileDigest.digest() : null;
+				byte[] fileChecksum = (clen == -1) ? digest.digestFile() : null;
 
 				return new Chunk(chunkChecksum, chunkContents, chunkSize, fileChecksum);
 			}
@@ -292,5 +323,26 @@ public class TttdChunker extends Chunker {
 
 			return (bytesRead != 0) ? bytesRead : -1;
 		}
+
+		/**
+		 * Fills the given buffer using bulk reads, until the buffer is full or
+		 * the end of the stream is reached. Like {@link #readFromInputStreamFixed(byte[], InputStream)},
+		 * this method only returns less bytes than the buffer size at the end of the stream.
+		 */
+		private int readFromInputStreamBulk(byte[] readToBuffer, InputStream inputStream) throws IOException {
+			int bytesRead = 0;
+
+			while (bytesRead < readToBuffer.length) {
+				int read = inputStream.read(readToBuffer, bytesRead, readToBuffer.length - bytesRead);
+
+				if (read == -1) {
+					break;
+				}
+
+				bytesRead += read;
+			}
+
+			return (bytesRead != 0) ? bytesRead : -1;
+		}
 	}
 }
@@ -29,11 +29,13 @@ import org.syncany.chunk.NoTransformer;
 import org.syncany.chunk.Transformer;
 import org.syncany.config.to.ConfigTO;
 import org.syncany.config.to.RepoTO;
+import org.syncany.config.to.RepoTO.ChunkerTO;
 import org.syncany.config.to.RepoTO.MultiChunkerTO;
 import org.syncany.config.to.RepoTO.TransformerTO;
 import org.syncany.crypto.SaltedSecretKey;
 import org.syncany.database.DatabaseConnectionFactory;
 import org.syncany.database.VectorClock;
+import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseFormat;
 import org.syncany.plugins.Plugins;
 import org.syncany.plugins.transfer.TransferPlugin;
 import org.syncany.plugins.transfer.TransferSettings;
@@ -67,6 +69,10 @@ public class Config {
 
 	// File in .syncany/db
 	public static final String FILE_DATABASE = "local.db";
+	public static final String FILE_CHUNK_INDEX = "chunk-index.dat";
+	public static final String FILE_CHUNK_FILTER = "chunk-filter.dat";
+	public static final String FILE_STATUS_SNAPSHOT = "status-snapshot.dat";
+	public static final String FILE_FILE_TREE_INDEX = "filetree-index.dat";
 
 	// Files in .syncany/state
 	public static final String FILE_PORT = "port.xml";
@@ -76,6 +82,10 @@ public class Config {
 	public static final String FILE_TRANSACTION_DATABASE_PATTERN = "transaction-database.%010d.xml";
 	public static final String FILE_TRANSACTION_LIST = "transaction-list.txt";
 
+	// Chunker used if the repository config does not define a (valid) chunker
+	public static final int DEFAULT_CHUNK_SIZE = 512 * 1024;
+	private static final int MIN_FIXED_CHUNK_SIZE = 1024;
+
 	private byte[] repoId;
 	private String machineName;
 	private String displayName;
@@ -94,6 +104,7 @@ public class Config {
 	private Chunker chunker;
 	private MultiChunker multiChunker;
 	private Transformer transformer;
+	private DatabaseFormat databaseFormat;
 	private IgnoredFiles ignoredFiles;
 
 	static {
@@ -152,6 +163,7 @@ public class Config {
 			initChunker(repoTO);
 			initMultiChunker(repoTO);
 			initTransformers(repoTO);
+			initDatabaseFormat(repoTO);
 		}
 		catch (Exception e) {
 			throw new ConfigException("Unable to initialize repository information from config.", e);
@@ -163,10 +175,36 @@ public class Config {
 	}
 
 	private void initChunker(RepoTO repoTO) throws Exception {
-		// TODO [feature request] make chunking options configurable, something like described in #29
-		// See: https://github.com/syncany/syncany/issues/29#issuecomment-43425647
+		ChunkerTO chunkerTO = repoTO.getChunkerTO();
+
+		if (chunkerTO == null || isLegacyChunkerTO(chunkerTO)) {
+			chunker = new FixedChunker(DEFAULT_CHUNK_SIZE, FixedChunker.DEFAULT_DIGEST_ALG);
+		}
+		else {
+			chunker = Chunker.getInstance(chunkerTO.getType(), chunkerTO.getSettings());
+
+			if (chunker == null) {
+				throw new ConfigException("Invalid chunker type or settings: " + chunkerTO.getType());
+			}
+		}
+	}
 
-		chunker = new FixedChunker(512 * 1024, "SHA1");
+	/**
+	 * Repositories created before the chunker settings were evaluated contain a placeholder
+	 * fixed chunker with a size of a few bytes (always using 512 KB chunks). To not change the
+	 * chunks of these repositories, such a config is mapped to the default chunker.
+	 */
+	private boolean isLegacyChunkerTO(ChunkerTO chunkerTO) {
+		if (!FixedChunker.TYPE.equals(chunkerTO.getType()) || chunkerTO.getSettings() == null) {
+			return false;
+		}
+
+		try {
+			return Integer.parseInt(chunkerTO.getSettings().get(Chunker.PROPERTY_SIZE)) < MIN_FIXED_CHUNK_SIZE;
+		}
+		catch (NumberFormatException e) {
+			return false;
+		}
 	}
 
 	private void initMultiChunker(RepoTO repoTO) throws ConfigException {
@@ -185,6 +223,20 @@ public class Config {
 		multiChunker.init(multiChunkerTO.getSettings());
 	}
 
+	private void initDatabaseFormat(RepoTO repoTO) throws ConfigException {
+		if (repoTO.getDatabaseFormat() == null) {
+			databaseFormat = DatabaseFormat.XML;
+		}
+		else {
+			try {
+				databaseFormat = DatabaseFormat.valueOf(repoTO.getDatabaseFormat().toUpperCase());
+			}
+			catch (IllegalArgumentException e) {
+				throw new ConfigException("Invalid database format in repository config: " + repoTO.getDatabaseFormat());
+			}
+		}
+	}
+
 	private void initTransformers(RepoTO repoTO) throws Exception {
 		if (repoTO.getTransformers() == null || repoTO.getTransformers().size() == 0) {
 			transformer = new NoTransformer();
@@ -308,6 +360,14 @@ public class Config {
 		return transformer;
 	}
 
+	/**
+	 * Returns the format in which new database files are written to the
+	 * repository. Database files in any format can always be read.
+	 */
+	public DatabaseFormat getDatabaseFormat() {
+		return databaseFormat;
+	}
+
 	public void setCache(Cache cache) {
 		this.cache = cache;
 	}
@@ -336,6 +396,22 @@ public class Config {
 		return new File(databaseDir, FILE_DATABASE);
 	}
 
+	public File getChunkIndexFile() {
+		return new File(databaseDir, FILE_CHUNK_INDEX);
+	}
+
+	public File getChunkFilterFile() {
+		return new File(databaseDir, FILE_CHUNK_FILTER);
+	}
+
+	public File getStatusSnapshotFile() {
+		return new File(databaseDir, FILE_STATUS_SNAPSHOT);
+	}
+
+	public File getFileTreeIndexFile() {
+		return new File(databaseDir, FILE_FILE_TREE_INDEX);
+	}
+
 	public File getPortFile() {
 		return new File(stateDir, FILE_PORT);
 	}
@@ -25,10 +25,14 @@ import java.util.Map;
 
 import org.syncany.chunk.Chunker;
 import org.syncany.chunk.CipherTransformer;
+import org.syncany.chunk.FastCdcChunker;
 import org.syncany.chunk.FixedChunker;
 import org.syncany.chunk.GzipTransformer;
+import org.syncany.chunk.IndexedMultiChunker;
 import org.syncany.chunk.MultiChunker;
+import org.syncany.chunk.TttdChunker;
 import org.syncany.chunk.ZipMultiChunker;
+import org.syncany.config.Config;
 import org.syncany.config.to.RepoTO.ChunkerTO;
 import org.syncany.config.to.RepoTO.MultiChunkerTO;
 import org.syncany.config.to.RepoTO.TransformerTO;
@@ -49,8 +53,34 @@ public class DefaultRepoTOFactory implements RepoTOFactory {
 	private List<TransformerTO> transformersTO;
 
 	public DefaultRepoTOFactory(boolean gzipEnabled, List<CipherSpec> cipherSpecs) {
-		chunkerTO = getDefaultChunkerTO();
-		multiChunkerTO = getDefaultMultiChunkerTO();
+		this(gzipEnabled, cipherSpecs, ZipMultiChunker.TYPE);
+	}
+
+	/**
+	 * Creates a factory using the given multichunker type (e.g. {@link ZipMultiChunker#TYPE}
+	 * or {@link IndexedMultiChunker#TYPE}) instead of the default multichunker.
+	 */
+	public DefaultRepoTOFactory(boolean gzipEnabled, List<CipherSpec> cipherSpecs, String multiChunkerType) {
+		this(gzipEnabled, cipherSpecs, multiChunkerType, FixedChunker.TYPE);
+	}
+
+	/**
+	 * Creates a factory using the given multichunker and chunker type (e.g. {@link FixedChunker#TYPE},
+	 * {@link TttdChunker#TYPE} or {@link FastCdcChunker#TYPE}) instead of the defaults.
+	 */
+	public DefaultRepoTOFactory(boolean gzipEnabled, List<CipherSpec> cipherSpecs, String multiChunkerType, String chunkerType) {
+		this(gzipEnabled, cipherSpecs, multiChunkerType, chunkerType, null);
+	}
+
+	/**
+	 * Creates a factory using the given multichunker and chunker type, and the given chunk/file
+	 * checksum algorithm (e.g. <tt>BLAKE2B-160</tt>). If the algorithm is <tt>null</tt>, no algorithm is
+	 * written to the config and the chunker default is used.
+	 */
+	public DefaultRepoTOFactory(boolean gzipEnabled, List<CipherSpec> cipherSpecs, String multiChunkerType, String chunkerType,
+			String chunkerDigest) {
+		chunkerTO = getChunkerTO(chunkerType, chunkerDigest);
+		multiChunkerTO = getMultiChunkerTO(multiChunkerType);
 		transformersTO = getTransformersTO(gzipEnabled, cipherSpecs);
 	}
 
@@ -92,19 +122,35 @@ public class DefaultRepoTOFactory implements RepoTOFactory {
 	}
 
 	protected ChunkerTO getDefaultChunkerTO() {
+		return getChunkerTO(FixedChunker.TYPE);
+	}
+
+	protected ChunkerTO getChunkerTO(String chunkerType) {
+		return getChunkerTO(chunkerType, null);
+	}
+
+	protected ChunkerTO getChunkerTO(String chunkerType, String chunkerDigest) {
 		ChunkerTO chunkerTO = new ChunkerTO();
 
-		chunkerTO.setType(FixedChunker.TYPE);
+		chunkerTO.setType(chunkerType);
 		chunkerTO.setSettings(new HashMap<String, String>());
-		chunkerTO.getSettings().put(Chunker.PROPERTY_SIZE, "16");
+		chunkerTO.getSettings().put(Chunker.PROPERTY_SIZE, Integer.toString(Config.DEFAULT_CHUNK_SIZE));
+
+		if (chunkerDigest != null) {
+			chunkerTO.getSettings().put(Chunker.PROPERTY_DIGEST, chunkerDigest);
+		}
 
 		return chunkerTO;
 	}
 
 	protected MultiChunkerTO getDefaultMultiChunkerTO() {
+		return getMultiChunkerTO(ZipMultiChunker.TYPE);
+	}
+
+	protected MultiChunkerTO getMultiChunkerTO(String multiChunkerType) {
 		MultiChunkerTO multichunkerTO = new MultiChunkerTO();
 
-		multichunkerTO.setType(ZipMultiChunker.TYPE);
+		multichunkerTO.setType(multiChunkerType);
 		multichunkerTO.setSettings(new HashMap<String, String>());
 		multichunkerTO.getSettings().put(MultiChunker.PROPERTY_SIZE, "4096");
 
@@ -65,6 +65,9 @@ public class RepoTO {
 	@ElementList(name = "transformers", required = false, entry = "transformer")
 	private ArrayList<TransformerTO> transformers;
 
+	@Element(name = "databaseformat", required = false)
+	private String databaseFormat;
+
 	public byte[] getRepoId() {
 		return repoId;
 	}
@@ -136,6 +139,19 @@ public class RepoTO {
 		this.transformers = (transformers != null) ? new ArrayList<TransformerTO>(transformers) : null;
 	}
 
+	/**
+	 * Returns the format in which database files are written to the repository
+	 * (<tt>xml</tt> or <tt>binary</tt>), or <tt>null</tt> if the default (<tt>xml</tt>)
+	 * is used. 
+	 */
+	public String getDatabaseFormat() {
+		return databaseFormat;
+	}
+
+	public void setDatabaseFormat(String databaseFormat) {
+		this.databaseFormat = databaseFormat;
+	}
+
 	/**
 	 * Configuration object for the deduplication chunker. As of
 	 * today, this is a key/value based configuration.
@@ -0,0 +1,247 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A Bloom filter over byte array keys, typically chunk checksums. The filter can
+ * answer whether a key is <b>definitely not</b> contained in a set, or whether it
+ * <b>might be</b> contained. It is used by the {@link org.syncany.database.dao.ChunkSqlDao ChunkSqlDao}
+ * to skip the exact chunk lookup for chunks that are definitely new.
+ *
+ * <p>Keys are expected to be uniformly distributed (such as cryptographic checksums),
+ * so the bit positions are derived directly from the key bytes using double hashing,
+ * i.e. <tt>h1 + i*h2</tt> for the i-th hash function.
+ *
+ * <p>Like the {@link ChunkIndex}, the filter can be persisted using {@link #save(File)}
+ * and {@link #load(File)}, including the number of added keys and a user-defined tag.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class BloomFilter {
+	private static final Logger logger = Logger.getLogger(BloomFilter.class.getSimpleName());
+
+	private static final int FILE_MAGIC = 0x53594246; // "SYBF"
+	private static final int FILE_VERSION = 1;
+	private static final int FILE_HEADER_SIZE = 40;
+
+	private static final int DEFAULT_BITS_PER_KEY = 10;
+	private static final int MIN_BITS = 1024;
+
+	private long[] bits;
+	private long numBits;
+	private int numHashFunctions;
+	private long count;
+	private long tag;
+
+	/**
+	 * Creates a new, empty Bloom filter sized for the given number of keys,
+	 * with a false positive rate of about 1% at that size.
+	 */
+	public BloomFilter(long expectedKeys) {
+		this(Math.max(MIN_BITS, expectedKeys * DEFAULT_BITS_PER_KEY), calculateHashFunctions(DEFAULT_BITS_PER_KEY), 0L, 0L);
+	}
+
+	private BloomFilter(long numBits, int numHashFunctions, long count, long tag) {
+		long numWords = (numBits + 63) / 64;
+
+		if (numWords > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Bloom filter too large: " + numBits + " bits");
+		}
+
+		this.bits = new long[(int) numWords];
+		this.numBits = numWords * 64;
+		this.numHashFunctions = numHashFunctions;
+		this.count = count;
+		this.tag = tag;
+	}
+
+	/**
+	 * Adds the given key to the filter.
+	 */
+	public void put(byte[] key) {
+		long hash1 = hash(key, 0);
+		long hash2 = hash(key, 8) | 1;
+
+		for (int i = 0; i < numHashFunctions; i++) {
+			long bitIndex = ((hash1 + i * hash2) & Long.MAX_VALUE) % numBits;
+			bits[(int) (bitIndex >>> 6)] |= 1L << bitIndex;
+		}
+
+		count++;
+	}
+
+	/**
+	 * Returns <tt>false</tt> if the key has definitely not been added
+	 * to the filter, and <tt>true</tt> if it might have been added.
+	 */
+	public boolean mightContain(byte[] key) {
+		long hash1 = hash(key, 0);
+		long hash2 = hash(key, 8) | 1;
+
+		for (int i = 0; i < numHashFunctions; i++) {
+			long bitIndex = ((hash1 + i * hash2) & Long.MAX_VALUE) % numBits;
+
+			if ((bits[(int) (bitIndex >>> 6)] & (1L << bitIndex)) == 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the number of keys added to the filter. Keys added more than once are
+	 * counted multiple times.
+	 */
+	public long size() {
+		return count;
+	}
+
+	/**
+	 * Returns the theoretical false positive rate for the current
+	 * number of keys, i.e. <tt>(1 - e^(-kn/m))^k</tt>.
+	 */
+	public double getExpectedFalsePositiveRate() {
+		return Math.pow(1 - Math.exp(-(double) numHashFunctions * count / numBits), numHashFunctions);
+	}
+
+	/**
+	 * Returns the false positive rate the filter was designed for, i.e. the
+	 * rate at <tt>expectedKeys</tt> keys.
+	 */
+	public double getDesignFalsePositiveRate() {
+		return Math.pow(1 - Math.exp(-(double) numHashFunctions / DEFAULT_BITS_PER_KEY), numHashFunctions);
+	}
+
+	public long getTag() {
+		return tag;
+	}
+
+	public void setTag(long tag) {
+		this.tag = tag;
+	}
+
+	/**
+	 * Writes the filter to the given file. The filter is first written to a temporary
+	 * file in the same directory, which is then moved to the target file.
+	 */
+	public void save(File file) throws IOException {
+		File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+
+		try (FileOutputStream fileOutputStream = new FileOutputStream(tempFile); FileChannel fileChannel = fileOutputStream.getChannel()) {
+			ByteBuffer buffer = ByteBuffer.allocate(FILE_HEADER_SIZE + bits.length * 8);
+
+			buffer.putInt(FILE_MAGIC);
+			buffer.putInt(FILE_VERSION);
+			buffer.putInt(numHashFunctions);
+			buffer.putInt(0); // Reserved
+			buffer.putLong(numBits);
+			buffer.putLong(count);
+			buffer.putLong(tag);
+			buffer.asLongBuffer().put(bits);
+			buffer.clear();
+
+			while (buffer.hasRemaining()) {
+				fileChannel.write(buffer);
+			}
+
+			fileChannel.force(false);
+		}
+
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Reads a filter previously written with {@link #save(File)}. If the file does not
+	 * exist or is not a valid filter file, <tt>null</tt> is returned.
+	 */
+	public static BloomFilter load(File file) throws IOException {
+		if (!file.exists()) {
+			return null;
+		}
+
+		try (FileInputStream fileInputStream = new FileInputStream(file); FileChannel fileChannel = fileInputStream.getChannel()) {
+			long fileSize = fileChannel.size();
+
+			if (fileSize < FILE_HEADER_SIZE || fileSize > Integer.MAX_VALUE || (fileSize - FILE_HEADER_SIZE) % 8 != 0) {
+				logger.log(Level.WARNING, "Invalid Bloom filter file size of " + file + ". Ignoring file.");
+				return null;
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocate((int) fileSize);
+
+			while (buffer.hasRemaining()) {
+				if (fileChannel.read(buffer) == -1) {
+					return null;
+				}
+			}
+
+			buffer.flip();
+
+			int magic = buffer.getInt();
+			int version = buffer.getInt();
+			int numHashFunctions = buffer.getInt();
+			buffer.getInt(); // Reserved
+			long numBits = buffer.getLong();
+			long count = buffer.getLong();
+			long tag = buffer.getLong();
+
+			if (magic != FILE_MAGIC || version != FILE_VERSION || numHashFunctions <= 0 || numBits != (fileSize - FILE_HEADER_SIZE) * 8) {
+				logger.log(Level.WARNING, "Invalid Bloom filter file header in " + file + ". Ignoring file.");
+				return null;
+			}
+
+			BloomFilter bloomFilter = new BloomFilter(numBits, numHashFunctions, count, tag);
+			buffer.asLongBuffer().get(bloomFilter.bits);
+
+			return bloomFilter;
+		}
+	}
+
+	private static int calculateHashFunctions(int bitsPerKey) {
+		return Math.max(1, (int) Math.round(bitsPerKey * Math.log(2)));
+	}
+
+	private static long hash(byte[] key, int offset) {
+		long hash = 0;
+
+		for (int i = offset; key.length > 0 && i < offset + 8; i++) {
+			hash = (hash << 8) | (key[i % key.length] & 0xff);
+		}
+
+		// Mix, in case the key is short or not uniformly distributed (MurmurHash3 finalizer)
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+
+		return hash;
+	}
+}
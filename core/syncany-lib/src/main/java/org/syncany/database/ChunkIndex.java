@@ -0,0 +1,414 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+
+/**
+ * The chunk index is a compact, off-heap hash table mapping raw chunk checksums
+ * to chunk sizes. It is used by the {@link org.syncany.database.dao.ChunkSqlDao ChunkSqlDao}
+ * as a replacement for a map of {@link ChunkEntry} objects, so that the memory used by the
+ * chunk lookup grows with the number of bytes per chunk, not with the number of objects.
+ *
+ * <p>The table uses open addressing with linear probing. Each slot consists of the raw
+ * checksum followed by the chunk size plus one (a value of zero marks an empty slot). Slots
+ * are stored in direct {@link ByteBuffer}s of at most {@link #MAX_SEGMENT_SLOTS} slots, i.e.
+ * outside of the Java heap. Entries cannot be removed; if chunks are removed from the
+ * database, the index must be rebuilt.
+ *
+ * <p>The index can be written to and read from a file using {@link #save(File)} and
+ * {@link #load(File)}. Together with the entry count, a user-defined tag is stored in the
+ * file header. It can be used by the caller to check whether the persisted index is still
+ * up to date.
+ * 
+ * <p>All checksums in the index must have the same length. As long as the index is empty,
+ * the length is adjusted to the first checksum added.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class ChunkIndex {
+	private static final Logger logger = Logger.getLogger(ChunkIndex.class.getSimpleName());
+
+	private static final int FILE_MAGIC = 0x53594349; // "SYCI"
+	private static final int FILE_VERSION = 1;
+	private static final int FILE_HEADER_SIZE = 32;
+
+	private static final int MIN_CAPACITY = 1024;
+	private static final int MAX_SEGMENT_SLOTS = 1 << 20;
+	private static final double MAX_LOAD_FACTOR = 0.7;
+
+	private int checksumLength;
+	private int slotSize;
+	private long capacity;
+	private long count;
+	private long tag;
+
+	private int segmentSlots;
+	private ByteBuffer[] segments;
+
+	/**
+	 * Creates a new, empty chunk index.
+	 *
+	 * @param checksumLength Length of the chunk checksums in bytes (e.g. 20 for SHA1)
+	 * @param expectedEntries Number of entries the index is sized for; the index grows if more entries are added
+	 */
+	public ChunkIndex(int checksumLength, long expectedEntries) {
+		this(checksumLength, calculateCapacity(expectedEntries), 0L, 0L);
+	}
+
+	/**
+	 * Creates a new, empty chunk index. The checksum length is determined
+	 * by the first checksum added to the index.
+	 *
+	 * @param expectedEntries Number of entries the index is sized for; the index grows if more entries are added
+	 */
+	public ChunkIndex(long expectedEntries) {
+		this(0, calculateCapacity(expectedEntries), 0L, 0L);
+	}
+
+	private ChunkIndex(int checksumLength, long capacity, long count, long tag) {
+		if (checksumLength < 0) {
+			throw new IllegalArgumentException("Checksum length must not be negative.");
+		}
+
+		this.checksumLength = checksumLength;
+		this.slotSize = checksumLength + 4;
+		this.capacity = capacity;
+		this.count = count;
+		this.tag = tag;
+
+		allocateSegments();
+	}
+
+	/**
+	 * Adds the chunk with the given checksum and size to the index. If the
+	 * chunk already exists, the method does nothing.
+	 *
+	 * @throws IllegalArgumentException If the checksum does not have the length of this index
+	 */
+	public void put(byte[] checksum, int size) {
+		if (count == 0 && checksum.length != checksumLength) {
+			checksumLength = checksum.length;
+			slotSize = checksumLength + 4;
+
+			allocateSegments();
+		}
+
+		checkChecksumLength(checksum);
+
+		if (size < 0 || size == Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Invalid chunk size: " + size);
+		}
+
+		if (count + 1 > capacity * MAX_LOAD_FACTOR) {
+			grow();
+		}
+
+		long slot = findSlot(checksum);
+
+		if (getSlotValue(slot) == 0) {
+			setSlot(slot, checksum, size + 1);
+			count++;
+		}
+	}
+
+	public void put(ChunkEntry chunkEntry) {
+		put(chunkEntry.getChecksum().getBytes(), chunkEntry.getSize());
+	}
+
+	/**
+	 * Returns the size of the chunk with the given checksum, or <tt>-1</tt>
+	 * if the index does not contain the chunk.
+	 */
+	public int getSize(byte[] checksum) {
+		if (checksum.length != checksumLength) {
+			return -1;
+		}
+
+		return getSlotValue(findSlot(checksum)) - 1;
+	}
+
+	/**
+	 * Returns a new {@link ChunkEntry} for the given checksum, or <tt>null</tt>
+	 * if the index does not contain the chunk.
+	 */
+	public ChunkEntry get(ChunkChecksum chunkChecksum) {
+		int size = getSize(chunkChecksum.getBytes());
+		return (size >= 0) ? new ChunkEntry(chunkChecksum, size) : null;
+	}
+
+	public boolean contains(byte[] checksum) {
+		return getSize(checksum) >= 0;
+	}
+
+	/**
+	 * Returns whether or not the given checksum can be added to this index,
+	 * i.e. whether it matches the checksum length of the existing entries.
+	 */
+	public boolean accepts(byte[] checksum) {
+		return count == 0 || checksum.length == checksumLength;
+	}
+
+	public long size() {
+		return count;
+	}
+
+	public int getChecksumLength() {
+		return checksumLength;
+	}
+
+	/**
+	 * Returns the number of bytes used by the hash table.
+	 */
+	public long getMemorySize() {
+		return capacity * slotSize;
+	}
+
+	public long getTag() {
+		return tag;
+	}
+
+	public void setTag(long tag) {
+		this.tag = tag;
+	}
+
+	/**
+	 * Writes the index to the given file. The index is first written to a temporary
+	 * file in the same directory, which is then moved to the target file.
+	 */
+	public void save(File file) throws IOException {
+		File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+
+		try (FileOutputStream fileOutputStream = new FileOutputStream(tempFile); FileChannel fileChannel = fileOutputStream.getChannel()) {
+			ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+
+			header.putInt(FILE_MAGIC);
+			header.putInt(FILE_VERSION);
+			header.putInt(checksumLength);
+			header.putInt(0); // Reserved
+			header.putLong(count);
+			header.putLong(tag);
+			header.flip();
+
+			writeFully(fileChannel, header);
+
+			for (ByteBuffer segment : segments) {
+				writeFully(fileChannel, segment.duplicate());
+			}
+
+			fileChannel.force(false);
+		}
+
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Reads an index previously written with {@link #save(File)}. If the file does not
+	 * exist or is not a valid index file, <tt>null</tt> is returned.
+	 */
+	public static ChunkIndex load(File file) throws IOException {
+		if (!file.exists()) {
+			return null;
+		}
+
+		try (FileInputStream fileInputStream = new FileInputStream(file); FileChannel fileChannel = fileInputStream.getChannel()) {
+			ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+
+			if (!readFully(fileChannel, header)) {
+				return null;
+			}
+
+			header.flip();
+
+			int magic = header.getInt();
+			int version = header.getInt();
+			int checksumLength = header.getInt();
+			header.getInt(); // Reserved
+			long count = header.getLong();
+			long tag = header.getLong();
+
+			if (magic != FILE_MAGIC || version != FILE_VERSION || checksumLength <= 0) {
+				logger.log(Level.WARNING, "Invalid chunk index file header in " + file + ". Ignoring file.");
+				return null;
+			}
+
+			long capacity = (fileChannel.size() - FILE_HEADER_SIZE) / (checksumLength + 4);
+			boolean validCapacity = capacity >= MIN_CAPACITY && Long.bitCount(capacity) == 1 && count <= capacity * MAX_LOAD_FACTOR;
+
+			if (!validCapacity || FILE_HEADER_SIZE + capacity * (checksumLength + 4) != fileChannel.size()) {
+				logger.log(Level.WARNING, "Invalid chunk index file size of " + file + ". Ignoring file.");
+				return null;
+			}
+
+			ChunkIndex chunkIndex = new ChunkIndex(checksumLength, capacity, count, tag);
+
+			for (ByteBuffer segment : chunkIndex.segments) {
+				if (!readFully(fileChannel, segment)) {
+					return null;
+				}
+
+				segment.clear();
+			}
+
+			return chunkIndex;
+		}
+	}
+
+	private static long calculateCapacity(long expectedEntries) {
+		long capacity = MIN_CAPACITY;
+
+		while (capacity * MAX_LOAD_FACTOR < expectedEntries) {
+			capacity <<= 1;
+		}
+
+		return capacity;
+	}
+
+	private void allocateSegments() {
+		segmentSlots = (int) Math.min(capacity, MAX_SEGMENT_SLOTS);
+		segments = new ByteBuffer[(int) (capacity / segmentSlots)];
+
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = ByteBuffer.allocateDirect(segmentSlots * slotSize);
+		}
+	}
+
+	private void grow() {
+		ByteBuffer[] oldSegments = segments;
+		int oldSegmentSlots = segmentSlots;
+
+		capacity <<= 1;
+		count = 0;
+
+		allocateSegments();
+
+		byte[] checksum = new byte[checksumLength];
+
+		for (ByteBuffer oldSegment : oldSegments) {
+			for (int i = 0; i < oldSegmentSlots; i++) {
+				int offset = i * slotSize;
+				int value = oldSegment.getInt(offset + checksumLength);
+
+				if (value != 0) {
+					for (int j = 0; j < checksumLength; j++) {
+						checksum[j] = oldSegment.get(offset + j);
+					}
+
+					setSlot(findSlot(checksum), checksum, value);
+					count++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the slot containing the given checksum, or the first empty
+	 * slot in its probe sequence if the checksum is not in the table.
+	 */
+	private long findSlot(byte[] checksum) {
+		long mask = capacity - 1;
+		long slot = hash(checksum) & mask;
+
+		while (true) {
+			ByteBuffer segment = segments[(int) (slot / segmentSlots)];
+			int offset = (int) (slot % segmentSlots) * slotSize;
+
+			if (segment.getInt(offset + checksumLength) == 0 || slotEquals(segment, offset, checksum)) {
+				return slot;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private boolean slotEquals(ByteBuffer segment, int offset, byte[] checksum) {
+		for (int i = 0; i < checksumLength; i++) {
+			if (segment.get(offset + i) != checksum[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private int getSlotValue(long slot) {
+		ByteBuffer segment = segments[(int) (slot / segmentSlots)];
+		return segment.getInt((int) (slot % segmentSlots) * slotSize + checksumLength);
+	}
+
+	private void setSlot(long slot, byte[] checksum, int value) {
+		ByteBuffer segment = segments[(int) (slot / segmentSlots)];
+		int offset = (int) (slot % segmentSlots) * slotSize;
+
+		for (int i = 0; i < checksumLength; i++) {
+			segment.put(offset + i, checksum[i]);
+		}
+
+		segment.putInt(offset + checksumLength, value);
+	}
+
+	private long hash(byte[] checksum) {
+		long hash = 0;
+
+		for (int i = 0; i < Math.min(8, checksum.length); i++) {
+			hash = (hash << 8) | (checksum[i] & 0xff);
+		}
+
+		// Checksums are usually uniformly distributed; mix anyway (MurmurHash3 finalizer)
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+
+		return hash;
+	}
+
+	private void checkChecksumLength(byte[] checksum) {
+		if (checksum.length != checksumLength) {
+			throw new IllegalArgumentException("Invalid checksum length " + checksum.length + ", expected " + checksumLength);
+		}
+	}
+
+	private static void writeFully(FileChannel fileChannel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			fileChannel.write(buffer);
+		}
+	}
+
+	private static boolean readFully(FileChannel fileChannel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (fileChannel.read(buffer) == -1) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
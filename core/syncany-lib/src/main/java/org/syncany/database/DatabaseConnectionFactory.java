@@ -52,6 +52,34 @@ public class DatabaseConnectionFactory {
 	public static final String DATABASE_CONNECTION_FILE_STRING = "jdbc:hsqldb:file:%DATABASEFILE%;user=sa;password=;create=true;write_delay=false;hsqldb.write_delay=false";
 	public static final String DATABASE_RESOURCE_PATTERN = "/org/syncany/database/sql/%s";
 	public static final String DATABASE_RESOURCE_CREATE_ALL = "script.create.all.sql";
+	public static final String DATABASE_RESOURCE_UPGRADE_FILEVERSION_CURRENT = "script.upgrade.fileversion_current.sql";
+	public static final String DATABASE_RESOURCE_REBUILD_FILEVERSION_CURRENT = "script.rebuild.fileversion_current.sql";
+	public static final String DATABASE_RESOURCE_UPGRADE_FILEVERSION_DEPTH = "script.upgrade.fileversion_depth.sql";
+	public static final String DATABASE_RESOURCE_UPGRADE_BINARY_CHECKSUMS = "script.upgrade.binary_checksums.sql";
+	public static final String DATABASE_RESOURCE_UPGRADE_BINARY_CHECKSUMS_FINISH = "script.upgrade.binary_checksums.finish.sql";
+	
+	/**
+	 * Version of the database schema created by {@link #DATABASE_RESOURCE_CREATE_ALL}. The version is 
+	 * stored in the <i>general_settings</i> table; databases without a version are version 1.
+	 * 
+	 * <ul>
+	 *  <li>Version 1: Checksums and multichunk IDs are stored as hex strings</li>
+	 *  <li>Version 2: Checksums and multichunk IDs are stored as raw bytes</li>
+	 * </ul>
+	 */
+	public static final int DATABASE_SCHEMA_VERSION = 2;
+	public static final String DATABASE_SCHEMA_VERSION_KEY = "schemaVersion";
+	public static final String DATABASE_UPGRADE_BINARY_CHECKSUMS_COPIED_KEY = "upgradeBinaryChecksumsCopied";
+
+	/**
+	 * Tables converted by the binary checksum upgrade (schema version 2), in an order in which 
+	 * they can be dropped, i.e. tables referencing other tables first.
+	 */
+	private static final String[] DATABASE_BINARY_CHECKSUM_TABLES = new String[] { "fileversion", "filecontent_chunk", "multichunk_chunk",
+			"filecontent", "multichunk", "chunk", "multichunk_muddy" };
+
+	private static final String[] DATABASE_BINARY_CHECKSUM_VIEWS = new String[] { "fileversion_full", "fileversion_master_last",
+			"fileversion_master_maxversion", "fileversion_master" };
 
 	public static final Map<String, String> DATABASE_STATEMENTS = new HashMap<String, String>();
 
@@ -123,7 +151,7 @@ public class DatabaseConnectionFactory {
 		return statementInputStream;
 	}
 
-	private static Connection createConnection(String connectionString, boolean readOnly) {
+	private static synchronized Connection createConnection(String connectionString, boolean readOnly) {
 		try {
 			Connection connection = DriverManager.getConnection(connectionString);
 			connection.setAutoCommit(false);
@@ -133,10 +161,14 @@ public class DatabaseConnectionFactory {
 			// with those changes, but still roll back the database if something goes wrong later.
 			connection.setTransactionIsolation(Connection.TRANSACTION_READ_UNCOMMITTED);
 
-			// Test and create tables
+			// Test and create tables; upgrades are only checked when the database is opened, because
+			// the checks read tables that other (open) connections might have locked
 			if (!tablesExist(connection)) {
 				createTables(connection);
 			}
+			else if (isOnlySession(connection)) {
+				upgradeTables(connection);
+			}
 
 			return connection;
 		}
@@ -164,6 +196,196 @@ public class DatabaseConnectionFactory {
 		}
 	}
 
+	private static boolean isOnlySession(Connection connection) throws SQLException {
+		return countRows(connection, "SELECT COUNT(*) FROM INFORMATION_SCHEMA.SYSTEM_SESSIONS") == 1;
+	}
+
+	private static boolean tableExists(Connection connection, String tableName) throws SQLException {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(
+				"SELECT COUNT(*) FROM INFORMATION_SCHEMA.SYSTEM_TABLES WHERE TABLE_TYPE='TABLE' AND TABLE_NAME=?")) {
+			
+			preparedStatement.setString(1, tableName);
+			
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				resultSet.next();
+				return resultSet.getInt(1) > 0;
+			}
+		}
+	}
+
+	private static boolean columnExists(Connection connection, String tableName, String columnName) throws SQLException {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(
+				"SELECT COUNT(*) FROM INFORMATION_SCHEMA.SYSTEM_COLUMNS WHERE TABLE_NAME=? AND COLUMN_NAME=?")) {
+			
+			preparedStatement.setString(1, tableName);
+			preparedStatement.setString(2, columnName);
+			
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				resultSet.next();
+				return resultSet.getInt(1) > 0;
+			}
+		}
+	}
+
+	private static int getSchemaVersion(Connection connection) throws SQLException {
+		String schemaVersion = getGeneralSetting(connection, DATABASE_SCHEMA_VERSION_KEY);
+		return (schemaVersion != null) ? Integer.parseInt(schemaVersion) : 1;
+	}
+
+	private static String getGeneralSetting(Connection connection, String key) throws SQLException {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(getStatement("application.select.all.readGeneralSettings.sql"))) {
+			preparedStatement.setString(1, key);
+
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				return (resultSet.next()) ? resultSet.getString("value") : null;
+			}
+		}
+	}
+
+	private static int countRows(Connection connection, String countQuery) throws SQLException {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(countQuery)) {
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				resultSet.next();
+				return resultSet.getInt(1);
+			}
+		}
+	}
+
+	private static void executeStatement(Connection connection, String statement) throws SQLException {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(statement)) {
+			preparedStatement.execute();
+		}
+	}
+
+	/**
+	 * Adds tables and columns to databases that were created before they existed, and
+	 * migrates older schema versions to the {@link #DATABASE_SCHEMA_VERSION current version}:
+	 * 
+	 * <ul>
+	 *  <li>The <i>fileversion_current</i> table, filled from the <i>fileversion</i> table</li>
+	 *  <li>The <i>depth</i> and <i>parent_path</i> columns of the <i>fileversion</i> table</li>
+	 *  <li>Version 2: Hex string checksums and multichunk IDs are converted to raw bytes</li>
+	 * </ul>
+	 */
+	private static void upgradeTables(Connection connection) throws SQLException, IOException {
+		// Once the binary checksum upgrade has copied the tables, the earlier upgrades are complete
+		if (getGeneralSetting(connection, DATABASE_UPGRADE_BINARY_CHECKSUMS_COPIED_KEY) == null) {
+			upgradeFileVersionCurrent(connection);
+			upgradeFileVersionDepth(connection);
+		}
+
+		if (getSchemaVersion(connection) < 2) {
+			upgradeToBinaryChecksums(connection);
+		}
+	}
+
+	/**
+	 * Adds the <i>fileversion_current</i> table and fills it from the <i>fileversion</i> table. Because HSQLDB
+	 * commits the DDL statements, an interrupted upgrade may leave an empty table or an old view behind. The
+	 * upgrade is therefore (re-)run if the table does not exist, if the <i>fileversion_master_last</i> view does
+	 * not use it, or if it is empty although there are file versions in MASTER database versions.
+	 */
+	private static void upgradeFileVersionCurrent(Connection connection) throws SQLException, IOException {
+		boolean upgradeComplete = tableExists(connection, "FILEVERSION_CURRENT")
+				&& countRows(connection, "SELECT COUNT(*) FROM INFORMATION_SCHEMA.VIEW_TABLE_USAGE "
+						+ "WHERE VIEW_NAME='FILEVERSION_MASTER_LAST' AND TABLE_NAME='FILEVERSION_CURRENT'") > 0
+				&& (countRows(connection, "SELECT COUNT(*) FROM fileversion_current") > 0
+						|| countRows(connection, "SELECT COUNT(*) FROM fileversion_master") == 0);
+
+		if (upgradeComplete) {
+			return;
+		}
+
+		logger.log(Level.INFO, "Current file version table is missing or incomplete. Creating table from "
+				+ DATABASE_RESOURCE_UPGRADE_FILEVERSION_CURRENT);
+
+		SqlRunner.runScript(connection, getStatementInputStream(DATABASE_RESOURCE_UPGRADE_FILEVERSION_CURRENT));
+		SqlRunner.runScript(connection, getStatementInputStream(DATABASE_RESOURCE_REBUILD_FILEVERSION_CURRENT));
+
+		connection.commit();
+	}
+
+	/**
+	 * Adds the <i>depth</i> and <i>parent_path</i> columns to the <i>fileversion</i> table and fills them. Each
+	 * column is added separately, because HSQLDB commits every DDL statement. The columns are (re-)filled if
+	 * they were just added, or if an earlier upgrade was interrupted before they were filled, i.e. if a file 
+	 * version below the root folder has no parent path.
+	 */
+	private static void upgradeFileVersionDepth(Connection connection) throws SQLException, IOException {
+		boolean columnsAdded = false;
+
+		if (!columnExists(connection, "FILEVERSION", "DEPTH")) {
+			logger.log(Level.INFO, "Database has no file version depth column. Adding column ...");
+
+			executeStatement(connection, "ALTER TABLE fileversion ADD COLUMN depth int DEFAULT 0 NOT NULL");
+			columnsAdded = true;
+		}
+
+		if (!columnExists(connection, "FILEVERSION", "PARENT_PATH")) {
+			logger.log(Level.INFO, "Database has no file version parent path column. Adding column ...");
+
+			executeStatement(connection, "ALTER TABLE fileversion ADD COLUMN parent_path varchar(1024) DEFAULT '' NOT NULL");
+			columnsAdded = true;
+		}
+
+		if (columnsAdded || countRows(connection, "SELECT COUNT(*) FROM fileversion WHERE parent_path='' AND locate('/', path) > 0") > 0) {
+			logger.log(Level.INFO, "File version depth columns are not filled. Filling columns from " + DATABASE_RESOURCE_UPGRADE_FILEVERSION_DEPTH);
+
+			SqlRunner.runScript(connection, getStatementInputStream(DATABASE_RESOURCE_UPGRADE_FILEVERSION_DEPTH));
+			connection.commit();
+		}
+	}
+
+	/**
+	 * Converts hex string checksums and multichunk IDs to raw bytes (schema version 2). Because HSQLDB
+	 * commits every DDL statement, the upgrade cannot run in a single transaction. Instead, it consists
+	 * of steps that can be resumed if the upgrade is interrupted:
+	 * 
+	 * <ol>
+	 *  <li>The affected tables are copied to <i>*_binary</i> tables. The copied data and a marker setting
+	 *      are committed together, so the copy is either complete or re-run (leftover tables are dropped).</li>
+	 *  <li>The views are dropped, and each old table is dropped and replaced by its copy. A table is only
+	 *      dropped if its copy exists, i.e. tables that have already been replaced are not touched again.</li>
+	 *  <li>Indexes and views are recreated, and the schema version is set as the very last step.</li>
+	 * </ol>
+	 */
+	private static void upgradeToBinaryChecksums(Connection connection) throws SQLException, IOException {
+		if (getGeneralSetting(connection, DATABASE_UPGRADE_BINARY_CHECKSUMS_COPIED_KEY) == null) {
+			logger.log(Level.INFO, "Database has schema version 1 (hex checksums). Copying tables from " + DATABASE_RESOURCE_UPGRADE_BINARY_CHECKSUMS);
+
+			SqlRunner.runScript(connection, getStatementInputStream(DATABASE_RESOURCE_UPGRADE_BINARY_CHECKSUMS));
+			connection.commit();
+		}
+		else {
+			logger.log(Level.INFO, "Database has schema version 1 (hex checksums), tables already copied. Resuming upgrade ...");
+		}
+
+		for (String viewName : DATABASE_BINARY_CHECKSUM_VIEWS) {
+			executeStatement(connection, "DROP VIEW " + viewName + " IF EXISTS");
+		}
+
+		for (String tableName : DATABASE_BINARY_CHECKSUM_TABLES) {
+			if (tableExists(connection, getBinaryChecksumTableName(tableName))) {
+				executeStatement(connection, "DROP TABLE " + tableName + " IF EXISTS");
+			}
+		}
+
+		for (String tableName : DATABASE_BINARY_CHECKSUM_TABLES) {
+			if (tableExists(connection, getBinaryChecksumTableName(tableName))) {
+				executeStatement(connection, "ALTER TABLE " + getBinaryChecksumTableName(tableName) + " RENAME TO " + tableName);
+			}
+		}
+
+		logger.log(Level.INFO, "Tables replaced. Recreating indexes and views from " + DATABASE_RESOURCE_UPGRADE_BINARY_CHECKSUMS_FINISH);
+
+		SqlRunner.runScript(connection, getStatementInputStream(DATABASE_RESOURCE_UPGRADE_BINARY_CHECKSUMS_FINISH));
+		connection.commit();
+	}
+
+	private static String getBinaryChecksumTableName(String tableName) {
+		return (tableName + "_binary").toUpperCase();
+	}
+
 	private static void createTables(Connection connection) throws SQLException, IOException {
 		logger.log(Level.INFO, "Database has no tables. Creating tables from " + DATABASE_RESOURCE_CREATE_ALL);
 
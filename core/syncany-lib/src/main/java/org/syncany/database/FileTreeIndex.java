@@ -0,0 +1,1011 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.PartialFileHistory.FileHistoryId;
+
+/**
+ * The file tree index is a compact, memory-mapped representation of the current file
+ * tree, i.e. of the last {@link FileVersion} of each file history in the local database. It is used
+ * by the {@link org.syncany.database.dao.FileVersionSqlDao FileVersionSqlDao} as a replacement for
+ * a map of all file versions, so that status and down operations can look up file versions without
+ * holding the entire tree on the Java heap.
+ *
+ * <p>The index file consists of a header, the serialized file versions (ordered by path), a table of
+ * record offsets ordered by path, and an open addressing hash table mapping file history identifiers
+ * to record offsets. Lookups by path use a binary search on the path table, lookups by file history
+ * identifier use the hash table. File versions are created from the mapped file on every lookup.
+ *
+ * <p>The index is immutable. Like the {@link ChunkIndex}, it carries a user-defined tag, which
+ * can be used by the caller to check whether it is still up to date. Small changes of the file tree
+ * are applied with {@link #update(long[], Map)}: The changed file versions are kept in a sorted
+ * in-memory overlay, which takes precedence over the index file, and they are persisted to a small
+ * delta file next to the index file (<tt>&lt;index file&gt;.delta</tt>). Once the overlay becomes
+ * too large, index file and overlay are merged into a new index file. 
+ *
+ * <p>Since the index file is mapped as a whole, it cannot be larger than 2 GB.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class FileTreeIndex {
+	private static final Logger logger = Logger.getLogger(FileTreeIndex.class.getSimpleName());
+
+	private static final int FILE_MAGIC = 0x53594654; // "SYFT"
+	private static final int FILE_VERSION = 1;
+	private static final int FILE_HEADER_SIZE = 64;
+	private static final int TAG_LENGTH = 3;
+
+	private static final int DELTA_FILE_MAGIC = 0x53594644; // "SYFD"
+	private static final int DELTA_FILE_VERSION = 1;
+	private static final int DELTA_FILE_HEADER_SIZE = 64;
+	private static final String DELTA_FILE_SUFFIX = ".delta";
+
+	private static final int MIN_MERGE_CHANGE_COUNT = 1024;
+	private static final int MERGE_CHANGE_RATIO = 32;
+
+	private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+	private static final int MIN_HASH_CAPACITY = 1024;
+	private static final int HASH_SLOT_SIZE = 8;
+	private static final double MAX_HASH_LOAD_FACTOR = 0.5;
+
+	private static final long NULL_LONG = Long.MIN_VALUE;
+	private static final int NULL_SHORT_LENGTH = 0xffff;
+	private static final int NULL_BYTE_LENGTH = 0xff;
+
+	private File file;
+	private ByteBuffer buffer;
+
+	private int count;
+	private long[] tag;
+	private long[] fileTag;
+	private int pathTableOffset;
+	private int hashTableOffset;
+	private int hashCapacity;
+
+	private Map<FileHistoryId, FileVersion> changedFileHistories;
+	private TreeMap<String, FileVersion> changedPaths;
+	private int removedCount;
+
+	private FileTreeIndex(File file, ByteBuffer buffer) throws IOException {
+		this.file = file;
+		this.buffer = buffer;
+
+		readHeader();
+		setChanges(tag, Collections.<FileHistoryId, FileVersion> emptyMap());
+	}
+
+	private FileTreeIndex(FileTreeIndex fileTreeIndex, long[] tag, Map<FileHistoryId, FileVersion> changedFileHistories) {
+		this.file = fileTreeIndex.file;
+		this.buffer = fileTreeIndex.buffer;
+
+		this.count = fileTreeIndex.count;
+		this.fileTag = fileTreeIndex.fileTag;
+		this.pathTableOffset = fileTreeIndex.pathTableOffset;
+		this.hashTableOffset = fileTreeIndex.hashTableOffset;
+		this.hashCapacity = fileTreeIndex.hashCapacity;
+
+		setChanges(tag, changedFileHistories);
+	}
+
+	/**
+	 * Writes a new index file from the given file versions and returns the
+	 * memory-mapped index. The file versions should be ordered by path; if they are not,
+	 * the path table is sorted after writing. The index is first written to a temporary
+	 * file in the same directory, which is then moved to the target file.
+	 *
+	 * @param file Target file of the index
+	 * @param tag User-defined tag of three values, e.g. a fingerprint of the database
+	 * @param fileVersions Current file versions, ideally ordered by path
+	 * @throws IOException If the file cannot be written, or the index would be larger than 2 GB
+	 */
+	public static FileTreeIndex create(File file, long[] tag, Iterator<FileVersion> fileVersions) throws IOException {
+		if (tag.length != TAG_LENGTH) {
+			throw new IllegalArgumentException("Invalid tag length " + tag.length + ", expected " + TAG_LENGTH);
+		}
+
+		File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(tempFile, "rw"); FileChannel fileChannel = randomAccessFile.getChannel()) {
+			randomAccessFile.setLength(0);
+			fileChannel.position(FILE_HEADER_SIZE);
+
+			IndexWriter indexWriter = new IndexWriter(fileChannel);
+
+			while (fileVersions.hasNext()) {
+				indexWriter.write(fileVersions.next());
+			}
+
+			indexWriter.finish(tag);
+		}
+
+		Files.deleteIfExists(getDeltaFile(file).toPath());
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		FileTreeIndex fileTreeIndex = load(file);
+
+		if (fileTreeIndex == null) {
+			throw new IOException("Cannot read file tree index " + file + " after writing it.");
+		}
+
+		return fileTreeIndex;
+	}
+
+	/**
+	 * Maps an index previously written with {@link #create(File, long[], Iterator)}, and applies
+	 * the changes of its delta file (if any). If the file does not exist or is not a valid index 
+	 * file, <tt>null</tt> is returned.
+	 */
+	public static FileTreeIndex load(File file) throws IOException {
+		if (!file.exists()) {
+			return null;
+		}
+
+		FileTreeIndex fileTreeIndex = null;
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"); FileChannel fileChannel = randomAccessFile.getChannel()) {
+			if (fileChannel.size() < FILE_HEADER_SIZE || fileChannel.size() > Integer.MAX_VALUE) {
+				logger.log(Level.WARNING, "Invalid file tree index size of " + file + ". Ignoring file.");
+				return null;
+			}
+
+			MappedByteBuffer mappedBuffer = fileChannel.map(MapMode.READ_ONLY, 0, fileChannel.size());
+			fileTreeIndex = new FileTreeIndex(file, mappedBuffer);
+		}
+		catch (InvalidIndexException e) {
+			logger.log(Level.WARNING, "Invalid file tree index file " + file + ": " + e.getMessage() + ". Ignoring file.");
+			return null;
+		}
+
+		return fileTreeIndex.loadDeltaFile();
+	}
+
+	/**
+	 * Returns the tag of the index in the given file (including its delta file) without mapping 
+	 * the file, or <tt>null</tt> if the file does not exist or is not a valid index file. This 
+	 * method can be used to cheaply check whether a loaded index still matches the file.
+	 */
+	public static long[] readTag(File file) throws IOException {
+		ByteBuffer header = readHeader(file, FILE_HEADER_SIZE);
+
+		if (header == null || header.getInt(0) != FILE_MAGIC || header.getInt(4) != FILE_VERSION) {
+			return null;
+		}
+
+		long[] fileTag = readTag(header, 16);
+		ByteBuffer deltaHeader = readHeader(getDeltaFile(file), DELTA_FILE_HEADER_SIZE);
+
+		if (isValidDeltaHeader(deltaHeader, fileTag)) {
+			return readTag(deltaHeader, 40);
+		}
+		else {
+			return fileTag;
+		}
+	}
+
+	/**
+	 * Deletes the given index file and its delta file (if any).
+	 * 
+	 * @return Returns <tt>true</tt> if both files have been deleted or did not exist
+	 */
+	public static boolean delete(File file) {
+		File deltaFile = getDeltaFile(file);
+
+		boolean deltaFileDeleted = !deltaFile.exists() || deltaFile.delete();
+		boolean fileDeleted = !file.exists() || file.delete();
+
+		return deltaFileDeleted && fileDeleted;
+	}
+
+	/**
+	 * Applies the given changes to the file tree and returns the updated index. This index is
+	 * not changed. Each entry of the map replaces the file version of a file history; if the value
+	 * is <tt>null</tt>, the file history is removed from the file tree.
+	 * 
+	 * <p>The changes are added to the in-memory overlay and written to the delta file, i.e. the 
+	 * costs depend on the size of the overlay, not on the size of the file tree. If the overlay 
+	 * exceeds 1/{@value #MERGE_CHANGE_RATIO} of the file tree (and at least {@value #MIN_MERGE_CHANGE_COUNT}
+	 * file histories), the index file is rewritten with all changes instead.
+	 *
+	 * @param tag New user-defined tag of three values, e.g. a fingerprint of the database
+	 * @param fileVersions Map of file history identifiers to their new file version (or <tt>null</tt>)
+	 * @throws IOException If the delta file or the new index file cannot be written
+	 */
+	public FileTreeIndex update(long[] tag, Map<FileHistoryId, FileVersion> fileVersions) throws IOException {
+		if (tag.length != TAG_LENGTH) {
+			throw new IllegalArgumentException("Invalid tag length " + tag.length + ", expected " + TAG_LENGTH);
+		}
+
+		Map<FileHistoryId, FileVersion> newChangedFileHistories = new HashMap<FileHistoryId, FileVersion>(changedFileHistories);
+		newChangedFileHistories.putAll(fileVersions);
+
+		FileTreeIndex updatedFileTreeIndex = new FileTreeIndex(this, tag, newChangedFileHistories);
+
+		if (newChangedFileHistories.size() > Math.max(MIN_MERGE_CHANGE_COUNT, count / MERGE_CHANGE_RATIO)) {
+			logger.log(Level.INFO, "File tree index overlay contains {0} changed file histories. Merging into new index file.",
+					newChangedFileHistories.size());
+
+			return create(file, tag, updatedFileTreeIndex.iterator());
+		}
+		else {
+			updatedFileTreeIndex.writeDeltaFile();
+			return updatedFileTreeIndex;
+		}
+	}
+
+	/**
+	 * Returns the file version with the given path, or <tt>null</tt> if the
+	 * index does not contain the path.
+	 */
+	public FileVersion get(String path) {
+		FileVersion changedFileVersion = changedPaths.get(path);
+
+		if (changedFileVersion != null) {
+			return changedFileVersion.clone();
+		}
+
+		for (int index = findFirstIndex(path); index < count; index++) {
+			int recordOffset = getRecordOffset(index);
+
+			if (!path.equals(readPath(recordOffset))) {
+				break;
+			}
+			else if (!isChanged(recordOffset)) {
+				return readFileVersion(recordOffset);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the file version of the given file history, or <tt>null</tt> if
+	 * the index does not contain the file history.
+	 */
+	public FileVersion get(FileHistoryId fileHistoryId) {
+		if (changedFileHistories.containsKey(fileHistoryId)) {
+			FileVersion changedFileVersion = changedFileHistories.get(fileHistoryId);
+			return (changedFileVersion != null) ? changedFileVersion.clone() : null;
+		}
+
+		int recordOffset = findRecordOffset(fileHistoryId);
+		return (recordOffset != 0) ? readFileVersion(recordOffset) : null;
+	}
+
+	/**
+	 * Returns an iterator over all file versions in the index, ordered by path.
+	 * File versions are read from the index while iterating.
+	 */
+	public Iterator<FileVersion> iterator() {
+		return new FileVersionIterator(0, null);
+	}
+
+	/**
+	 * Returns an iterator over all file versions within the given folder (recursively),
+	 * ordered by path. The file version of the folder itself is not included.
+	 */
+	public Iterator<FileVersion> iterator(String folderPath) {
+		String pathPrefix = folderPath + "/";
+		return new FileVersionIterator(findFirstIndex(pathPrefix), pathPrefix);
+	}
+
+	public int size() {
+		return count - removedCount + changedPaths.size();
+	}
+
+	/**
+	 * Returns the number of file histories in the in-memory overlay, i.e. the number
+	 * of file histories changed since the index file was written.
+	 */
+	public int getChangeCount() {
+		return changedFileHistories.size();
+	}
+
+	public long[] getTag() {
+		return Arrays.copyOf(tag, tag.length);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	private void readHeader() throws InvalidIndexException {
+		int magic = buffer.getInt(0);
+		int version = buffer.getInt(4);
+
+		if (magic != FILE_MAGIC || version != FILE_VERSION) {
+			throw new InvalidIndexException("Invalid header");
+		}
+
+		long headerCount = buffer.getLong(8);
+		long headerPathTableOffset = buffer.getLong(40);
+		long headerHashTableOffset = buffer.getLong(48);
+		long headerHashCapacity = buffer.getLong(56);
+
+		fileTag = readTag(buffer, 16);
+		tag = fileTag;
+
+		boolean validTables = headerCount >= 0 && headerPathTableOffset >= FILE_HEADER_SIZE
+				&& headerHashTableOffset == headerPathTableOffset + 4 * headerCount && headerHashCapacity >= MIN_HASH_CAPACITY
+				&& Long.bitCount(headerHashCapacity) == 1 && headerHashTableOffset + HASH_SLOT_SIZE * headerHashCapacity == buffer.capacity();
+
+		if (!validTables) {
+			throw new InvalidIndexException("Invalid table offsets");
+		}
+
+		count = (int) headerCount;
+		pathTableOffset = (int) headerPathTableOffset;
+		hashTableOffset = (int) headerHashTableOffset;
+		hashCapacity = (int) headerHashCapacity;
+	}
+
+	/**
+	 * Returns the index (in the path table) of the first path that is greater than
+	 * or equal to the given path, or {@link #count} if there is no such path.
+	 */
+	private int findFirstIndex(String path) {
+		int low = 0;
+		int high = count;
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+
+			if (readPath(getRecordOffset(middle)).compareTo(path) < 0) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Returns the offset of the record of the given file history in the index file (ignoring the
+	 * overlay), or 0 if the index file does not contain the file history.
+	 */
+	private int findRecordOffset(FileHistoryId fileHistoryId) {
+		byte[] fileHistoryIdBytes = fileHistoryId.getBytes();
+		int hash = hash(fileHistoryIdBytes);
+		int slot = hash & (hashCapacity - 1);
+
+		while (true) {
+			int slotOffset = hashTableOffset + slot * HASH_SLOT_SIZE;
+			int recordOffset = buffer.getInt(slotOffset + 4);
+
+			if (recordOffset == 0 || (buffer.getInt(slotOffset) == hash && Arrays.equals(fileHistoryIdBytes, readFileHistoryIdBytes(recordOffset)))) {
+				return recordOffset;
+			}
+
+			slot = (slot + 1) & (hashCapacity - 1);
+		}
+	}
+
+	/**
+	 * Returns whether the file history of the given record has been changed (or removed)
+	 * in the overlay, i.e. whether the record is outdated.
+	 */
+	private boolean isChanged(int recordOffset) {
+		return !changedFileHistories.isEmpty() && changedFileHistories.containsKey(new FileHistoryId(readFileHistoryIdBytes(recordOffset)));
+	}
+
+	private void setChanges(long[] tag, Map<FileHistoryId, FileVersion> changedFileHistories) {
+		this.tag = tag;
+		this.changedFileHistories = changedFileHistories;
+		this.changedPaths = new TreeMap<String, FileVersion>();
+		this.removedCount = 0;
+
+		for (Map.Entry<FileHistoryId, FileVersion> changedFileHistory : changedFileHistories.entrySet()) {
+			if (changedFileHistory.getValue() != null) {
+				changedPaths.put(changedFileHistory.getValue().getPath(), changedFileHistory.getValue());
+			}
+
+			if (findRecordOffset(changedFileHistory.getKey()) != 0) {
+				removedCount++;
+			}
+		}
+	}
+
+	/**
+	 * Reads the delta file and returns an index with its changes. If there is no delta file, or
+	 * if it does not belong to the index file (e.g. because writing a new index file was interrupted),
+	 * this index is returned. 
+	 */
+	private FileTreeIndex loadDeltaFile() {
+		File deltaFile = getDeltaFile(file);
+
+		if (!deltaFile.exists()) {
+			return this;
+		}
+
+		try {
+			ByteBuffer delta = ByteBuffer.wrap(Files.readAllBytes(deltaFile.toPath()));
+
+			if (!isValidDeltaHeader(delta, fileTag)) {
+				logger.log(Level.INFO, "File tree index delta file " + deltaFile + " does not match index file. Ignoring delta file.");
+				return this;
+			}
+
+			long[] deltaTag = readTag(delta, 40);
+			long changeCount = delta.getLong(8);
+
+			Map<FileHistoryId, FileVersion> deltaChangedFileHistories = new HashMap<FileHistoryId, FileVersion>();
+			delta.position(DELTA_FILE_HEADER_SIZE);
+
+			for (long i = 0; i < changeCount; i++) {
+				if (delta.get() != 0) {
+					FileVersion fileVersion = readFileVersion(delta);
+					deltaChangedFileHistories.put(fileVersion.getFileHistoryId(), fileVersion);
+				}
+				else {
+					deltaChangedFileHistories.put(new FileHistoryId(readBytes(delta, delta.get() & 0xff)), null);
+				}
+			}
+
+			return new FileTreeIndex(this, deltaTag, deltaChangedFileHistories);
+		}
+		catch (IOException | RuntimeException e) {
+			logger.log(Level.WARNING, "Cannot read file tree index delta file " + deltaFile + ". Ignoring delta file.", e);
+			return this;
+		}
+	}
+
+	/**
+	 * Writes all changes of the overlay to the delta file. Like the index file, the delta
+	 * file is written to a temporary file first, which is then moved to the target file. 
+	 */
+	private void writeDeltaFile() throws IOException {
+		File deltaFile = getDeltaFile(file);
+		File tempDeltaFile = new File(deltaFile.getParentFile(), deltaFile.getName() + ".tmp");
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(tempDeltaFile, "rw"); FileChannel fileChannel = randomAccessFile.getChannel()) {
+			randomAccessFile.setLength(0);
+
+			ByteBuffer header = ByteBuffer.allocate(DELTA_FILE_HEADER_SIZE);
+
+			header.putInt(DELTA_FILE_MAGIC);
+			header.putInt(DELTA_FILE_VERSION);
+			header.putLong(changedFileHistories.size());
+			header.putLong(fileTag[0]);
+			header.putLong(fileTag[1]);
+			header.putLong(fileTag[2]);
+			header.putLong(tag[0]);
+			header.putLong(tag[1]);
+			header.putLong(tag[2]);
+			header.flip();
+
+			writeFully(fileChannel, header);
+
+			for (Map.Entry<FileHistoryId, FileVersion> changedFileHistory : changedFileHistories.entrySet()) {
+				if (changedFileHistory.getValue() != null) {
+					byte[] record = IndexWriter.serialize(changedFileHistory.getValue());
+
+					writeFully(fileChannel, ByteBuffer.wrap(new byte[] { 1 }));
+					writeFully(fileChannel, ByteBuffer.wrap(record));
+				}
+				else {
+					byte[] fileHistoryId = changedFileHistory.getKey().getBytes();
+
+					writeFully(fileChannel, ByteBuffer.wrap(new byte[] { 0, (byte) fileHistoryId.length }));
+					writeFully(fileChannel, ByteBuffer.wrap(fileHistoryId));
+				}
+			}
+
+			fileChannel.force(false);
+		}
+
+		Files.move(tempDeltaFile.toPath(), deltaFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static File getDeltaFile(File file) {
+		return new File(file.getParentFile(), file.getName() + DELTA_FILE_SUFFIX);
+	}
+
+	private static boolean isValidDeltaHeader(ByteBuffer deltaHeader, long[] fileTag) {
+		return deltaHeader != null && deltaHeader.capacity() >= DELTA_FILE_HEADER_SIZE && deltaHeader.getInt(0) == DELTA_FILE_MAGIC
+				&& deltaHeader.getInt(4) == DELTA_FILE_VERSION && Arrays.equals(fileTag, readTag(deltaHeader, 16));
+	}
+
+	/**
+	 * Reads the first bytes of the given file, or returns <tt>null</tt> if the
+	 * file does not exist or is too short.
+	 */
+	private static ByteBuffer readHeader(File file, int headerSize) throws IOException {
+		if (!file.exists()) {
+			return null;
+		}
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+			if (randomAccessFile.length() < headerSize) {
+				return null;
+			}
+
+			byte[] header = new byte[headerSize];
+			randomAccessFile.readFully(header);
+
+			return ByteBuffer.wrap(header);
+		}
+	}
+
+	private static long[] readTag(ByteBuffer buffer, int offset) {
+		return new long[] { buffer.getLong(offset), buffer.getLong(offset + 8), buffer.getLong(offset + 16) };
+	}
+
+	private int getRecordOffset(int index) {
+		return buffer.getInt(pathTableOffset + index * 4);
+	}
+
+	private String readPath(int recordOffset) {
+		int pathLength = buffer.getShort(recordOffset) & 0xffff;
+		return new String(readBytes(recordOffset + 2, pathLength), StandardCharsets.UTF_8);
+	}
+
+	private byte[] readFileHistoryIdBytes(int recordOffset) {
+		int fileHistoryIdOffset = recordOffset + 2 + (buffer.getShort(recordOffset) & 0xffff);
+		return readBytes(fileHistoryIdOffset + 1, buffer.get(fileHistoryIdOffset) & 0xff);
+	}
+
+	private FileVersion readFileVersion(int recordOffset) {
+		ByteBuffer record = buffer.duplicate();
+		record.position(recordOffset);
+
+		return readFileVersion(record);
+	}
+
+	private static FileVersion readFileVersion(ByteBuffer record) {
+		FileVersion fileVersion = new FileVersion();
+
+		fileVersion.setPath(readString(record, record.getShort() & 0xffff));
+		fileVersion.setFileHistoryId(new FileHistoryId(readBytes(record, record.get() & 0xff)));
+		fileVersion.setVersion(record.getLong());
+		fileVersion.setType(FileType.values()[record.get()]);
+		fileVersion.setStatus(FileStatus.values()[record.get()]);
+
+		long size = record.getLong();
+		long lastModified = record.getLong();
+		long updated = record.getLong();
+		int checksumLength = record.get() & 0xff;
+		int linkTargetLength = -1;
+
+		fileVersion.setSize((size != NULL_LONG) ? size : null);
+		fileVersion.setLastModified((lastModified != NULL_LONG) ? new Date(lastModified) : null);
+		fileVersion.setUpdated((updated != NULL_LONG) ? new Date(updated) : null);
+
+		if (checksumLength > 0) {
+			fileVersion.setChecksum(new FileChecksum(readBytes(record, checksumLength)));
+		}
+
+		if ((linkTargetLength = record.getShort() & 0xffff) != NULL_SHORT_LENGTH) {
+			fileVersion.setLinkTarget(readString(record, linkTargetLength));
+		}
+
+		fileVersion.setPosixPermissions(readNullableShortString(record));
+		fileVersion.setDosAttributes(readNullableShortString(record));
+
+		return fileVersion;
+	}
+
+	private byte[] readBytes(int offset, int length) {
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset);
+
+		return readBytes(view, length);
+	}
+
+	private static byte[] readBytes(ByteBuffer record, int length) {
+		byte[] bytes = new byte[length];
+		record.get(bytes);
+
+		return bytes;
+	}
+
+	private static String readString(ByteBuffer record, int length) {
+		return new String(readBytes(record, length), StandardCharsets.UTF_8);
+	}
+
+	private static String readNullableShortString(ByteBuffer record) {
+		int length = record.get() & 0xff;
+		return (length != NULL_BYTE_LENGTH) ? readString(record, length) : null;
+	}
+
+	private static int hash(byte[] fileHistoryId) {
+		int hash = Arrays.hashCode(fileHistoryId);
+
+		// Spread bits (MurmurHash3 finalizer)
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+
+		return hash;
+	}
+
+	/**
+	 * Iterates over the records of the index file and the file versions of the overlay
+	 * at the same time. Both are ordered by path, so the iterator always returns the file
+	 * version with the lower path. Outdated records of the index file are skipped. 
+	 */
+	private class FileVersionIterator implements Iterator<FileVersion> {
+		private int index;
+		private String pathPrefix;
+		private Iterator<FileVersion> changedFileVersions;
+
+		private FileVersion nextFileVersion;
+		private FileVersion nextChangedFileVersion;
+
+		public FileVersionIterator(int startIndex, String pathPrefix) {
+			this.index = startIndex;
+			this.pathPrefix = pathPrefix;
+			this.changedFileVersions = ((pathPrefix != null) ? changedPaths.tailMap(pathPrefix) : changedPaths).values().iterator();
+
+			this.nextFileVersion = readNext();
+			this.nextChangedFileVersion = readNextChanged();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return nextFileVersion != null || nextChangedFileVersion != null;
+		}
+
+		@Override
+		public FileVersion next() {
+			if (nextFileVersion == null && nextChangedFileVersion == null) {
+				throw new NoSuchElementException();
+			}
+
+			FileVersion fileVersion = null;
+
+			if (nextChangedFileVersion == null || (nextFileVersion != null && nextFileVersion.getPath().compareTo(nextChangedFileVersion.getPath()) <= 0)) {
+				fileVersion = nextFileVersion;
+				nextFileVersion = readNext();
+			}
+			else {
+				fileVersion = nextChangedFileVersion.clone();
+				nextChangedFileVersion = readNextChanged();
+			}
+
+			return fileVersion;
+		}
+
+		private FileVersion readNext() {
+			while (index < count) {
+				int recordOffset = getRecordOffset(index++);
+
+				if (pathPrefix != null && !readPath(recordOffset).startsWith(pathPrefix)) {
+					index = count;
+					return null;
+				}
+
+				if (!isChanged(recordOffset)) {
+					return readFileVersion(recordOffset);
+				}
+			}
+
+			return null;
+		}
+
+		private FileVersion readNextChanged() {
+			if (changedFileVersions.hasNext()) {
+				FileVersion changedFileVersion = changedFileVersions.next();
+
+				if (pathPrefix == null || changedFileVersion.getPath().startsWith(pathPrefix)) {
+					return changedFileVersion;
+				}
+			}
+
+			changedFileVersions = Collections.<FileVersion> emptyIterator();
+			return null;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Index is read-only.");
+		}
+	}
+
+	/**
+	 * Writes the index file sequentially: Records are written while they are passed to
+	 * {@link #write(FileVersion)}, the path and hash tables are kept in direct (off-heap)
+	 * buffers and appended by {@link #finish(long[])}.
+	 */
+	private static class IndexWriter {
+		private FileChannel fileChannel;
+		private ByteBuffer writeBuffer;
+		private long position;
+
+		private ByteBuffer pathTable;
+		private ByteBuffer hashTable;
+		private int hashCapacity;
+
+		private int count;
+		private String lastPath;
+		private boolean sorted;
+
+		public IndexWriter(FileChannel fileChannel) {
+			this.fileChannel = fileChannel;
+			this.writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+			this.position = FILE_HEADER_SIZE;
+
+			this.pathTable = ByteBuffer.allocateDirect(4 * MIN_HASH_CAPACITY);
+			this.hashCapacity = MIN_HASH_CAPACITY;
+			this.hashTable = ByteBuffer.allocateDirect(HASH_SLOT_SIZE * hashCapacity);
+
+			this.count = 0;
+			this.lastPath = null;
+			this.sorted = true;
+		}
+
+		public void write(FileVersion fileVersion) throws IOException {
+			byte[] record = serialize(fileVersion);
+
+			if (position + record.length > Integer.MAX_VALUE) {
+				throw new IOException("File tree index too large; cannot be larger than 2 GB.");
+			}
+
+			if (writeBuffer.remaining() < record.length) {
+				flush();
+			}
+
+			if (record.length > writeBuffer.capacity()) {
+				writeFully(fileChannel, ByteBuffer.wrap(record));
+			}
+			else {
+				writeBuffer.put(record);
+			}
+
+			if (lastPath != null && lastPath.compareTo(fileVersion.getPath()) > 0) {
+				sorted = false;
+			}
+
+			addToPathTable((int) position);
+			addToHashTable(hash(fileVersion.getFileHistoryId().getBytes()), (int) position);
+
+			position += record.length;
+			lastPath = fileVersion.getPath();
+			count++;
+		}
+
+		public void finish(long[] tag) throws IOException {
+			flush();
+
+			long pathTableOffset = position;
+			long hashTableOffset = pathTableOffset + 4L * count;
+			long fileSize = hashTableOffset + (long) HASH_SLOT_SIZE * hashCapacity;
+
+			if (fileSize > Integer.MAX_VALUE) {
+				throw new IOException("File tree index too large; cannot be larger than 2 GB.");
+			}
+
+			pathTable.flip();
+			hashTable.clear();
+
+			if (!sorted) {
+				logger.log(Level.INFO, "File versions not ordered by path; sorting file tree index path table.");
+				sortPathTable();
+			}
+
+			writeFully(fileChannel, pathTable);
+			writeFully(fileChannel, hashTable);
+
+			ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+
+			header.putInt(FILE_MAGIC);
+			header.putInt(FILE_VERSION);
+			header.putLong(count);
+			header.putLong(tag[0]);
+			header.putLong(tag[1]);
+			header.putLong(tag[2]);
+			header.putLong(pathTableOffset);
+			header.putLong(hashTableOffset);
+			header.putLong(hashCapacity);
+			header.flip();
+
+			fileChannel.position(0);
+			writeFully(fileChannel, header);
+
+			fileChannel.force(false);
+		}
+
+		private static byte[] serialize(FileVersion fileVersion) throws IOException {
+			byte[] path = fileVersion.getPath().getBytes(StandardCharsets.UTF_8);
+			byte[] fileHistoryId = fileVersion.getFileHistoryId().getBytes();
+			byte[] checksum = (fileVersion.getChecksum() != null) ? fileVersion.getChecksum().getBytes() : new byte[0];
+			byte[] linkTarget = (fileVersion.getLinkTarget() != null) ? fileVersion.getLinkTarget().getBytes(StandardCharsets.UTF_8) : null;
+			byte[] posixPermissions = (fileVersion.getPosixPermissions() != null) ? fileVersion.getPosixPermissions().getBytes(StandardCharsets.UTF_8) : null;
+			byte[] dosAttributes = (fileVersion.getDosAttributes() != null) ? fileVersion.getDosAttributes().getBytes(StandardCharsets.UTF_8) : null;
+
+			boolean validLengths = path.length < NULL_SHORT_LENGTH && fileHistoryId.length < NULL_BYTE_LENGTH && checksum.length < NULL_BYTE_LENGTH
+					&& (linkTarget == null || linkTarget.length < NULL_SHORT_LENGTH)
+					&& (posixPermissions == null || posixPermissions.length < NULL_BYTE_LENGTH)
+					&& (dosAttributes == null || dosAttributes.length < NULL_BYTE_LENGTH);
+
+			if (!validLengths) {
+				throw new IOException("Cannot add file version to file tree index; field too long: " + fileVersion);
+			}
+
+			int recordLength = 2 + path.length + 1 + fileHistoryId.length + 8 + 1 + 1 + 8 + 8 + 8 + 1 + checksum.length + 2
+					+ ((linkTarget != null) ? linkTarget.length : 0) + 1 + ((posixPermissions != null) ? posixPermissions.length : 0) + 1
+					+ ((dosAttributes != null) ? dosAttributes.length : 0);
+
+			ByteBuffer record = ByteBuffer.allocate(recordLength);
+
+			record.putShort((short) path.length);
+			record.put(path);
+			record.put((byte) fileHistoryId.length);
+			record.put(fileHistoryId);
+			record.putLong(fileVersion.getVersion());
+			record.put((byte) fileVersion.getType().ordinal());
+			record.put((byte) fileVersion.getStatus().ordinal());
+			record.putLong((fileVersion.getSize() != null) ? fileVersion.getSize() : NULL_LONG);
+			record.putLong((fileVersion.getLastModified() != null) ? fileVersion.getLastModified().getTime() : NULL_LONG);
+			record.putLong((fileVersion.getUpdated() != null) ? fileVersion.getUpdated().getTime() : NULL_LONG);
+			record.put((byte) checksum.length);
+			record.put(checksum);
+
+			putNullableBytes(record, linkTarget, NULL_SHORT_LENGTH);
+			putNullableBytes(record, posixPermissions, NULL_BYTE_LENGTH);
+			putNullableBytes(record, dosAttributes, NULL_BYTE_LENGTH);
+
+			return record.array();
+		}
+
+		private static void putNullableBytes(ByteBuffer record, byte[] bytes, int nullLength) {
+			int length = (bytes != null) ? bytes.length : nullLength;
+
+			if (nullLength == NULL_SHORT_LENGTH) {
+				record.putShort((short) length);
+			}
+			else {
+				record.put((byte) length);
+			}
+
+			if (bytes != null) {
+				record.put(bytes);
+			}
+		}
+
+		private void flush() throws IOException {
+			writeBuffer.flip();
+			writeFully(fileChannel, writeBuffer);
+			writeBuffer.clear();
+		}
+
+		private void addToPathTable(int recordOffset) {
+			if (pathTable.remaining() < 4) {
+				ByteBuffer newPathTable = ByteBuffer.allocateDirect(pathTable.capacity() * 2);
+
+				pathTable.flip();
+				newPathTable.put(pathTable);
+
+				pathTable = newPathTable;
+			}
+
+			pathTable.putInt(recordOffset);
+		}
+
+		private void addToHashTable(int hash, int recordOffset) {
+			if (count + 1 > hashCapacity * MAX_HASH_LOAD_FACTOR) {
+				growHashTable();
+			}
+
+			putHashSlot(hashTable, hashCapacity, hash, recordOffset);
+		}
+
+		private void growHashTable() {
+			ByteBuffer oldHashTable = hashTable;
+			int oldHashCapacity = hashCapacity;
+
+			hashCapacity *= 2;
+			hashTable = ByteBuffer.allocateDirect(HASH_SLOT_SIZE * hashCapacity);
+
+			for (int slot = 0; slot < oldHashCapacity; slot++) {
+				int recordOffset = oldHashTable.getInt(slot * HASH_SLOT_SIZE + 4);
+
+				if (recordOffset != 0) {
+					putHashSlot(hashTable, hashCapacity, oldHashTable.getInt(slot * HASH_SLOT_SIZE), recordOffset);
+				}
+			}
+		}
+
+		private void putHashSlot(ByteBuffer table, int capacity, int hash, int recordOffset) {
+			int slot = hash & (capacity - 1);
+
+			while (table.getInt(slot * HASH_SLOT_SIZE + 4) != 0) {
+				slot = (slot + 1) & (capacity - 1);
+			}
+
+			table.putInt(slot * HASH_SLOT_SIZE, hash);
+			table.putInt(slot * HASH_SLOT_SIZE + 4, recordOffset);
+		}
+
+		/**
+		 * Sorts the path table by path. This is only necessary if the file versions were
+		 * not passed in path order, and reads the paths back from the (flushed) index file.
+		 */
+		private void sortPathTable() throws IOException {
+			final MappedByteBuffer records = fileChannel.map(MapMode.READ_ONLY, 0, position);
+			Integer[] recordOffsets = new Integer[count];
+
+			for (int i = 0; i < count; i++) {
+				recordOffsets[i] = pathTable.getInt(i * 4);
+			}
+
+			Arrays.sort(recordOffsets, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer recordOffset1, Integer recordOffset2) {
+					return readRecordPath(records, recordOffset1).compareTo(readRecordPath(records, recordOffset2));
+				}
+			});
+
+			pathTable.clear();
+
+			for (Integer recordOffset : recordOffsets) {
+				pathTable.putInt(recordOffset);
+			}
+
+			pathTable.flip();
+		}
+
+		private String readRecordPath(ByteBuffer records, int recordOffset) {
+			ByteBuffer record = records.duplicate();
+			record.position(recordOffset);
+
+			return readString(record, record.getShort() & 0xffff);
+		}
+	}
+
+	private static class InvalidIndexException extends IOException {
+		private static final long serialVersionUID = 2987614582386121733L;
+
+		public InvalidIndexException(String message) {
+			super(message);
+		}
+	}
+
+	private static void writeFully(FileChannel fileChannel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			fileChannel.write(buffer);
+		}
+	}
+}
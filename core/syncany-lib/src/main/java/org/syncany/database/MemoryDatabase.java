@@ -53,7 +53,7 @@ public class MemoryDatabase {
 
 	// Caches
 	private DatabaseVersion fullDatabaseVersionCache;
-	private Map<String, PartialFileHistory> filenameHistoryCache;
+	private Map<String, List<PartialFileHistory>> filenameHistoriesCache;
 	private Map<VectorClock, DatabaseVersion> databaseVersionIdCache;
 	private Map<FileChecksum, List<PartialFileHistory>> contentChecksumFileHistoriesCache;
 
@@ -62,7 +62,7 @@ public class MemoryDatabase {
 
 		// Caches
 		fullDatabaseVersionCache = new DatabaseVersion();
-		filenameHistoryCache = new HashMap<String, PartialFileHistory>();
+		filenameHistoriesCache = new HashMap<String, List<PartialFileHistory>>();
 		databaseVersionIdCache = new HashMap<VectorClock, DatabaseVersion>();
 		contentChecksumFileHistoriesCache = new HashMap<FileChecksum, List<PartialFileHistory>>();
 	}
@@ -102,8 +102,13 @@ public class MemoryDatabase {
 		return fullDatabaseVersionCache.getMultiChunkId(chunk);
 	}
 
+	/**
+	 * Returns the file history whose last version has the given path. If several (non-deleted)
+	 * file histories share the path, the one that was updated last is returned.
+	 */
 	public PartialFileHistory getFileHistory(String relativeFilePath) {
-		return filenameHistoryCache.get(relativeFilePath);
+		List<PartialFileHistory> fileHistories = filenameHistoriesCache.get(relativeFilePath);
+		return (fileHistories != null) ? fileHistories.get(fileHistories.size() - 1) : null;
 	}
 
 	public List<PartialFileHistory> getFileHistories(FileChecksum fileContentChecksum) {
@@ -122,17 +127,27 @@ public class MemoryDatabase {
 		return fullDatabaseVersionCache.getMultiChunks();
 	}
 
+	/**
+	 * Adds a database version to the database and updates the caches. The caches are
+	 * updated incrementally, i.e. only the file histories of the new database version are
+	 * visited, so that adding N database versions is linear in the size of the versions.
+	 */
 	public void addDatabaseVersion(DatabaseVersion databaseVersion) {
 		databaseVersions.add(databaseVersion);
 
 		// Populate caches
 		// WARNING: Do NOT reorder, order important!!
 		updateDatabaseVersionIdCache(databaseVersion);
+		removeFromFileHistoryCaches(databaseVersion);
 		updateFullDatabaseVersionCache(databaseVersion);
-		updateFilenameHistoryCache();
-		updateContentChecksumCache();
+		addToFileHistoryCaches(databaseVersion);
 	}
 
+	/**
+	 * Removes a database version from the database and rebuilds the caches. Unlike
+	 * adding, removing a database version cannot be done incrementally, since the full
+	 * database version cache merges the contents of all database versions.
+	 */
 	public void removeDatabaseVersion(DatabaseVersion databaseVersion) {
 		databaseVersions.remove(databaseVersion);
 
@@ -140,43 +155,109 @@ public class MemoryDatabase {
 		// WARNING: Do NOT reorder, order important!!
 		updateFullDatabaseVersionCache();
 		updateDatabaseVersionIdCache();
-		updateFilenameHistoryCache();
-		updateContentChecksumCache();
+		updateFileHistoryCaches();
+	}
+
+	/**
+	 * Removes the cache entries of all full file histories touched by the given (new) database
+	 * version. Must be called before the file versions are merged into the full database version
+	 * cache, since the entries are keyed by the (old) last version of each file history.
+	 */
+	private void removeFromFileHistoryCaches(DatabaseVersion newDatabaseVersion) {
+		for (PartialFileHistory sourceFileHistory : newDatabaseVersion.getFileHistories()) {
+			PartialFileHistory fullFileHistory = fullDatabaseVersionCache.getFileHistory(sourceFileHistory.getFileHistoryId());
+
+			if (fullFileHistory != null) {
+				removeFromFilenameHistoryCache(fullFileHistory);
+				removeFromContentChecksumCache(fullFileHistory);
+			}
+		}
 	}
 
-	// TODO [medium] Very inefficient. Always updates whole cache
-	private void updateContentChecksumCache() {
+	/**
+	 * Adds cache entries for all full file histories touched by the given (new) database
+	 * version. Must be called after the file versions have been merged into the full database
+	 * version cache.
+	 */
+	private void addToFileHistoryCaches(DatabaseVersion newDatabaseVersion) {
+		for (PartialFileHistory sourceFileHistory : newDatabaseVersion.getFileHistories()) {
+			PartialFileHistory fullFileHistory = fullDatabaseVersionCache.getFileHistory(sourceFileHistory.getFileHistoryId());
+
+			addToFilenameHistoryCache(fullFileHistory);
+			addToContentChecksumCache(fullFileHistory);
+		}
+	}
+
+	private void updateFileHistoryCaches() {
+		filenameHistoriesCache.clear();
 		contentChecksumFileHistoriesCache.clear();
 
 		for (PartialFileHistory fullFileHistory : fullDatabaseVersionCache.getFileHistories()) {
-			FileChecksum lastVersionChecksum = fullFileHistory.getLastVersion().getChecksum();
+			addToFilenameHistoryCache(fullFileHistory);
+			addToContentChecksumCache(fullFileHistory);
+		}
+	}
 
-			if (lastVersionChecksum != null) {
-				List<PartialFileHistory> historiesWithVersionsWithSameChecksum = contentChecksumFileHistoriesCache.get(lastVersionChecksum);
+	private void addToContentChecksumCache(PartialFileHistory fullFileHistory) {
+		FileChecksum lastVersionChecksum = fullFileHistory.getLastVersion().getChecksum();
 
-				// Create if it does not exist
-				if (historiesWithVersionsWithSameChecksum == null) {
-					historiesWithVersionsWithSameChecksum = new ArrayList<PartialFileHistory>();
-				}
+		if (lastVersionChecksum != null) {
+			List<PartialFileHistory> historiesWithVersionsWithSameChecksum = contentChecksumFileHistoriesCache.get(lastVersionChecksum);
 
-				// Add to cache
-				historiesWithVersionsWithSameChecksum.add(fullFileHistory);
+			// Create if it does not exist
+			if (historiesWithVersionsWithSameChecksum == null) {
+				historiesWithVersionsWithSameChecksum = new ArrayList<PartialFileHistory>();
 				contentChecksumFileHistoriesCache.put(lastVersionChecksum, historiesWithVersionsWithSameChecksum);
 			}
+
+			// Add to cache
+			historiesWithVersionsWithSameChecksum.add(fullFileHistory);
 		}
+	}
+
+	private void removeFromContentChecksumCache(PartialFileHistory fullFileHistory) {
+		FileChecksum lastVersionChecksum = fullFileHistory.getLastVersion().getChecksum();
+
+		if (lastVersionChecksum != null) {
+			List<PartialFileHistory> historiesWithVersionsWithSameChecksum = contentChecksumFileHistoriesCache.get(lastVersionChecksum);
 
+			if (historiesWithVersionsWithSameChecksum != null) {
+				historiesWithVersionsWithSameChecksum.remove(fullFileHistory);
+
+				if (historiesWithVersionsWithSameChecksum.isEmpty()) {
+					contentChecksumFileHistoriesCache.remove(lastVersionChecksum);
+				}
+			}
+		}
+	}
+
+	private void addToFilenameHistoryCache(PartialFileHistory fullFileHistory) {
+		FileVersion lastVersion = fullFileHistory.getLastVersion();
+
+		if (lastVersion.getStatus() != FileStatus.DELETED) {
+			List<PartialFileHistory> historiesWithSameFilename = filenameHistoriesCache.get(lastVersion.getPath());
+
+			// Create if it does not exist
+			if (historiesWithSameFilename == null) {
+				historiesWithSameFilename = new ArrayList<PartialFileHistory>();
+				filenameHistoriesCache.put(lastVersion.getPath(), historiesWithSameFilename);
+			}
+
+			// Add to cache
+			historiesWithSameFilename.add(fullFileHistory);
+		}
 	}
 
-	private void updateFilenameHistoryCache() {
-		// TODO [medium] Performance: This throws away the unchanged entries. It should only update new database version
-		filenameHistoryCache.clear();
+	private void removeFromFilenameHistoryCache(PartialFileHistory fullFileHistory) {
+		String fileName = fullFileHistory.getLastVersion().getPath();
+		List<PartialFileHistory> historiesWithSameFilename = filenameHistoriesCache.get(fileName);
 
-		for (PartialFileHistory cacheFileHistory : fullDatabaseVersionCache.getFileHistories()) {
-			FileVersion lastVersion = cacheFileHistory.getLastVersion();
-			String fileName = lastVersion.getPath();
+		// Other file histories with the same path stay in the cache
+		if (historiesWithSameFilename != null) {
+			historiesWithSameFilename.remove(fullFileHistory);
 
-			if (lastVersion.getStatus() != FileStatus.DELETED) {
-				filenameHistoryCache.put(fileName, cacheFileHistory);
+			if (historiesWithSameFilename.isEmpty()) {
+				filenameHistoriesCache.remove(fileName);
 			}
 		}
 	}
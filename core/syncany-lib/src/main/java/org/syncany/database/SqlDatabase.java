@@ -19,6 +19,7 @@ package org.syncany.database;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
@@ -34,6 +35,7 @@ import org.syncany.database.FileContent.FileChecksum;
 import org.syncany.database.FileVersion.FileType;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.database.dao.AbstractSqlDao;
 import org.syncany.database.dao.ApplicationSqlDao;
 import org.syncany.database.dao.ChunkSqlDao;
 import org.syncany.database.dao.DatabaseVersionSqlDao;
@@ -79,9 +81,9 @@ public class SqlDatabase {
 	public SqlDatabase(Config config, boolean readOnly) {
 		this.connection = config.createDatabaseConnection(readOnly);
 		this.applicationDao = new ApplicationSqlDao(connection);
-		this.chunkDao = new ChunkSqlDao(connection);
+		this.chunkDao = new ChunkSqlDao(connection, config.getChunkIndexFile(), config.getChunkFilterFile());
 		this.fileContentDao = new FileContentSqlDao(connection);
-		this.fileVersionDao = new FileVersionSqlDao(connection);
+		this.fileVersionDao = new FileVersionSqlDao(connection, config.getFileTreeIndexFile());
 		this.fileHistoryDao = new FileHistorySqlDao(connection, fileVersionDao);
 		this.multiChunkDao = new MultiChunkSqlDao(connection);
 		this.databaseVersionDao = new DatabaseVersionSqlDao(connection, chunkDao, fileContentDao, fileVersionDao, fileHistoryDao, multiChunkDao);
@@ -96,6 +98,8 @@ public class SqlDatabase {
 
 	public void commit() throws SQLException {
 		connection.commit();
+		chunkDao.saveCache();
+		fileVersionDao.saveFileTreeIndex();
 	}
 
 	@Override
@@ -111,8 +115,21 @@ public class SqlDatabase {
 		}
 	}
 
+	/**
+	 * Sets the number of rows the data access objects write with a single
+	 * <tt>executeBatch()</tt> call when persisting database versions.
+	 */
+	public void setBatchSize(int batchSize) {
+		for (AbstractSqlDao dao : Arrays.<AbstractSqlDao> asList(applicationDao, chunkDao, fileContentDao, fileVersionDao, fileHistoryDao, multiChunkDao,
+				databaseVersionDao)) {
+			dao.setBatchSize(batchSize);
+		}
+	}
+
 	public void rollback() throws SQLException {
 		connection.rollback();
+		chunkDao.clearCache();
+		fileVersionDao.clearFileTreeIndexChanges();
 	}
 
 	public void removeUnreferencedDatabaseEntities() {
@@ -165,6 +182,8 @@ public class SqlDatabase {
 
 	public void deleteAll() {
 		applicationDao.deleteAll();
+		chunkDao.deleteCache();
+		fileVersionDao.deleteFileTreeIndex();
 	}
 
 	public void shutdown() {
@@ -237,7 +256,11 @@ public class SqlDatabase {
 		return fileHistoryDao.getFileHistoriesWithLastVersion();
 	}
 
-	public Collection<PartialFileHistory> getFileHistoriesWithLastVersionByChecksumSizeAndModifiedDate(String checksum, long size, Date modifiedDate) {
+	public List<PartialFileHistory> getFileHistoriesWithLastVersion(List<FileHistoryId> fileHistoryIds) {
+		return fileHistoryDao.getFileHistoriesWithLastVersion(fileHistoryIds);
+	}
+
+	public Collection<PartialFileHistory> getFileHistoriesWithLastVersionByChecksumSizeAndModifiedDate(FileChecksum checksum, long size, Date modifiedDate) {
 		return fileHistoryDao.getFileHistoriesByChecksumSizeAndModifiedDate(checksum, size, modifiedDate);
 	}
 
@@ -259,6 +282,14 @@ public class SqlDatabase {
 		return fileVersionDao.getCurrentFileTree();
 	}
 
+	public FileTreeIndex getCurrentFileTreeIndex() {
+		return fileVersionDao.getCurrentFileTreeIndex();
+	}
+
+	public FileTreeIndex getUpToDateFileTreeIndex() {
+		return fileVersionDao.getUpToDateFileTreeIndex();
+	}
+
 	public void removeSmallerOrEqualFileVersions(Map<FileHistoryId, FileVersion> purgeFileVersions) throws SQLException {
 		fileVersionDao.removeFileVersions(purgeFileVersions);
 	}
@@ -331,6 +362,23 @@ public class SqlDatabase {
 		return multiChunkDao.getMultiChunks();
 	}
 
+	public Map<Long, List<MultiChunkEntry>> getSparseMultiChunks(double maxUsageRatio) {
+		return multiChunkDao.getSparseMultiChunks(maxUsageRatio);
+	}
+
+	/**
+	 * Replaces the given old multichunks by the new multichunks in the database version with 
+	 * the given ID. The chunks of the old multichunks must be contained in the new multichunks.
+	 * 
+	 * <p><b>Note:</b> This method executes, but <b>does not commit</b> the queries.
+	 */
+	public void replaceMultiChunks(long databaseVersionId, Collection<MultiChunkEntry> oldMultiChunks, Collection<MultiChunkEntry> newMultiChunks)
+			throws SQLException {
+		
+		multiChunkDao.writeMultiChunks(connection, databaseVersionId, newMultiChunks);
+		multiChunkDao.removeMultiChunks(oldMultiChunks);
+	}
+
 	public void writeMuddyMultiChunks(Map<DatabaseVersionHeader, Collection<MultiChunkEntry>> muddyMultiChunks) throws SQLException {
 		multiChunkDao.writeMuddyMultiChunks(muddyMultiChunks);
 	}
@@ -353,6 +401,18 @@ public class SqlDatabase {
 		return chunkDao.getChunk(chunkChecksum);
 	}
 
+	public long getChunkFilterNegatives() {
+		return chunkDao.getChunkFilterNegatives();
+	}
+
+	public long getChunkFilterFalsePositives() {
+		return chunkDao.getChunkFilterFalsePositives();
+	}
+
+	public double getChunkFilterFalsePositiveRate() {
+		return chunkDao.getChunkFilterFalsePositiveRate();
+	}
+
 	private void removeUnreferencedChunks() {
 		chunkDao.removeUnreferencedChunks();
 	}
@@ -21,6 +21,9 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.syncany.database.DatabaseConnectionFactory;
 import org.syncany.util.SqlRunner;
@@ -29,13 +32,25 @@ import org.syncany.util.SqlRunner;
  * Small helper class to implement common tasks for the inheriting 
  * SQL data access objects.
  * 
+ * <p>For the write paths, the class offers a per-connection cache of prepared statements
+ * (see {@link #getCachedStatement(Connection, String) getCachedStatement()}) and a 
+ * {@link StatementBatch} to insert many rows with a few <tt>executeBatch()</tt> calls.
+ * Cached statements are reused across calls and must not be closed by the caller.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public abstract class AbstractSqlDao {
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
 	protected Connection connection;
+	protected int batchSize;
+
+	private Map<Connection, Map<String, PreparedStatement>> cachedStatements;
 	
 	public AbstractSqlDao(Connection connection) {
 		this.connection = connection;
+		this.batchSize = DEFAULT_BATCH_SIZE;
+		this.cachedStatements = new HashMap<Connection, Map<String, PreparedStatement>>();
 	}
 	
 	public Connection getConnection() {
@@ -50,7 +65,93 @@ public abstract class AbstractSqlDao {
 		return overrideConnection.prepareStatement(DatabaseConnectionFactory.getStatement(resourceId));
 	}
 	
+	/**
+	 * Returns a prepared statement for the given resource identifier from the statement 
+	 * cache of the given connection, or prepares and caches it if it has not been used before.
+	 * The returned statement must <b>not</b> be closed by the caller. 
+	 */
+	protected synchronized PreparedStatement getCachedStatement(Connection overrideConnection, String resourceId) throws SQLException {
+		Map<String, PreparedStatement> connectionStatements = cachedStatements.get(overrideConnection);
+
+		if (connectionStatements == null || overrideConnection.isClosed()) {
+			connectionStatements = new HashMap<String, PreparedStatement>();
+			cachedStatements.put(overrideConnection, connectionStatements);
+		}
+
+		PreparedStatement preparedStatement = connectionStatements.get(resourceId);
+
+		if (preparedStatement == null || preparedStatement.isClosed()) {
+			preparedStatement = getStatement(overrideConnection, resourceId);
+			connectionStatements.put(resourceId, preparedStatement);
+		}
+
+		return preparedStatement;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+	}
+
 	protected void runScript(String resourceId) throws SQLException, IOException {
 		SqlRunner.runScript(connection, DatabaseConnectionFactory.getStatementInputStream(resourceId));
 	}
+
+	/**
+	 * Collects the rows of a cached prepared statement and executes them in batches of
+	 * at most {@link AbstractSqlDao#getBatchSize() batchSize} rows. The update counts of all rows
+	 * are returned by {@link #execute()}, in the order in which the rows were added.
+	 *
+	 * <p>Rows are added by setting the parameters on {@link #getStatement()} and calling {@link #add()}.
+	 */
+	protected class StatementBatch {
+		private PreparedStatement preparedStatement;
+		private int pendingRows;
+		private int[] updateCounts;
+		private int updateCountsSize;
+
+		public StatementBatch(Connection connection, String resourceId) throws SQLException {
+			this.preparedStatement = getCachedStatement(connection, resourceId);
+			this.preparedStatement.clearBatch(); // Left over if a previous batch failed
+			this.pendingRows = 0;
+			this.updateCounts = new int[16];
+			this.updateCountsSize = 0;
+		}
+
+		public PreparedStatement getStatement() {
+			return preparedStatement;
+		}
+
+		public void add() throws SQLException {
+			preparedStatement.addBatch();
+
+			if (++pendingRows >= batchSize) {
+				executePending();
+			}
+		}
+
+		public int[] execute() throws SQLException {
+			if (pendingRows > 0) {
+				executePending();
+			}
+
+			return Arrays.copyOf(updateCounts, updateCountsSize);
+		}
+
+		private void executePending() throws SQLException {
+			int[] batchUpdateCounts = preparedStatement.executeBatch();
+
+			if (updateCountsSize + batchUpdateCounts.length > updateCounts.length) {
+				updateCounts = Arrays.copyOf(updateCounts, Math.max(updateCounts.length * 2, updateCountsSize + batchUpdateCounts.length));
+			}
+
+			System.arraycopy(batchUpdateCounts, 0, updateCounts, updateCountsSize, batchUpdateCounts.length);
+
+			updateCountsSize += batchUpdateCounts.length;
+			pendingRows = 0;
+		}
+	}
 }
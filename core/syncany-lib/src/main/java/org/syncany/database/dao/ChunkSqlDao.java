@@ -17,6 +17,8 @@
  */
 package org.syncany.database.dao;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -24,9 +26,13 @@ import java.sql.SQLException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import org.syncany.database.BloomFilter;
 import org.syncany.database.ChunkEntry;
 import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.ChunkIndex;
 import org.syncany.database.VectorClock;
 
 /**
@@ -34,18 +40,52 @@ import org.syncany.database.VectorClock;
  * on {@link ChunkEntry}s. It translates the relational data in the "chunk" table to
  * Java objects.
  * 
+ * <p>Lookups via {@link #getChunk(ChunkChecksum) getChunk()} are answered from an
+ * off-heap {@link ChunkIndex}, which is preceded by a {@link BloomFilter}: Chunks that are 
+ * definitely unknown are rejected by the filter, without loading or probing the index. 
+ * If index and filter files are given, both are persisted on {@link #saveCache()} and
+ * re-used by the next DAO instance, as long as they still match the chunk table. 
+ * Otherwise, they are rebuilt from the database.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class ChunkSqlDao extends AbstractSqlDao {
-	private Map<ChunkChecksum, ChunkEntry> chunkCache;
+	private static final Logger logger = Logger.getLogger(ChunkSqlDao.class.getSimpleName());
+	private static final long MIN_CHUNK_FILTER_KEYS = 100000;
+
+	private File chunkIndexFile;
+	private ChunkIndex chunkCache;
+	private boolean chunkCacheDirty;
+
+	private File chunkFilterFile;
+	private BloomFilter chunkFilter;
+	private boolean chunkFilterDirty;
+
+	private long chunkFilterNegatives;
+	private long chunkFilterFalsePositives;
 
 	public ChunkSqlDao(Connection connection) {
+		this(connection, null, null);
+	}
+
+	public ChunkSqlDao(Connection connection, File chunkIndexFile, File chunkFilterFile) {
 		super(connection);
+		
+		this.chunkIndexFile = chunkIndexFile;
 		this.chunkCache = null;
+		this.chunkCacheDirty = false;
+
+		this.chunkFilterFile = chunkFilterFile;
+		this.chunkFilter = null;
+		this.chunkFilterDirty = false;
+
+		this.chunkFilterNegatives = 0;
+		this.chunkFilterFalsePositives = 0;
 	}
 
 	/**
 	 * Writes a list of {@link ChunkEntry}s to the database using <tt>INSERT</tt>s and the given connection.
+	 * If the chunk cache and/or chunk filter are loaded, the new chunks are added to them.
 	 * 
 	 * <p><b>Note:</b> This method executes, but <b>does not commit</b> the query.
 	 * 
@@ -56,18 +96,21 @@ public class ChunkSqlDao extends AbstractSqlDao {
 	 */
 	public void writeChunks(Connection connection, long databaseVersionId, Collection<ChunkEntry> chunks) throws SQLException {
 		if (chunks.size() > 0) {
-			PreparedStatement preparedStatement = getStatement(connection, "chunk.insert.all.writeChunks.sql");
+			loadPersistedCaches();
+			
+			StatementBatch statementBatch = new StatementBatch(connection, "chunk.insert.all.writeChunks.sql");
+			PreparedStatement preparedStatement = statementBatch.getStatement();
 
 			for (ChunkEntry chunk : chunks) {
-				preparedStatement.setString(1, chunk.getChecksum().toString());
+				preparedStatement.setBytes(1, chunk.getChecksum().getBytes());
 				preparedStatement.setLong(2, databaseVersionId);
 				preparedStatement.setInt(3, chunk.getSize());
 
-				preparedStatement.addBatch();
+				statementBatch.add();
 			}
 
-			preparedStatement.executeBatch();
-			preparedStatement.close();
+			int[] updateCounts = statementBatch.execute();
+			addToCache(chunks, updateCounts);
 		}
 	}	
 
@@ -88,40 +131,142 @@ public class ChunkSqlDao extends AbstractSqlDao {
 		catch (SQLException e) {
 			throw new RuntimeException(e);
 		}
+		finally {
+			// Entries cannot be removed from index and filter; rebuild on next access
+			deleteCache();
+		}
 	}
 	
 	/**
 	 * Queries the database of a chunk with the given checksum. 
 	 * 
-	 * <p>Note: When first called, this method loads the <b>chunk cache</b> and keeps
-	 * this cache until it is cleared explicitly with {@link #clearCache()}. 
+	 * <p>Note: When first called, this method loads the <b>chunk filter</b>, and if the 
+	 * chunk might exist, the <b>chunk cache</b>. Both are kept until cleared explicitly 
+	 * with {@link #clearCache()}. Chunks written via {@link #writeChunks(Connection, long, Collection) writeChunks()} 
+	 * are added to filter and cache, so it is not necessary to clear the cache after writing.
 	 * 
 	 * <p>Also note that this method will return <tt>null</tt> if the chunk has been
-	 * added after the cache has been filled. 
+	 * added by another DAO instance after the cache has been filled. 
 	 * 
 	 * @param chunkChecksum Chunk checksum of the chunk to be selected
 	 * @return Returns the chunk entry, or <tt>null</tt> if the chunk does not exist.
 	 */	
 	public synchronized ChunkEntry getChunk(ChunkChecksum chunkChecksum) {
-		if (chunkCache == null) {
-			loadChunkCache();
+		loadChunkFilter();
+
+		if (!chunkFilter.mightContain(chunkChecksum.getBytes())) {
+			chunkFilterNegatives++;
+			return null;
+		}
+
+		loadChunkCache();
+		ChunkEntry chunkEntry = chunkCache.get(chunkChecksum);
+
+		if (chunkEntry == null) {
+			chunkFilterFalsePositives++;
 		}
 
-		return chunkCache.get(chunkChecksum);
+		return chunkEntry;
 	}
 	
 	/**
-	 * Clears the chunk cache loaded by {@link #getChunk(ChunkChecksum) getChunk()}
-	 * and resets the cache. If {@link #getChunk(ChunkChecksum) getChunk()} is called
+	 * Clears the chunk cache and chunk filter loaded by {@link #getChunk(ChunkChecksum) getChunk()}
+	 * and resets them. If {@link #getChunk(ChunkChecksum) getChunk()} is called
 	 * after the cache is cleared, it is re-populated.
 	 */
 	public synchronized void clearCache() {
-		if (chunkCache != null) {
-			chunkCache.clear();
-			chunkCache = null;
+		chunkCache = null;
+		chunkCacheDirty = false;
+
+		chunkFilter = null;
+		chunkFilterDirty = false;
+	}
+
+	/**
+	 * Clears the chunk cache and filter, and deletes the persisted chunk index and filter (if any). 
+	 * This must be called if chunks are removed from the database. 
+	 */
+	public synchronized void deleteCache() {
+		clearCache();
+
+		deleteFile(chunkIndexFile);
+		deleteFile(chunkFilterFile);
+	}
+
+	/**
+	 * Writes the chunk cache and chunk filter to the index and filter files, if they have been 
+	 * changed since they were loaded and still match the (committed) chunk table. This method should 
+	 * be called after the chunks have been committed. 
+	 */
+	public synchronized void saveCache() {
+		boolean saveChunkCache = chunkIndexFile != null && chunkCache != null && chunkCacheDirty;
+		boolean saveChunkFilter = chunkFilterFile != null && chunkFilter != null && chunkFilterDirty;
+
+		if (!saveChunkCache && !saveChunkFilter) {
+			return;
+		}
+
+		try {
+			long[] fingerprint = getChunkIndexFingerprint();
+
+			if ((saveChunkCache && chunkCache.size() != fingerprint[0]) || (saveChunkFilter && chunkFilter.size() != fingerprint[0])) {
+				logger.log(Level.INFO, "Chunk cache/filter does not match database ({0} chunks). Not persisting chunk index and filter.", fingerprint[0]);
+
+				deleteCache();
+				return;
+			}
+
+			if (saveChunkCache) {
+				chunkCache.setTag(fingerprint[1]);
+				chunkCache.save(chunkIndexFile);
+
+				chunkCacheDirty = false;
+			}
+
+			if (saveChunkFilter) {
+				if (isChunkFilterOverfilled(chunkFilter)) {
+					deleteFile(chunkFilterFile); // Rebuild with more capacity on next load
+				}
+				else {
+					chunkFilter.setTag(fingerprint[1]);
+					chunkFilter.save(chunkFilterFile);
+				}
+
+				chunkFilterDirty = false;
+			}
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "Cannot write chunk index/filter file. Ignoring.", e);
+			deleteCache();
 		}
 	}
 
+	/**
+	 * Returns the number of chunk lookups that were answered by the chunk filter alone,
+	 * i.e. the number of definitely unknown chunks.
+	 */
+	public synchronized long getChunkFilterNegatives() {
+		return chunkFilterNegatives;
+	}
+
+	/**
+	 * Returns the number of chunk lookups that passed the chunk filter, but for which
+	 * the chunk did not exist.
+	 */
+	public synchronized long getChunkFilterFalsePositives() {
+		return chunkFilterFalsePositives;
+	}
+
+	/**
+	 * Returns the observed false positive rate of the chunk filter, i.e. the share of
+	 * lookups for unknown chunks that were not rejected by the filter. If no unknown chunks
+	 * have been looked up, <tt>0</tt> is returned.
+	 */
+	public synchronized double getChunkFilterFalsePositiveRate() {
+		long unknownChunkLookups = chunkFilterNegatives + chunkFilterFalsePositives;
+		return (unknownChunkLookups > 0) ? (double) chunkFilterFalsePositives / unknownChunkLookups : 0;
+	}
+
 	/**
 	 * Queries the SQL database for all chunks that <b>originally appeared</b> in the
 	 * database version identified by the given vector clock.
@@ -158,20 +303,183 @@ public class ChunkSqlDao extends AbstractSqlDao {
 	}
 
 	protected ChunkEntry createChunkEntryFromRow(ResultSet resultSet) throws SQLException {
-		ChunkChecksum chunkChecksum = ChunkChecksum.parseChunkChecksum(resultSet.getString("checksum"));
+		ChunkChecksum chunkChecksum = new ChunkChecksum(resultSet.getBytes("checksum"));
 		return new ChunkEntry(chunkChecksum, resultSet.getInt("size"));
 	}
 	
 	protected void loadChunkCache() {
+		if (chunkCache != null) {
+			return;
+		}
+
+		long[] fingerprint = getChunkIndexFingerprint();
+
+		if (chunkIndexFile != null) {
+			chunkCache = loadChunkIndexFile(fingerprint);
+			
+			if (chunkCache != null) {
+				chunkCacheDirty = false;
+				return;
+			}
+		}
+
+		loadChunkCacheAndFilterFromDatabase(fingerprint);
+	}
+
+	protected void loadChunkFilter() {
+		if (chunkFilter != null) {
+			return;
+		}
+
+		long[] fingerprint = getChunkIndexFingerprint();
+
+		if (chunkFilterFile != null) {
+			chunkFilter = loadChunkFilterFile(fingerprint);
+			
+			if (chunkFilter != null) {
+				chunkFilterDirty = false;
+				return;
+			}
+		}
+
+		loadChunkCacheAndFilterFromDatabase(fingerprint);
+	}
+
+	private void loadChunkCacheAndFilterFromDatabase(long[] fingerprint) {
 		try (PreparedStatement preparedStatement = getStatement("chunk.select.all.loadChunkCache.sql")) {
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
-				chunkCache = createChunkEntries(resultSet);
+				ChunkIndex chunkIndex = new ChunkIndex(fingerprint[0]);
+				BloomFilter bloomFilter = new BloomFilter(Math.max(MIN_CHUNK_FILTER_KEYS, 2 * fingerprint[0]));
+				
+				while (resultSet.next()) {
+					byte[] checksum = resultSet.getBytes("checksum");
+
+					chunkIndex.put(checksum, resultSet.getInt("size"));
+					bloomFilter.put(checksum);
+				}
+
+				chunkCache = chunkIndex;
+				chunkCacheDirty = true;
+
+				chunkFilter = bloomFilter;
+				chunkFilterDirty = true;
+			}
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Loads the chunk cache and filter if they have been persisted. This must happen before new 
+	 * chunks are inserted, because the files are only valid for the committed chunk table.
+	 */
+	private synchronized void loadPersistedCaches() {
+		if (chunkFilter == null && chunkFilterFile != null && chunkFilterFile.exists()) {
+			loadChunkFilter();
+		}
+
+		if (chunkCache == null && chunkIndexFile != null && chunkIndexFile.exists()) {
+			loadChunkCache();
+		}
+	}
+
+	private ChunkIndex loadChunkIndexFile(long[] fingerprint) {
+		try {
+			ChunkIndex chunkIndex = ChunkIndex.load(chunkIndexFile);
+
+			if (chunkIndex == null) {
+				return null;
+			}
+			else if (chunkIndex.size() != fingerprint[0] || chunkIndex.getTag() != fingerprint[1]) {
+				logger.log(Level.INFO, "Chunk index file " + chunkIndexFile + " is outdated. Rebuilding chunk index.");
+				return null;
+			}
+			else {
+				logger.log(Level.INFO, "Loaded chunk index with {0} chunks from " + chunkIndexFile, chunkIndex.size());
+				return chunkIndex;
+			}
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "Cannot read chunk index file " + chunkIndexFile + ". Rebuilding chunk index.", e);
+			return null;
+		}
+	}
+
+	private BloomFilter loadChunkFilterFile(long[] fingerprint) {
+		try {
+			BloomFilter bloomFilter = BloomFilter.load(chunkFilterFile);
+
+			if (bloomFilter == null) {
+				return null;
+			}
+			else if (bloomFilter.size() != fingerprint[0] || bloomFilter.getTag() != fingerprint[1] || isChunkFilterOverfilled(bloomFilter)) {
+				logger.log(Level.INFO, "Chunk filter file " + chunkFilterFile + " is outdated. Rebuilding chunk filter.");
+				return null;
+			}
+			else {
+				logger.log(Level.INFO, "Loaded chunk filter with {0} chunks from " + chunkFilterFile + ", expected false positive rate is {1}", 
+						new Object[] { bloomFilter.size(), bloomFilter.getExpectedFalsePositiveRate() });
+				
+				return bloomFilter;
+			}
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "Cannot read chunk filter file " + chunkFilterFile + ". Rebuilding chunk filter.", e);
+			return null;
+		}
+	}
+
+	private boolean isChunkFilterOverfilled(BloomFilter bloomFilter) {
+		return bloomFilter.getExpectedFalsePositiveRate() > 2 * bloomFilter.getDesignFalsePositiveRate();
+	}
+
+	/**
+	 * Returns the number of chunks and the maximum database version ID of all chunks,
+	 * as an array of two values. 
+	 */
+	private long[] getChunkIndexFingerprint() {
+		try (PreparedStatement preparedStatement = getStatement("chunk.select.all.getChunkIndexFingerprint.sql")) {
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				resultSet.next();
+				return new long[] { resultSet.getLong("chunkcount"), resultSet.getLong("maxdatabaseversionid") };
 			}
 		}
 		catch (SQLException e) {
 			throw new RuntimeException(e);
 		}
 	}
+
+	private synchronized void addToCache(Collection<ChunkEntry> chunks, int[] updateCounts) {
+		int i = 0;
+		
+		for (ChunkEntry chunk : chunks) {
+			byte[] checksum = chunk.getChecksum().getBytes();
+			boolean chunkInserted = updateCounts[i++] != 0; // Zero if chunk existed (merge)
+			
+			if (chunkCache != null) {
+				if (chunkCache.accepts(checksum)) {
+					chunkCache.put(checksum, chunk.getSize());
+					chunkCacheDirty = true;
+				}
+				else {
+					clearCache();
+					return;
+				}
+			}
+
+			if (chunkFilter != null && chunkInserted) {
+				chunkFilter.put(checksum);
+				chunkFilterDirty = true;
+			}
+		}
+	}
+
+	private void deleteFile(File file) {
+		if (file != null && file.exists() && !file.delete()) {
+			logger.log(Level.WARNING, "Cannot delete file " + file);
+		}
+	}
 	
 	/**
 	 * no commit
@@ -0,0 +1,359 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import static org.syncany.database.dao.DatabaseBinaryWriter.BINARY_FORMAT_VERSION;
+import static org.syncany.database.dao.DatabaseBinaryWriter.DATABASE_VERSION_MARKER;
+import static org.syncany.database.dao.DatabaseBinaryWriter.END_MARKER;
+import static org.syncany.database.dao.DatabaseBinaryWriter.FILE_VERSION_FLAG_CHECKSUM;
+import static org.syncany.database.dao.DatabaseBinaryWriter.FILE_VERSION_FLAG_DOS_ATTRIBUTES;
+import static org.syncany.database.dao.DatabaseBinaryWriter.FILE_VERSION_FLAG_LINK_TARGET;
+import static org.syncany.database.dao.DatabaseBinaryWriter.FILE_VERSION_FLAG_POSIX_PERMISSIONS;
+import static org.syncany.database.dao.DatabaseBinaryWriter.FILE_VERSION_FLAG_UPDATED;
+import static org.syncany.database.dao.DatabaseBinaryWriter.MAGIC;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.input.CountingInputStream;
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.FileContent;
+import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.MemoryDatabase;
+import org.syncany.database.MultiChunkEntry;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.database.VectorClock;
+import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
+
+/**
+ * This class is used by the {@link DatabaseXmlSerializer} to read a binary
+ * database file written by the {@link DatabaseBinaryWriter}. Like the 
+ * {@link DatabaseXmlParseHandler}, it can read either an entire file, or only
+ * the database version headers, and only adds database versions in the given
+ * vector clock range to the memory database.
+ * 
+ * <p>The content of database versions that are not loaded (out of range, or
+ * {@link DatabaseReadType#HEADER_ONLY}) is skipped without being parsed. If a
+ * {@link DatabaseHeaderIndex} is available, reading starts at the first database version
+ * in range and stops after the last one.
+ * 
+ * @see DatabaseBinaryWriter
+ * @see DatabaseXmlSerializer
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class DatabaseBinaryReader {
+	private static final Logger logger = Logger.getLogger(DatabaseBinaryReader.class.getSimpleName());
+	
+	public static final int MAX_FIELD_LENGTH = 64 * 1024 * 1024; // Strings, byte arrays and entry counts
+	private static final int FILE_HEADER_LENGTH = 8; // Magic and format version
+
+	private MemoryDatabase database;
+	private VectorClock versionFrom;
+	private VectorClock versionTo;
+	private DatabaseReadType readType;
+
+	public DatabaseBinaryReader(MemoryDatabase database, VectorClock fromVersion, VectorClock toVersion, DatabaseReadType readType) {
+		this.database = database;
+		this.versionFrom = fromVersion;
+		this.versionTo = toVersion;
+		this.readType = readType;
+	}
+
+	public void read(DataInputStream in) throws IOException {
+		read(in, null, null);
+	}
+
+	/**
+	 * Reads the database file like {@link #read(DataInputStream)}, and additionally adds the 
+	 * header and offset of each database version to the given (empty) header index. 
+	 */
+	public void read(CountingInputStream in, DatabaseHeaderIndex headerIndex) throws IOException {
+		read(new DataInputStream(in), in, headerIndex);
+	}
+
+	/**
+	 * Reads only the database versions in the load range, using the offsets of the given header 
+	 * index: The content before the first database version in range is skipped without being parsed, 
+	 * and reading stops after the last database version in range.
+	 */
+	public void readIndexed(DataInputStream in, DatabaseHeaderIndex headerIndex) throws IOException {
+		readFileHeader(in);
+
+		int firstIndex = headerIndex.getFirstIndexInRange(versionFrom, versionTo);
+		int lastIndex = headerIndex.getLastIndexInRange(versionFrom, versionTo);
+
+		if (firstIndex < 0) {
+			return;
+		}
+
+		skipFully(in, headerIndex.getOffset(firstIndex) - FILE_HEADER_LENGTH);
+
+		for (int i = firstIndex; i <= lastIndex; i++) {
+			if (in.readByte() != DATABASE_VERSION_MARKER) {
+				throw new IOException("Invalid binary database file: Header index does not match file.");
+			}
+
+			readDatabaseVersion(in);
+		}
+	}
+
+	private void read(DataInputStream in, CountingInputStream countingIn, DatabaseHeaderIndex headerIndex) throws IOException {
+		readFileHeader(in);
+		
+		byte marker;
+		long offset = FILE_HEADER_LENGTH;
+		
+		while ((marker = in.readByte()) != END_MARKER) {
+			if (marker != DATABASE_VERSION_MARKER) {
+				throw new IOException("Invalid binary database file: Unexpected marker " + marker);
+			}
+			
+			DatabaseVersion databaseVersion = readDatabaseVersion(in);
+			
+			if (headerIndex != null) {
+				headerIndex.add(databaseVersion.getHeader(), offset);
+				offset = countingIn.getByteCount();
+			}
+		}
+	}
+
+	private void readFileHeader(DataInputStream in) throws IOException {
+		int magic = in.readInt();
+		int formatVersion = in.readInt();
+		
+		if (magic != MAGIC) {
+			throw new IOException("Invalid binary database file: Magic number mismatch.");
+		}
+		else if (formatVersion != BINARY_FORMAT_VERSION) {
+			throw new IOException("Unsupported binary database format version " + formatVersion);
+		}
+	}
+
+	private DatabaseVersion readDatabaseVersion(DataInputStream in) throws IOException {
+		DatabaseVersion databaseVersion = readDatabaseVersionHeader(in);
+		int contentLength = readContentLength(in);
+		
+		boolean vectorClockInLoadRange = DatabaseXmlParseHandler.vectorClockInRange(databaseVersion.getVectorClock(), versionFrom, versionTo);
+		
+		if (vectorClockInLoadRange && readType == DatabaseReadType.FULL) {
+			readChunks(in, databaseVersion);
+			readMultiChunks(in, databaseVersion);
+			readFileContents(in, databaseVersion);
+			readFileHistories(in, databaseVersion);
+		}
+		else {
+			skipFully(in, contentLength);
+		}
+		
+		if (vectorClockInLoadRange) {
+			database.addDatabaseVersion(databaseVersion);
+			logger.log(Level.INFO, "   + Added database version " + databaseVersion.getHeader());
+		}
+		
+		return databaseVersion;
+	}
+
+	private DatabaseVersion readDatabaseVersionHeader(DataInputStream in) throws IOException {
+		DatabaseVersion databaseVersion = new DatabaseVersion();
+		
+		databaseVersion.setTimestamp(new Date(in.readLong()));
+		databaseVersion.setClient(readString(in));
+		
+		VectorClock vectorClock = new VectorClock();
+		int vectorClockSize = readLength(in);
+		
+		for (int i = 0; i < vectorClockSize; i++) {
+			String clientName = readString(in);
+			long clientValue = in.readLong();
+			
+			vectorClock.setClock(clientName, clientValue);
+		}
+		
+		databaseVersion.setVectorClock(vectorClock);		
+		return databaseVersion;
+	}
+
+	private void readChunks(DataInputStream in, DatabaseVersion databaseVersion) throws IOException {
+		int chunkCount = readLength(in);
+		
+		for (int i = 0; i < chunkCount; i++) {
+			ChunkChecksum chunkChecksum = new ChunkChecksum(readBytes(in));
+			int chunkSize = in.readInt();
+			
+			databaseVersion.addChunk(new ChunkEntry(chunkChecksum, chunkSize));
+		}
+	}
+
+	private void readMultiChunks(DataInputStream in, DatabaseVersion databaseVersion) throws IOException {
+		int multiChunkCount = readLength(in);
+		
+		for (int i = 0; i < multiChunkCount; i++) {
+			MultiChunkId multiChunkId = new MultiChunkId(readBytes(in));
+			long size = in.readLong();
+			
+			MultiChunkEntry multiChunk = new MultiChunkEntry(multiChunkId, size);
+			int chunkRefCount = readLength(in);
+			
+			for (int j = 0; j < chunkRefCount; j++) {
+				multiChunk.addChunk(new ChunkChecksum(readBytes(in)));
+			}
+			
+			databaseVersion.addMultiChunk(multiChunk);
+		}
+	}
+
+	private void readFileContents(DataInputStream in, DatabaseVersion databaseVersion) throws IOException {
+		int fileContentCount = readLength(in);
+		
+		for (int i = 0; i < fileContentCount; i++) {
+			FileContent fileContent = new FileContent();
+			
+			fileContent.setChecksum(new FileChecksum(readBytes(in)));
+			fileContent.setSize(in.readLong());
+			
+			int chunkRefCount = readLength(in);
+			
+			for (int j = 0; j < chunkRefCount; j++) {
+				fileContent.addChunk(new ChunkChecksum(readBytes(in)));
+			}
+			
+			databaseVersion.addFileContent(fileContent);
+		}
+	}
+
+	private void readFileHistories(DataInputStream in, DatabaseVersion databaseVersion) throws IOException {
+		int fileHistoryCount = readLength(in);
+		
+		for (int i = 0; i < fileHistoryCount; i++) {
+			PartialFileHistory fileHistory = new PartialFileHistory(new FileHistoryId(readBytes(in)));
+			int fileVersionCount = readLength(in);
+			
+			for (int j = 0; j < fileVersionCount; j++) {
+				fileHistory.addFileVersion(readFileVersion(in));
+			}
+			
+			// File history might be empty if file versions are ignored!
+			if (fileHistory.getFileVersions().size() > 0) {
+				databaseVersion.addFileHistory(fileHistory);
+			}
+		}
+	}
+
+	private FileVersion readFileVersion(DataInputStream in) throws IOException {
+		FileVersion fileVersion = new FileVersion();
+		
+		try {
+			fileVersion.setVersion(in.readLong());
+			fileVersion.setType(FileType.valueOf(readString(in)));
+			fileVersion.setStatus(FileStatus.valueOf(readString(in)));
+		}
+		catch (IllegalArgumentException e) {
+			throw new IOException("Invalid file version type or status.", e);
+		}
+		
+		fileVersion.setPath(readString(in));
+		fileVersion.setSize(in.readLong());
+		fileVersion.setLastModified(new Date(in.readLong()));
+		
+		byte flags = in.readByte();
+		
+		if ((flags & FILE_VERSION_FLAG_UPDATED) != 0) {
+			fileVersion.setUpdated(new Date(in.readLong()));
+		}
+		
+		if ((flags & FILE_VERSION_FLAG_CHECKSUM) != 0) {
+			fileVersion.setChecksum(new FileChecksum(readBytes(in)));
+		}
+		
+		if ((flags & FILE_VERSION_FLAG_LINK_TARGET) != 0) {
+			fileVersion.setLinkTarget(readString(in));
+		}
+		
+		if ((flags & FILE_VERSION_FLAG_DOS_ATTRIBUTES) != 0) {
+			fileVersion.setDosAttributes(readString(in));
+		}
+		
+		if ((flags & FILE_VERSION_FLAG_POSIX_PERMISSIONS) != 0) {
+			fileVersion.setPosixPermissions(readString(in));
+		}
+		
+		return fileVersion;
+	}
+	
+	private String readString(DataInputStream in) throws IOException {
+		return new String(readBytes(in), StandardCharsets.UTF_8);
+	}
+	
+	private byte[] readBytes(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[readLength(in)];
+		in.readFully(bytes);
+		
+		return bytes;
+	}
+	
+	private int readLength(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		
+		if (length < 0 || length > MAX_FIELD_LENGTH) {
+			throw new IOException("Invalid binary database file: Illegal length " + length);
+		}
+		
+		return length;
+	}
+	
+	/**
+	 * Reads the content length of a database version. Unlike field lengths, the content length
+	 * is not limited by {@link #MAX_FIELD_LENGTH}: The content is never buffered by the reader,
+	 * but either parsed entry by entry or skipped.
+	 */
+	private int readContentLength(DataInputStream in) throws IOException {
+		int contentLength = in.readInt();
+		
+		if (contentLength < 0) {
+			throw new IOException("Invalid binary database file: Illegal content length " + contentLength);
+		}
+		
+		return contentLength;
+	}
+	
+	private void skipFully(DataInputStream in, long length) throws IOException {
+		long remaining = length;
+		
+		while (remaining > 0) {
+			int skipped = in.skipBytes((int) Math.min(remaining, Integer.MAX_VALUE));
+			
+			if (skipped <= 0) {
+				in.readByte(); // Throws EOFException at the end of the stream
+				skipped = 1;
+			}
+			
+			remaining -= skipped;
+		}
+	}
+}
@@ -0,0 +1,250 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.FileContent;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.MultiChunkEntry;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.VectorClock;
+import org.syncany.util.StringUtil;
+
+/**
+ * This class writes the given {@link DatabaseVersion}s to a {@link DataOutputStream}
+ * in a compact binary format. It is the binary counterpart to the {@link DatabaseXmlWriter},
+ * and files written by this class are read by the {@link DatabaseBinaryReader}.
+ * 
+ * <p>All numbers are written big endian. Strings are written as a length-prefixed
+ * UTF-8 byte array, checksums and identifiers as length-prefixed raw byte arrays. 
+ * The file layout is as follows:
+ * 
+ * <pre>
+ *   file:             magic (4 bytes), format version (4 bytes), database version*, end marker (1 byte)
+ *   database version: marker (1 byte), header, content length (4 bytes), content
+ *   header:           timestamp (8 bytes), client (string), vector clock entry count (4 bytes), 
+ *                     (client name (string), value (8 bytes))*
+ *   content:          chunks, multichunks, file contents, file histories, each 
+ *                     prefixed with the number of entries (4 bytes)
+ * </pre>
+ * 
+ * <p>Because the content length is written before the content itself, readers can skip
+ * the content of database versions they are not interested in. 
+ * 
+ * @see DatabaseXmlSerializer
+ * @see DatabaseBinaryReader
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class DatabaseBinaryWriter {
+	private static final Logger logger = Logger.getLogger(DatabaseBinaryWriter.class.getSimpleName());
+
+	public static final int MAGIC = 0x53594442; // "SYDB"
+	public static final int BINARY_FORMAT_VERSION = 1;
+	
+	static final byte DATABASE_VERSION_MARKER = 1;
+	static final byte END_MARKER = 0;
+	
+	static final byte FILE_VERSION_FLAG_UPDATED = 0x01;
+	static final byte FILE_VERSION_FLAG_CHECKSUM = 0x02;
+	static final byte FILE_VERSION_FLAG_LINK_TARGET = 0x04;
+	static final byte FILE_VERSION_FLAG_DOS_ATTRIBUTES = 0x08;
+	static final byte FILE_VERSION_FLAG_POSIX_PERMISSIONS = 0x10;
+
+	private Iterator<DatabaseVersion> databaseVersions;
+	private DataOutputStream out;
+
+	public DatabaseBinaryWriter(Iterator<DatabaseVersion> databaseVersions, DataOutputStream out) {
+		this.databaseVersions = databaseVersions;
+		this.out = out;
+	}
+
+	public void write() throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(BINARY_FORMAT_VERSION);
+		
+		ByteArrayOutputStream contentBytes = new ByteArrayOutputStream();
+		DataOutputStream contentOut = new DataOutputStream(contentBytes);
+
+		while (databaseVersions.hasNext()) {
+			DatabaseVersion databaseVersion = databaseVersions.next();
+			
+			// Header
+			out.writeByte(DATABASE_VERSION_MARKER);
+			writeDatabaseVersionHeader(databaseVersion);
+			
+			// Chunks, multichunks, file contents, and file histories
+			contentBytes.reset();
+			
+			writeChunks(contentOut, databaseVersion.getChunks());
+			writeMultiChunks(contentOut, databaseVersion.getMultiChunks());
+			writeFileContents(contentOut, databaseVersion.getFileContents());
+			writeFileHistories(contentOut, databaseVersion.getFileHistories());
+			
+			contentOut.flush();
+			
+			out.writeInt(contentBytes.size());
+			contentBytes.writeTo(out);
+		}
+		
+		out.writeByte(END_MARKER);
+		
+		out.flush();
+		out.close();
+	}
+
+	private void writeDatabaseVersionHeader(DatabaseVersion databaseVersion) throws IOException {
+		if (databaseVersion.getTimestamp() == null || databaseVersion.getClient() == null
+				|| databaseVersion.getVectorClock() == null || databaseVersion.getVectorClock().isEmpty()) {
+
+			logger.log(Level.SEVERE, "Cannot write database version. Header fields must be filled: " + databaseVersion.getHeader());
+			throw new IOException("Cannot write database version. Header fields must be filled: " + databaseVersion.getHeader());
+		}
+		
+		out.writeLong(databaseVersion.getTimestamp().getTime());
+		writeString(out, databaseVersion.getClient());
+		
+		VectorClock vectorClock = databaseVersion.getVectorClock();
+		out.writeInt(vectorClock.size());
+		
+		for (Map.Entry<String, Long> vectorClockEntry : vectorClock.entrySet()) {
+			writeString(out, vectorClockEntry.getKey());
+			out.writeLong(vectorClockEntry.getValue());
+		}
+	}
+
+	private void writeChunks(DataOutputStream contentOut, Collection<ChunkEntry> chunks) throws IOException {
+		contentOut.writeInt(chunks.size());
+		
+		for (ChunkEntry chunk : chunks) {
+			writeBytes(contentOut, chunk.getChecksum().getBytes());
+			contentOut.writeInt(chunk.getSize());
+		}
+	}
+
+	private void writeMultiChunks(DataOutputStream contentOut, Collection<MultiChunkEntry> multiChunks) throws IOException {
+		contentOut.writeInt(multiChunks.size());
+		
+		for (MultiChunkEntry multiChunk : multiChunks) {
+			writeBytes(contentOut, multiChunk.getId().getBytes());
+			contentOut.writeLong(multiChunk.getSize());
+			writeChunkRefs(contentOut, multiChunk.getChunks());
+		}
+	}
+
+	private void writeFileContents(DataOutputStream contentOut, Collection<FileContent> fileContents) throws IOException {
+		contentOut.writeInt(fileContents.size());
+		
+		for (FileContent fileContent : fileContents) {
+			writeBytes(contentOut, fileContent.getChecksum().getBytes());
+			contentOut.writeLong(fileContent.getSize());
+			writeChunkRefs(contentOut, fileContent.getChunks());
+		}
+	}
+	
+	private void writeChunkRefs(DataOutputStream contentOut, Collection<ChunkChecksum> chunkChecksums) throws IOException {
+		contentOut.writeInt(chunkChecksums.size());
+		
+		for (ChunkChecksum chunkChecksum : chunkChecksums) {
+			writeBytes(contentOut, chunkChecksum.getBytes());
+		}
+	}
+
+	private void writeFileHistories(DataOutputStream contentOut, Collection<PartialFileHistory> fileHistories) throws IOException {
+		contentOut.writeInt(fileHistories.size());
+		
+		for (PartialFileHistory fileHistory : fileHistories) {
+			writeBytes(contentOut, fileHistory.getFileHistoryId().getBytes());
+			
+			Collection<FileVersion> fileVersions = fileHistory.getFileVersions().values();
+			contentOut.writeInt(fileVersions.size());
+			
+			for (FileVersion fileVersion : fileVersions) {
+				writeFileVersion(contentOut, fileVersion);
+			}
+		}
+	}
+
+	private void writeFileVersion(DataOutputStream contentOut, FileVersion fileVersion) throws IOException {
+		if (fileVersion.getVersion() == null || fileVersion.getType() == null || fileVersion.getPath() == null 
+				|| fileVersion.getStatus() == null || fileVersion.getSize() == null || fileVersion.getLastModified() == null) {
+			
+			throw new IOException("Unable to write file version, because one or many mandatory fields are null (version, type, path, name, status, size, last modified): "+fileVersion);
+		}
+		
+		if (fileVersion.getType() == FileType.SYMLINK && fileVersion.getLinkTarget() == null) {
+			throw new IOException("Unable to write file version: All symlinks must have a target.");
+		}
+		
+		byte flags = 0;
+		
+		flags |= (fileVersion.getUpdated() != null) ? FILE_VERSION_FLAG_UPDATED : 0;
+		flags |= (fileVersion.getChecksum() != null) ? FILE_VERSION_FLAG_CHECKSUM : 0;
+		flags |= (fileVersion.getLinkTarget() != null) ? FILE_VERSION_FLAG_LINK_TARGET : 0;
+		flags |= (fileVersion.getDosAttributes() != null) ? FILE_VERSION_FLAG_DOS_ATTRIBUTES : 0;
+		flags |= (fileVersion.getPosixPermissions() != null) ? FILE_VERSION_FLAG_POSIX_PERMISSIONS : 0;
+		
+		contentOut.writeLong(fileVersion.getVersion());
+		writeString(contentOut, fileVersion.getType().toString());
+		writeString(contentOut, fileVersion.getStatus().toString());
+		writeString(contentOut, fileVersion.getPath());
+		contentOut.writeLong(fileVersion.getSize());
+		contentOut.writeLong(fileVersion.getLastModified().getTime());
+		contentOut.writeByte(flags);
+		
+		if (fileVersion.getUpdated() != null) {
+			contentOut.writeLong(fileVersion.getUpdated().getTime());
+		}
+		
+		if (fileVersion.getChecksum() != null) {
+			writeBytes(contentOut, fileVersion.getChecksum().getBytes());
+		}
+		
+		if (fileVersion.getLinkTarget() != null) {
+			writeString(contentOut, fileVersion.getLinkTarget());
+		}
+		
+		if (fileVersion.getDosAttributes() != null) {
+			writeString(contentOut, fileVersion.getDosAttributes());
+		}
+		
+		if (fileVersion.getPosixPermissions() != null) {
+			writeString(contentOut, fileVersion.getPosixPermissions());
+		}
+	}
+	
+	private void writeString(DataOutputStream dataOut, String str) throws IOException {
+		writeBytes(dataOut, StringUtil.toBytesUTF8(str));
+	}
+	
+	private void writeBytes(DataOutputStream dataOut, byte[] bytes) throws IOException {
+		dataOut.writeInt(bytes.length);
+		dataOut.write(bytes);
+	}
+}
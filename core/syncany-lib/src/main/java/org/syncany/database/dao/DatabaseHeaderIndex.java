@@ -0,0 +1,266 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.DatabaseVersionHeader;
+import org.syncany.database.MemoryDatabase;
+import org.syncany.database.VectorClock;
+
+/**
+ * The database header index is a small sidecar file next to a (local copy of a) database
+ * file. It lists the {@link DatabaseVersionHeader}s of all database versions in the file, in file
+ * order, and -- for binary database files -- the offset of each database version in the
+ * decoded (decrypted and decompressed) file.
+ *
+ * <p>The {@link DatabaseXmlSerializer} writes the index when it reads a database file for the
+ * first time, and uses it for subsequent reads: Headers-only reads are answered from the index
+ * without decoding or parsing the database file, and range reads of binary files skip to the
+ * first database version in range and stop after the last one.
+ *
+ * <p>The index stores the size of the database file and a checksum of its first and last bytes.
+ * The last modified date cannot be used, because the cache touches files when they are accessed.
+ * Since database files are encrypted with random salts and IVs, the checksum identifies a database
+ * file. If the database file is replaced by a different file, the index is ignored and re-created.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class DatabaseHeaderIndex {
+	private static final Logger logger = Logger.getLogger(DatabaseHeaderIndex.class.getSimpleName());
+
+	private static final String FILE_SUFFIX = ".headers";
+	private static final int FILE_MAGIC = 0x53594849; // "SYHI"
+	private static final int FILE_VERSION = 1;
+	private static final int FINGERPRINT_BLOCK_SIZE = 4096;
+
+	private List<DatabaseVersionHeader> headers;
+	private List<Long> offsets;
+
+	public DatabaseHeaderIndex() {
+		this.headers = new ArrayList<DatabaseVersionHeader>();
+		this.offsets = new ArrayList<Long>();
+	}
+
+	/**
+	 * Adds a database version header to the index. Headers must be added in the order
+	 * in which they appear in the database file.
+	 *
+	 * @param header Header of the database version
+	 * @param offset Offset of the database version in the decoded database file, or -1 if unknown
+	 */
+	public void add(DatabaseVersionHeader header, long offset) {
+		headers.add(header);
+		offsets.add(offset);
+	}
+
+	public int size() {
+		return headers.size();
+	}
+
+	/**
+	 * Returns true if the offsets of all database versions are known, i.e. if
+	 * the index can be used to skip to a database version.
+	 */
+	public boolean hasOffsets() {
+		return !offsets.contains(-1L);
+	}
+
+	public long getOffset(int index) {
+		return offsets.get(index);
+	}
+
+	/**
+	 * Returns the index of the first database version within the given vector clock
+	 * range (inclusive), or -1 if no database version is in range.
+	 */
+	public int getFirstIndexInRange(VectorClock fromVersion, VectorClock toVersion) {
+		for (int i = 0; i < headers.size(); i++) {
+			if (DatabaseXmlParseHandler.vectorClockInRange(headers.get(i).getVectorClock(), fromVersion, toVersion)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the index of the last database version within the given vector clock
+	 * range (inclusive), or -1 if no database version is in range.
+	 */
+	public int getLastIndexInRange(VectorClock fromVersion, VectorClock toVersion) {
+		for (int i = headers.size() - 1; i >= 0; i--) {
+			if (DatabaseXmlParseHandler.vectorClockInRange(headers.get(i).getVectorClock(), fromVersion, toVersion)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Adds a headers-only {@link DatabaseVersion} to the given database for each database
+	 * version within the given vector clock range, exactly like a headers-only read of the
+	 * database file would.
+	 */
+	public void addDatabaseVersionHeaders(MemoryDatabase database, VectorClock fromVersion, VectorClock toVersion) {
+		for (DatabaseVersionHeader header : headers) {
+			if (DatabaseXmlParseHandler.vectorClockInRange(header.getVectorClock(), fromVersion, toVersion)) {
+				DatabaseVersion databaseVersion = new DatabaseVersion();
+
+				databaseVersion.setTimestamp(header.getDate());
+				databaseVersion.setClient(header.getClient());
+				databaseVersion.setVectorClock(header.getVectorClock().clone());
+
+				database.addDatabaseVersion(databaseVersion);
+			}
+		}
+	}
+
+	/**
+	 * Returns the sidecar index file belonging to the given database file.
+	 */
+	public static File getIndexFile(File databaseFile) {
+		return new File(databaseFile.getAbsolutePath() + FILE_SUFFIX);
+	}
+
+	/**
+	 * Writes the index to the sidecar file of the given database file. Failures
+	 * are logged and otherwise ignored, since the index is only an optimization.
+	 */
+	public void save(File databaseFile) {
+		File indexFile = getIndexFile(databaseFile);
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+			out.writeInt(FILE_MAGIC);
+			out.writeInt(FILE_VERSION);
+			out.writeLong(databaseFile.length());
+			out.writeLong(getFingerprint(databaseFile));
+			out.writeInt(headers.size());
+
+			for (int i = 0; i < headers.size(); i++) {
+				DatabaseVersionHeader header = headers.get(i);
+
+				out.writeLong(header.getDate().getTime());
+				out.writeUTF(header.getClient());
+				out.writeInt(header.getVectorClock().size());
+
+				for (Map.Entry<String, Long> clock : header.getVectorClock().entrySet()) {
+					out.writeUTF(clock.getKey());
+					out.writeLong(clock.getValue());
+				}
+
+				out.writeLong(offsets.get(i));
+			}
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "Cannot write database header index " + indexFile + ". Ignoring.", e);
+			indexFile.delete();
+		}
+	}
+
+	/**
+	 * Reads the sidecar index of the given database file. If the index does not exist,
+	 * is invalid, or belongs to a different version of the database file, <tt>null</tt>
+	 * is returned.
+	 */
+	public static DatabaseHeaderIndex load(File databaseFile) {
+		File indexFile = getIndexFile(databaseFile);
+
+		if (!indexFile.exists()) {
+			return null;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+			int magic = in.readInt();
+			int version = in.readInt();
+			long databaseFileLength = in.readLong();
+			long databaseFileFingerprint = in.readLong();
+
+			if (magic != FILE_MAGIC || version != FILE_VERSION) {
+				logger.log(Level.WARNING, "Invalid database header index " + indexFile + ". Ignoring.");
+				return null;
+			}
+			else if (databaseFileLength != databaseFile.length() || databaseFileFingerprint != getFingerprint(databaseFile)) {
+				logger.log(Level.INFO, "Database header index " + indexFile + " is outdated. Ignoring.");
+				return null;
+			}
+
+			DatabaseHeaderIndex headerIndex = new DatabaseHeaderIndex();
+			int headerCount = in.readInt();
+
+			for (int i = 0; i < headerCount; i++) {
+				DatabaseVersionHeader header = new DatabaseVersionHeader();
+
+				header.setDate(new Date(in.readLong()));
+				header.setClient(in.readUTF());
+
+				VectorClock vectorClock = new VectorClock();
+				int vectorClockSize = in.readInt();
+
+				for (int j = 0; j < vectorClockSize; j++) {
+					vectorClock.setClock(in.readUTF(), in.readLong());
+				}
+
+				header.setVectorClock(vectorClock);
+				headerIndex.add(header, in.readLong());
+			}
+
+			return headerIndex;
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "Cannot read database header index " + indexFile + ". Ignoring.", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns a CRC32 checksum of the first and last bytes of the given file. 
+	 */
+	private static long getFingerprint(File databaseFile) throws IOException {
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(databaseFile, "r")) {
+			CRC32 crc32 = new CRC32();
+			byte[] block = new byte[(int) Math.min(FINGERPRINT_BLOCK_SIZE, randomAccessFile.length())];
+
+			randomAccessFile.readFully(block);
+			crc32.update(block);
+
+			randomAccessFile.seek(randomAccessFile.length() - block.length);
+			randomAccessFile.readFully(block);
+			crc32.update(block);
+
+			return crc32.getValue();
+		}
+	}
+}
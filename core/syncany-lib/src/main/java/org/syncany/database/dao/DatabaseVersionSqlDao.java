@@ -87,6 +87,9 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 	 * Marking a database version dirty will lead to a deletion in the next sync up
 	 * cycle.
 	 * 
+	 * <p>Since only file versions in <tt>MASTER</tt> database versions are current, the current
+	 * file versions of all file histories in the database version are updated as well.
+	 * 
 	 * @param vectorClock Identifies the database version to mark dirty
 	 */
 	public void markDatabaseVersionDirty(VectorClock vectorClock) {
@@ -95,7 +98,11 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 			preparedStatement.setString(2, vectorClock.toString());
 
 			preparedStatement.executeUpdate();
+
+			fileVersionDao.updateCurrentFileVersions(connection, fileVersionDao.getFileHistoryIds(vectorClock));
 			connection.commit();
+
+			fileVersionDao.saveFileTreeIndex();
 		}
 		catch (SQLException e) {
 			throw new RuntimeException(e);
@@ -104,13 +111,8 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 
 	public long writeDatabaseVersion(DatabaseVersion databaseVersion) {
 		try {
-			// Insert & commit database version
-			long databaseVersionId = writeDatabaseVersion(connection, databaseVersion);
-			
-			// Commit & clear local caches
-			clearCaches();
-
-			return databaseVersionId;
+			// Insert database version (chunk cache is updated by the chunk DAO)
+			return writeDatabaseVersion(connection, databaseVersion);
 		}
 		catch (Exception e) {
 			logger.log(Level.SEVERE, "SQL Error: ", e);
@@ -178,17 +180,18 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 	}
 
 	private void writeVectorClock(Connection connection, long databaseVersionId, VectorClock vectorClock) throws SQLException {
-		try (PreparedStatement preparedStatement = getStatement(connection, "databaseversion.insert.all.writeVectorClock.sql")) {
-			for (Map.Entry<String, Long> vectorClockEntry : vectorClock.entrySet()) {
-				preparedStatement.setLong(1, databaseVersionId);
-				preparedStatement.setString(2, vectorClockEntry.getKey());
-				preparedStatement.setLong(3, vectorClockEntry.getValue());
+		StatementBatch vectorClockBatch = new StatementBatch(connection, "databaseversion.insert.all.writeVectorClock.sql");
+		PreparedStatement preparedStatement = vectorClockBatch.getStatement();
 
-				preparedStatement.addBatch();
-			}
+		for (Map.Entry<String, Long> vectorClockEntry : vectorClock.entrySet()) {
+			preparedStatement.setLong(1, databaseVersionId);
+			preparedStatement.setString(2, vectorClockEntry.getKey());
+			preparedStatement.setLong(3, vectorClockEntry.getValue());
 
-			preparedStatement.executeBatch();
+			vectorClockBatch.add();
 		}
+
+		vectorClockBatch.execute();
 	}
 
 	/**
@@ -220,6 +223,8 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 			// Commit & clear local caches
 			connection.commit();
 			clearCaches();
+
+			fileVersionDao.saveFileTreeIndex();
 		}
 		catch (SQLException e) {
 			throw new RuntimeException("Unable to remove dirty database versions.", e);
@@ -62,6 +62,7 @@ public class DatabaseXmlParseHandler extends DefaultHandler {
 	private VectorClock versionFrom;
 	private VectorClock versionTo;
 	private DatabaseReadType readType;
+	private DatabaseHeaderIndex headerIndex;
 
 	private String elementPath;
 	private DatabaseVersion databaseVersion;
@@ -72,11 +73,23 @@ public class DatabaseXmlParseHandler extends DefaultHandler {
 	private PartialFileHistory fileHistory;
 
 	public DatabaseXmlParseHandler(MemoryDatabase database, VectorClock fromVersion, VectorClock toVersion, DatabaseReadType readType) {
+		this(database, fromVersion, toVersion, readType, null);
+	}
+
+	/**
+	 * Creates a parse handler that additionally adds the header of every database version
+	 * in the file (in or out of range) to the given header index. Since the SAX parser does
+	 * not report byte positions, no offsets are recorded.
+	 */
+	public DatabaseXmlParseHandler(MemoryDatabase database, VectorClock fromVersion, VectorClock toVersion, DatabaseReadType readType,
+			DatabaseHeaderIndex headerIndex) {
+		
 		this.elementPath = "";
 		this.database = database;
 		this.versionFrom = fromVersion;
 		this.versionTo = toVersion;
 		this.readType = readType;
+		this.headerIndex = headerIndex;
 	}
 
 	@Override
@@ -220,6 +233,10 @@ public class DatabaseXmlParseHandler extends DefaultHandler {
 	@Override
 	public void endElement(String uri, String localName, String qName) throws SAXException {
 		if (elementPath.equalsIgnoreCase("/database/databaseVersions/databaseVersion")) {
+			if (headerIndex != null) {
+				headerIndex.add(databaseVersion.getHeader(), -1);
+			}
+			
 			if (vectorClockInLoadRange) {
 				database.addDatabaseVersion(databaseVersion);
 				logger.log(Level.INFO, "   + Added database version " + databaseVersion.getHeader());
@@ -268,7 +285,7 @@ public class DatabaseXmlParseHandler extends DefaultHandler {
 		// Nothing
 	}
 
-	private boolean vectorClockInRange(VectorClock vectorClock, VectorClock vectorClockRangeFrom, VectorClock vectorClockRangeTo) {
+	static boolean vectorClockInRange(VectorClock vectorClock, VectorClock vectorClockRangeFrom, VectorClock vectorClockRangeTo) {
 		// Determine if: versionFrom < databaseVersion
 		boolean greaterOrEqualToVersionFrom = false;
 
@@ -17,11 +17,17 @@
  */
 package org.syncany.database.dao;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.util.Iterator;
@@ -33,6 +39,7 @@ import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 import javax.xml.stream.XMLStreamException;
 
+import org.apache.commons.io.input.CountingInputStream;
 import org.syncany.chunk.Transformer;
 import org.syncany.database.DatabaseVersion;
 import org.syncany.database.MemoryDatabase;
@@ -47,27 +54,46 @@ import org.syncany.database.VectorClock;
  * database to a file, and several <tt>load()</tt> methods to load them from disk.
  * 
  * <p>It uses a {@link DatabaseXmlWriter} to write XML files to disk and 
- * {@link DatabaseXmlParseHandler} to parse them while reading. 
+ * {@link DatabaseXmlParseHandler} to parse them while reading. If the serializer
+ * is created with {@link DatabaseFormat#BINARY}, files are written in a binary format
+ * using the {@link DatabaseBinaryWriter} instead. When loading a file, the format is
+ * detected from the file header, so both formats can always be read. 
+ * 
+ * <p>If requested, a {@link DatabaseHeaderIndex} sidecar file is written next to a file when it
+ * is loaded, so that subsequent loads of the same file can skip reading (parts of) it.
  * 
  * @see DatabaseXmlParseHandler
  * @see DatabaseXmlWriter
+ * @see DatabaseBinaryReader
+ * @see DatabaseBinaryWriter
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class DatabaseXmlSerializer {
 	private static final Logger logger = Logger.getLogger(DatabaseXmlSerializer.class.getSimpleName());
+	private static final int BUFFER_SIZE = 64 * 1024;
 
 	public enum DatabaseReadType {
 		FULL, HEADER_ONLY
 	}
+	
+	public enum DatabaseFormat {
+		XML, BINARY
+	}
 
 	private Transformer transformer;
+	private DatabaseFormat format;
 
 	public DatabaseXmlSerializer() {
 		this(null);
 	}
 
 	public DatabaseXmlSerializer(Transformer transformer) {
+		this(transformer, DatabaseFormat.XML);
+	}
+	
+	public DatabaseXmlSerializer(Transformer transformer, DatabaseFormat format) {
 		this.transformer = transformer;
+		this.format = format;
 	}
 
 	public void save(List<DatabaseVersion> databaseVersions, File destinationFile) throws IOException {
@@ -75,6 +101,25 @@ public class DatabaseXmlSerializer {
 	}
 
 	public void save(Iterator<DatabaseVersion> databaseVersions, File destinationFile) throws IOException {
+		if (format == DatabaseFormat.BINARY) {
+			saveBinary(databaseVersions, destinationFile);
+		}
+		else {
+			saveXml(databaseVersions, destinationFile);
+		}
+	}
+	
+	private void saveBinary(Iterator<DatabaseVersion> databaseVersions, File destinationFile) throws IOException {
+		OutputStream out = new FileOutputStream(destinationFile);
+		
+		if (transformer != null) {
+			out = transformer.createOutputStream(out);
+		}
+		
+		new DatabaseBinaryWriter(databaseVersions, new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE))).write();
+	}
+
+	private void saveXml(Iterator<DatabaseVersion> databaseVersions, File destinationFile) throws IOException {
 		try {
 			PrintWriter out;
 
@@ -98,6 +143,29 @@ public class DatabaseXmlSerializer {
 	public void load(MemoryDatabase db, File databaseFile, VectorClock fromVersion, VectorClock toVersion, DatabaseReadType readType)
 			throws IOException {
 		
+		load(db, databaseFile, fromVersion, toVersion, readType, false);
+	}
+
+	/**
+	 * Loads the database versions in the given vector clock range from the given file into the
+	 * memory database. If <tt>useHeaderIndex</tt> is set and the file has a valid {@link DatabaseHeaderIndex}, 
+	 * headers-only loads are answered from the index without reading the file, and binary files are only 
+	 * read from the first to the last database version in range. Otherwise, the file is read entirely, 
+	 * and (if <tt>useHeaderIndex</tt> is set) an index is created for the next load.
+	 */
+	public void load(MemoryDatabase db, File databaseFile, VectorClock fromVersion, VectorClock toVersion, DatabaseReadType readType,
+			boolean useHeaderIndex) throws IOException {
+		
+		DatabaseHeaderIndex headerIndex = (useHeaderIndex) ? DatabaseHeaderIndex.load(databaseFile) : null;
+		
+		if (headerIndex != null && readType == DatabaseReadType.HEADER_ONLY) {
+			logger.log(Level.INFO, "- Loading database headers from header index of {0} ...", databaseFile);
+			headerIndex.addDatabaseVersionHeaders(db, fromVersion, toVersion);
+			
+			return;
+		}
+		
+		DatabaseHeaderIndex newHeaderIndex = (useHeaderIndex && headerIndex == null) ? new DatabaseHeaderIndex() : null;
 		InputStream is;
 
 		if (transformer == null) {
@@ -107,17 +175,61 @@ public class DatabaseXmlSerializer {
 			is = transformer.createInputStream(new FileInputStream(databaseFile));
 		}
 
+		is = new BufferedInputStream(is, BUFFER_SIZE);
+
 		try {
-			logger.log(Level.INFO, "- Loading database ({0}) from file {1} ...", new Object[] { readType, databaseFile });
+			if (isBinaryFormat(is)) {
+				logger.log(Level.INFO, "- Loading database ({0}) from binary file {1} ...", new Object[] { readType, databaseFile });
+				DatabaseBinaryReader binaryReader = new DatabaseBinaryReader(db, fromVersion, toVersion, readType);
+				
+				if (newHeaderIndex != null) {
+					binaryReader.read(new CountingInputStream(is), newHeaderIndex);
+				}
+				else if (headerIndex != null && headerIndex.hasOffsets()) {
+					binaryReader.readIndexed(new DataInputStream(is), headerIndex);
+				}
+				else {
+					binaryReader.read(new DataInputStream(is));
+				}
+			}
+			else {
+				logger.log(Level.INFO, "- Loading database ({0}) from file {1} ...", new Object[] { readType, databaseFile });
 
-			SAXParserFactory factory = SAXParserFactory.newInstance();
-			SAXParser saxParser = factory.newSAXParser();
+				SAXParserFactory factory = SAXParserFactory.newInstance();
+				SAXParser saxParser = factory.newSAXParser();
 
-			saxParser.parse(is, new DatabaseXmlParseHandler(db, fromVersion, toVersion, readType));
+				saxParser.parse(is, new DatabaseXmlParseHandler(db, fromVersion, toVersion, readType, newHeaderIndex));
+			}
+			
+			if (newHeaderIndex != null) {
+				newHeaderIndex.save(databaseFile);
+			}
 		}
 		catch (Exception e) {
 			throw new IOException(e);
 		}
+		finally {
+			is.close();
+		}
+	}
+	
+	/**
+	 * Peeks at the first bytes of the given stream to determine whether it
+	 * contains a binary database. The stream must support mark/reset.
+	 */
+	private boolean isBinaryFormat(InputStream is) throws IOException {
+		is.mark(4);
+		
+		try {
+			DataInputStream dataInputStream = new DataInputStream(is);
+			return dataInputStream.readInt() == DatabaseBinaryWriter.MAGIC;
+		}
+		catch (EOFException e) {
+			return false;
+		}
+		finally {
+			is.reset();
+		}
 	}
 
 }
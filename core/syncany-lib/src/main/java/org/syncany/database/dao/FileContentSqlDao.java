@@ -48,8 +48,8 @@ public class FileContentSqlDao extends AbstractSqlDao {
 	 * table ({@link ChunkChecksum}).
 	 * 
 	 * <p>To do the latter (write chunk references), this method calls
-	 * {@link #writeFileContentChunkRefs(Connection, FileContent) writeFileContentChunkRefs()} for every 
-	 * {@link FileContent}. 
+	 * {@link #writeFileContentChunkRefs(Connection, Collection) writeFileContentChunkRefs()} after all
+	 * {@link FileContent}s have been written. Rows are written in batches using cached statements.
 	 * 
 	 * <p><b>Note:</b> This method executes, but does not commit the queries.
 	 * 
@@ -59,37 +59,45 @@ public class FileContentSqlDao extends AbstractSqlDao {
 	 * @throws SQLException If the SQL statement fails
 	 */
 	public void writeFileContents(Connection connection, long databaseVersionId, Collection<FileContent> fileContents) throws SQLException {
-		for (FileContent fileContent : fileContents) {
-			PreparedStatement preparedStatement = getStatement(connection, "filecontent.insert.all.writeFileContents.sql");
-
-			preparedStatement.setString(1, fileContent.getChecksum().toString());
-			preparedStatement.setLong(2, databaseVersionId);
-			preparedStatement.setLong(3, fileContent.getSize());
+		if (fileContents.size() > 0) {
+			StatementBatch fileContentBatch = new StatementBatch(connection, "filecontent.insert.all.writeFileContents.sql");
+			PreparedStatement preparedStatement = fileContentBatch.getStatement();
 			
-			preparedStatement.executeUpdate();
-			preparedStatement.close();	
+			for (FileContent fileContent : fileContents) {
+				preparedStatement.setBytes(1, fileContent.getChecksum().getBytes());
+				preparedStatement.setLong(2, databaseVersionId);
+				preparedStatement.setLong(3, fileContent.getSize());
+				
+				fileContentBatch.add();
+			}
+			
+			fileContentBatch.execute();
 			
-			// Write chunk references
-			writeFileContentChunkRefs(connection, fileContent);			
+			// Write chunk references (after all file contents, because they reference them)
+			writeFileContentChunkRefs(connection, fileContents);
 		}
 	}
 	
-	private void writeFileContentChunkRefs(Connection connection, FileContent fileContent) throws SQLException {
-		PreparedStatement preparedStatement = getStatement(connection, "filecontent.insert.all.writeFileContentChunkRefs.sql");
-		int order = 0;
+	private void writeFileContentChunkRefs(Connection connection, Collection<FileContent> fileContents) throws SQLException {
+		StatementBatch fileContentChunkRefBatch = new StatementBatch(connection, "filecontent.insert.all.writeFileContentChunkRefs.sql");
+		PreparedStatement preparedStatement = fileContentChunkRefBatch.getStatement();
 		
-		for (ChunkChecksum chunkChecksum : fileContent.getChunks()) {
-			preparedStatement.setString(1, fileContent.getChecksum().toString());
-			preparedStatement.setString(2, chunkChecksum.toString());
-			preparedStatement.setInt(3, order);
-
-			preparedStatement.addBatch();
+		for (FileContent fileContent : fileContents) {
+			byte[] fileContentChecksumBytes = fileContent.getChecksum().getBytes();
+			int order = 0;
 			
-			order++;				
+			for (ChunkChecksum chunkChecksum : fileContent.getChunks()) {
+				preparedStatement.setBytes(1, fileContentChecksumBytes);
+				preparedStatement.setBytes(2, chunkChecksum.getBytes());
+				preparedStatement.setInt(3, order);
+	
+				fileContentChunkRefBatch.add();
+				
+				order++;				
+			}
 		}
 		
-		preparedStatement.executeBatch();
-		preparedStatement.close();
+		fileContentChunkRefBatch.execute();
 	}
 
 	/**
@@ -167,13 +175,13 @@ public class FileContentSqlDao extends AbstractSqlDao {
 
 	private FileContent getFileContentWithoutChunkChecksums(FileChecksum fileChecksum) {
 		try (PreparedStatement preparedStatement = getStatement("filecontent.select.all.getFileContentByChecksumWithoutChunkChecksums.sql")) {
-			preparedStatement.setString(1, fileChecksum.toString());
+			preparedStatement.setBytes(1, fileChecksum.getBytes());
 
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				if (resultSet.next()) {
 					FileContent fileContent = new FileContent();
 	
-					fileContent.setChecksum(FileChecksum.parseFileChecksum(resultSet.getString("checksum")));
+					fileContent.setChecksum(new FileChecksum(resultSet.getBytes("checksum")));
 					fileContent.setSize(resultSet.getLong("size"));
 	
 					return fileContent;
@@ -189,7 +197,7 @@ public class FileContentSqlDao extends AbstractSqlDao {
 
 	private FileContent getFileContentWithChunkChecksums(FileChecksum fileChecksum) {
 		try (PreparedStatement preparedStatement = getStatement("filecontent.select.all.getFileContentByChecksumWithChunkChecksums.sql")) {
-			preparedStatement.setString(1, fileChecksum.toString());
+			preparedStatement.setBytes(1, fileChecksum.getBytes());
 
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				FileContent fileContent = null;
@@ -198,12 +206,12 @@ public class FileContentSqlDao extends AbstractSqlDao {
 					if (fileContent == null) {
 						fileContent = new FileContent();
 						
-						fileContent.setChecksum(FileChecksum.parseFileChecksum(resultSet.getString("checksum")));
+						fileContent.setChecksum(new FileChecksum(resultSet.getBytes("checksum")));
 						fileContent.setSize(resultSet.getLong("size"));
 					}
 					
 					// Add chunk references
-					ChunkChecksum chunkChecksum = ChunkChecksum.parseChunkChecksum(resultSet.getString("chunk_checksum"));
+					ChunkChecksum chunkChecksum = new ChunkChecksum(resultSet.getBytes("chunk_checksum"));
 					fileContent.addChunk(chunkChecksum);
 				}
 	
@@ -220,7 +228,7 @@ public class FileContentSqlDao extends AbstractSqlDao {
 		FileChecksum currentFileChecksum = null;
 		
 		while (resultSet.next()) {		
-			FileChecksum fileChecksum = FileChecksum.parseFileChecksum(resultSet.getString("checksum"));
+			FileChecksum fileChecksum = new FileChecksum(resultSet.getBytes("checksum"));
 			FileContent fileContent = null;
 			
 			if (currentFileChecksum != null && currentFileChecksum.equals(fileChecksum)) {
@@ -233,7 +241,7 @@ public class FileContentSqlDao extends AbstractSqlDao {
 				fileContent.setSize(resultSet.getLong("size"));
 			}
 			
-			ChunkChecksum chunkChecksum = ChunkChecksum.parseChunkChecksum(resultSet.getString("chunk_checksum"));
+			ChunkChecksum chunkChecksum = new ChunkChecksum(resultSet.getBytes("chunk_checksum"));
 			fileContent.addChunk(chunkChecksum);
 
 			fileContents.put(fileChecksum, fileContent); 
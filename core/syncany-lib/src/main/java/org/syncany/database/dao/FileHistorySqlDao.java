@@ -30,6 +30,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.syncany.database.DatabaseVersion.DatabaseVersionStatus;
+import org.syncany.database.FileContent.FileChecksum;
 import org.syncany.database.FileVersion;
 import org.syncany.database.PartialFileHistory;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
@@ -55,8 +56,9 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 	/**
 	 * Writes a list of {@link PartialFileHistory}s to the database table <i>filehistory</i> using <tt>INSERT</tt>s
 	 * and the given connection. In addition, this method also writes the corresponding {@link FileVersion}s of
-	 * each file history to the database using
-	 * {@link FileVersionSqlDao#writeFileVersions(Connection, FileHistoryId, long, Collection) FileVersionSqlDao#writeFileVersions}.
+	 * all file histories to the database using
+	 * {@link FileVersionSqlDao#writeFileVersions(Connection, long, Collection) FileVersionSqlDao#writeFileVersions}.
+	 * Rows are written in batches using cached statements.
 	 *
 	 * <p><b>Note:</b> This method executes, but <b>does not commit</b> the queries.
 	 *
@@ -66,21 +68,25 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 	 * @throws SQLException If the SQL statement fails
 	 */
 	public void writeFileHistories(Connection connection, long databaseVersionId, Collection<PartialFileHistory> fileHistories) throws SQLException {
-		for (PartialFileHistory fileHistory : fileHistories) {
-			PreparedStatement preparedStatement = getStatement(connection, "filehistory.insert.all.writeFileHistories.sql");
-
-			preparedStatement.setString(1, fileHistory.getFileHistoryId().toString());
-			preparedStatement.setLong(2, databaseVersionId);
-
-			int affectedRows = preparedStatement.executeUpdate();
-
-			if (affectedRows == 0) {
-				throw new SQLException("Cannot add database version header. Affected rows is zero.");
+		if (fileHistories.size() > 0) {
+			StatementBatch fileHistoryBatch = new StatementBatch(connection, "filehistory.insert.all.writeFileHistories.sql");
+			PreparedStatement preparedStatement = fileHistoryBatch.getStatement();
+	
+			for (PartialFileHistory fileHistory : fileHistories) {
+				preparedStatement.setString(1, fileHistory.getFileHistoryId().toString());
+				preparedStatement.setLong(2, databaseVersionId);
+	
+				fileHistoryBatch.add();
 			}
-
-			preparedStatement.close();
-
-			fileVersionDao.writeFileVersions(connection, fileHistory.getFileHistoryId(), databaseVersionId, fileHistory.getFileVersions().values());
+	
+			for (int affectedRows : fileHistoryBatch.execute()) {
+				if (affectedRows == 0) {
+					throw new SQLException("Cannot add database version header. Affected rows is zero.");
+				}
+			}
+	
+			// Write file versions (after all file histories, because they reference them)
+			fileVersionDao.writeFileVersions(connection, databaseVersionId, fileHistories);
 		}
 	}
 
@@ -174,13 +180,12 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 	 * 
 	 * @return An empty Collection is returned if none exist.
 	 */
-	public Collection<PartialFileHistory> getFileHistoriesByChecksumSizeAndModifiedDate(String filecontentChecksum, long size, Date modifiedDate) {
+	public Collection<PartialFileHistory> getFileHistoriesByChecksumSizeAndModifiedDate(FileChecksum filecontentChecksum, long size, Date modifiedDate) {
 		try (PreparedStatement preparedStatement = getStatement("filehistory.select.master.getFileHistoriesByChecksumSizeAndModifiedDate.sql")) {
-			// This first query retrieves the last version for each FileHistory matching the three requested properties.
-			// However, it does not guarantee that this version is indeed the last version in that particular
-			// FileHistory, so we need another query to verify that.
+			// The query only selects current (= last MASTER, non-deleted) versions, so all
+			// results can be used to base other versions off them.
 
-			preparedStatement.setString(1, filecontentChecksum);
+			preparedStatement.setBytes(1, filecontentChecksum.getBytes());
 			preparedStatement.setLong(2, size);
 			preparedStatement.setTimestamp(3, new Timestamp(modifiedDate.getTime()));
 
@@ -188,18 +193,13 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 				Collection<PartialFileHistory> fileHistories = new ArrayList<>();
 				
 				while (resultSet.next()) {
-					String fileHistoryId = resultSet.getString("filehistory_id");
-					PartialFileHistory fileHistory = getLastVersionByFileHistoryId(fileHistoryId);
-					
-					boolean resultIsLatestVersion = fileHistory.getLastVersion().getVersion() == resultSet.getLong("version");
-					boolean resultIsNotDelete = fileHistory.getLastVersion().getStatus() != FileVersion.FileStatus.DELETED;
+					FileHistoryId fileHistoryId = FileHistoryId.parseFileId(resultSet.getString("filehistory_id"));
+					FileVersion lastFileVersion = fileVersionDao.createFileVersionFromRow(resultSet);
 
-					// Only if the result is indeed the last in it's history, we can use it
-					// to base other versions off it. So we return it.
-					
-					if (resultIsLatestVersion && resultIsNotDelete) {
-						fileHistories.add(fileHistory);
-					}
+					PartialFileHistory fileHistory = new PartialFileHistory(fileHistoryId);
+					fileHistory.addFileVersion(lastFileVersion);
+
+					fileHistories.add(fileHistory);
 				}
 				
 				return fileHistories;
@@ -215,19 +215,18 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 	 * This function returns a FileHistory, with as last version a FileVersion with
 	 * the given path. 
 	 * 
-	 * If the last FileVersion referring to this path is not the last in the
-	 * FileHistory, or no such FileVersion exists, null is returned.
+	 * If no FileHistory's last FileVersion refers to this path, or if the last
+	 * FileVersion is deleted, null is returned.
 	 */
 	public PartialFileHistory getFileHistoryWithLastVersionByPath(String path) {
 		try (PreparedStatement preparedStatement = getStatement("filehistory.select.master.findLatestFileVersionsForPath.sql")) {
 			preparedStatement.setString(1, path);
 
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
-				// Fetch the latest versions of all files that once existed with the given
-				// path and find the most recent by comparing vector clocks
+				// Fetch the current versions of all files with the given path
+				// and find the most recent by comparing vector clocks
 
 				String latestFileHistoryId = null;
-				Long latestFileVersion = null;
 				VectorClock latestVectorClock = null;
 
 				while (resultSet.next()) {
@@ -238,7 +237,6 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 					if (vectorClockIsGreater) {
 						latestVectorClock = resultSetVectorClock;
 						latestFileHistoryId = resultSet.getString("filehistory_id");
-						latestFileVersion = resultSet.getLong("version");
 					}
 				}
 
@@ -247,20 +245,9 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 					return null;
 				}
 
-				// Get the last FileVersion of the FileHistory in the database with the largest vectorclock.
-				PartialFileHistory fileHistory = getLastVersionByFileHistoryId(latestFileHistoryId);
-				
-				// The above query does not guarantee the resulting version is the last in its
-				// history. We need to check this before returning the file.
-				if (fileHistory.getLastVersion().getVersion() == latestFileVersion) {
-					return fileHistory;
-				}
-				else {
-					// The version retrieved by the path query is not a fileversion which is in the current
-					// filetree. Since it was the last version with this path, there is no other history
-					// which should be continued.
-					return null;
-				}
+				// Get the last FileVersion of the FileHistory in the database with the largest vectorclock;
+				// the query only selects current versions, so this is always the version found above.
+				return getLastVersionByFileHistoryId(latestFileHistoryId);
 			}
 		}
 		catch (SQLException e) {
@@ -271,7 +258,6 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 	private PartialFileHistory getLastVersionByFileHistoryId(String fileHistoryId) {
 		try (PreparedStatement preparedStatement = getStatement("filehistory.select.master.getLastVersionByFileHistoryId.sql")) {
 			preparedStatement.setString(1, fileHistoryId);
-			preparedStatement.setString(2, fileHistoryId);
 
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				if (resultSet.next()) {
@@ -348,25 +334,48 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 	}
 
 	public List<PartialFileHistory> getFileHistoriesWithLastVersion() {
-		List<PartialFileHistory> fileHistories = new ArrayList<PartialFileHistory>();
-
 		try (PreparedStatement preparedStatement = getStatement("filehistory.select.master.getFileHistoriesWithLastVersion.sql")) {
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
-				while (resultSet.next()) {
-					FileHistoryId fileHistoryId = FileHistoryId.parseFileId(resultSet.getString("filehistory_id"));
-					FileVersion lastFileVersion = fileVersionDao.createFileVersionFromRow(resultSet);
+				return createFileHistoriesWithLastVersionFromResult(resultSet);
+			}
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
 
-					PartialFileHistory fileHistory = new PartialFileHistory(fileHistoryId);
-					fileHistory.addFileVersion(lastFileVersion);
+	/**
+	 * Returns the file histories with the given IDs, each with its last version. Unlike 
+	 * {@link #getFileHistoriesWithLastVersion()}, only the given file histories are loaded.
+	 */
+	public List<PartialFileHistory> getFileHistoriesWithLastVersion(List<FileHistoryId> fileHistoryIds) {
+		String[] fileHistoryIdsStr = createFileHistoryIdsArray(fileHistoryIds);
 
-					fileHistories.add(fileHistory);
-				}
-			}
+		try (PreparedStatement preparedStatement = getStatement("filehistory.select.master.getFileHistoriesWithLastVersionByIds.sql")) {
+			preparedStatement.setArray(1, connection.createArrayOf("varchar", fileHistoryIdsStr));
 
-			return fileHistories;
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				return createFileHistoriesWithLastVersionFromResult(resultSet);
+			}
 		}
 		catch (SQLException e) {
 			throw new RuntimeException(e);
 		}
 	}
+
+	private List<PartialFileHistory> createFileHistoriesWithLastVersionFromResult(ResultSet resultSet) throws SQLException {
+		List<PartialFileHistory> fileHistories = new ArrayList<PartialFileHistory>();
+
+		while (resultSet.next()) {
+			FileHistoryId fileHistoryId = FileHistoryId.parseFileId(resultSet.getString("filehistory_id"));
+			FileVersion lastFileVersion = fileVersionDao.createFileVersionFromRow(resultSet);
+
+			PartialFileHistory fileHistory = new PartialFileHistory(fileHistoryId);
+			fileHistory.addFileVersion(lastFileVersion);
+
+			fileHistories.add(fileHistory);
+		}
+
+		return fileHistories;
+	}
 }
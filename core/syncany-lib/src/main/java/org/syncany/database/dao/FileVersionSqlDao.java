@@ -17,29 +17,36 @@
  */
 package org.syncany.database.dao;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileTreeIndex;
 import org.syncany.database.FileVersion;
 import org.syncany.database.FileVersion.FileStatus;
 import org.syncany.database.FileVersion.FileType;
 import org.syncany.database.PartialFileHistory;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.database.VectorClock;
 import org.syncany.operations.cleanup.CleanupOperationOptions.TimeUnit;
 import org.syncany.util.StringUtil;
 
@@ -49,6 +56,19 @@ import com.google.common.collect.ImmutableMap;
  * The file version DAO queries and modifies the <i>fileversion</i> in
  * the SQL database. This table corresponds to the Java object {@link FileVersion}.
  *
+ * <p>In addition to the <i>fileversion</i> table, the DAO maintains the <i>fileversion_current</i>
+ * table, which holds the last file version of each file history in <tt>MASTER</tt> database versions.
+ * It is updated whenever file versions are written or removed, and whenever database versions are
+ * marked <tt>DIRTY</tt> (see {@link #updateCurrentFileVersions(Connection, Collection)}), so that queries
+ * for the current file tree are simple index lookups instead of aggregations over all file versions.
+ *
+ * <p>The current file tree can be queried as a memory-mapped {@link FileTreeIndex} via
+ * {@link #getCurrentFileTreeIndex()}. If an index file is given, the index is persisted and 
+ * re-used by the next DAO instance. The DAO remembers which file histories were changed in the
+ * current transaction, and {@link #saveFileTreeIndex()} applies these changes to the index after
+ * they have been committed. A fingerprint of the file version table is only used to check whether
+ * a persisted index is still valid; an outdated index is rebuilt by the next access. 
+ *
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class FileVersionSqlDao extends AbstractSqlDao {
@@ -63,8 +83,24 @@ public class FileVersionSqlDao extends AbstractSqlDao {
            .put(TimeUnit.YEARS, "YYY")
            .build();	
 	
+	private File fileTreeIndexFile;
+	private FileTreeIndex fileTreeIndex;
+	private Set<FileHistoryId> fileTreeIndexChanges;
+	private long[] committedFingerprint;
+
 	public FileVersionSqlDao(Connection connection) {
+		this(connection, null);
+	}
+
+	public FileVersionSqlDao(Connection connection, File fileTreeIndexFile) {
 		super(connection);
+
+		this.fileTreeIndexFile = fileTreeIndexFile;
+		this.fileTreeIndex = null;
+		this.fileTreeIndexChanges = new HashSet<FileHistoryId>();
+
+		// Fingerprint of the committed tables, to check the persisted index before changes are applied to it
+		this.committedFingerprint = (fileTreeIndexFile != null && fileTreeIndexFile.exists()) ? getFileTreeIndexFingerprint() : null;
 	}
 
 	/**
@@ -81,12 +117,65 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 	 */
 	public void writeFileVersions(Connection connection, FileHistoryId fileHistoryId, long databaseVersionId, Collection<FileVersion> fileVersions)
 			throws SQLException {
-		PreparedStatement preparedStatement = getStatement(connection, "fileversion.insert.writeFileVersions.sql");
+		StatementBatch fileVersionBatch = new StatementBatch(connection, "fileversion.insert.writeFileVersions.sql");
+
+		addFileVersionsToBatch(fileVersionBatch, fileHistoryId, databaseVersionId, fileVersions);
+		fileVersionBatch.execute();
+
+		StatementBatch currentFileVersionBatch = new StatementBatch(connection, "fileversion_current.merge.all.writeCurrentFileVersions.sql");
+
+		addCurrentFileVersionToBatch(currentFileVersionBatch, fileHistoryId, databaseVersionId, fileVersions);
+		currentFileVersionBatch.execute();
+
+		addFileTreeIndexChanges(Arrays.asList(fileHistoryId));
+	}
+
+	/**
+	 * Writes the {@link FileVersion}s of all given {@link PartialFileHistory}s to the database table
+	 * <i>fileversion</i>, using a single batched statement for all file histories.
+	 *
+	 * <p><b>Note:</b> This method executes, but <b>does not commit</b> the queries.
+	 *
+	 * @param connection The connection used to execute the statements
+	 * @param databaseVersionId References the database version to which the file histories belong
+	 * @param fileHistories List of {@link PartialFileHistory}s whose file versions are to be written to the database
+	 * @throws SQLException If the SQL statement fails
+	 */
+	public void writeFileVersions(Connection connection, long databaseVersionId, Collection<PartialFileHistory> fileHistories) throws SQLException {
+		StatementBatch fileVersionBatch = new StatementBatch(connection, "fileversion.insert.writeFileVersions.sql");
+
+		for (PartialFileHistory fileHistory : fileHistories) {
+			addFileVersionsToBatch(fileVersionBatch, fileHistory.getFileHistoryId(), databaseVersionId, fileHistory.getFileVersions().values());
+		}
+
+		fileVersionBatch.execute();
+
+		// Update current file versions (database versions are always written as MASTER)
+		StatementBatch currentFileVersionBatch = new StatementBatch(connection, "fileversion_current.merge.all.writeCurrentFileVersions.sql");
+
+		List<FileHistoryId> fileHistoryIds = new ArrayList<FileHistoryId>();
+
+		for (PartialFileHistory fileHistory : fileHistories) {
+			addCurrentFileVersionToBatch(currentFileVersionBatch, fileHistory.getFileHistoryId(), databaseVersionId, fileHistory.getFileVersions()
+					.values());
+
+			fileHistoryIds.add(fileHistory.getFileHistoryId());
+		}
+
+		currentFileVersionBatch.execute();
+		addFileTreeIndexChanges(fileHistoryIds);
+	}
+
+	private void addFileVersionsToBatch(StatementBatch fileVersionBatch, FileHistoryId fileHistoryId, long databaseVersionId,
+			Collection<FileVersion> fileVersions) throws SQLException {
+
+		PreparedStatement preparedStatement = fileVersionBatch.getStatement();
+		String fileHistoryIdStr = fileHistoryId.toString();
 
 		for (FileVersion fileVersion : fileVersions) {
-			String fileContentChecksumStr = (fileVersion.getChecksum() != null) ? fileVersion.getChecksum().toString() : null;
+			byte[] fileContentChecksumBytes = (fileVersion.getChecksum() != null) ? fileVersion.getChecksum().getBytes() : null;
 
-			preparedStatement.setString(1, fileHistoryId.toString());
+			preparedStatement.setString(1, fileHistoryIdStr);
 			preparedStatement.setInt(2, Integer.parseInt("" + fileVersion.getVersion()));
 			preparedStatement.setLong(3, databaseVersionId);
 			preparedStatement.setString(4, fileVersion.getPath());
@@ -95,16 +184,95 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 			preparedStatement.setLong(7, fileVersion.getSize());
 			preparedStatement.setTimestamp(8, new Timestamp(fileVersion.getLastModified().getTime()));
 			preparedStatement.setString(9, fileVersion.getLinkTarget());
-			preparedStatement.setString(10, fileContentChecksumStr);
+			preparedStatement.setBytes(10, fileContentChecksumBytes);
 			preparedStatement.setTimestamp(11, new Timestamp(fileVersion.getUpdated().getTime()));
 			preparedStatement.setString(12, fileVersion.getPosixPermissions());
 			preparedStatement.setString(13, fileVersion.getDosAttributes());
+			preparedStatement.setInt(14, StringUtil.substrCount(fileVersion.getPath(), "/"));
+			preparedStatement.setString(15, getParentPath(fileVersion.getPath()));
 
-			preparedStatement.addBatch();
+			fileVersionBatch.add();
 		}
+	}
 
-		preparedStatement.executeBatch();
-		preparedStatement.close();
+	private void addCurrentFileVersionToBatch(StatementBatch currentFileVersionBatch, FileHistoryId fileHistoryId, long databaseVersionId,
+			Collection<FileVersion> fileVersions) throws SQLException {
+
+		FileVersion lastFileVersion = null;
+
+		for (FileVersion fileVersion : fileVersions) {
+			if (lastFileVersion == null || fileVersion.getVersion() > lastFileVersion.getVersion()) {
+				lastFileVersion = fileVersion;
+			}
+		}
+
+		if (lastFileVersion != null) {
+			PreparedStatement preparedStatement = currentFileVersionBatch.getStatement();
+
+			preparedStatement.setString(1, fileHistoryId.toString());
+			preparedStatement.setInt(2, Integer.parseInt("" + lastFileVersion.getVersion()));
+			preparedStatement.setLong(3, databaseVersionId);
+			preparedStatement.setString(4, lastFileVersion.getPath());
+			preparedStatement.setString(5, lastFileVersion.getStatus().toString());
+
+			currentFileVersionBatch.add();
+		}
+	}
+
+	/**
+	 * Re-determines the current file version (the last file version in a <tt>MASTER</tt> database version)
+	 * of the given file histories, and updates the <i>fileversion_current</i> table accordingly. This method
+	 * must be called after file versions of existing file histories have been removed, or after database
+	 * versions have been marked <tt>DIRTY</tt>.
+	 *
+	 * <p><b>Note:</b> This method executes, but <b>does not commit</b> the queries.
+	 *
+	 * @param connection The connection used to execute the statements
+	 * @param fileHistoryIds File histories whose current file version is to be updated
+	 * @throws SQLException If the SQL statement fails
+	 */
+	public void updateCurrentFileVersions(Connection connection, Collection<FileHistoryId> fileHistoryIds) throws SQLException {
+		if (fileHistoryIds.size() > 0) {
+			StatementBatch removeBatch = new StatementBatch(connection, "fileversion_current.delete.all.removeCurrentFileVersion.sql");
+			StatementBatch writeBatch = new StatementBatch(connection, "fileversion_current.insert.master.writeCurrentFileVersion.sql");
+
+			for (FileHistoryId fileHistoryId : fileHistoryIds) {
+				removeBatch.getStatement().setString(1, fileHistoryId.toString());
+				removeBatch.add();
+
+				writeBatch.getStatement().setString(1, fileHistoryId.toString());
+				writeBatch.add();
+			}
+
+			// All removals before the inserts; a file history may not exist in MASTER anymore
+			removeBatch.execute();
+			writeBatch.execute();
+
+			addFileTreeIndexChanges(fileHistoryIds);
+		}
+	}
+
+	/**
+	 * Returns the identifiers of all file histories that have file versions in the
+	 * database version with the given vector clock, independent of its status.
+	 */
+	public List<FileHistoryId> getFileHistoryIds(VectorClock databaseVersionVectorClock) {
+		try (PreparedStatement preparedStatement = getStatement("fileversion.select.all.getFileHistoryIdsByVectorClock.sql")) {
+			preparedStatement.setString(1, databaseVersionVectorClock.toString());
+
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				List<FileHistoryId> fileHistoryIds = new ArrayList<FileHistoryId>();
+
+				while (resultSet.next()) {
+					fileHistoryIds.add(FileHistoryId.parseFileId(resultSet.getString("filehistory_id")));
+				}
+
+				return fileHistoryIds;
+			}
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
 	}
 
 	/**
@@ -142,6 +310,8 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 
 				preparedStatement.executeBatch();
 			}
+
+			updateCurrentFileVersions(connection, purgeFileVersions.keySet());
 		}
 	}
 
@@ -159,6 +329,8 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 
 				preparedStatement.executeBatch();
 			}
+
+			updateCurrentFileVersions(connection, purgeFileVersions.keySet());
 		}
 	}
 
@@ -189,6 +361,142 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 		}
 	}
 
+	/**
+	 * Returns the currently active {@link FileVersion}s as a memory-mapped {@link FileTreeIndex}. Unlike
+	 * {@link #getCurrentFileTree()}, the file versions are not loaded onto the heap, but read from the
+	 * index file on every lookup.
+	 * 
+	 * <p>If there is no valid index, i.e. if the persisted index file does not exist or does not match 
+	 * the file version table, the index is rebuilt by streaming the current file tree from the database.
+	 *
+	 * @return Returns the current file tree as an index of relative paths and file history IDs to {@link FileVersion}s
+	 */
+	public synchronized FileTreeIndex getCurrentFileTreeIndex() {
+		if (getUpToDateFileTreeIndex() == null) {
+			committedFingerprint = getFileTreeIndexFingerprint();
+			fileTreeIndex = createFileTreeIndex(committedFingerprint);
+		}
+
+		return fileTreeIndex;
+	}
+
+	/**
+	 * Returns the file tree index if it is valid, and <tt>null</tt> otherwise. Unlike 
+	 * {@link #getCurrentFileTreeIndex()}, this method never rebuilds the index.
+	 * 
+	 * <p>The index of this DAO is re-used as long as the persisted index file has not been
+	 * updated by another DAO instance. Otherwise, the index file is loaded; it is only checked 
+	 * against the fingerprint of the file version table if its tag is unknown to this DAO.
+	 */
+	public synchronized FileTreeIndex getUpToDateFileTreeIndex() {
+		File persistedFileTreeIndexFile = getPersistedFileTreeIndexFile();
+		long[] persistedTag = readFileTreeIndexTag(persistedFileTreeIndexFile);
+
+		if (fileTreeIndex != null && Arrays.equals(fileTreeIndex.getTag(), persistedTag)) {
+			return fileTreeIndex;
+		}
+
+		fileTreeIndex = null;
+
+		if (persistedTag != null) {
+			if (!Arrays.equals(persistedTag, committedFingerprint)) {
+				committedFingerprint = getFileTreeIndexFingerprint();
+			}
+
+			if (Arrays.equals(persistedTag, committedFingerprint)) {
+				fileTreeIndex = loadFileTreeIndexFile(persistedFileTreeIndexFile);
+			}
+			else {
+				logger.log(Level.INFO, "File tree index file " + persistedFileTreeIndexFile + " is outdated.");
+			}
+		}
+
+		return fileTreeIndex;
+	}
+
+	/**
+	 * Applies the changes of the committed transaction to the file tree index, and persists them
+	 * in the index's delta file. Only the current file versions of the file histories changed in the
+	 * transaction are queried, i.e. the costs do not depend on the size of the file tree. This method 
+	 * should be called after file versions have been committed. 
+	 * 
+	 * <p>The index is only updated if it has been created before, i.e. if it is actually used. If
+	 * the persisted index did not match the database before the transaction, it is deleted and 
+	 * rebuilt by the next access.
+	 */
+	public synchronized void saveFileTreeIndex() {
+		Set<FileHistoryId> changedFileHistoryIds = fileTreeIndexChanges;
+		fileTreeIndexChanges = new HashSet<FileHistoryId>();
+
+		File persistedFileTreeIndexFile = getPersistedFileTreeIndexFile();
+		long[] persistedTag = readFileTreeIndexTag(persistedFileTreeIndexFile);
+
+		if (persistedTag == null) {
+			fileTreeIndex = null;
+			committedFingerprint = null;
+
+			return;
+		}
+
+		long[] fingerprint = getFileTreeIndexFingerprint();
+
+		if (changedFileHistoryIds.isEmpty() && Arrays.equals(persistedTag, fingerprint)) {
+			committedFingerprint = fingerprint;
+			return;
+		}
+
+		FileTreeIndex previousFileTreeIndex = null;
+
+		if (fileTreeIndex != null && Arrays.equals(fileTreeIndex.getTag(), persistedTag)) {
+			previousFileTreeIndex = fileTreeIndex;
+		}
+		else if (Arrays.equals(persistedTag, committedFingerprint)) {
+			previousFileTreeIndex = loadFileTreeIndexFile(persistedFileTreeIndexFile);
+		}
+
+		committedFingerprint = fingerprint;
+
+		if (previousFileTreeIndex == null) {
+			logger.log(Level.INFO, "File tree index file " + persistedFileTreeIndexFile + " did not match database before commit. Deleting index.");
+			deleteFileTreeIndex();
+
+			return;
+		}
+
+		try {
+			fileTreeIndex = previousFileTreeIndex.update(fingerprint, getCurrentFileVersions(changedFileHistoryIds));
+			logger.log(Level.FINE, "Updated file tree index with {0} changed file histories.", changedFileHistoryIds.size());
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "Cannot update file tree index file " + persistedFileTreeIndexFile + ". Deleting index.", e);
+			deleteFileTreeIndex();
+		}
+	}
+
+	/**
+	 * Discards the file tree index changes of the current transaction. This method should 
+	 * be called after a rollback.
+	 */
+	public synchronized void clearFileTreeIndexChanges() {
+		fileTreeIndexChanges.clear();
+		fileTreeIndex = null;
+
+		File persistedFileTreeIndexFile = getPersistedFileTreeIndexFile();
+		committedFingerprint = (persistedFileTreeIndexFile != null && persistedFileTreeIndexFile.exists()) ? getFileTreeIndexFingerprint() : null;
+	}
+
+	/**
+	 * Discards the file tree index and deletes the persisted index file (if any).
+	 */
+	public synchronized void deleteFileTreeIndex() {
+		File persistedFileTreeIndexFile = getPersistedFileTreeIndexFile();
+		fileTreeIndex = null;
+
+		if (persistedFileTreeIndexFile != null && !FileTreeIndex.delete(persistedFileTreeIndexFile)) {
+			logger.log(Level.WARNING, "Cannot delete file " + persistedFileTreeIndexFile);
+		}
+	}
+
 	public List<FileVersion> getFileHistory(FileHistoryId fileHistoryId) {
 		try (PreparedStatement preparedStatement = getStatement("fileversion.select.master.getFileHistoryById.sql")) {
 			preparedStatement.setString(1, fileHistoryId.toString());
@@ -229,29 +537,43 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 			pathExpression = (pathExpression == null || "".equals(pathExpression)) ? "%" : pathExpression;
 		}
 		
-		date = (date == null) ? new Date(4133984461000L) : date;
-
 		int slashCount = StringUtil.substrCount(pathExpression, "/");
 		int filterMinSlashCount = (recursive || fileHistoryId) ? 0 : slashCount;
 		int filterMaxSlashCount = (recursive || fileHistoryId) ? Integer.MAX_VALUE : slashCount;
 
+		// Listing a single folder: All matches have the same (indexed) parent path
+		String parentPath = (recursive || fileHistoryId) ? null : getParentPathOfExpression(pathExpression);
+		
+		// Without a date, the current file tree is queried (no aggregation needed)
+		boolean currentFileTree = (date == null);
+		String fileTreeStatement = getFileListStatement(currentFileTree, parentPath != null);
+
 		String[] fileTypesStr = createFileTypesArray(fileTypes);		
 		String fileStatusNotEqualTo = (deleted) ? "INVALID" : FileStatus.DELETED.toString(); 
 		
 		if (logger.isLoggable(Level.INFO)) {
 			logger.log(Level.INFO, " getFileTree(path = " + pathExpression + ", history = " + fileHistoryPrefix + ", minSlash = "
-					+ filterMinSlashCount + ", maxSlash = " + filterMaxSlashCount + ", date <= " + date + ", types = " 
-					+ StringUtil.join(fileTypesStr, ", "));
+					+ filterMinSlashCount + ", maxSlash = " + filterMaxSlashCount + ", parent = " + parentPath + ", date <= "
+					+ (currentFileTree ? "(current)" : date) + ", types = " + StringUtil.join(fileTypesStr, ", "));
 		}
 
-		try (PreparedStatement preparedStatement = getStatement("fileversion.select.master.getFilteredFileTree.sql")) {
-			preparedStatement.setString(1, fileStatusNotEqualTo);
-			preparedStatement.setString(2, pathExpression);
-			preparedStatement.setString(3, fileHistoryPrefix);
-			preparedStatement.setInt(4, filterMinSlashCount);
-			preparedStatement.setInt(5, filterMaxSlashCount);
-			preparedStatement.setArray(6, connection.createArrayOf("varchar", fileTypesStr));
-			preparedStatement.setTimestamp(7, new Timestamp(date.getTime()));
+		try (PreparedStatement preparedStatement = getStatement(fileTreeStatement)) {
+			int parameterIndex = 1;
+
+			if (parentPath != null) {
+				preparedStatement.setString(parameterIndex++, parentPath);
+			}
+
+			preparedStatement.setString(parameterIndex++, fileStatusNotEqualTo);
+			preparedStatement.setString(parameterIndex++, pathExpression);
+			preparedStatement.setString(parameterIndex++, fileHistoryPrefix);
+			preparedStatement.setInt(parameterIndex++, filterMinSlashCount);
+			preparedStatement.setInt(parameterIndex++, filterMaxSlashCount);
+			preparedStatement.setArray(parameterIndex++, connection.createArrayOf("varchar", fileTypesStr));
+
+			if (!currentFileTree) {
+				preparedStatement.setTimestamp(parameterIndex++, new Timestamp(date.getTime()));
+			}
 
 			return getFileTree(preparedStatement);
 		}
@@ -260,6 +582,35 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 		}
 	}
 
+	private String getFileListStatement(boolean currentFileTree, boolean inFolder) {
+		if (currentFileTree) {
+			return (inFolder) ? "fileversion.select.master.getFilteredCurrentFileTreeInFolder.sql"
+					: "fileversion.select.master.getFilteredCurrentFileTree.sql";
+		}
+		else {
+			return (inFolder) ? "fileversion.select.master.getFilteredFileTreeInFolder.sql" : "fileversion.select.master.getFilteredFileTree.sql";
+		}
+	}
+
+	/**
+	 * Returns the parent path shared by all paths of the given depth that match the given
+	 * <tt>LIKE</tt> expression, or <tt>null</tt> if the parent folder contains a wildcard. 
+	 * Only '%' is treated as a wildcard, since the {@link org.syncany.operations.ls.LsOperation LsOperation} only generates '%'.
+	 */
+	private String getParentPathOfExpression(String pathExpression) {
+		String parentPath = getParentPath(pathExpression);
+		return (parentPath.contains("%")) ? null : parentPath;
+	}
+
+	/**
+	 * Returns the parent path of the given relative path, or an empty
+	 * string if the path is in the root folder.
+	 */
+	private String getParentPath(String path) {
+		int lastSlashIndex = path.lastIndexOf('/');
+		return (lastSlashIndex >= 0) ? path.substring(0, lastSlashIndex) : "";
+	}
+
 	private String[] createFileTypesArray(Set<FileType> fileTypes) {
 		String[] fileTypesStr = null;
 
@@ -401,6 +752,133 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 		}
 	}
 
+	private synchronized void addFileTreeIndexChanges(Collection<FileHistoryId> fileHistoryIds) {
+		if (fileTreeIndexFile != null || fileTreeIndex != null) {
+			fileTreeIndexChanges.addAll(fileHistoryIds);
+		}
+	}
+
+	/**
+	 * Returns the current file versions of the given file histories. File histories that
+	 * are not part of the current file tree (anymore) are mapped to <tt>null</tt>.
+	 */
+	private Map<FileHistoryId, FileVersion> getCurrentFileVersions(Collection<FileHistoryId> fileHistoryIds) {
+		Map<FileHistoryId, FileVersion> currentFileVersions = new HashMap<FileHistoryId, FileVersion>();
+		List<String> fileHistoryIdsStr = new ArrayList<String>();
+
+		for (FileHistoryId fileHistoryId : fileHistoryIds) {
+			currentFileVersions.put(fileHistoryId, null);
+			fileHistoryIdsStr.add(fileHistoryId.toString());
+		}
+
+		if (fileHistoryIdsStr.size() > 0) {
+			try (PreparedStatement preparedStatement = getStatement("fileversion.select.master.getCurrentFileVersionsByIds.sql")) {
+				preparedStatement.setArray(1, connection.createArrayOf("varchar", fileHistoryIdsStr.toArray(new String[0])));
+
+				try (ResultSet resultSet = preparedStatement.executeQuery()) {
+					while (resultSet.next()) {
+						FileVersion fileVersion = createFileVersionFromRow(resultSet);
+						currentFileVersions.put(fileVersion.getFileHistoryId(), fileVersion);
+					}
+				}
+			}
+			catch (SQLException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		return currentFileVersions;
+	}
+
+	/**
+	 * Returns the file of the persisted index, i.e. the given index file, or the (temporary)
+	 * file of the current index if no index file is given.
+	 */
+	private File getPersistedFileTreeIndexFile() {
+		if (fileTreeIndexFile != null) {
+			return fileTreeIndexFile;
+		}
+		else {
+			return (fileTreeIndex != null) ? fileTreeIndex.getFile() : null;
+		}
+	}
+
+	private long[] readFileTreeIndexTag(File persistedFileTreeIndexFile) {
+		try {
+			return (persistedFileTreeIndexFile != null) ? FileTreeIndex.readTag(persistedFileTreeIndexFile) : null;
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "Cannot read file tree index file " + persistedFileTreeIndexFile + ". Ignoring file.", e);
+			return null;
+		}
+	}
+
+	private FileTreeIndex loadFileTreeIndexFile(File persistedFileTreeIndexFile) {
+		try {
+			FileTreeIndex loadedFileTreeIndex = FileTreeIndex.load(persistedFileTreeIndexFile);
+
+			if (loadedFileTreeIndex != null) {
+				logger.log(Level.INFO, "Loaded file tree index with {0} file versions from " + persistedFileTreeIndexFile, loadedFileTreeIndex.size());
+			}
+
+			return loadedFileTreeIndex;
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "Cannot read file tree index file " + persistedFileTreeIndexFile + ". Rebuilding file tree index.", e);
+			return null;
+		}
+	}
+
+	private FileTreeIndex createFileTreeIndex(long[] fingerprint) {
+		try (PreparedStatement preparedStatement = getStatement("fileversion.select.master.getCurrentFileTreeOrderedByPath.sql")) {
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				FileTreeIndex newFileTreeIndex = FileTreeIndex.create(getWritableFileTreeIndexFile(), fingerprint, new FileVersionIterator(resultSet));
+				logger.log(Level.INFO, "Created file tree index with {0} file versions at " + newFileTreeIndex.getFile(), newFileTreeIndex.size());
+
+				return newFileTreeIndex;
+			}
+		}
+		catch (SQLException | IOException e) {
+			throw new RuntimeException("Cannot create file tree index.", e);
+		}
+	}
+
+	/**
+	 * Returns the file to write a new file tree index to. If no index file is given, or
+	 * if the index file cannot be replaced (e.g. because it is still mapped by another 
+	 * index on Windows), a temporary file is used instead.
+	 */
+	private File getWritableFileTreeIndexFile() throws IOException {
+		if (fileTreeIndexFile != null && (!fileTreeIndexFile.exists() || fileTreeIndexFile.delete())) {
+			return fileTreeIndexFile;
+		}
+		else {
+			File tempFileTreeIndexFile = File.createTempFile("syncany-filetree-index-", ".dat");
+			tempFileTreeIndexFile.deleteOnExit();
+
+			return tempFileTreeIndexFile;
+		}
+	}
+
+	/**
+	 * Returns the number of file versions, the highest database version ID of all
+	 * file versions and the sum of all MASTER database version IDs. The values change whenever
+	 * file versions are added or removed, or database versions are marked dirty.
+	 */
+	private long[] getFileTreeIndexFingerprint() {
+		try (PreparedStatement preparedStatement = getStatement("fileversion.select.all.getFileTreeIndexFingerprint.sql")) {
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				resultSet.next();
+
+				return new long[] { resultSet.getLong("fileversioncount"), resultSet.getLong("maxdatabaseversionid"),
+						resultSet.getLong("masterdatabaseversionidsum") };
+			}
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	private FileVersion executeAndCreateFileVersion(PreparedStatement preparedStatement) {
 		try (ResultSet resultSet = preparedStatement.executeQuery()) {
 			if (resultSet.next()) {
@@ -431,9 +909,10 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 			fileVersion.setLinkTarget(resultSet.getString("linktarget"));
 		}
 
-		if (resultSet.getString("filecontent_checksum") != null) {
-			FileChecksum fileChecksum = FileChecksum.parseFileChecksum(resultSet.getString("filecontent_checksum"));
-			fileVersion.setChecksum(fileChecksum);
+		byte[] fileContentChecksumBytes = resultSet.getBytes("filecontent_checksum");
+
+		if (fileContentChecksumBytes != null) {
+			fileVersion.setChecksum(new FileChecksum(fileContentChecksumBytes));
 		}
 
 		if (resultSet.getString("updated") != null) {
@@ -452,4 +931,41 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 	}
 
 
+
+	private class FileVersionIterator implements Iterator<FileVersion> {
+		private ResultSet resultSet;
+		private boolean hasNext;
+
+		public FileVersionIterator(ResultSet resultSet) throws SQLException {
+			this.resultSet = resultSet;
+			this.hasNext = resultSet.next();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return hasNext;
+		}
+
+		@Override
+		public FileVersion next() {
+			if (!hasNext) {
+				throw new NoSuchElementException();
+			}
+
+			try {
+				FileVersion fileVersion = createFileVersionFromRow(resultSet);
+				hasNext = resultSet.next();
+
+				return fileVersion;
+			}
+			catch (SQLException e) {
+				throw new RuntimeException("Cannot load next SQL row.", e);
+			}
+		}
+
+		@Override
+		public void remove() {
+			throw new RuntimeException("Not implemented.");
+		}
+	}
 }
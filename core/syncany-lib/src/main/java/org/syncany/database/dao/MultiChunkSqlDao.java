@@ -28,6 +28,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.syncany.chunk.MultiChunk;
 import org.syncany.database.ChunkEntry.ChunkChecksum;
@@ -50,33 +51,47 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 		super(connection);
 	}
 
+	/**
+	 * Writes the given multichunks and their chunk references to the database, using 
+	 * batched <tt>MERGE</tt> statements. All multichunks are written before the chunk references, 
+	 * since the references depend on them.
+	 * 
+	 * <p><b>Note:</b> This method executes, but <b>does not commit</b> the queries.
+	 */
 	public void writeMultiChunks(Connection connection, long databaseVersionId, Collection<MultiChunkEntry> multiChunks) throws SQLException {
-		for (MultiChunkEntry multiChunk : multiChunks) {
-			PreparedStatement preparedStatement = getStatement(connection, "multichunk.insert.all.writeMultiChunks.sql");
+		if (multiChunks.size() > 0) {
+			StatementBatch multiChunkBatch = new StatementBatch(connection, "multichunk.insert.all.writeMultiChunks.sql");
+			PreparedStatement preparedStatement = multiChunkBatch.getStatement();
 
-			preparedStatement.setString(1, multiChunk.getId().toString());
-			preparedStatement.setLong(2, databaseVersionId);
-			preparedStatement.setLong(3, multiChunk.getSize());
-			
-			preparedStatement.executeUpdate();
-			preparedStatement.close();
+			for (MultiChunkEntry multiChunk : multiChunks) {
+				preparedStatement.setBytes(1, multiChunk.getId().getBytes());
+				preparedStatement.setLong(2, databaseVersionId);
+				preparedStatement.setLong(3, multiChunk.getSize());
+				
+				multiChunkBatch.add();
+			}
 			
-			writeMultiChunkRefs(connection, multiChunk);			
+			multiChunkBatch.execute();
+			writeMultiChunkRefs(connection, multiChunks);
 		}
 	}
 
-	private void writeMultiChunkRefs(Connection connection, MultiChunkEntry multiChunk) throws SQLException {
-		PreparedStatement preparedStatement = getStatement("multichunk.insert.all.writeMultiChunkRefs.sql");
+	private void writeMultiChunkRefs(Connection connection, Collection<MultiChunkEntry> multiChunks) throws SQLException {
+		StatementBatch multiChunkRefBatch = new StatementBatch(connection, "multichunk.insert.all.writeMultiChunkRefs.sql");
+		PreparedStatement preparedStatement = multiChunkRefBatch.getStatement();
 		
-		for (ChunkChecksum chunkChecksum : multiChunk.getChunks()) {
-			preparedStatement.setString(1, multiChunk.getId().toString());
-			preparedStatement.setString(2, chunkChecksum.toString());
+		for (MultiChunkEntry multiChunk : multiChunks) {
+			byte[] multiChunkIdBytes = multiChunk.getId().getBytes();
 			
-			preparedStatement.addBatch();			
+			for (ChunkChecksum chunkChecksum : multiChunk.getChunks()) {
+				preparedStatement.setBytes(1, multiChunkIdBytes);
+				preparedStatement.setBytes(2, chunkChecksum.getBytes());
+				
+				multiChunkRefBatch.add();			
+			}
 		}
 		
-		preparedStatement.executeBatch();
-		preparedStatement.close();
+		multiChunkRefBatch.execute();
 	}	
 
 	public void writeMuddyMultiChunks(Map<DatabaseVersionHeader, Collection<MultiChunkEntry>> muddyMultiChunksPerDatabaseVersion) throws SQLException {
@@ -86,11 +101,11 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 			Collection<MultiChunkEntry> muddyMultiChunks = muddyMultiChunksPerDatabaseVersion.get(muddyDatabaseVersionHeader);
 			
 			for (MultiChunkEntry muddyMultiChunk : muddyMultiChunks) {
-				String multiChunkIdStr = muddyMultiChunk.getId().toString();
+				byte[] multiChunkIdBytes = muddyMultiChunk.getId().getBytes();
 				String clientName = muddyDatabaseVersionHeader.getClient();
 				Long clientVersion = muddyDatabaseVersionHeader.getVectorClock().getClock(clientName);
 				
-				preparedStatement.setString(1, multiChunkIdStr);
+				preparedStatement.setBytes(1, multiChunkIdBytes);
 				preparedStatement.setString(2, clientName);
 				preparedStatement.setLong(3, clientVersion);
 				
@@ -122,6 +137,31 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 		preparedStatement.close();
 	}
 	
+	/**
+	 * Removes the given multichunks and their chunk references from the database. 
+	 * The referenced chunks themselves are not removed.
+	 * 
+	 * <p><b>Note:</b> This method executes, but <b>does not commit</b> the queries.
+	 */
+	public void removeMultiChunks(Collection<MultiChunkEntry> multiChunks) throws SQLException {
+		if (multiChunks.size() > 0) {
+			StatementBatch multiChunkRefBatch = new StatementBatch(connection, "multichunk.delete.all.removeMultiChunkChunkRefs.sql");
+			StatementBatch multiChunkBatch = new StatementBatch(connection, "multichunk.delete.all.removeMultiChunks.sql");
+			
+			for (MultiChunkEntry multiChunk : multiChunks) {
+				multiChunkRefBatch.getStatement().setBytes(1, multiChunk.getId().getBytes());
+				multiChunkRefBatch.add();
+				
+				multiChunkBatch.getStatement().setBytes(1, multiChunk.getId().getBytes());
+				multiChunkBatch.add();
+			}
+			
+			// Note: Chunk references must be removed first (foreign key constraints)
+			multiChunkRefBatch.execute();
+			multiChunkBatch.execute();
+		}
+	}
+	
 	public void removeNonMuddyMultiChunks() throws SQLException {
 		PreparedStatement preparedStatement = getStatement("multichunk_muddy.delete.muddy.removeNonMuddyMultiChunks.sql");
 		preparedStatement.executeUpdate();	
@@ -139,11 +179,11 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 		}
 		else {
 			try (PreparedStatement preparedStatement = getStatement("multichunk.select.all.getMultiChunkIdsForFileChecksum.sql")) {
-				preparedStatement.setString(1, fileChecksum.toString());
+				preparedStatement.setBytes(1, fileChecksum.getBytes());
 	
 				try (ResultSet resultSet = preparedStatement.executeQuery()) {
 					while (resultSet.next()) {
-						multiChunkIds.add(MultiChunkId.parseMultiChunkId(resultSet.getString("multichunk_id")));
+						multiChunkIds.add(new MultiChunkId(resultSet.getBytes("multichunk_id")));
 					}
 		
 					return multiChunkIds;
@@ -189,11 +229,11 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 	 */
 	public MultiChunkId getMultiChunkId(ChunkChecksum chunkChecksum) {
 		try (PreparedStatement preparedStatement = getStatement("multichunk.select.all.getMultiChunkIdForChunk.sql")) {
-			preparedStatement.setString(1, chunkChecksum.toString());
+			preparedStatement.setBytes(1, chunkChecksum.getBytes());
 					
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				if (resultSet.next()) {
-					return MultiChunkId.parseMultiChunkId(resultSet.getString("multichunk_id"));
+					return new MultiChunkId(resultSet.getBytes("multichunk_id"));
 				}
 			}
 
@@ -208,23 +248,23 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 	 * Note: This method selects also {@link DatabaseVersionStatus#DIRTY DIRTY}.
 	 */
 	public Map<ChunkChecksum,MultiChunkId> getMultiChunkIdsByChecksums(List<ChunkChecksum> chunkChecksums) {
-		// Gather a unique array of checksum strings (required for query!)
+		// Gather a unique array of checksums (required for query!)
 		Set<ChunkChecksum> chunkChecksumSet = new HashSet<ChunkChecksum>(chunkChecksums);
-		String[] checksums = new String[chunkChecksumSet.size()];
+		byte[][] checksums = new byte[chunkChecksumSet.size()][];
 		int i = 0;
 		for (ChunkChecksum checksum : chunkChecksumSet) {
-			checksums[i] = checksum.toString();
+			checksums[i] = checksum.getBytes();
 			i++;
 		}
 		
 		// Execute query
 		Map<ChunkChecksum, MultiChunkId> result = new HashMap<ChunkChecksum, MultiChunkId>();
 		try (PreparedStatement preparedStatement = getStatement("multichunk.select.all.getMultiChunkIdForChunks.sql")) {
-			preparedStatement.setArray(1, connection.createArrayOf("varchar", checksums));	
+			preparedStatement.setArray(1, connection.createArrayOf("varbinary", checksums));	
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				while (resultSet.next()) {
-					result.put(ChunkChecksum.parseChunkChecksum(resultSet.getString("chunk_checksum")),
-							MultiChunkId.parseMultiChunkId(resultSet.getString("multichunk_id")));
+					result.put(new ChunkChecksum(resultSet.getBytes("chunk_checksum")),
+							new MultiChunkId(resultSet.getBytes("multichunk_id")));
 					
 				}
 			}
@@ -242,7 +282,7 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 		try (PreparedStatement preparedStatement = getStatement("multichunk.select.dirty.getDirtyMultiChunkIds.sql")) {
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				while (resultSet.next()) {
-					dirtyMultiChunkIds.add(MultiChunkId.parseMultiChunkId(resultSet.getString("multichunk_id")));
+					dirtyMultiChunkIds.add(new MultiChunkId(resultSet.getBytes("multichunk_id")));
 				}
 				
 				return dirtyMultiChunkIds;
@@ -264,6 +304,45 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 		}
 	}
 
+	/**
+	 * Determines all multichunks whose remaining chunks use less than the given ratio of the
+	 * multichunk size, grouped by the (internal) ID of the database version they belong to. 
+	 * The returned entries only list the remaining chunks, i.e. the chunks still referenced in 
+	 * the <i>multichunk_chunk</i> table.
+	 */
+	public Map<Long, List<MultiChunkEntry>> getSparseMultiChunks(double maxUsageRatio) {
+		try (PreparedStatement preparedStatement = getStatement("multichunk.select.all.getSparseMultiChunks.sql")) {
+			preparedStatement.setDouble(1, maxUsageRatio);
+
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				Map<Long, List<MultiChunkEntry>> sparseMultiChunks = new TreeMap<Long, List<MultiChunkEntry>>();
+				MultiChunkEntry currentMultiChunkEntry = null;
+				
+				while (resultSet.next()) {
+					long databaseVersionId = resultSet.getLong("databaseversion_id");
+					MultiChunkId multiChunkId = new MultiChunkId(resultSet.getBytes("multichunk_id"));
+					
+					if (currentMultiChunkEntry == null || !currentMultiChunkEntry.getId().equals(multiChunkId)) {
+						currentMultiChunkEntry = new MultiChunkEntry(multiChunkId, resultSet.getLong("size"));
+						
+						if (!sparseMultiChunks.containsKey(databaseVersionId)) {
+							sparseMultiChunks.put(databaseVersionId, new ArrayList<MultiChunkEntry>());
+						}
+						
+						sparseMultiChunks.get(databaseVersionId).add(currentMultiChunkEntry);
+					}
+					
+					currentMultiChunkEntry.addChunk(new ChunkChecksum(resultSet.getBytes("chunk_checksum")));
+				}
+				
+				return sparseMultiChunks;
+			}
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	public Map<MultiChunkId, MultiChunkEntry> getMultiChunks() {
 		try (PreparedStatement preparedStatement = getStatement("multichunk.select.all.getMultiChunks.sql")) {
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
@@ -290,7 +369,7 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 		Map<MultiChunkId, MultiChunkEntry> unusedMultiChunkIds = new HashMap<MultiChunkId, MultiChunkEntry>();		
 		
 		while (resultSet.next()) {
-			MultiChunkId multiChunkId = MultiChunkId.parseMultiChunkId(resultSet.getString("id"));
+			MultiChunkId multiChunkId = new MultiChunkId(resultSet.getBytes("id"));
 			long multiChunkSize = resultSet.getLong("size");
 						
 			unusedMultiChunkIds.put(multiChunkId, new MultiChunkEntry(multiChunkId, multiChunkSize));
@@ -304,7 +383,7 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 		MultiChunkId currentMultiChunkId = null;
 		
 		while (resultSet.next()) {			
-			MultiChunkId multiChunkId = MultiChunkId.parseMultiChunkId(resultSet.getString("multichunk_id"));
+			MultiChunkId multiChunkId = new MultiChunkId(resultSet.getBytes("multichunk_id"));
 			long multiChunkSize = resultSet.getLong("size");
 			
 			MultiChunkEntry multiChunkEntry = null;
@@ -316,7 +395,7 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 				multiChunkEntry = new MultiChunkEntry(multiChunkId, multiChunkSize);
 			}
 			
-			multiChunkEntry.addChunk(ChunkChecksum.parseChunkChecksum(resultSet.getString("chunk_checksum")));
+			multiChunkEntry.addChunk(new ChunkChecksum(resultSet.getBytes("chunk_checksum")));
 			multiChunkEntries.put(multiChunkId, multiChunkEntry); 
 			
 			currentMultiChunkId = multiChunkId;
@@ -19,10 +19,13 @@ package org.syncany.operations;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.security.MessageDigest;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,7 +33,6 @@ import org.apache.commons.io.FileUtils;
 import org.syncany.chunk.Chunker;
 import org.syncany.chunk.Deduper;
 import org.syncany.chunk.MultiChunk;
-import org.syncany.chunk.MultiChunker;
 import org.syncany.config.Config;
 import org.syncany.database.ChunkEntry.ChunkChecksum;
 import org.syncany.database.FileContent;
@@ -48,11 +50,27 @@ import org.syncany.util.StringUtil;
  * <p>It uses the local {@link SqlDatabase} and an optional {@link MemoryDatabase}
  * to perform file checksum and chunk checksum lookups.   
  * 
+ * <p>To assemble a file, the chunk-to-multichunk mapping for all of the file's chunks
+ * is looked up at once, and the decrypted multichunks are kept open while the file is
+ * being assembled (up to {@link #MAX_OPEN_MULTICHUNKS}, least recently used first).
+ * That way, each multichunk is typically only opened once per file, instead of once
+ * per chunk.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class Assembler {
 	private static final Logger logger = Logger.getLogger(Assembler.class.getSimpleName());
 	
+	/**
+	 * Maximum number of multichunks that are kept open while assembling a single file.
+	 */
+	private static final int MAX_OPEN_MULTICHUNKS = 16;
+	
+	/**
+	 * Size of the buffer used to copy chunk data into the reconstructed file.
+	 */
+	private static final int COPY_BUFFER_SIZE = 128 * 1024;
+	
 	private Config config;
 	private SqlDatabase localDatabase;
 	private MemoryDatabase memoryDatabase;
@@ -94,40 +112,44 @@ public class Assembler {
 				
 		// Create non-empty file
 		Chunker chunker = config.getChunker();
-		MultiChunker multiChunker = config.getMultiChunker();
+		
+		List<ChunkChecksum> fileChunks = fileContent.getChunks();
+		Map<ChunkChecksum, MultiChunkId> multiChunkIdsForChunks = getMultiChunkIds(fileChunks);
 		
 		FileOutputStream reconstructedFileOutputStream = new FileOutputStream(reconstructedFileInCache);		
 		MessageDigest reconstructedFileChecksum = MessageDigest.getInstance(chunker.getChecksumAlgorithm());
+		OpenMultiChunkCache openMultiChunks = new OpenMultiChunkCache();
 		
-		if (fileContent != null) { // File can be empty!
-			Collection<ChunkChecksum> fileChunks = fileContent.getChunks();
+		try {
+			byte[] buffer = new byte[COPY_BUFFER_SIZE];
 
 			for (ChunkChecksum chunkChecksum : fileChunks) {
-				MultiChunkId multiChunkIdForChunk = localDatabase.getMultiChunkId(chunkChecksum);
+				MultiChunkId multiChunkIdForChunk = multiChunkIdsForChunks.get(chunkChecksum);
 
-				if (multiChunkIdForChunk == null && memoryDatabase != null) {
-					multiChunkIdForChunk = memoryDatabase.getMultiChunkIdForChunk(chunkChecksum);
+				if (multiChunkIdForChunk == null) {
+					throw new Exception("Cannot determine multichunk for chunk " + chunkChecksum);
 				}
 
-				File decryptedMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(multiChunkIdForChunk);
-
-				MultiChunk multiChunk = multiChunker.createMultiChunk(decryptedMultiChunkFile);
-				InputStream chunkInputStream = multiChunk.getChunkInputStream(chunkChecksum.getBytes());
-
-				byte[] buffer = new byte[4096];
-				int read = 0;
-
-				while (-1 != (read = chunkInputStream.read(buffer))) {
-					reconstructedFileChecksum.update(buffer, 0, read);
-					reconstructedFileOutputStream.write(buffer, 0, read);
+				MultiChunk multiChunk = openMultiChunks.getOrOpen(multiChunkIdForChunk);
+				
+				try (InputStream chunkInputStream = multiChunk.getChunkInputStream(chunkChecksum.getBytes())) {
+					if (chunkInputStream == null) {
+						throw new Exception("Cannot find chunk " + chunkChecksum + " in multichunk " + multiChunkIdForChunk);
+					}
+					
+					int read = 0;
+	
+					while (-1 != (read = chunkInputStream.read(buffer))) {
+						reconstructedFileChecksum.update(buffer, 0, read);
+						reconstructedFileOutputStream.write(buffer, 0, read);
+					}
 				}
-
-				chunkInputStream.close();
-				multiChunk.close();
 			}
 		}
-
-		reconstructedFileOutputStream.close();
+		finally {
+			reconstructedFileOutputStream.close();
+			openMultiChunks.closeAll();
+		}
 
 		// Validate checksum
 		byte[] reconstructedFileExpectedChecksum = fileContent.getChecksum().getBytes();
@@ -140,4 +162,78 @@ public class Assembler {
 		
 		return reconstructedFileInCache;
 	}	
+	
+	/**
+	 * Looks up the multichunk IDs for the given chunks in a single query. Chunks that
+	 * are not (yet) known to the local database are looked up in the memory database. 
+	 */
+	private Map<ChunkChecksum, MultiChunkId> getMultiChunkIds(List<ChunkChecksum> chunkChecksums) {
+		Map<ChunkChecksum, MultiChunkId> multiChunkIds = localDatabase.getMultiChunkIdsByChecksums(chunkChecksums);
+		
+		if (memoryDatabase != null) {
+			for (ChunkChecksum chunkChecksum : chunkChecksums) {
+				if (!multiChunkIds.containsKey(chunkChecksum)) {
+					MultiChunkId multiChunkId = memoryDatabase.getMultiChunkIdForChunk(chunkChecksum);
+					
+					if (multiChunkId != null) {
+						multiChunkIds.put(chunkChecksum, multiChunkId);
+					}
+				}
+			}
+		}
+		
+		return multiChunkIds;
+	}
+	
+	/**
+	 * Keeps a limited number of decrypted multichunks open, and closes the least
+	 * recently used one if the limit is exceeded.
+	 */
+	private class OpenMultiChunkCache extends LinkedHashMap<MultiChunkId, MultiChunk> {
+		private static final long serialVersionUID = -4624591398722146432L;
+
+		public OpenMultiChunkCache() {
+			super(MAX_OPEN_MULTICHUNKS, 0.75f, true);
+		}
+		
+		public MultiChunk getOrOpen(MultiChunkId multiChunkId) throws IOException {
+			MultiChunk multiChunk = get(multiChunkId);
+			
+			if (multiChunk == null) {
+				File decryptedMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(multiChunkId);
+				multiChunk = config.getMultiChunker().createMultiChunk(decryptedMultiChunkFile);
+				
+				put(multiChunkId, multiChunk);
+			}
+			
+			return multiChunk;
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<MultiChunkId, MultiChunk> eldest) {
+			if (size() > MAX_OPEN_MULTICHUNKS) {
+				closeQuietly(eldest.getKey(), eldest.getValue());
+				return true;
+			}
+			
+			return false;
+		}
+		
+		public void closeAll() {
+			for (Map.Entry<MultiChunkId, MultiChunk> openMultiChunk : entrySet()) {
+				closeQuietly(openMultiChunk.getKey(), openMultiChunk.getValue());
+			}
+			
+			clear();
+		}
+		
+		private void closeQuietly(MultiChunkId multiChunkId, MultiChunk multiChunk) {
+			try {
+				multiChunk.close();
+			}
+			catch (IOException e) {
+				logger.log(Level.WARNING, "Cannot close multichunk " + multiChunkId, e);
+			}
+		}
+	}
 }
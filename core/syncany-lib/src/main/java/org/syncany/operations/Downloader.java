@@ -23,7 +23,19 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,25 +46,49 @@ import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.operations.daemon.messages.DownDownloadFileSyncExternalEvent;
 import org.syncany.plugins.transfer.StorageException;
 import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.transfer.TransferManagerFactory;
+import org.syncany.plugins.transfer.features.PathAware;
+import org.syncany.plugins.transfer.features.ReadAfterWriteConsistent;
+import org.syncany.plugins.transfer.features.Retriable;
+import org.syncany.plugins.transfer.features.TransactionAware;
 import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
 
 /**
  * The downloader uses a {@link TransferManager} to download a given set of multichunks,
  * decrypt them and store them in the local cache folder. 
  * 
+ * <p>If more than one download thread is configured, the multichunks are downloaded in a
+ * pipeline: Multiple downloads are in flight at the same time (each download thread with its own 
+ * transfer manager), while the calling thread decrypts the downloaded multichunks. To limit the
+ * disk usage of the cache, new downloads are only started while the size of the downloaded, 
+ * but not yet decrypted multichunks is below a given limit.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class Downloader {
 	private static final Logger logger = Logger.getLogger(Downloader.class.getSimpleName());
 
+	public static final int DEFAULT_DOWNLOAD_THREADS = 1;
+	public static final long DEFAULT_DOWNLOAD_CACHE_SIZE_LIMIT = 256 * 1024 * 1024;
+
 	private Config config;
 	private TransferManager transferManager;
 	private LocalEventBus eventBus;
 
+	private int downloadThreads;
+	private long downloadCacheSizeLimit;
+
 	public Downloader(Config config, TransferManager transferManager) {
+		this(config, transferManager, DEFAULT_DOWNLOAD_THREADS, DEFAULT_DOWNLOAD_CACHE_SIZE_LIMIT);
+	}
+
+	public Downloader(Config config, TransferManager transferManager, int downloadThreads, long downloadCacheSizeLimit) {
 		this.config = config;
 		this.transferManager = transferManager;
 		this.eventBus = LocalEventBus.getInstance();
+
+		this.downloadThreads = Math.max(1, downloadThreads);
+		this.downloadCacheSizeLimit = downloadCacheSizeLimit;
 	}
 
 	/** 
@@ -62,6 +98,17 @@ public class Downloader {
 	public void downloadAndDecryptMultiChunks(Set<MultiChunkId> unknownMultiChunkIds) throws StorageException, IOException {
 		logger.log(Level.INFO, "Downloading and extracting multichunks ...");
 
+		if (downloadThreads > 1 && unknownMultiChunkIds.size() > 1) {
+			downloadAndDecryptMultiChunksPipelined(unknownMultiChunkIds);
+		}
+		else {
+			downloadAndDecryptMultiChunksSequentially(unknownMultiChunkIds);
+		}
+
+		transferManager.disconnect();
+	}
+
+	private void downloadAndDecryptMultiChunksSequentially(Set<MultiChunkId> unknownMultiChunkIds) throws StorageException, IOException {
 		int multiChunkNumber = 0;
 
 		for (MultiChunkId multiChunkId : unknownMultiChunkIds) {
@@ -81,37 +128,224 @@ public class Downloader {
 				logger.log(Level.INFO, "  + Downloading multichunk " + multiChunkId + " ...");
 				transferManager.download(remoteMultiChunkFile, localEncryptedMultiChunkFile);
 
-				try {
-					logger.log(Level.INFO, "  + Decrypting multichunk " + multiChunkId + " ...");
-					InputStream multiChunkInputStream = config.getTransformer().createInputStream(new FileInputStream(localEncryptedMultiChunkFile));
-					OutputStream decryptedMultiChunkOutputStream = new FileOutputStream(localDecryptedMultiChunkFile);
+				decryptMultiChunk(multiChunkId, localEncryptedMultiChunkFile, localDecryptedMultiChunkFile);
+			}
+		}
+	}
+
+	private void downloadAndDecryptMultiChunksPipelined(final Set<MultiChunkId> unknownMultiChunkIds) throws StorageException, IOException {
+		List<MultiChunkId> downloadMultiChunkIds = new ArrayList<MultiChunkId>();
+
+		for (MultiChunkId multiChunkId : unknownMultiChunkIds) {
+			if (config.getCache().getDecryptedMultiChunkFile(multiChunkId).exists()) {
+				logger.log(Level.INFO, "  + Decrypted multichunk exists locally " + multiChunkId + ". No need to download it!");
+			}
+			else {
+				downloadMultiChunkIds.add(multiChunkId);
+			}
+		}
+
+		int threadCount = Math.min(downloadThreads, downloadMultiChunkIds.size());
+		logger.log(Level.INFO, "  + Downloading {0} multichunk(s) with {1} threads ...", new Object[] { downloadMultiChunkIds.size(), threadCount });
+
+		final AtomicInteger multiChunkNumber = new AtomicInteger(unknownMultiChunkIds.size() - downloadMultiChunkIds.size());
+		final DownloadCacheLimit downloadCacheLimit = new DownloadCacheLimit(downloadCacheSizeLimit);
+		final BlockingQueue<TransferManager> workerTransferManagers = new LinkedBlockingQueue<TransferManager>();
+
+		ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, threadCount));
+		CompletionService<MultiChunkId> completionService = new ExecutorCompletionService<MultiChunkId>(executorService);
+
+		boolean success = false;
+
+		try {
+			for (int i = 0; i < threadCount; i++) {
+				workerTransferManagers.add(createWorkerTransferManager());
+			}
+
+			for (final MultiChunkId multiChunkId : downloadMultiChunkIds) {
+				completionService.submit(new Callable<MultiChunkId>() {
+					@Override
+					public MultiChunkId call() throws Exception {
+						downloadCacheLimit.awaitBelowLimit();
+
+						File localEncryptedMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(multiChunkId);
+						MultichunkRemoteFile remoteMultiChunkFile = new MultichunkRemoteFile(multiChunkId);
+
+						eventBus.post(new DownDownloadFileSyncExternalEvent(config.getLocalDir().getAbsolutePath(), "multichunk", multiChunkNumber
+								.incrementAndGet(), unknownMultiChunkIds.size()));
 
-					IOUtils.copy(multiChunkInputStream, decryptedMultiChunkOutputStream);
+						TransferManager workerTransferManager = workerTransferManagers.take();
+
+						try {
+							logger.log(Level.INFO, "  + Downloading multichunk " + multiChunkId + " ...");
+							workerTransferManager.download(remoteMultiChunkFile, localEncryptedMultiChunkFile);
+						}
+						finally {
+							workerTransferManagers.add(workerTransferManager);
+						}
+
+						downloadCacheLimit.add(localEncryptedMultiChunkFile.length());
+						return multiChunkId;
+					}
+				});
+			}
 
-					decryptedMultiChunkOutputStream.close();
-					multiChunkInputStream.close();
+			// Decrypt multichunks in the order they were downloaded
+			for (int i = 0; i < downloadMultiChunkIds.size(); i++) {
+				MultiChunkId multiChunkId = takeDownloadedMultiChunk(completionService);
 
-				}
-				catch (IOException e) {
-					// Security: Deleting the multichunk if the decryption/extraction failed is important!
-					//           If it is not deleted, the partially decrypted multichunk will reside in the
-					//           local cache and the next 'down' will try to use it. If this is the only
-					//           multichunk that has been tampered with, other changes might be applied to the 
-					//           file system! See https://github.com/syncany/syncany/issues/59#issuecomment-55154793
+				File localEncryptedMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(multiChunkId);
+				File localDecryptedMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(multiChunkId);
 
-					logger.log(Level.FINE, "    -> FAILED: Decryption/extraction of multichunk failed, deleting " + multiChunkId + " ...");
-					localDecryptedMultiChunkFile.delete();
+				long encryptedMultiChunkSize = localEncryptedMultiChunkFile.length();
 
-					throw new IOException("Decryption/extraction of multichunk " + multiChunkId
-							+ " failed. The multichunk might have been tampered with!", e);
-				}
-				finally {
-					logger.log(Level.FINE, "  + Locally deleting multichunk " + multiChunkId + " ...");
-					localEncryptedMultiChunkFile.delete();
-				}
+				decryptMultiChunk(multiChunkId, localEncryptedMultiChunkFile, localDecryptedMultiChunkFile);
+				downloadCacheLimit.remove(encryptedMultiChunkSize);
 			}
+
+			success = true;
 		}
+		finally {
+			shutdownAndWait(executorService);
+			disconnectWorkerTransferManagers(workerTransferManagers);
 
-		transferManager.disconnect();
+			if (!success) {
+				deleteEncryptedMultiChunks(downloadMultiChunkIds);
+			}
+		}
+	}
+
+	private MultiChunkId takeDownloadedMultiChunk(CompletionService<MultiChunkId> completionService) throws StorageException, IOException {
+		try {
+			return completionService.take().get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new StorageException("Interrupted while downloading multichunks", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof StorageException) {
+				throw (StorageException) e.getCause();
+			}
+			else if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			else {
+				throw new StorageException("Downloading multichunk failed", e.getCause());
+			}
+		}
+	}
+
+	private void decryptMultiChunk(MultiChunkId multiChunkId, File localEncryptedMultiChunkFile, File localDecryptedMultiChunkFile) throws IOException {
+		try {
+			logger.log(Level.INFO, "  + Decrypting multichunk " + multiChunkId + " ...");
+			InputStream multiChunkInputStream = config.getTransformer().createInputStream(new FileInputStream(localEncryptedMultiChunkFile));
+			OutputStream decryptedMultiChunkOutputStream = new FileOutputStream(localDecryptedMultiChunkFile);
+
+			IOUtils.copy(multiChunkInputStream, decryptedMultiChunkOutputStream);
+
+			decryptedMultiChunkOutputStream.close();
+			multiChunkInputStream.close();
+
+		}
+		catch (IOException e) {
+			// Security: Deleting the multichunk if the decryption/extraction failed is important!
+			//           If it is not deleted, the partially decrypted multichunk will reside in the
+			//           local cache and the next 'down' will try to use it. If this is the only
+			//           multichunk that has been tampered with, other changes might be applied to the 
+			//           file system! See https://github.com/syncany/syncany/issues/59#issuecomment-55154793
+
+			logger.log(Level.FINE, "    -> FAILED: Decryption/extraction of multichunk failed, deleting " + multiChunkId + " ...");
+			localDecryptedMultiChunkFile.delete();
+
+			throw new IOException("Decryption/extraction of multichunk " + multiChunkId
+					+ " failed. The multichunk might have been tampered with!", e);
+		}
+		finally {
+			logger.log(Level.FINE, "  + Locally deleting multichunk " + multiChunkId + " ...");
+			localEncryptedMultiChunkFile.delete();
+		}
+	}
+
+	/**
+	 * Stops all downloads that have not been started, and waits for running downloads to finish
+	 * or be interrupted. 
+	 */
+	private void shutdownAndWait(ExecutorService executorService) {
+		executorService.shutdownNow();
+
+		try {
+			while (!executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+				logger.log(Level.INFO, "  + Waiting for running downloads to finish ...");
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Deletes the encrypted multichunks of a failed download run. Decrypted multichunks are
+	 * kept, because they are only written completely (see {@link #decryptMultiChunk(MultiChunkId, File, File) decryptMultiChunk()}).
+	 */
+	private void deleteEncryptedMultiChunks(List<MultiChunkId> multiChunkIds) {
+		for (MultiChunkId multiChunkId : multiChunkIds) {
+			File localEncryptedMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(multiChunkId);
+
+			if (localEncryptedMultiChunkFile.exists()) {
+				logger.log(Level.FINE, "  + Locally deleting multichunk " + multiChunkId + " (download failed) ...");
+				localEncryptedMultiChunkFile.delete();
+			}
+		}
+	}
+
+	private TransferManager createWorkerTransferManager() throws StorageException {
+		return TransferManagerFactory
+				.build(config)
+				.withFeature(ReadAfterWriteConsistent.class)
+				.withFeature(Retriable.class)
+				.withFeature(PathAware.class)
+				.withFeature(TransactionAware.class)
+				.asDefault();
+	}
+
+	private void disconnectWorkerTransferManagers(BlockingQueue<TransferManager> workerTransferManagers) {
+		for (TransferManager workerTransferManager : workerTransferManagers) {
+			try {
+				workerTransferManager.disconnect();
+			}
+			catch (StorageException e) {
+				logger.log(Level.FINE, "Could not disconnect worker transfer manager.", e);
+			}
+		}
+	}
+
+	/**
+	 * Keeps track of the size of downloaded, but not yet decrypted multichunks. Download
+	 * threads wait before starting a new download while the size is above the limit. 
+	 */
+	private static class DownloadCacheLimit {
+		private long limit;
+		private long size;
+
+		public DownloadCacheLimit(long limit) {
+			this.limit = limit;
+			this.size = 0;
+		}
+
+		public synchronized void awaitBelowLimit() throws InterruptedException {
+			while (size >= limit) {
+				wait();
+			}
+		}
+
+		public synchronized void add(long bytes) {
+			size += bytes;
+		}
+
+		public synchronized void remove(long bytes) {
+			size -= bytes;
+			notifyAll();
+		}
 	}
 }
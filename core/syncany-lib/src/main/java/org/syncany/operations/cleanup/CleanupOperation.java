@@ -17,23 +17,32 @@
  */
 package org.syncany.operations.cleanup;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.syncany.chunk.Chunk;
+import org.syncany.chunk.Deduper;
 import org.syncany.chunk.MultiChunk;
+import org.syncany.chunk.MultiChunker;
+import org.syncany.chunk.Transformer;
 import org.syncany.config.Config;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
 import org.syncany.database.DatabaseVersion;
 import org.syncany.database.FileContent;
 import org.syncany.database.FileVersion;
@@ -45,6 +54,7 @@ import org.syncany.database.SqlDatabase;
 import org.syncany.database.dao.DatabaseXmlSerializer;
 import org.syncany.database.dao.FileVersionSqlDao;
 import org.syncany.operations.AbstractTransferOperation;
+import org.syncany.operations.Downloader;
 import org.syncany.operations.cleanup.CleanupOperationOptions.TimeUnit;
 import org.syncany.operations.cleanup.CleanupOperationResult.CleanupResultCode;
 import org.syncany.operations.daemon.messages.CleanupEndSyncExternalEvent;
@@ -74,6 +84,8 @@ import org.syncany.plugins.transfer.files.RemoteFile;
  *   <li>Remove old {@link FileVersion} and their corresponding database entities.
  *       In particular, it also removes {@link PartialFileHistory}s, {@link FileContent}s,
  *       {@link Chunk}s and {@link MultiChunk}s.</li>
+ *   <li>Repack multichunks that mostly consist of chunks that are no longer used, i.e.
+ *       rewrite their remaining chunks into new multichunks (if enabled).</li>
  *   <li>Merge metadata of a single client and remove old database version files
  *       from the remote storage.</li>
  * </ul>
@@ -173,6 +185,10 @@ public class CleanupOperation extends AbstractTransferOperation {
 
 		removeOldVersions();
 
+		if (options.isRepackMultiChunks()) {
+			repackMultiChunks();
+		}
+
 		if (options.isRemoveUnreferencedTemporaryFiles()) {
 			transferManager.removeUnreferencedTemporaryFiles();
 		}
@@ -196,7 +212,8 @@ public class CleanupOperation extends AbstractTransferOperation {
 	 * @return result The original result, with the relevant {@link CleanupResultCode}
 	 */
 	private CleanupOperationResult updateResultCode(CleanupOperationResult result) {
-		if (result.getMergedDatabaseFilesCount() > 0 || result.getRemovedMultiChunksCount() > 0 || result.getRemovedOldVersionsCount() > 0) {
+		if (result.getMergedDatabaseFilesCount() > 0 || result.getRemovedMultiChunksCount() > 0 || result.getRemovedOldVersionsCount() > 0
+				|| result.getRepackedMultiChunksCount() > 0) {
 			result.setResultCode(CleanupResultCode.OK);
 		}
 		else {
@@ -376,6 +393,146 @@ public class CleanupOperation extends AbstractTransferOperation {
 		}
 	}
 
+	/**
+	 * This method rewrites the remaining chunks of sparse multichunks, i.e. multichunks of which only a small
+	 * part is still referenced, into new multichunks. The new multichunks are uploaded and the old ones are 
+	 * deleted in the {@link RemoteTransaction}.
+	 *
+	 * <p>A new multichunk only contains chunks of multichunks of the same database version, and it replaces 
+	 * them in this database version. That way, the merged database files stay consistent: Every chunk 
+	 * is still listed in the same database version as before.
+	 */
+	private void repackMultiChunks() throws Exception {
+		Map<Long, List<MultiChunkEntry>> sparseMultiChunksPerDatabaseVersion = localDatabase.getSparseMultiChunks(options
+				.getRepackMultiChunksMaxUsageRatio());
+
+		if (sparseMultiChunksPerDatabaseVersion.isEmpty()) {
+			logger.log(Level.INFO, "- Multichunk repacking: Not necessary.");
+			return;
+		}
+
+		// Download all sparse multichunks
+		Set<MultiChunkId> sparseMultiChunkIds = new HashSet<MultiChunkId>();
+
+		for (List<MultiChunkEntry> sparseMultiChunks : sparseMultiChunksPerDatabaseVersion.values()) {
+			for (MultiChunkEntry sparseMultiChunk : sparseMultiChunks) {
+				sparseMultiChunkIds.add(sparseMultiChunk.getId());
+			}
+		}
+
+		logger.log(Level.INFO, "- Multichunk repacking: Found {0} multichunks below usage ratio {1}.", new Object[] {
+				sparseMultiChunkIds.size(), options.getRepackMultiChunksMaxUsageRatio() });
+
+		new Downloader(config, transferManager).downloadAndDecryptMultiChunks(sparseMultiChunkIds);
+
+		// Rewrite the multichunks, replace them locally, and add them to the transaction
+		long sparseMultiChunksSize = 0;
+		long repackedMultiChunksSize = 0;
+
+		for (Map.Entry<Long, List<MultiChunkEntry>> sparseMultiChunksEntry : sparseMultiChunksPerDatabaseVersion.entrySet()) {
+			long databaseVersionId = sparseMultiChunksEntry.getKey();
+			List<MultiChunkEntry> sparseMultiChunks = sparseMultiChunksEntry.getValue();
+			List<MultiChunkEntry> repackedMultiChunks = writeRepackedMultiChunks(sparseMultiChunks);
+
+			localDatabase.replaceMultiChunks(databaseVersionId, sparseMultiChunks, repackedMultiChunks);
+
+			for (MultiChunkEntry sparseMultiChunk : sparseMultiChunks) {
+				logger.log(Level.FINE, "  + Deleting remote multichunk " + sparseMultiChunk + " ...");
+				remoteTransaction.delete(new MultichunkRemoteFile(sparseMultiChunk.getId()));
+
+				sparseMultiChunksSize += sparseMultiChunk.getSize();
+			}
+
+			for (MultiChunkEntry repackedMultiChunk : repackedMultiChunks) {
+				File localEncryptedMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(repackedMultiChunk.getId());
+
+				logger.log(Level.FINE, "  + Uploading repacked multichunk " + repackedMultiChunk + " ...");
+				remoteTransaction.upload(localEncryptedMultiChunkFile, new MultichunkRemoteFile(repackedMultiChunk.getId()));
+
+				repackedMultiChunksSize += repackedMultiChunk.getSize();
+			}
+		}
+
+		// Update stats
+		result.setRepackedMultiChunksCount(sparseMultiChunkIds.size());
+		result.setRepackedMultiChunksFreedSize(sparseMultiChunksSize - repackedMultiChunksSize);
+	}
+
+	/**
+	 * This method reads the given (downloaded and decrypted) sparse multichunks and writes their remaining 
+	 * chunks to new multichunks, using the configured {@link MultiChunker} and {@link Transformer}. Just like
+	 * in the {@link Deduper}, a new multichunk is started whenever the current one is full.
+	 *
+	 * @param sparseMultiChunks multichunks to be repacked, each listing only its remaining chunks
+	 * @return the newly written multichunks, containing all remaining chunks of the sparse multichunks
+	 */
+	private List<MultiChunkEntry> writeRepackedMultiChunks(List<MultiChunkEntry> sparseMultiChunks) throws IOException {
+		List<MultiChunkEntry> repackedMultiChunks = new ArrayList<MultiChunkEntry>();
+
+		MultiChunk repackedMultiChunk = null;
+		MultiChunkEntry repackedMultiChunkEntry = null;
+
+		for (MultiChunkEntry sparseMultiChunkEntry : sparseMultiChunks) {
+			Set<ChunkChecksum> remainingChunks = new HashSet<ChunkChecksum>(sparseMultiChunkEntry.getChunks());
+			File localDecryptedMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(sparseMultiChunkEntry.getId());
+
+			MultiChunk sparseMultiChunk = config.getMultiChunker().createMultiChunk(
+					new BufferedInputStream(new FileInputStream(localDecryptedMultiChunkFile)));
+
+			try {
+				Chunk chunk = null;
+
+				while ((chunk = sparseMultiChunk.read()) != null) {
+					ChunkChecksum chunkChecksum = new ChunkChecksum(chunk.getChecksum());
+
+					if (!remainingChunks.remove(chunkChecksum)) {
+						continue; // Chunk not used anymore
+					}
+
+					if (repackedMultiChunk != null && repackedMultiChunk.isFull()) {
+						closeRepackedMultiChunk(repackedMultiChunk, repackedMultiChunkEntry);
+						repackedMultiChunks.add(repackedMultiChunkEntry);
+
+						repackedMultiChunk = null;
+					}
+
+					if (repackedMultiChunk == null) {
+						MultiChunkId repackedMultiChunkId = MultiChunkId.secureRandomMultiChunkId();
+						File localEncryptedMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(repackedMultiChunkId);
+
+						repackedMultiChunk = config.getMultiChunker().createMultiChunk(repackedMultiChunkId,
+								config.getTransformer().createOutputStream(new FileOutputStream(localEncryptedMultiChunkFile)));
+						repackedMultiChunkEntry = new MultiChunkEntry(repackedMultiChunkId, 0);
+					}
+
+					repackedMultiChunk.write(chunk);
+					repackedMultiChunkEntry.addChunk(chunkChecksum);
+				}
+			}
+			finally {
+				sparseMultiChunk.close();
+			}
+
+			// Never replace a multichunk if any of its chunks would get lost
+			if (!remainingChunks.isEmpty()) {
+				throw new IOException("Cannot repack multichunk " + sparseMultiChunkEntry.getId() + ", " + remainingChunks.size()
+						+ " chunk(s) not found in multichunk file.");
+			}
+		}
+
+		if (repackedMultiChunk != null) {
+			closeRepackedMultiChunk(repackedMultiChunk, repackedMultiChunkEntry);
+			repackedMultiChunks.add(repackedMultiChunkEntry);
+		}
+
+		return repackedMultiChunks;
+	}
+
+	private void closeRepackedMultiChunk(MultiChunk repackedMultiChunk, MultiChunkEntry repackedMultiChunkEntry) throws IOException {
+		repackedMultiChunk.close();
+		repackedMultiChunkEntry.setSize(repackedMultiChunk.getSize());
+	}
+
 	private boolean hasDirtyDatabaseVersions() {
 		Iterator<DatabaseVersion> dirtyDatabaseVersions = localDatabase.getDirtyDatabaseVersions();
 		return dirtyDatabaseVersions.hasNext(); // TODO [low] Is this a resource creeper?
@@ -465,12 +622,12 @@ public class CleanupOperation extends AbstractTransferOperation {
 
 	/**
 	 * This method decides if a merge is needed. Most of the time it will be, since we need to merge every time we remove
-	 * any FileVersions to delete them remotely. Another reason for merging is if the number of files exceeds a certain threshold.
-	 * This threshold scales linearly with the number of clients that have database files.
+	 * any FileVersions or repack any multichunks to update them remotely. Another reason for merging is if the number of files
+	 * exceeds a certain threshold. This threshold scales linearly with the number of clients that have database files.
 	 *
 	 * @param allDatabaseFilesMap used to determine if there are too many database files.
 	 *
-	 * @return true if there are too many database files or we have removed FileVersions, false otherwise.
+	 * @return true if there are too many database files or we have removed FileVersions or repacked multichunks, false otherwise.
 	 */
 	private boolean needMerge(Map<String, List<DatabaseRemoteFile>> allDatabaseFilesMap) {
 		int numberOfDatabaseFiles = 0;
@@ -483,8 +640,9 @@ public class CleanupOperation extends AbstractTransferOperation {
 		int maxDatabaseFiles = options.getMaxDatabaseFiles() * allDatabaseFilesMap.keySet().size();
 		boolean tooManyDatabaseFiles = numberOfDatabaseFiles > maxDatabaseFiles;
 		boolean removedOldVersions = result.getRemovedOldVersionsCount() > 0;
+		boolean repackedMultiChunks = result.getRepackedMultiChunksCount() > 0;
 
-		return removedOldVersions || tooManyDatabaseFiles || options.isForce();
+		return removedOldVersions || repackedMultiChunks || tooManyDatabaseFiles || options.isForce();
 	}
 
 	/**
@@ -510,7 +668,7 @@ public class CleanupOperation extends AbstractTransferOperation {
 
 		Iterator<DatabaseVersion> lastNDatabaseVersions = localDatabase.getDatabaseVersionsTo(clientName, lastClientVersion);
 
-		DatabaseXmlSerializer databaseDAO = new DatabaseXmlSerializer(config.getTransformer());
+		DatabaseXmlSerializer databaseDAO = new DatabaseXmlSerializer(config.getTransformer(), config.getDatabaseFormat());
 		databaseDAO.save(lastNDatabaseVersions, newLocalMergeDatabaseFile);
 		allMergedDatabaseFiles.put(newLocalMergeDatabaseFile, newRemoteMergeDatabaseFile);
 	}
@@ -50,6 +50,12 @@ public class CleanupOperationOptions implements OperationOptions {
 	@Element(required = false)
 	private long minSecondsBetweenCleanups = 3 * 60 * 60; // 3 hours
 
+	@Element(required = false)
+	private boolean repackMultiChunks = false;
+
+	@Element(required = false)
+	private double repackMultiChunksMaxUsageRatio = 0.5; // 50% live chunks
+
 	@ElementMap(entry = "fromTime", key = "truncateDateFormat", required = false, attribute = true, inline = true)
 	private SortedMap<Long, TimeUnit> purgeFileVersionSettings;
 
@@ -113,6 +119,22 @@ public class CleanupOperationOptions implements OperationOptions {
 		return minKeepDeletedSeconds;
 	}
 	
+	public boolean isRepackMultiChunks() {
+		return repackMultiChunks;
+	}
+
+	public void setRepackMultiChunks(boolean repackMultiChunks) {
+		this.repackMultiChunks = repackMultiChunks;
+	}
+
+	public double getRepackMultiChunksMaxUsageRatio() {
+		return repackMultiChunksMaxUsageRatio;
+	}
+
+	public void setRepackMultiChunksMaxUsageRatio(double repackMultiChunksMaxUsageRatio) {
+		this.repackMultiChunksMaxUsageRatio = repackMultiChunksMaxUsageRatio;
+	}
+
 	public SortedMap<Long, TimeUnit> getPurgeFileVersionSettings() {
 		return purgeFileVersionSettings;
 	}
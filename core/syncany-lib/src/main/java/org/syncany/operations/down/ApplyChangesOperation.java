@@ -68,13 +68,13 @@ public class ApplyChangesOperation extends Operation {
 	private boolean cleanupOccurred;
 	private List<PartialFileHistory> preDeleteFileHistoriesWithLastVersion;
 
-	public ApplyChangesOperation(Config config, SqlDatabase localDatabase, TransferManager transferManager, MemoryDatabase winnersDatabase,
-			DownOperationResult result, boolean cleanupOccurred, List<PartialFileHistory> preDeleteFileHistoriesWithLastVersion) {
+	public ApplyChangesOperation(Config config, SqlDatabase localDatabase, TransferManager transferManager, DownOperationOptions options,
+			MemoryDatabase winnersDatabase, DownOperationResult result, boolean cleanupOccurred, List<PartialFileHistory> preDeleteFileHistoriesWithLastVersion) {
 		
 		super(config);
 		
 		this.localDatabase = localDatabase;
-		this.downloader = new Downloader(config, transferManager);
+		this.downloader = new Downloader(config, transferManager, options.getDownloadThreads(), options.getDownloadCacheSizeLimit());
 		this.winnersDatabase = winnersDatabase;
 		this.result = result;
 		this.cleanupOccurred = cleanupOccurred;
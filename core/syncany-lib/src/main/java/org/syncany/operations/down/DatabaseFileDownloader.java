@@ -0,0 +1,242 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.down;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.config.Config;
+import org.syncany.config.LocalEventBus;
+import org.syncany.database.MemoryDatabase;
+import org.syncany.database.dao.DatabaseHeaderIndex;
+import org.syncany.database.dao.DatabaseXmlSerializer;
+import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
+import org.syncany.operations.daemon.messages.DownDownloadFileSyncExternalEvent;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.transfer.TransferManagerFactory;
+import org.syncany.plugins.transfer.features.PathAware;
+import org.syncany.plugins.transfer.features.ReadAfterWriteConsistent;
+import org.syncany.plugins.transfer.features.Retriable;
+import org.syncany.plugins.transfer.features.TransactionAware;
+import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
+
+/**
+ * The database file downloader downloads a given list of remote database files
+ * to the local cache folder, and returns them as a map of local cache files to
+ * remote database files -- sorted by local file, as expected by the {@link DownOperation}.
+ *
+ * <p>If more than one download thread is configured, multiple downloads are in flight at
+ * the same time (each download thread with its own transfer manager). As soon as a database
+ * file is downloaded, its download thread reads the database version headers and stores them in the
+ * {@link DatabaseHeaderIndex} of the file, so that header parsing overlaps with the remaining downloads
+ * and the subsequent headers-only read of the down operation is answered from the index.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class DatabaseFileDownloader {
+	private static final Logger logger = Logger.getLogger(DatabaseFileDownloader.class.getSimpleName());
+
+	private Config config;
+	private TransferManager transferManager;
+	private DatabaseXmlSerializer databaseSerializer;
+	private LocalEventBus eventBus;
+
+	private int downloadThreads;
+
+	public DatabaseFileDownloader(Config config, TransferManager transferManager, DatabaseXmlSerializer databaseSerializer, int downloadThreads) {
+		this.config = config;
+		this.transferManager = transferManager;
+		this.databaseSerializer = databaseSerializer;
+		this.eventBus = LocalEventBus.getInstance();
+
+		this.downloadThreads = Math.max(1, downloadThreads);
+	}
+
+	/**
+	 * Downloads the given remote database files to the local cache and returns a map
+	 * with the local cache files mapped to the given remote database files. The method
+	 * fires events for every database it downloads.
+	 */
+	public SortedMap<File, DatabaseRemoteFile> downloadDatabaseFiles(List<DatabaseRemoteFile> remoteDatabaseFiles) throws StorageException,
+			IOException {
+
+		if (downloadThreads > 1 && remoteDatabaseFiles.size() > 1) {
+			return downloadDatabaseFilesConcurrently(remoteDatabaseFiles);
+		}
+		else {
+			return downloadDatabaseFilesSequentially(remoteDatabaseFiles);
+		}
+	}
+
+	private SortedMap<File, DatabaseRemoteFile> downloadDatabaseFilesSequentially(List<DatabaseRemoteFile> remoteDatabaseFiles)
+			throws StorageException {
+
+		SortedMap<File, DatabaseRemoteFile> databaseFilesInCache = new TreeMap<File, DatabaseRemoteFile>();
+		int downloadFileIndex = 0;
+
+		for (DatabaseRemoteFile remoteFile : remoteDatabaseFiles) {
+			File databaseFileInCache = config.getCache().getDatabaseFile(remoteFile.getName());
+			DatabaseRemoteFile databaseRemoteFile = new DatabaseRemoteFile(remoteFile.getName());
+
+			logger.log(Level.INFO, "- Downloading {0} to local cache at {1}", new Object[] { remoteFile.getName(), databaseFileInCache });
+			eventBus.post(new DownDownloadFileSyncExternalEvent(config.getLocalDir().getAbsolutePath(), "database", ++downloadFileIndex,
+					remoteDatabaseFiles.size()));
+
+			transferManager.download(databaseRemoteFile, databaseFileInCache);
+			databaseFilesInCache.put(databaseFileInCache, databaseRemoteFile);
+		}
+
+		return databaseFilesInCache;
+	}
+
+	private SortedMap<File, DatabaseRemoteFile> downloadDatabaseFilesConcurrently(final List<DatabaseRemoteFile> remoteDatabaseFiles)
+			throws StorageException, IOException {
+
+		int threadCount = Math.min(downloadThreads, remoteDatabaseFiles.size());
+		logger.log(Level.INFO, "- Downloading {0} database file(s) with {1} threads ...", new Object[] { remoteDatabaseFiles.size(), threadCount });
+
+		final AtomicInteger downloadFileIndex = new AtomicInteger(0);
+		final BlockingQueue<TransferManager> workerTransferManagers = new LinkedBlockingQueue<TransferManager>();
+
+		ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+		List<Future<File>> downloadFutures = new ArrayList<Future<File>>();
+
+		try {
+			for (int i = 0; i < threadCount; i++) {
+				workerTransferManagers.add(createWorkerTransferManager());
+			}
+
+			for (final DatabaseRemoteFile remoteFile : remoteDatabaseFiles) {
+				downloadFutures.add(executorService.submit(new Callable<File>() {
+					@Override
+					public File call() throws Exception {
+						File databaseFileInCache = config.getCache().getDatabaseFile(remoteFile.getName());
+						DatabaseRemoteFile databaseRemoteFile = new DatabaseRemoteFile(remoteFile.getName());
+
+						eventBus.post(new DownDownloadFileSyncExternalEvent(config.getLocalDir().getAbsolutePath(), "database", downloadFileIndex
+								.incrementAndGet(), remoteDatabaseFiles.size()));
+
+						TransferManager workerTransferManager = workerTransferManagers.take();
+
+						try {
+							logger.log(Level.INFO, "- Downloading {0} to local cache at {1}", new Object[] { remoteFile.getName(), databaseFileInCache });
+							workerTransferManager.download(databaseRemoteFile, databaseFileInCache);
+						}
+						finally {
+							workerTransferManagers.add(workerTransferManager);
+						}
+
+						// Read headers while other downloads are running; creates the header index
+						databaseSerializer.load(new MemoryDatabase(), databaseFileInCache, null, null, DatabaseReadType.HEADER_ONLY, true);
+
+						return databaseFileInCache;
+					}
+				}));
+			}
+
+			// Collect results; the sorted map restores the expected order
+			SortedMap<File, DatabaseRemoteFile> databaseFilesInCache = new TreeMap<File, DatabaseRemoteFile>();
+
+			for (int i = 0; i < remoteDatabaseFiles.size(); i++) {
+				File databaseFileInCache = takeDownloadedDatabaseFile(downloadFutures.get(i));
+				databaseFilesInCache.put(databaseFileInCache, new DatabaseRemoteFile(remoteDatabaseFiles.get(i).getName()));
+			}
+
+			return databaseFilesInCache;
+		}
+		finally {
+			shutdownAndWait(executorService);
+			disconnectWorkerTransferManagers(workerTransferManagers);
+		}
+	}
+
+	private File takeDownloadedDatabaseFile(Future<File> downloadFuture) throws StorageException, IOException {
+		try {
+			return downloadFuture.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new StorageException("Interrupted while downloading database files", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof StorageException) {
+				throw (StorageException) e.getCause();
+			}
+			else if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			else {
+				throw new StorageException("Downloading database file failed", e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Stops all downloads that have not been started, and waits for running downloads to finish
+	 * or be interrupted.
+	 */
+	private void shutdownAndWait(ExecutorService executorService) {
+		executorService.shutdownNow();
+
+		try {
+			while (!executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+				logger.log(Level.INFO, "- Waiting for running database downloads to finish ...");
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private TransferManager createWorkerTransferManager() throws StorageException {
+		return TransferManagerFactory
+				.build(config)
+				.withFeature(ReadAfterWriteConsistent.class)
+				.withFeature(Retriable.class)
+				.withFeature(PathAware.class)
+				.withFeature(TransactionAware.class)
+				.asDefault();
+	}
+
+	private void disconnectWorkerTransferManagers(BlockingQueue<TransferManager> workerTransferManagers) {
+		for (TransferManager workerTransferManager : workerTransferManagers) {
+			try {
+				workerTransferManager.disconnect();
+			}
+			catch (StorageException e) {
+				logger.log(Level.FINE, "Could not disconnect worker transfer manager.", e);
+			}
+		}
+	}
+}
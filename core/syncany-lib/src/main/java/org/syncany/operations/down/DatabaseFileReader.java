@@ -27,6 +27,7 @@ import org.syncany.database.DatabaseVersion;
 import org.syncany.database.DatabaseVersionHeader;
 import org.syncany.database.MemoryDatabase;
 import org.syncany.database.VectorClock;
+import org.syncany.database.dao.DatabaseHeaderIndex;
 import org.syncany.database.dao.DatabaseXmlSerializer;
 import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
 
@@ -35,22 +36,43 @@ import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
  * in a memory-efficient way, by converting them to a series of MemoryDatabases,
  * none of which are too large.
  * 
+ * <p>Each returned {@link MemoryDatabase} (a window) contains at most a given number of 
+ * database versions, and reading stops early once a window contains more than {@link #MAX_FILES} 
+ * file histories. Database versions within the same database file are split across windows if 
+ * necessary, so the memory required does not depend on how many database versions a file
+ * contains or how far behind the local client is.
+ * 
+ * <p>Windowing bounds the memory, but not necessarily the read time: Each window loads its
+ * part of a file separately. Binary database files are read via their {@link DatabaseHeaderIndex}
+ * (created by the first load), so that each window only parses its own database versions and
+ * skips the rest. XML database files cannot be read partially, so an XML file that is split
+ * across <i>k</i> windows is parsed <i>k</i> times.
+ * 
  * @author Pim Otte
  */
 public class DatabaseFileReader implements Iterator<MemoryDatabase> {
+	public static final int DEFAULT_MAX_DATABASE_VERSIONS = 500;
 	private static final int MAX_FILES = 9999;
 
 	private DatabaseXmlSerializer databaseSerializer;
 	private List<DatabaseVersionHeader> winnersApplyBranchList;
 	private Map<DatabaseVersionHeader, File> databaseVersionLocations;
+	private int maxDatabaseVersions;
 	private int branchIndex = 0;
 
 	public DatabaseFileReader(DatabaseXmlSerializer databaseSerializer, DatabaseBranch winnersApplyBranch,
 			Map<DatabaseVersionHeader, File> databaseVersionLocations) {
 		
+		this(databaseSerializer, winnersApplyBranch, databaseVersionLocations, DEFAULT_MAX_DATABASE_VERSIONS);
+	}
+
+	public DatabaseFileReader(DatabaseXmlSerializer databaseSerializer, DatabaseBranch winnersApplyBranch,
+			Map<DatabaseVersionHeader, File> databaseVersionLocations, int maxDatabaseVersions) {
+		
 		this.winnersApplyBranchList = winnersApplyBranch.getAll();
 		this.databaseVersionLocations = databaseVersionLocations;
 		this.databaseSerializer = databaseSerializer;
+		this.maxDatabaseVersions = Math.max(1, maxDatabaseVersions);
 	}
 
 	public boolean hasNext() {
@@ -91,8 +113,10 @@ public class DatabaseFileReader implements Iterator<MemoryDatabase> {
 	 * db-A-0005 must be processed twice; each time loading separate parts of the file. In this case:
 	 * First load (A1)-(A2) from db-A-0005, then load (A2,B1) from db-B-0001, then load (A3,B1)-(A4,B1)
 	 * from db-A-0005, and ignore (A5,B1).
-	 * @param databaseFileList
-	 * @param ignoredMostRecentPurgeVersions
+	 * 
+	 * <p>If the window is full (maximum number of database versions reached), the current range
+	 * ends early and the remaining database versions of the file are loaded by the next call.
+	 * For XML database files, this means that the file is parsed again.
 	 *
 	 * @return Returns a loaded memory database containing all metadata from the winner's branch
 	 */
@@ -102,8 +126,11 @@ public class DatabaseFileReader implements Iterator<MemoryDatabase> {
 		String rangeClientName = null;
 		VectorClock rangeVersionFrom = null;
 		VectorClock rangeVersionTo = null;
+		int windowDatabaseVersionCount = 0;
 
-		while (branchIndex < winnersApplyBranchList.size() && winnerBranchDatabase.getFileHistories().size() < MAX_FILES) {
+		while (branchIndex < winnersApplyBranchList.size() && windowDatabaseVersionCount < maxDatabaseVersions
+				&& winnerBranchDatabase.getFileHistories().size() < MAX_FILES) {
+			
 			DatabaseVersionHeader currentDatabaseVersionHeader = winnersApplyBranchList.get(branchIndex);
 			DatabaseVersionHeader nextDatabaseVersionHeader = (branchIndex + 1 < winnersApplyBranchList.size()) ? winnersApplyBranchList
 					.get(branchIndex + 1) : null;
@@ -134,11 +161,15 @@ public class DatabaseFileReader implements Iterator<MemoryDatabase> {
 			boolean lastDatabaseVersionHeader = nextDatabaseVersionHeader == null;
 			boolean nextDatabaseVersionInSameFile = lastDatabaseVersionHeader
 					|| databaseVersionFile.equals(databaseVersionLocations.get(nextDatabaseVersionHeader));
-			boolean rangeEnds = lastDatabaseVersionHeader || !nextDatabaseVersionInSameFile;
+			boolean windowFull = ++windowDatabaseVersionCount >= maxDatabaseVersions;
+			boolean rangeEnds = lastDatabaseVersionHeader || !nextDatabaseVersionInSameFile || windowFull;
 
 			if (rangeEnds) {
+				// Note: Binary files are only parsed within the range (via the header index),
+				//       but XML files are parsed entirely for every range
+				
 				try {
-					databaseSerializer.load(winnerBranchDatabase, databaseVersionFile, rangeVersionFrom, rangeVersionTo, DatabaseReadType.FULL);
+					databaseSerializer.load(winnerBranchDatabase, databaseVersionFile, rangeVersionFrom, rangeVersionTo, DatabaseReadType.FULL, true);
 				}
 				catch (IOException e) {
 					throw new RuntimeException(e.getMessage(), e);
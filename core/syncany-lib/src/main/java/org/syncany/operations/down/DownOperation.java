@@ -19,6 +19,9 @@ package org.syncany.operations.down;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
 import java.sql.SQLException;
 import java.util.AbstractMap;
 import java.util.Collection;
@@ -45,7 +48,6 @@ import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
 import org.syncany.operations.AbstractTransferOperation;
 import org.syncany.operations.cleanup.CleanupOperation;
 import org.syncany.operations.daemon.messages.DownChangesDetectedSyncExternalEvent;
-import org.syncany.operations.daemon.messages.DownDownloadFileSyncExternalEvent;
 import org.syncany.operations.daemon.messages.DownEndSyncExternalEvent;
 import org.syncany.operations.daemon.messages.DownStartSyncExternalEvent;
 import org.syncany.operations.down.DownOperationOptions.DownConflictStrategy;
@@ -275,27 +277,20 @@ public class DownOperation extends AbstractTransferOperation {
 	/**
 	 * Downloads the previously identified new/unknown remote databases to the local cache
 	 * and returns a map with the local cache files mapped to the given remote database
-	 * files. The method additionally fires events for every database it downloads.
+	 * files. If more than one download thread is configured, the databases are downloaded
+	 * concurrently using a {@link DatabaseFileDownloader}, and their headers are read while
+	 * the remaining downloads are running.
 	 */
 	private SortedMap<File, DatabaseRemoteFile> downloadUnknownRemoteDatabases(List<DatabaseRemoteFile> unknownRemoteDatabases)
-			throws StorageException {
+			throws StorageException, IOException {
 
 		logger.log(Level.INFO, "Downloading unknown databases.");
 
-		SortedMap<File, DatabaseRemoteFile> unknownRemoteDatabasesInCache = new TreeMap<File, DatabaseRemoteFile>();
-		int downloadFileIndex = 0;
+		DatabaseFileDownloader databaseFileDownloader = new DatabaseFileDownloader(config, transferManager, databaseSerializer,
+				options.getDownloadThreads());
+		SortedMap<File, DatabaseRemoteFile> unknownRemoteDatabasesInCache = databaseFileDownloader.downloadDatabaseFiles(unknownRemoteDatabases);
 
 		for (DatabaseRemoteFile remoteFile : unknownRemoteDatabases) {
-			File unknownRemoteDatabaseFileInCache = config.getCache().getDatabaseFile(remoteFile.getName());
-			DatabaseRemoteFile unknownDatabaseRemoteFile = new DatabaseRemoteFile(remoteFile.getName());
-
-			logger.log(Level.INFO, "- Downloading {0} to local cache at {1}", new Object[] { remoteFile.getName(), unknownRemoteDatabaseFileInCache });
-			eventBus.post(new DownDownloadFileSyncExternalEvent(config.getLocalDir().getAbsolutePath(), "database", ++downloadFileIndex,
-					unknownRemoteDatabases.size()));
-
-			transferManager.download(unknownDatabaseRemoteFile, unknownRemoteDatabaseFileInCache);
-
-			unknownRemoteDatabasesInCache.put(unknownRemoteDatabaseFileInCache, unknownDatabaseRemoteFile);
 			result.getDownloadedUnknownDatabases().add(remoteFile.getName());
 		}
 
@@ -304,7 +299,8 @@ public class DownOperation extends AbstractTransferOperation {
 
 	/**
 	 * Read the given database files into individual per-user {@link DatabaseBranch}es. This method only
-	 * reads the headers from the local database files, and not the entire databases into memory.
+	 * reads the headers from the local database files, and not the entire databases into memory. If a database
+	 * file has been read before, its headers are read from its {@link org.syncany.database.dao.DatabaseHeaderIndex DatabaseHeaderIndex} sidecar file.
 	 *
 	 * <p>The returned database branches contain only the per-client {@link DatabaseVersionHeader}s, and not
 	 * the entire stitched branches, i.e. A's database branch will only contain database version headers from A.
@@ -323,7 +319,7 @@ public class DownOperation extends AbstractTransferOperation {
 			File remoteDatabaseFileInCache = remoteDatabaseFileEntry.getKey();
 			DatabaseRemoteFile remoteDatabaseFile = remoteDatabaseFileEntry.getValue();
 
-			databaseSerializer.load(remoteDatabase, remoteDatabaseFileInCache, null, null, DatabaseReadType.HEADER_ONLY); // only load headers!
+			databaseSerializer.load(remoteDatabase, remoteDatabaseFileInCache, null, null, DatabaseReadType.HEADER_ONLY, true); // only load headers!
 
 			remoteDatabaseHeaders.put(remoteDatabaseFile, remoteDatabase.getDatabaseVersions());
 		}
@@ -456,10 +452,12 @@ public class DownOperation extends AbstractTransferOperation {
 			result.setResultCode(DownResultCode.OK_NO_REMOTE_CHANGES);
 		}
 		else {
-			logger.log(Level.INFO, "Loading winners database (DEFAULT) ...");
-			DatabaseFileReader databaseFileReader = new DatabaseFileReader(databaseSerializer, winnersApplyBranch, databaseVersionLocations);
+			logger.log(Level.INFO, "Loading winners database (DEFAULT) in windows of max. " + options.getApplyWindowSize() + " database versions ...");
+			DatabaseFileReader databaseFileReader = new DatabaseFileReader(databaseSerializer, winnersApplyBranch, databaseVersionLocations,
+					options.getApplyWindowSize());
 
 			boolean noDatabaseVersions = !databaseFileReader.hasNext();
+			resetPeakHeapUsage();
 			
 			if (noDatabaseVersions) {
 				applyChangesAndPersistDatabase(new MemoryDatabase(), cleanupOccurred, preDeleteFileHistoriesWithLastVersion);
@@ -467,19 +465,55 @@ public class DownOperation extends AbstractTransferOperation {
 			else {
 				while (databaseFileReader.hasNext()) {
 					MemoryDatabase winnersDatabase = databaseFileReader.next();
-					applyChangesAndPersistDatabase(winnersDatabase, cleanupOccurred, preDeleteFileHistoriesWithLastVersion);					
+					applyChangesAndPersistDatabase(winnersDatabase, cleanupOccurred, preDeleteFileHistoriesWithLastVersion);
+					
+					result.setApplyWindowCount(result.getApplyWindowCount() + 1);
 				}
 			}
 
+			result.setPeakHeapUsage(getPeakHeapUsage());
+			
+			logger.log(Level.INFO, "Applied " + result.getApplyWindowCount() + " window(s); peak heap usage was " 
+					+ (result.getPeakHeapUsage() / 1024 / 1024) + " MB.");
+
 			result.setResultCode(DownResultCode.OK_WITH_REMOTE_CHANGES);
 		}
 	}
 
+	/**
+	 * Resets the peak usage of all heap memory pools, so that {@link #getPeakHeapUsage()}
+	 * only reports the peak heap usage from this point on.
+	 */
+	private void resetPeakHeapUsage() {
+		for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (memoryPool.getType() == MemoryType.HEAP) {
+				memoryPool.resetPeakUsage();
+			}
+		}
+	}
+
+	/**
+	 * Returns the sum of the peak usages of all heap memory pools (in bytes) since the last
+	 * call to {@link #resetPeakHeapUsage()}. Since the pools do not necessarily peak at the
+	 * same time, this is an upper bound of the actual peak heap usage.
+	 */
+	private long getPeakHeapUsage() {
+		long peakHeapUsage = 0;
+
+		for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (memoryPool.getType() == MemoryType.HEAP && memoryPool.getPeakUsage() != null) {
+				peakHeapUsage += memoryPool.getPeakUsage().getUsed();
+			}
+		}
+
+		return peakHeapUsage;
+	}
+
 	private void applyChangesAndPersistDatabase(MemoryDatabase winnersDatabase, boolean cleanupOccurred, 
 			List<PartialFileHistory> preDeleteFileHistoriesWithLastVersion) throws Exception {
 		
 		if (options.isApplyChanges()) {
-			new ApplyChangesOperation(config, localDatabase, transferManager, winnersDatabase, result, cleanupOccurred,
+			new ApplyChangesOperation(config, localDatabase, transferManager, options, winnersDatabase, result, cleanupOccurred,
 					preDeleteFileHistoriesWithLastVersion).execute();
 		}
 		else {
@@ -561,7 +595,7 @@ public class DownOperation extends AbstractTransferOperation {
 
 						logger.log(Level.INFO, "  - Loading " + muddyDatabaseVersionHeader + " from file " + localFileForMuddyDatabaseVersion);
 						databaseSerializer.load(muddyMultiChunksDatabase, localFileForMuddyDatabaseVersion, fromVersion, toVersion,
-								DatabaseReadType.FULL);
+								DatabaseReadType.FULL, true);
 
 						boolean hasMuddyMultiChunks = muddyMultiChunksDatabase.getMultiChunks().size() > 0;
 
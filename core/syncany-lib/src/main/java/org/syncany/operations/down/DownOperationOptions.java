@@ -18,6 +18,7 @@
 package org.syncany.operations.down;
 
 import org.simpleframework.xml.Element;
+import org.syncany.operations.Downloader;
 import org.syncany.operations.OperationOptions;
 
 public class DownOperationOptions implements OperationOptions {
@@ -31,6 +32,15 @@ public class DownOperationOptions implements OperationOptions {
 	@Element(required = false)
 	private boolean applyChanges = true;
 
+	@Element(required = false)
+	private int downloadThreads = Downloader.DEFAULT_DOWNLOAD_THREADS;
+
+	@Element(required = false)
+	private long downloadCacheSizeLimit = Downloader.DEFAULT_DOWNLOAD_CACHE_SIZE_LIMIT;
+
+	@Element(required = false)
+	private int applyWindowSize = DatabaseFileReader.DEFAULT_MAX_DATABASE_VERSIONS;
+
 	public DownConflictStrategy getConflictStrategy() {
 		return conflictStrategy;
 	}
@@ -45,5 +55,29 @@ public class DownOperationOptions implements OperationOptions {
 
 	public void setApplyChanges(boolean applyChanges) {
 		this.applyChanges = applyChanges;
+	}
+
+	public int getDownloadThreads() {
+		return downloadThreads;
+	}
+
+	public void setDownloadThreads(int downloadThreads) {
+		this.downloadThreads = downloadThreads;
+	}
+
+	public long getDownloadCacheSizeLimit() {
+		return downloadCacheSizeLimit;
+	}
+
+	public void setDownloadCacheSizeLimit(long downloadCacheSizeLimit) {
+		this.downloadCacheSizeLimit = downloadCacheSizeLimit;
+	}
+
+	public int getApplyWindowSize() {
+		return applyWindowSize;
+	}
+
+	public void setApplyWindowSize(int applyWindowSize) {
+		this.applyWindowSize = applyWindowSize;
 	}		
 }
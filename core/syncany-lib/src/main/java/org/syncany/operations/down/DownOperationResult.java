@@ -39,6 +39,8 @@ public class DownOperationResult implements OperationResult {
 	private Set<String> downloadedUnknownDatabases = new HashSet<String>();
 	private Set<MultiChunkId> downloadedMultiChunks = new HashSet<MultiChunkId>();
 	private LsRemoteOperationResult lsRemoteResult = null;
+	private int applyWindowCount = 0;
+	private long peakHeapUsage = 0;
 
 	public DownResultCode getResultCode() {
 		return resultCode;
@@ -87,4 +89,20 @@ public class DownOperationResult implements OperationResult {
 	public void setLsRemoteResult(LsRemoteOperationResult lsRemoteResult) {
 		this.lsRemoteResult = lsRemoteResult;
 	}
-}
\ No newline at end of file
+
+	public int getApplyWindowCount() {
+		return applyWindowCount;
+	}
+
+	public void setApplyWindowCount(int applyWindowCount) {
+		this.applyWindowCount = applyWindowCount;
+	}
+
+	public long getPeakHeapUsage() {
+		return peakHeapUsage;
+	}
+
+	public void setPeakHeapUsage(long peakHeapUsage) {
+		this.peakHeapUsage = peakHeapUsage;
+	}
+}
@@ -27,6 +27,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.syncany.config.Config;
+import org.syncany.database.FileTreeIndex;
 import org.syncany.database.FileVersion;
 import org.syncany.database.FileVersion.FileStatus;
 import org.syncany.database.FileVersionComparator;
@@ -143,19 +144,49 @@ public class FileSystemActionReconciliator {
 	}
 	
 	public List<FileSystemAction> determineFileSystemActions(MemoryDatabase winnersDatabase) throws Exception {
-		List<PartialFileHistory> localFileHistoriesWithLastVersion = localDatabase.getFileHistoriesWithLastVersion();
-		return determineFileSystemActions(winnersDatabase, false, localFileHistoriesWithLastVersion);
+		// Look up local versions in the (memory-mapped) file tree index instead of loading all file histories
+		logger.log(Level.INFO, "- Loading current file tree index...");						
+		FileTreeIndex localFileTreeIndex = localDatabase.getUpToDateFileTreeIndex();
+		
+		if (localFileTreeIndex != null) {
+			return determineFileSystemActions(winnersDatabase, false, null, localFileTreeIndex);
+		}
+		else {
+			// Index is outdated (e.g. by a previous apply window); instead of rebuilding it for all files, 
+			// only load the local versions of the winning file histories. The index is rebuilt on its next full use.
+			logger.log(Level.INFO, "- File tree index outdated. Loading local versions of winning file histories ...");						
+
+			List<FileHistoryId> winningFileHistoryIds = new ArrayList<FileHistoryId>();
+			
+			for (PartialFileHistory winningFileHistory : winnersDatabase.getFileHistories()) {
+				winningFileHistoryIds.add(winningFileHistory.getFileHistoryId());
+			}
+			
+			List<PartialFileHistory> localFileHistoriesWithLastVersion = localDatabase.getFileHistoriesWithLastVersion(winningFileHistoryIds);			
+			return determineFileSystemActions(winnersDatabase, false, localFileHistoriesWithLastVersion, null);
+		}
 	}
 
 	public List<FileSystemAction> determineFileSystemActions(MemoryDatabase winnersDatabase, boolean cleanupOccurred,
 			List<PartialFileHistory> localFileHistoriesWithLastVersion) throws Exception {
+		
+		return determineFileSystemActions(winnersDatabase, cleanupOccurred, localFileHistoriesWithLastVersion, null);
+	}
+
+	private List<FileSystemAction> determineFileSystemActions(MemoryDatabase winnersDatabase, boolean cleanupOccurred,
+			List<PartialFileHistory> localFileHistoriesWithLastVersion, FileTreeIndex localFileTreeIndex) throws Exception {
+		
 		this.assembler = new Assembler(config, localDatabase, winnersDatabase);
 		
 		List<FileSystemAction> fileSystemActions = new ArrayList<FileSystemAction>();
 		
-		// Load file history cache
-		logger.log(Level.INFO, "- Loading current file tree...");						
-		Map<FileHistoryId, FileVersion> localFileHistoryIdCache = fillFileHistoryIdCache(localFileHistoriesWithLastVersion);
+		// Load file history cache (if no index is given)
+		Map<FileHistoryId, FileVersion> localFileHistoryIdCache = null;
+		
+		if (localFileTreeIndex == null) {
+			logger.log(Level.INFO, "- Loading current file tree...");						
+			localFileHistoryIdCache = fillFileHistoryIdCache(localFileHistoriesWithLastVersion);
+		}
 		
 		logger.log(Level.INFO, "- Determine filesystem actions ...");
 		
@@ -165,7 +196,8 @@ public class FileSystemActionReconciliator {
 			File winningLastFile = new File(config.getLocalDir(), winningLastVersion.getPath());
 			
 			// Get local file version and content
-			FileVersion localLastVersion = localFileHistoryIdCache.get(winningFileHistory.getFileHistoryId());
+			FileVersion localLastVersion = (localFileTreeIndex != null) ? localFileTreeIndex.get(winningFileHistory.getFileHistoryId())
+					: localFileHistoryIdCache.get(winningFileHistory.getFileHistoryId());
 			File localLastFile = (localLastVersion != null) ? new File(config.getLocalDir(), localLastVersion.getPath()) : null;
 						
 			logger.log(Level.INFO, "  + Comparing local version: "+localLastVersion);	
@@ -21,17 +21,23 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
-import java.nio.file.FileVisitor;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.syncany.config.Config;
 import org.syncany.config.LocalEventBus;
+import org.syncany.database.FileTreeIndex;
 import org.syncany.database.FileVersion;
 import org.syncany.database.FileVersion.FileStatus;
 import org.syncany.database.FileVersionComparator;
@@ -41,12 +47,24 @@ import org.syncany.operations.ChangeSet;
 import org.syncany.operations.Operation;
 import org.syncany.operations.daemon.messages.StatusEndSyncExternalEvent;
 import org.syncany.operations.daemon.messages.StatusStartSyncExternalEvent;
+import org.syncany.operations.status.StatusSnapshot.Entry;
 import org.syncany.util.FileUtil;
+import org.syncany.util.ParallelFileTreeWalker;
+import org.syncany.util.ParallelFileTreeWalker.FileTreeVisitor;
 
 /**
  * The status operation analyzes the local file tree and compares it to the current local
  * database. It uses the {@link FileVersionComparator} to determine differences and returns
  * new/changed/deleted files in form of a {@link ChangeSet}.
+ * 
+ * <p>In quick mode, the file attributes of all unchanged files are stored in a {@link StatusSnapshot}.
+ * Files whose attributes match this snapshot in the next run are not probed for locks and not
+ * compared to the database.
+ * 
+ * <p>If {@link StatusOperationOptions#getPaths() paths} are given, only these files and folders (including
+ * their subtrees) are analyzed, and only files within them are considered deleted. This is used by the 
+ * watch operation to only rescan the paths reported by the file system watcher. In this scoped mode, 
+ * the status snapshot is used, but not updated.
  *   
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
@@ -57,6 +75,11 @@ public class StatusOperation extends Operation {
 	private SqlDatabase localDatabase;
 	private StatusOperationOptions options;
 	
+	private StatusSnapshot previousSnapshot;
+	private StatusSnapshot newSnapshot;
+	
+	private Set<String> scopePaths;
+	
 	private LocalEventBus eventBus;
 	
 	public StatusOperation(Config config) {
@@ -87,12 +110,25 @@ public class StatusOperation extends Operation {
 			logger.log(Level.INFO, "Delete missing files DISABLED.");
 		}
 		
+		if (options != null && options.getPaths() != null) {
+			scopePaths = createScopePaths(options.getPaths());
+			
+			if (scopePaths != null) {
+				logger.log(Level.INFO, "Scoped mode ENABLED; analyzing {0} path(s).", scopePaths.size());
+			}
+		}
+		
+		if (options != null && options.isQuick()) {
+			logger.log(Level.INFO, "Quick mode ENABLED.");
+			loadStatusSnapshot();
+		}
+		
 		// Get local database
 		logger.log(Level.INFO, "Querying current file tree from database ...");				
 		eventBus.post(new StatusStartSyncExternalEvent(config.getLocalDir().getAbsolutePath()));		
 		
-		// Path to actual file version
-		final Map<String, FileVersion> filesInDatabase = localDatabase.getCurrentFileTree();
+		// Path to actual file version (memory-mapped, not loaded onto the heap)
+		final FileTreeIndex filesInDatabase = localDatabase.getCurrentFileTreeIndex();
 
 		// Find local changes
 		logger.log(Level.INFO, "Analyzing local folder "+config.getLocalDir()+" ...");								
@@ -102,6 +138,10 @@ public class StatusOperation extends Operation {
 			logger.log(Level.INFO, "- No changes to local database");
 		}
 		
+		if (newSnapshot != null && scopePaths == null) {
+			saveStatusSnapshot();
+		}
+		
 		// Return result
 		StatusOperationResult statusResult = new StatusOperationResult();
 		statusResult.setChangeSet(localChanges);
@@ -111,7 +151,92 @@ public class StatusOperation extends Operation {
 		return statusResult;
 	}
 
-	private ChangeSet findLocalChanges(final Map<String, FileVersion> filesInDatabase) throws FileNotFoundException, IOException {
+	private void loadStatusSnapshot() {
+		File statusSnapshotFile = config.getStatusSnapshotFile();
+		
+		// Without force checksum, matching snapshot entries are trusted
+		if (!options.isForceChecksum() && statusSnapshotFile.exists()) {
+			try {
+				previousSnapshot = StatusSnapshot.load(statusSnapshotFile);
+				logger.log(Level.INFO, "- Loaded status snapshot with {0} entries.", previousSnapshot.size());
+			}
+			catch (IOException e) {
+				logger.log(Level.WARNING, "- Cannot load status snapshot. Comparing all files.", e);
+			}
+		}
+		
+		newSnapshot = new StatusSnapshot();
+	}
+	
+	private void saveStatusSnapshot() {
+		try {
+			newSnapshot.save(config.getStatusSnapshotFile());
+			logger.log(Level.INFO, "- Saved status snapshot with {0} entries.", newSnapshot.size());
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "- Cannot save status snapshot.", e);
+		}
+	}
+
+	/**
+	 * Returns the set of scope paths to analyze, or <tt>null</tt> if the entire local 
+	 * folder must be analyzed (i.e. if the root folder is one of the given paths).
+	 */
+	private Set<String> createScopePaths(List<String> paths) {
+		Set<String> scopePaths = new HashSet<String>();
+		
+		for (String path : paths) {
+			String scopePath = FileUtil.removeTrailingSlash(path);
+			
+			if ("".equals(scopePath)) {
+				return null;
+			}
+			
+			scopePaths.add(scopePath);
+		}
+		
+		return scopePaths;
+	}
+	
+	/**
+	 * Returns true if the given relative path is the path of a scope path, or lies
+	 * within a scope folder. Always returns true if the operation is not scoped.
+	 */
+	private boolean isInScope(String relativeFilePath) {
+		if (scopePaths == null) {
+			return true;
+		}
+		
+		for (String path = relativeFilePath; path != null; path = getParentPath(path)) {
+			if (scopePaths.contains(path)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Returns true if the given relative path is ignored, or if one of its parent
+	 * folders is ignored. A scoped walk does not pass through the parent folders, 
+	 * so it cannot rely on their subtree being skipped.
+	 */
+	private boolean isParentIgnored(String relativeFilePath) {
+		for (String path = getParentPath(relativeFilePath); path != null; path = getParentPath(path)) {
+			if (config.getIgnoredFiles().isFileIgnored(path)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	private String getParentPath(String relativeFilePath) {
+		int lastSlashIndex = relativeFilePath.lastIndexOf('/');
+		return (lastSlashIndex > 0) ? relativeFilePath.substring(0, lastSlashIndex) : null;
+	}
+
+	private ChangeSet findLocalChanges(final FileTreeIndex filesInDatabase) throws FileNotFoundException, IOException {
 		ChangeSet localChanges = findLocalChangedAndNewFiles(config.getLocalDir(), filesInDatabase);
 		
 		if (options == null || options.isDelete()) {
@@ -121,17 +246,69 @@ public class StatusOperation extends Operation {
 		return localChanges;
 	}		
 	
-	private ChangeSet findLocalChangedAndNewFiles(final File root, Map<String, FileVersion> filesInDatabase) throws FileNotFoundException, IOException {
+	private ChangeSet findLocalChangedAndNewFiles(final File root, FileTreeIndex filesInDatabase) throws FileNotFoundException, IOException {
 		Path rootPath = Paths.get(root.getAbsolutePath());
 		
+		List<Path> excludedPaths = Arrays.asList(Paths.get(config.getAppDir().getAbsolutePath()), Paths.get(config.getCacheDir().getAbsolutePath()),
+				Paths.get(config.getDatabaseDir().getAbsolutePath()), Paths.get(config.getLogDir().getAbsolutePath()));
+
 		StatusFileVisitor fileVisitor = new StatusFileVisitor(rootPath, filesInDatabase);		
-		Files.walkFileTree(rootPath, fileVisitor);
+		ParallelFileTreeWalker fileTreeWalker = new ParallelFileTreeWalker();
+		
+		for (Path startPath : getStartPaths(rootPath, excludedPaths)) {
+			fileTreeWalker.walk(startPath, excludedPaths, fileVisitor);
+		}
 		
 		return fileVisitor.getChangeSet();		
 	}
 	
-	private void findAndAppendDeletedFiles(ChangeSet localChanges, Map<String,FileVersion> filesInDatabase) {
-		for (FileVersion lastLocalVersion : filesInDatabase.values()) {
+	private List<Path> getStartPaths(Path rootPath, List<Path> excludedPaths) {
+		List<Path> startPaths = new ArrayList<Path>();
+		
+		if (scopePaths == null) {
+			startPaths.add(rootPath);
+		}
+		else {
+			for (String scopePath : scopePaths) {
+				Path startPath = rootPath.resolve(scopePath).normalize();				
+				boolean isExcluded = !startPath.startsWith(rootPath) || isParentIgnored(scopePath);
+				
+				for (Path excludedPath : excludedPaths) {
+					isExcluded |= startPath.startsWith(excludedPath);
+				}
+				
+				// Vanished paths are not walked; deletions are found in the database 
+				if (!isExcluded && Files.exists(startPath, LinkOption.NOFOLLOW_LINKS)) {
+					startPaths.add(startPath);
+				}
+			}
+		}
+		
+		return startPaths;
+	}
+	
+	private void findAndAppendDeletedFiles(ChangeSet localChanges, FileTreeIndex filesInDatabase) {
+		if (scopePaths == null) {
+			findAndAppendDeletedFiles(localChanges, filesInDatabase.iterator());
+		}
+		else {
+			// Only look at the scope paths and their subtrees; nested scope paths are found twice (deleted files are a set)
+			for (String scopePath : scopePaths) {
+				FileVersion scopeFileVersion = filesInDatabase.get(scopePath);
+				
+				if (scopeFileVersion != null) {
+					findAndAppendDeletedFiles(localChanges, Arrays.asList(scopeFileVersion).iterator());
+				}
+				
+				findAndAppendDeletedFiles(localChanges, filesInDatabase.iterator(scopePath));
+			}
+		}
+	}
+	
+	private void findAndAppendDeletedFiles(ChangeSet localChanges, Iterator<FileVersion> lastLocalVersions) {
+		while (lastLocalVersions.hasNext()) {
+			FileVersion lastLocalVersion = lastLocalVersions.next();
+			
 			// Check if file exists, remove if it doesn't
 			File lastLocalVersionOnDisk = new File(config.getLocalDir()+File.separator+lastLocalVersion.getPath());
 			
@@ -140,6 +317,11 @@ public class StatusOperation extends Operation {
 				continue;
 			}
 			
+			// Ignore files outside of the analyzed paths (scoped mode)
+			if (!isInScope(lastLocalVersion.getPath())) {
+				continue;
+			}
+			
 			// If file has VANISHED, mark as DELETED 
 			if (!FileUtil.exists(lastLocalVersionOnDisk)) {
 				localChanges.getDeletedFiles().add(lastLocalVersion.getPath());
@@ -147,12 +329,17 @@ public class StatusOperation extends Operation {
 		}		
 	}
 	
-	private class StatusFileVisitor implements FileVisitor<Path> {
+	/**
+	 * Compares each visited file to the database. The visitor is called concurrently by
+	 * the {@link ParallelFileTreeWalker}; the (sorted) change set is therefore only modified
+	 * while holding its lock.
+	 */
+	private class StatusFileVisitor implements FileTreeVisitor {
 		private Path root;
 		private ChangeSet changeSet;		
-		private Map<String, FileVersion> currentFileTree;
+		private FileTreeIndex currentFileTree;
 		
-		public StatusFileVisitor(Path root, Map<String, FileVersion> currentFileTree) {
+		public StatusFileVisitor(Path root, FileTreeIndex currentFileTree) {
 			this.root = root;
 			this.changeSet = new ChangeSet();
 			this.currentFileTree = currentFileTree;
@@ -163,7 +350,7 @@ public class StatusOperation extends Operation {
 		}
 		 
 		@Override
-		public FileVisitResult visitFile(Path actualLocalFile, BasicFileAttributes attrs) throws IOException {
+		public FileVisitResult visit(Path actualLocalFile, BasicFileAttributes attrs) throws IOException {
 			String relativeFilePath = FileUtil.getRelativeDatabasePath(root.toFile(), actualLocalFile.toFile()); //root.relativize(actualLocalFile).toString();
 			
 			// Skip Syncany root folder
@@ -183,6 +370,23 @@ public class StatusOperation extends Operation {
 				return FileVisitResult.SKIP_SUBTREE;
 			}
 				
+			// Check database by file path
+			FileVersion expectedLastFileVersion = currentFileTree.get(relativeFilePath);
+			
+			// Quick mode: Skip lock check and comparison if file matches snapshot
+			Entry snapshotEntry = null;
+			
+			if (newSnapshot != null && expectedLastFileVersion != null) {
+				snapshotEntry = StatusSnapshot.capture(expectedLastFileVersion, actualLocalFile, attrs);
+				
+				if (previousSnapshot != null && previousSnapshot.matches(relativeFilePath, snapshotEntry)) {
+					addToChangeSet(changeSet.getUnchangedFiles(), relativeFilePath);
+					newSnapshot.put(relativeFilePath, snapshotEntry);
+
+					return (attrs.isDirectory() && attrs.isSymbolicLink()) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+				}
+			}
+			
 			// Check if file is locked
 			boolean fileLocked = FileUtil.isFileLocked(actualLocalFile.toFile());
 			
@@ -191,24 +395,25 @@ public class StatusOperation extends Operation {
 				return FileVisitResult.CONTINUE;
 			}				
 			
-			// Check database by file path
-			FileVersion expectedLastFileVersion = currentFileTree.get(relativeFilePath);
-			
 			if (expectedLastFileVersion != null) {				
 				// Compare
 				boolean forceChecksum = options != null && options.isForceChecksum();
 				FileVersionComparison fileVersionComparison = fileVersionComparator.compare(expectedLastFileVersion, actualLocalFile.toFile(), forceChecksum); 
 				
 				if (fileVersionComparison.areEqual()) {
-					changeSet.getUnchangedFiles().add(relativeFilePath);
+					addToChangeSet(changeSet.getUnchangedFiles(), relativeFilePath);
+					
+					if (newSnapshot != null) {
+						newSnapshot.put(relativeFilePath, snapshotEntry);
+					}
 				}
 				else {
-					changeSet.getChangedFiles().add(relativeFilePath);
+					addToChangeSet(changeSet.getChangedFiles(), relativeFilePath);
 				}					
 			}
 			else {
 				if (!config.getIgnoredFiles().isFileIgnored(relativeFilePath)) {
-					changeSet.getNewFiles().add(relativeFilePath);
+					addToChangeSet(changeSet.getNewFiles(), relativeFilePath);
 					logger.log(Level.FINEST, "- New file: "+relativeFilePath);
 				}
 				else {
@@ -229,18 +434,10 @@ public class StatusOperation extends Operation {
 			}
 		}
 		
-		@Override public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException { 
-			return visitFile(dir, attrs);
-		}
-
-		@Override
-		public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
-			return FileVisitResult.CONTINUE;
-		}
-
-		@Override
-		public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-			return FileVisitResult.CONTINUE;
+		private void addToChangeSet(Set<String> changeSetFiles, String relativeFilePath) {
+			synchronized (changeSet) {
+				changeSetFiles.add(relativeFilePath);
+			}
 		}
 	}
 }
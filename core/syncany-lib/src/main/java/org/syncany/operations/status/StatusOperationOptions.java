@@ -17,7 +17,10 @@
  */
 package org.syncany.operations.status;
 
+import java.util.List;
+
 import org.simpleframework.xml.Element;
+import org.simpleframework.xml.ElementList;
 import org.simpleframework.xml.Root;
 import org.syncany.operations.OperationOptions;
 
@@ -29,6 +32,12 @@ public class StatusOperationOptions implements OperationOptions {
 	@Element(required = false)
 	private boolean delete = true;
 
+	@Element(required = false)
+	private boolean quick = false;
+
+	@ElementList(required = false, entry = "path")
+	private List<String> paths = null;
+
 	public boolean isForceChecksum() {
 		return forceChecksum;
 	}
@@ -44,4 +53,24 @@ public class StatusOperationOptions implements OperationOptions {
 	public void setDelete(boolean delete) {
 		this.delete = delete;
 	}
-}
\ No newline at end of file
+
+	public boolean isQuick() {
+		return quick;
+	}
+
+	public void setQuick(boolean quick) {
+		this.quick = quick;
+	}
+
+	/**
+	 * Returns the relative (database) paths of the files and folders to analyze, or
+	 * <tt>null</tt> if the entire local folder is analyzed. Folders include their subtrees.
+	 */
+	public List<String> getPaths() {
+		return paths;
+	}
+
+	public void setPaths(List<String> paths) {
+		this.paths = paths;
+	}
+}
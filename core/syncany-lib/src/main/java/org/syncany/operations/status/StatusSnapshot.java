@@ -0,0 +1,254 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.status;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.syncany.database.FileVersion;
+import org.syncany.util.EnvironmentUtil;
+
+/**
+ * The status snapshot stores the file system attributes of all files that the
+ * {@link StatusOperation} found to be identical to their last {@link FileVersion} in the
+ * local database. It is persisted in the database folder and used by the quick status
+ * mode: If the attributes of a file (as reported by the directory walk) and its expected
+ * file version match the snapshot, the file is known to be unchanged and neither needs
+ * to be probed for locks nor compared with the file version.
+ *
+ * <p>The snapshot is keyed by the relative path of a file. Each entry consists of a tag
+ * identifying the expected file version, the file key (inode and device on Unix-like systems),
+ * the size, the last modified date, the status change time (ctime) and the permissions or DOS
+ * attributes. Size, last modified date and ctime are not stored for folders, because they change
+ * whenever a file in the folder is added or removed, and are not compared for folders anyway.
+ *
+ * <p>The snapshot may be queried and modified concurrently.
+ *
+ * <p>On Unix-like systems, the attributes passed by {@link Files#walkFileTree(Path, java.nio.file.FileVisitor) walkFileTree()}
+ * do not contain the ctime and permissions, so they are read with a single additional <tt>lstat</tt> call.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class StatusSnapshot {
+	private static final int FILE_MAGIC = 0x53595353; // "SYSS"
+	private static final int FILE_VERSION = 1;
+
+	private Map<String, Entry> entries;
+
+	public StatusSnapshot() {
+		this.entries = new ConcurrentHashMap<String, Entry>();
+	}
+
+	/**
+	 * Captures the snapshot entry of the given file, to be compared with {@link #matches(String, Entry) matches()}
+	 * or stored with {@link #put(String, Entry) put()}. The entry must be captured <b>before</b> the file is
+	 * compared to its expected file version, so that modifications during the comparison are detected
+	 * in the next run.
+	 *
+	 * @return The snapshot entry, or <tt>null</tt> if the file attributes cannot be read
+	 */
+	public static Entry capture(FileVersion expectedFileVersion, Path actualFile, BasicFileAttributes actualFileAttributes) {
+		try {
+			return createEntry(expectedFileVersion, actualFile, actualFileAttributes);
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns true if the snapshot entry of the given path matches the given captured
+	 * entry, i.e. if the file is unchanged since it was last found equal to its file version.
+	 */
+	public boolean matches(String relativePath, Entry capturedEntry) {
+		return capturedEntry != null && capturedEntry.equals(entries.get(relativePath));
+	}
+
+	/**
+	 * Adds (or replaces) the snapshot entry for the given path. This method should only be
+	 * called if the file has been found to match the expected file version.
+	 */
+	public void put(String relativePath, Entry capturedEntry) {
+		if (capturedEntry != null) {
+			entries.put(relativePath, capturedEntry);
+		}
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Writes the snapshot to the given file. The file is first written to a temporary
+	 * file and then renamed, so that a crash never leaves a truncated snapshot behind.
+	 */
+	public void save(File file) throws IOException {
+		File tempFile = new File(file.getAbsolutePath() + ".tmp");
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+			out.writeInt(FILE_MAGIC);
+			out.writeInt(FILE_VERSION);
+			out.writeInt(entries.size());
+
+			for (Map.Entry<String, Entry> pathEntry : entries.entrySet()) {
+				Entry entry = pathEntry.getValue();
+
+				out.writeUTF(pathEntry.getKey());
+				out.writeLong(entry.versionTag);
+				out.writeLong(entry.fileKey);
+				out.writeLong(entry.size);
+				out.writeLong(entry.lastModified);
+				out.writeLong(entry.changeTime);
+				out.writeLong(entry.attributes);
+			}
+		}
+
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Cannot delete old status snapshot " + file);
+		}
+
+		if (!tempFile.renameTo(file)) {
+			throw new IOException("Cannot rename status snapshot " + tempFile + " to " + file);
+		}
+	}
+
+	/**
+	 * Reads a snapshot from the given file.
+	 *
+	 * @throws IOException If the file cannot be read or has an invalid format
+	 */
+	public static StatusSnapshot load(File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			int magic = in.readInt();
+			int version = in.readInt();
+			int entryCount = in.readInt();
+
+			if (magic != FILE_MAGIC || version != FILE_VERSION || entryCount < 0) {
+				throw new IOException("Invalid status snapshot file " + file);
+			}
+
+			StatusSnapshot snapshot = new StatusSnapshot();
+			snapshot.entries = new ConcurrentHashMap<String, Entry>(Math.max(16, entryCount * 4 / 3 + 1));
+
+			for (int i = 0; i < entryCount; i++) {
+				String relativePath = in.readUTF();
+				Entry entry = new Entry(in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong());
+
+				snapshot.entries.put(relativePath, entry);
+			}
+
+			return snapshot;
+		}
+	}
+
+	private static Entry createEntry(FileVersion expectedFileVersion, Path file, BasicFileAttributes attributes) throws IOException {
+		long versionTag = getVersionTag(expectedFileVersion);
+		long fileKey = (attributes.fileKey() != null) ? attributes.fileKey().hashCode() : 0;
+		long changeTime = 0;
+		long fileAttributes = (attributes.isSymbolicLink() ? 1 : 0) | (attributes.isDirectory() ? 2 : 0);
+
+		if (EnvironmentUtil.isUnixLikeOperatingSystem()) {
+			try {
+				Map<String, Object> unixAttributes = Files.readAttributes(file, "unix:mode,ctime", LinkOption.NOFOLLOW_LINKS);
+
+				changeTime = ((FileTime) unixAttributes.get("ctime")).toMillis();
+				fileAttributes |= ((Integer) unixAttributes.get("mode")).longValue() << 8;
+			}
+			catch (UnsupportedOperationException e) {
+				throw new IOException("Unix file attributes not supported for " + file, e);
+			}
+		}
+		else if (attributes instanceof DosFileAttributes) {
+			DosFileAttributes dosAttributes = (DosFileAttributes) attributes;
+
+			fileAttributes |= (dosAttributes.isReadOnly() ? 4 : 0) | (dosAttributes.isHidden() ? 8 : 0) | (dosAttributes.isArchive() ? 16 : 0)
+					| (dosAttributes.isSystem() ? 32 : 0);
+		}
+
+		if (attributes.isDirectory()) {
+			return new Entry(versionTag, fileKey, 0, 0, 0, fileAttributes);
+		}
+		else {
+			return new Entry(versionTag, fileKey, attributes.size(), attributes.lastModifiedTime().toMillis(), changeTime, fileAttributes);
+		}
+	}
+
+	private static long getVersionTag(FileVersion fileVersion) {
+		long versionTag = fileVersion.getVersion();
+
+		versionTag = 31 * versionTag + fileVersion.getType().ordinal();
+		versionTag = 31 * versionTag + Objects.hashCode(fileVersion.getSize());
+		versionTag = 31 * versionTag + ((fileVersion.getLastModified() != null) ? fileVersion.getLastModified().getTime() : 0);
+		versionTag = 31 * versionTag + Objects.hashCode(fileVersion.getChecksum());
+		versionTag = 31 * versionTag + Objects.hashCode(fileVersion.getLinkTarget());
+		versionTag = 31 * versionTag + Objects.hashCode(fileVersion.getPosixPermissions());
+		versionTag = 31 * versionTag + Objects.hashCode(fileVersion.getDosAttributes());
+
+		return versionTag;
+	}
+
+	public static class Entry {
+		private final long versionTag;
+		private final long fileKey;
+		private final long size;
+		private final long lastModified;
+		private final long changeTime;
+		private final long attributes;
+
+		private Entry(long versionTag, long fileKey, long size, long lastModified, long changeTime, long attributes) {
+			this.versionTag = versionTag;
+			this.fileKey = fileKey;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.changeTime = changeTime;
+			this.attributes = attributes;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Entry)) {
+				return false;
+			}
+
+			Entry other = (Entry) obj;
+
+			return versionTag == other.versionTag && fileKey == other.fileKey && size == other.size && lastModified == other.lastModified
+					&& changeTime == other.changeTime && attributes == other.attributes;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (versionTag ^ fileKey ^ size ^ lastModified ^ changeTime ^ attributes);
+		}
+	}
+}
@@ -119,6 +119,9 @@ public class Indexer {
 			indexWithoutNewFiles(files, deletedFiles, databaseVersionQueue);
 		}
 
+		logger.log(Level.INFO, "Chunk filter: {0} lookup(s) skipped, {1} false positive(s), false positive rate {2}", new Object[] {
+				localDatabase.getChunkFilterNegatives(), localDatabase.getChunkFilterFalsePositives(), localDatabase.getChunkFilterFalsePositiveRate() });
+
 		localDatabase.finalize();
 	}
 
@@ -525,7 +528,7 @@ public class Indexer {
 			if (lastFileHistory == null) {
 				if (fileProperties.getChecksum() != null) {
 					Collection<PartialFileHistory> fileHistoriesWithSameChecksum = localDatabase
-							.getFileHistoriesWithLastVersionByChecksumSizeAndModifiedDate(fileProperties.getChecksum().toString(),
+							.getFileHistoriesWithLastVersionByChecksumSizeAndModifiedDate(fileProperties.getChecksum(),
 									fileProperties.getSize(), new Date(fileProperties.getLastModified()));
 
 					if (fileHistoriesWithSameChecksum != null && fileHistoriesWithSameChecksum.size() > 0) {
@@ -656,6 +659,9 @@ public class Indexer {
 		/**
 		 * Checks if chunk already exists in all database versions
 		 * Afterwards checks if chunk exists in new introduced database version. 
+		 * 
+		 * <p>Note that the local database rejects most new chunks using its chunk
+		 * filter, i.e. without an exact lookup in the chunk index.
 		 */
 		@Override
 		public boolean onChunk(Chunk chunk) {
@@ -31,6 +31,14 @@ public class UpOperationOptions implements OperationOptions {
 	public static final long DEFAULT_TRANSACTION_SIZE_LIMIT = 50 * 1024 * 1024;
 	public static final long DEFAULT_TRANSACTION_FILE_LIMIT = 10000;
 
+	// The number of chunker threads determines how many files are read and chunked in parallel by the Deduper. Chunk
+	// lookups and multichunk writes are always performed by a single thread, in the order of the file list.
+	public static final int DEFAULT_CHUNKER_THREADS = 1;
+
+	// The number of upload threads determines how many files of a transaction are uploaded (and moved) 
+	// concurrently when the transaction is committed. Each thread uses its own transfer manager.
+	public static final int DEFAULT_UPLOAD_THREADS = 1;
+
 	@Element(name = "status", required = false)
 	private StatusOperationOptions statusOptions = new StatusOperationOptions();
 
@@ -46,6 +54,12 @@ public class UpOperationOptions implements OperationOptions {
 	@Element(required = false)
 	private long transactionFileLimit = DEFAULT_TRANSACTION_FILE_LIMIT;
 
+	@Element(required = false)
+	private int chunkerThreads = DEFAULT_CHUNKER_THREADS;
+
+	@Element(required = false)
+	private int uploadThreads = DEFAULT_UPLOAD_THREADS;
+
 	public StatusOperationOptions getStatusOptions() {
 		return statusOptions;
 	}
@@ -85,4 +99,20 @@ public class UpOperationOptions implements OperationOptions {
 	public void setTransactionFileLimit(long transactionFileLimit) {
 		this.transactionFileLimit = transactionFileLimit;
 	}
-}
\ No newline at end of file
+
+	public int getChunkerThreads() {
+		return chunkerThreads;
+	}
+
+	public void setChunkerThreads(int chunkerThreads) {
+		this.chunkerThreads = chunkerThreads;
+	}
+
+	public int getUploadThreads() {
+		return uploadThreads;
+	}
+
+	public void setUploadThreads(int uploadThreads) {
+		this.uploadThreads = uploadThreads;
+	}
+}
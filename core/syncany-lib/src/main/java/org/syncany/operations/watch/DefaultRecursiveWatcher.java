@@ -25,27 +25,36 @@ import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
-import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Level;
 
+import org.syncany.util.ParallelFileTreeWalker;
+import org.syncany.util.ParallelFileTreeWalker.FileTreeVisitor;
+
 /**
  * The default recursive file watcher monitors a folder (and its sub-folders)
  * by registering a watch on each of the sub-folders. This class is used on
  * Linux/Unix-based operating systems and uses the Java 7 {@link WatchService}.
  *
- * <p>The class walks through the file tree and registers to a watch to every sub-folder.
- * For new folders, a new watch is registered, and stale watches are removed.
+ * <p>On startup, the class walks through the file tree (using the {@link ParallelFileTreeWalker})
+ * and registers a watch to every sub-folder. After that, watches are maintained incrementally
+ * using the contexts of the {@link WatchEvent}s: Only the subtrees of newly created folders are
+ * walked and registered, and the watches of deleted folders (and their sub-folders) are cancelled.
+ * The entire tree is only walked again if the watch service reports an event overflow.
  *
  * <p>When a file event occurs, a timer is started to wait for the file operations
  * to settle. It is reset whenever a new event occurs. When the timer times out,
@@ -57,11 +66,19 @@ public class DefaultRecursiveWatcher extends RecursiveWatcher {
 	private WatchService watchService;
 	private Map<Path, WatchKey> watchPathKeyMap;
 
+	private Set<Path> createdDirectories;
+	private Set<Path> deletedDirectories;
+	private boolean fullRescanRequired;
+
 	public DefaultRecursiveWatcher(Path root, List<Path> ignorePaths, int settleDelay, WatchListener listener) {
 		super(root, ignorePaths, settleDelay, listener);
 
 		this.watchService = null;
 		this.watchPathKeyMap = new HashMap<Path, WatchKey>();
+
+		this.createdDirectories = new HashSet<Path>();
+		this.deletedDirectories = new HashSet<Path>();
+		this.fullRescanRequired = false;
 	}
 
 	@Override
@@ -71,25 +88,74 @@ public class DefaultRecursiveWatcher extends RecursiveWatcher {
 
 	@Override
 	protected void beforePollEventLoop() {
-		walkTreeAndSetWatches();
+		walkTreeAndSetWatches(root);
 	}
 
 	@Override
 	protected boolean pollEvents() throws InterruptedException {
-		// Take events, but don't care what they are!
 		WatchKey watchKey = watchService.take();
+		Path watchedDir = (Path) watchKey.watchable();
+
+		boolean hasRelevantEvents = false;
 
-		watchKey.pollEvents();
-		watchKey.reset();
+		for (WatchEvent<?> watchEvent : watchKey.pollEvents()) {
+			if (watchEvent.kind() == OVERFLOW) {
+				logger.log(Level.INFO, "Watch events lost (overflow) in " + watchedDir + ". Rescanning entire tree.");
 
-		// Events are always relevant; ignored paths are not monitored
-		return true;
+				hasRelevantEvents = true;
+				eventsOverflowed();
+			}
+			else {
+				Path path = watchedDir.resolve((Path) watchEvent.context());
+
+				if (!isIgnored(path)) {
+					hasRelevantEvents = true;
+					pathChanged(watchEvent.kind(), path);
+				}
+			}
+		}
+
+		// Key becomes invalid if the watched folder is deleted or inaccessible
+		if (!watchKey.reset()) {
+			hasRelevantEvents = true;
+			pathChanged(ENTRY_DELETE, watchedDir);
+		}
+
+		return hasRelevantEvents;
 	}
 
 	@Override
 	protected void watchEventsOccurred() {
-		walkTreeAndSetWatches();
-		unregisterStaleWatches();
+		Set<Path> newDirectories;
+		Set<Path> staleDirectories;
+		boolean rescanTree;
+
+		synchronized (this) {
+			newDirectories = createdDirectories;
+			staleDirectories = deletedDirectories;
+			rescanTree = fullRescanRequired;
+
+			createdDirectories = new HashSet<Path>();
+			deletedDirectories = new HashSet<Path>();
+			fullRescanRequired = false;
+		}
+
+		if (rescanTree) {
+			walkTreeAndSetWatches(root);
+			unregisterStaleWatches();
+		}
+		else {
+			// Cancel deleted folders first, in case a folder was moved within the tree
+			if (staleDirectories.size() > 0) {
+				unregisterWatches(staleDirectories);
+			}
+
+			for (Path newDirectory : newDirectories) {
+				if (Files.isDirectory(newDirectory, LinkOption.NOFOLLOW_LINKS)) {
+					walkTreeAndSetWatches(newDirectory);
+				}
+			}
+		}
 	}
 
 	@Override
@@ -97,34 +163,52 @@ public class DefaultRecursiveWatcher extends RecursiveWatcher {
 		watchService.close();
 	}
 
-	private synchronized void walkTreeAndSetWatches() {
-		logger.log(Level.INFO, "Registering new folders at watch service ...");
+	private synchronized void pathChanged(WatchEvent.Kind<?> eventKind, Path path) {
+		if (eventKind == ENTRY_CREATE) {
+			if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+				createdDirectories.add(path);
+			}
+		}
+		else if (eventKind == ENTRY_DELETE) {
+			createdDirectories.remove(path);
 
-		try {
-			Files.walkFileTree(root, new FileVisitor<Path>() {
-				@Override
-				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-					if (ignorePaths.contains(dir)) {
-						return FileVisitResult.SKIP_SUBTREE;
-					}
-					else {
-						registerWatch(dir);
-						return FileVisitResult.CONTINUE;
-					}
-				}
+			if (watchPathKeyMap.containsKey(path)) {
+				deletedDirectories.add(path);
+			}
+		}
 
-				@Override
-				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-					return FileVisitResult.CONTINUE;
-				}
+		addDirtyPath(path);
+	}
 
-				@Override
-				public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
-					return FileVisitResult.CONTINUE;
-				}
+	private synchronized void eventsOverflowed() {
+		fullRescanRequired = true;
+		addDirtyRoot();
+	}
+
+	private boolean isIgnored(Path path) {
+		for (Path ignorePath : ignorePaths) {
+			if (path.startsWith(ignorePath)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private void walkTreeAndSetWatches(Path startDir) {
+		logger.log(Level.INFO, "Registering new folders at watch service below " + startDir + " ...");
 
+		// Find folders in parallel, but register them in this thread
+		final Queue<Path> directories = new ConcurrentLinkedQueue<Path>();
+
+		try {
+			new ParallelFileTreeWalker().walk(startDir, ignorePaths, new FileTreeVisitor() {
 				@Override
-				public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+				public FileVisitResult visit(Path path, BasicFileAttributes attrs) {
+					if (attrs.isDirectory()) {
+						directories.add(path);
+					}
+
 					return FileVisitResult.CONTINUE;
 				}
 			});
@@ -132,6 +216,10 @@ public class DefaultRecursiveWatcher extends RecursiveWatcher {
 		catch (IOException e) {
 			logger.log(Level.FINE, "IO failed", e);
 		}
+
+		for (Path directory : directories) {
+			registerWatch(directory);
+		}
 	}
 
 	private synchronized void unregisterStaleWatches() {
@@ -153,6 +241,29 @@ public class DefaultRecursiveWatcher extends RecursiveWatcher {
 		}
 	}
 
+	/**
+	 * Cancels the watches of the given deleted folders and of all of their
+	 * sub-folders, without accessing the file system.
+	 */
+	private synchronized void unregisterWatches(Set<Path> deletedDirs) {
+		logger.log(Level.INFO, "Cancelling watches of " + deletedDirs.size() + " deleted folder(s) ...");
+
+		List<Path> stalePaths = new ArrayList<Path>();
+
+		for (Path path : watchPathKeyMap.keySet()) {
+			for (Path parentPath = path; parentPath != null; parentPath = parentPath.getParent()) {
+				if (deletedDirs.contains(parentPath)) {
+					stalePaths.add(path);
+					break;
+				}
+			}
+		}
+
+		for (Path stalePath : stalePaths) {
+			unregisterWatch(stalePath);
+		}
+	}
+
 	private synchronized void registerWatch(Path dir) {
 		if (!watchPathKeyMap.containsKey(dir)) {
 			logger.log(Level.INFO, "- Registering " + dir);
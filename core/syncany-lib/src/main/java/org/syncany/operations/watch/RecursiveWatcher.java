@@ -20,7 +20,12 @@ package org.syncany.operations.watch;
 import java.io.IOException;
 import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -36,6 +41,13 @@ import org.syncany.util.EnvironmentUtil;
  * to settle. It is reset whenever a new event occurs. When the timer times out,
  * an event is thrown through the {@link WatchListener}.
  *
+ * <p>Subclasses report the files and folders affected by an event via
+ * {@link #addDirtyPath(Path)}. The watcher accumulates these <i>dirty paths</i> until
+ * the listener is notified, so that a subsequent sync only needs to rescan the
+ * affected subtrees instead of the entire root folder. If the affected paths are
+ * unknown (e.g. after an event overflow), {@link #addDirtyRoot()} marks the entire
+ * root folder as dirty. The dirty paths are passed to the listener.
+ *
  * <p>This is an abstract class, using several template methods that are called
  * in different lifecycle states: {@link #beforeStart()}, {@link #beforePollEventLoop()},
  * {@link #pollEvents()}, and {@link #afterStop()}.
@@ -45,6 +57,12 @@ import org.syncany.util.EnvironmentUtil;
 public abstract class RecursiveWatcher {
 	protected static final Logger logger = Logger.getLogger(RecursiveWatcher.class.getSimpleName());
 
+	/**
+	 * Maximum number of dirty paths to remember. If more paths are affected by
+	 * file system events, the entire root folder is marked as dirty.
+	 */
+	private static final int MAX_DIRTY_PATHS = 10000;
+
 	protected Path root;
 	protected List<Path> ignorePaths;
 	private int settleDelay;
@@ -55,6 +73,8 @@ public abstract class RecursiveWatcher {
 	private Thread watchThread;
 	private Timer timer;
 
+	private Set<Path> dirtyPaths;
+
 	public RecursiveWatcher(Path root, List<Path> ignorePaths, int settleDelay, WatchListener listener) {
 		this.root = root;
 		this.ignorePaths = ignorePaths;
@@ -62,6 +82,7 @@ public abstract class RecursiveWatcher {
 		this.listener = listener;
 
 		this.running = new AtomicBoolean(false);
+		this.dirtyPaths = new HashSet<Path>();
 	}
 
 	/**
@@ -170,10 +191,75 @@ public abstract class RecursiveWatcher {
 	}
 
 	private synchronized void fireListenerEvents() {
+		List<Path> changedPaths = takeDirtyPaths();
+
 		if (listener != null) {
-			logger.log(Level.INFO, "- Firing watch event (watchEventsOccurred) ...");
-			listener.watchEventsOccurred();
+			logger.log(Level.INFO, "- Firing watch event (watchEventsOccurred) for " + changedPaths.size() + " changed path(s) ...");
+			listener.watchEventsOccurred(changedPaths);
+		}
+	}
+
+	/**
+	 * Marks the given file or folder as dirty, i.e. as changed by a file system event. For
+	 * folders, the entire subtree is considered dirty. Paths must be absolute and below
+	 * the root folder.
+	 */
+	protected synchronized void addDirtyPath(Path path) {
+		if (dirtyPaths.size() < MAX_DIRTY_PATHS) {
+			dirtyPaths.add(path);
 		}
+		else {
+			addDirtyRoot();
+		}
+	}
+
+	/**
+	 * Marks the entire root folder as dirty, e.g. if events were lost and
+	 * the changed paths are unknown.
+	 */
+	protected synchronized void addDirtyRoot() {
+		dirtyPaths.clear();
+		dirtyPaths.add(root);
+	}
+
+	/**
+	 * Returns and resets the accumulated dirty paths. Paths whose parent folders
+	 * are dirty themselves are removed, so that each subtree is only contained once.
+	 * The resulting list is sorted by path depth.
+	 */
+	private synchronized List<Path> takeDirtyPaths() {
+		List<Path> sortedDirtyPaths = new ArrayList<Path>(dirtyPaths);
+		List<Path> topmostDirtyPaths = new ArrayList<Path>();
+
+		dirtyPaths.clear();
+
+		Collections.sort(sortedDirtyPaths, new Comparator<Path>() {
+			@Override
+			public int compare(Path path1, Path path2) {
+				return Integer.compare(path1.getNameCount(), path2.getNameCount());
+			}
+		});
+
+		Set<Path> topmostDirtyPathSet = new HashSet<Path>();
+
+		for (Path dirtyPath : sortedDirtyPaths) {
+			if (!hasDirtyParent(dirtyPath, topmostDirtyPathSet)) {
+				topmostDirtyPaths.add(dirtyPath);
+				topmostDirtyPathSet.add(dirtyPath);
+			}
+		}
+
+		return topmostDirtyPaths;
+	}
+
+	private boolean hasDirtyParent(Path path, Set<Path> dirtyParentPaths) {
+		for (Path parentPath = path.getParent(); parentPath != null; parentPath = parentPath.getParent()) {
+			if (dirtyParentPaths.contains(parentPath)) {
+				return true;
+			}
+		}
+
+		return false;
 	}
 
 	/**
@@ -211,6 +297,13 @@ public abstract class RecursiveWatcher {
 	protected abstract void afterStop() throws IOException;
 
 	public interface WatchListener {
-		public void watchEventsOccurred();
+		/**
+		 * Called when file system events have settled. The given changed paths are
+		 * absolute, sorted by depth and do not contain paths within other changed folders.
+		 * If the changed paths are unknown, the list contains only the root folder.
+		 *
+		 * @param changedPaths Files and folders (including their subtrees) affected by the events
+		 */
+		public void watchEventsOccurred(List<Path> changedPaths);
 	}
 }
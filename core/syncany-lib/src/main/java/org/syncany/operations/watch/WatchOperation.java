@@ -22,8 +22,10 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
@@ -46,6 +48,7 @@ import org.syncany.operations.up.UpOperationResult;
 import org.syncany.operations.up.UpOperationResult.UpResultCode;
 import org.syncany.operations.watch.NotificationListener.NotificationListenerListener;
 import org.syncany.operations.watch.RecursiveWatcher.WatchListener;
+import org.syncany.util.FileUtil;
 import org.syncany.util.StringUtil;
 
 /**
@@ -56,14 +59,16 @@ import org.syncany.util.StringUtil;
  * <ul>
  *  <li>It monitors the local file system using the {@link DefaultRecursiveWatcher}.
  *      Whenever a file or folder changes, the sync is started (after a short
- *      settlement wait period).</li>
+ *      settlement wait period). Syncs triggered by the watcher are scoped, i.e. the
+ *      {@link UpOperation} only analyzes the paths reported by the watcher.</li>
  *  <li>It subscribes to a repo-specific channel on the Syncany pub/sub server,
  *      using the {@link NotificationListener}, and publishes updates to this
  *      channel.</li>
  *  <li>It periodically runs the sync, i.e. the {@link DownOperation} and
  *      subsequently the {@link UpOperation}. If the other two mechanisms are
  *      disabled or fail to register changes, this method will make sure that
- *      changes are synced eventually.</li>
+ *      changes are synced eventually. Periodic syncs always analyze the entire
+ *      local folder.</li>
  * </ul>
  *
  * As of now, this operation never returns, because it runs in a loop. The user
@@ -86,6 +91,9 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 	private AtomicBoolean pauseRequested;
 	private AtomicInteger upCount;
 
+	private Set<String> pendingChangedPaths;
+	private boolean fullSyncPending;
+
 	private RecursiveWatcher recursiveWatcher;
 	private NotificationListener notificationListener;
 	private LocalEventBus eventBus;
@@ -107,6 +115,9 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 		this.pauseRequested = new AtomicBoolean(false);
 		this.upCount = new AtomicInteger(0);
 
+		this.pendingChangedPaths = new TreeSet<String>();
+		this.fullSyncPending = true;
+
 		this.recursiveWatcher = null;
 		this.notificationListener = null;
 		this.eventBus = LocalEventBus.getInstance();
@@ -142,6 +153,8 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 				if (!syncRequested.get() && !pauseRequested.get() && !stopRequested.get()) {
 					logger.log(Level.INFO, "Sync done, waiting {0} seconds ...", options.getInterval() / 1000);
 					Thread.sleep(options.getInterval());
+
+					requestFullSync();
 				}
 			}
 			catch (InterruptedException e) {
@@ -162,6 +175,7 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 
 					try {
 						Thread.sleep(options.getInterval());
+						requestFullSync();
 					}
 					catch (InterruptedException e2) {
 						logger.log(Level.INFO, "Sleep INTERRUPTED during retry-wait. STOPPING.", e2);
@@ -202,6 +216,7 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 		}
 		catch (Exception e) {
 			logger.log(Level.WARNING, "Cannot initiate file watcher. Relying on regular tree walks.", e);
+			recursiveWatcher = null;
 		}
 	}
 
@@ -215,6 +230,10 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 	}
 
 	private void stopRecursiveWatcher() {
+		if (recursiveWatcher == null) {
+			return;
+		}
+
 		try {
 			logger.log(Level.INFO, "Stopping recursive watcher for " + config.getLocalDir() + " ...");
 			recursiveWatcher.stop();
@@ -238,7 +257,10 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 			syncRunning.set(true);
 			syncRequested.set(false);
 
-			logger.log(Level.INFO, "RUNNING SYNC ...");
+			List<String> syncScope = takeSyncScope();
+			boolean syncSucceeded = false;
+
+			logger.log(Level.INFO, "RUNNING SYNC " + ((syncScope != null) ? "(scoped to " + syncScope.size() + " path(s))" : "(full)") + " ...");
 			fireStartEvent();
 			try {
 				boolean notifyChanges = false;
@@ -250,8 +272,8 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 					// TODO [low] Do something?
 				}
 
-				// Run up
-				UpOperationResult upOperationResult = new UpOperation(config, options.getUpOptions()).execute();
+				// Run up (scoped to the changed paths, if possible)
+				UpOperationResult upOperationResult = runUp(syncScope);
 
 				if (upOperationResult.getResultCode() == UpResultCode.OK_CHANGES_UPLOADED && upOperationResult.getChangeSet().hasChanges()) {
 					upCount.incrementAndGet();
@@ -268,8 +290,14 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 				if (notifyChanges) {
 					notifyChanges();
 				}
+
+				syncSucceeded = true;
 			}
 			finally {
+				if (!syncSucceeded) {
+					restoreSyncScope(syncScope);
+				}
+
 				logger.log(Level.INFO, "SYNC DONE.");
 				syncRunning.set(false);
 				
@@ -284,6 +312,53 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 		}
 	}
 
+	private UpOperationResult runUp(List<String> syncScope) throws Exception {
+		try {
+			options.getUpOptions().getStatusOptions().setPaths(syncScope);
+			return new UpOperation(config, options.getUpOptions()).execute();
+		}
+		finally {
+			options.getUpOptions().getStatusOptions().setPaths(null);
+		}
+	}
+
+	/**
+	 * Returns and resets the relative paths changed since the last sync, or <tt>null</tt>
+	 * if the next sync must analyze the entire local folder. Without a running file watcher,
+	 * local changes are unknown, so that every sync must analyze the entire folder.
+	 */
+	private synchronized List<String> takeSyncScope() {
+		boolean fullSync = fullSyncPending || recursiveWatcher == null;
+		List<String> syncScope = (fullSync) ? null : new ArrayList<String>(pendingChangedPaths);
+
+		pendingChangedPaths.clear();
+		fullSyncPending = false;
+
+		return syncScope;
+	}
+
+	/**
+	 * Re-adds the scope of a failed sync, so that it is not lost for the next sync.
+	 */
+	private synchronized void restoreSyncScope(List<String> syncScope) {
+		if (syncScope != null) {
+			pendingChangedPaths.addAll(syncScope);
+		}
+		else {
+			fullSyncPending = true;
+		}
+	}
+
+	private synchronized void requestFullSync() {
+		fullSyncPending = true;
+	}
+
+	private synchronized void addChangedPaths(List<Path> changedPaths) {
+		for (Path changedPath : changedPaths) {
+			pendingChangedPaths.add(FileUtil.getRelativeDatabasePath(config.getLocalDir(), changedPath.toFile()));
+		}
+	}
+
 	@Override
 	public void pushNotificationReceived(String channel, String message) {
 		if (channel.equals(notificationChannel) && !message.equals(notificationInstanceId)) {
@@ -298,7 +373,9 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 	}
 
 	@Override
-	public void watchEventsOccurred() {
+	public void watchEventsOccurred(List<Path> changedPaths) {
+		addChangedPaths(changedPaths);
+
 		try {
 			waitWhilePaused();
 			runSync();
@@ -98,9 +98,13 @@ public class WindowsRecursiveWatcher extends RecursiveWatcher {
 
 				if (!ignoreEvent) {
 					hasRelevantEvents = true;
-					break;
+					addDirtyPath(filePath);
 				}
 			}
+			else if (watchEvent.kind() == OVERFLOW) {
+				hasRelevantEvents = true;
+				addDirtyRoot();
+			}
 		}
 
 		watchKey.reset();
@@ -18,6 +18,18 @@
 package org.syncany.plugins.transfer;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,6 +38,11 @@ import org.syncany.config.Config;
 import org.syncany.config.LocalEventBus;
 import org.syncany.operations.daemon.messages.UpUploadFileInTransactionSyncExternalEvent;
 import org.syncany.operations.daemon.messages.UpUploadFileSyncExternalEvent;
+import org.syncany.plugins.transfer.features.PathAware;
+import org.syncany.plugins.transfer.features.ReadAfterWriteConsistent;
+import org.syncany.plugins.transfer.features.Retriable;
+import org.syncany.plugins.transfer.features.TransactionAware;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
 import org.syncany.plugins.transfer.files.RemoteFile;
 import org.syncany.plugins.transfer.files.TempRemoteFile;
 import org.syncany.plugins.transfer.files.TransactionRemoteFile;
@@ -37,26 +54,44 @@ import org.syncany.plugins.transfer.to.TransactionTO;
 /**
  * This class represents a transaction in a remote system. It will keep track of
  * what files are to be added and ensures atomic operation.
+ * 
+ * <p>If more than one upload thread is configured, the uploads (and moves) of a
+ * transaction are performed concurrently during {@link #commit()}. Each thread uses its own 
+ * {@link TransferManager}, because transfer managers are not necessarily thread-safe. 
+ * The {@link ActionStatus} of an action is only updated after its upload/move has succeeded,
+ * so a transaction can be resumed in the same way as a sequentially committed one.
  *
  * @author Pim Otte
  */
 public class RemoteTransaction {
 	private static final Logger logger = Logger.getLogger(RemoteTransaction.class.getSimpleName());
 
+	private static final int DEFAULT_UPLOAD_THREADS = 1;
+
 	private TransferManager transferManager;
 	private Config config;
 	private TransactionTO transactionTO;
+	private int uploadThreads;
 
 	private LocalEventBus eventBus;
 
 	public RemoteTransaction(Config config, TransferManager transferManager) {
-		this(config, transferManager, new TransactionTO(config.getMachineName()));
+		this(config, transferManager, DEFAULT_UPLOAD_THREADS);
+	}
+
+	public RemoteTransaction(Config config, TransferManager transferManager, int uploadThreads) {
+		this(config, transferManager, new TransactionTO(config.getMachineName()), uploadThreads);
 	}
 
 	public RemoteTransaction(Config config, TransferManager transferManager, TransactionTO transactionTO) {
+		this(config, transferManager, transactionTO, DEFAULT_UPLOAD_THREADS);
+	}
+
+	public RemoteTransaction(Config config, TransferManager transferManager, TransactionTO transactionTO, int uploadThreads) {
 		this.config = config;
 		this.transferManager = transferManager;
 		this.transactionTO = transactionTO;
+		this.uploadThreads = Math.max(1, uploadThreads);
 		this.eventBus = LocalEventBus.getInstance();
 	}
 
@@ -153,7 +188,10 @@ public class RemoteTransaction {
 	 */
 	public void writeToFile(Transformer transformer, File transactionFile) throws StorageException {
 		try {
-			transactionTO.save(transformer, transactionFile);
+			synchronized (transactionTO) {
+				transactionTO.save(transformer, transactionFile);
+			}
+			
 			logger.log(Level.INFO, "Wrote transaction manifest to temporary file: " + transactionFile);
 		}
 		catch (Exception e) {
@@ -202,12 +240,21 @@ public class RemoteTransaction {
 	 * the most likely part to be interrupted on weak connections.
 	 */
 	private void uploadAndMoveToTempLocation() throws StorageException {
-		TransactionStats stats = gatherTransactionStats();
-		int uploadFileIndex = 0;
+		final TransactionStats stats = gatherTransactionStats();
+		final AtomicInteger uploadFileIndex = new AtomicInteger(0);
+
+		List<ActionTO> unstartedActions = new ArrayList<ActionTO>();
 
 		for (ActionTO action : transactionTO.getActions()) {
+			// If we are resuming, this has not been started yet.
 			if (action.getStatus().equals(ActionStatus.UNSTARTED)) {
-				// If we are resuming, this has not been started yet.
+				unstartedActions.add(action);
+			}
+		}
+
+		runActions(unstartedActions, new ActionRunner() {
+			@Override
+			public void run(ActionTO action, TransferManager transferManager) throws StorageException {
 				RemoteFile tempRemoteFile = action.getTempRemoteFile();
 
 				if (action.getType().equals(ActionType.UPLOAD)) {
@@ -215,12 +262,12 @@ public class RemoteTransaction {
 					File localFile = action.getLocalTempLocation();
 					long localFileSize = localFile.length();
 
-					eventBus.post(new UpUploadFileInTransactionSyncExternalEvent(config.getLocalDir().getAbsolutePath(), ++uploadFileIndex,
+					eventBus.post(new UpUploadFileInTransactionSyncExternalEvent(config.getLocalDir().getAbsolutePath(), uploadFileIndex.incrementAndGet(),
 							stats.totalUploadFileCount, localFileSize, stats.totalUploadSize));
 
 					logger.log(Level.INFO, "- Uploading {0} to temp. file {1} ...", new Object[] { localFile, tempRemoteFile });
 					transferManager.upload(localFile, tempRemoteFile);
-					action.setStatus(ActionStatus.STARTED);
+					setStatus(action, ActionStatus.STARTED);
 				}
 				else if (action.getType().equals(ActionType.DELETE)) {
 					// The action is a DELETE, move file to temporary remote location.
@@ -233,10 +280,10 @@ public class RemoteTransaction {
 					catch (StorageMoveException e) {
 						logger.log(Level.INFO, "  -> FAILED (don't care!), because the remoteFile does not exist: " + remoteFile);
 					}
-					action.setStatus(ActionStatus.STARTED);
+					setStatus(action, ActionStatus.STARTED);
 				}
 			}
-		}
+		});
 	}
 
 	/**
@@ -262,17 +309,183 @@ public class RemoteTransaction {
 	/**
 	 * This method constitutes the second step in the committing process. All files have been uploaded, and they are
 	 * now moved to their final location.
+	 * 
+	 * <p>Multichunks are moved first (concurrently, if multiple upload threads are configured). All other files,
+	 * in particular database files, are moved afterwards in their original order, so that no database file becomes
+	 * visible before the multichunks it references.
 	 */
 	private void moveToFinalLocation() throws StorageException {
+		List<ActionTO> multiChunkUploadActions = new ArrayList<ActionTO>();
+		List<ActionTO> otherUploadActions = new ArrayList<ActionTO>();
+
 		for (ActionTO action : transactionTO.getActions()) {
 			if (action.getType().equals(ActionType.UPLOAD)) {
+				if (action.getRemoteFile() instanceof MultichunkRemoteFile) {
+					multiChunkUploadActions.add(action);
+				}
+				else {
+					otherUploadActions.add(action);
+				}
+			}
+		}
+
+		ActionRunner moveActionRunner = new ActionRunner() {
+			@Override
+			public void run(ActionTO action, TransferManager transferManager) throws StorageException {
 				RemoteFile tempRemoteFile = action.getTempRemoteFile();
 				RemoteFile finalRemoteFile = action.getRemoteFile();
 
 				logger.log(Level.INFO, "- Moving temp. file {0} to final location {1} ...", new Object[] { tempRemoteFile, finalRemoteFile });
 				transferManager.move(tempRemoteFile, finalRemoteFile);
-				action.setStatus(ActionStatus.DONE);
+				setStatus(action, ActionStatus.DONE);
 			}
+		};
+
+		runActions(multiChunkUploadActions, moveActionRunner);
+
+		for (ActionTO action : otherUploadActions) {
+			moveActionRunner.run(action, transferManager);
+		}
+	}
+
+	/**
+	 * Runs the given {@link ActionRunner} for all given actions. If only one upload thread is
+	 * configured, the actions are run sequentially using the transaction's transfer manager. Otherwise,
+	 * they are run by a thread pool, each thread with its own transfer manager. 
+	 * 
+	 * <p>If one of the actions fails, no further actions are started. The method waits for all running 
+	 * actions to finish and then throws the first exception.
+	 */
+	private void runActions(List<ActionTO> actions, final ActionRunner actionRunner) throws StorageException {
+		int threadCount = Math.min(uploadThreads, actions.size());
+
+		if (threadCount <= 1) {
+			for (ActionTO action : actions) {
+				actionRunner.run(action, transferManager);
+			}
+
+			return;
+		}
+
+		logger.log(Level.INFO, "- Running {0} action(s) with {1} threads ...", new Object[] { actions.size(), threadCount });
+
+		final BlockingQueue<TransferManager> workerTransferManagers = new LinkedBlockingQueue<TransferManager>();
+		ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+
+		try {
+			for (int i = 0; i < threadCount; i++) {
+				workerTransferManagers.add(createWorkerTransferManager());
+			}
+
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+			for (final ActionTO action : actions) {
+				futures.add(executorService.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						TransferManager workerTransferManager = workerTransferManagers.take();
+
+						try {
+							actionRunner.run(action, workerTransferManager);
+							return null;
+						}
+						finally {
+							workerTransferManagers.add(workerTransferManager);
+						}
+					}
+				}));
+			}
+
+			waitForActions(futures, executorService);
+		}
+		finally {
+			shutdownAndWait(executorService);
+			disconnectWorkerTransferManagers(workerTransferManagers);
+		}
+	}
+
+	private void waitForActions(List<Future<Void>> futures, ExecutorService executorService) throws StorageException {
+		StorageException firstException = null;
+
+		for (Future<Void> future : futures) {
+			try {
+				future.get();
+			}
+			catch (CancellationException e) {
+				// Cancelled after an earlier failure, ignore
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				firstException = (firstException != null) ? firstException : new StorageException("Interrupted while committing transaction", e);
+			}
+			catch (ExecutionException e) {
+				if (firstException == null) {
+					logger.log(Level.WARNING, "- Action failed; not starting any further actions.", e.getCause());
+
+					firstException = (e.getCause() instanceof StorageException) ? (StorageException) e.getCause() : new StorageException(e.getCause());
+					cancelPendingActions(futures);
+				}
+			}
+		}
+
+		if (firstException != null) {
+			throw firstException;
+		}
+	}
+
+	private void cancelPendingActions(List<Future<Void>> futures) {
+		// Do not interrupt running actions; they must be able to set their status
+		for (Future<Void> future : futures) {
+			future.cancel(false);
+		}
+	}
+
+	/**
+	 * Waits for running actions to finish. Cancelled futures return immediately, but
+	 * their actions might still be running (and update their status).
+	 */
+	private void shutdownAndWait(ExecutorService executorService) {
+		executorService.shutdown();
+
+		try {
+			while (!executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+				logger.log(Level.INFO, "- Waiting for running actions to finish ...");
+			}
+		}
+		catch (InterruptedException e) {
+			executorService.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Creates a transfer manager for a worker thread, with the same features as the
+	 * transfer manager the operations pass to the transaction.
+	 */
+	private TransferManager createWorkerTransferManager() throws StorageException {
+		return TransferManagerFactory
+				.build(config)
+				.withFeature(ReadAfterWriteConsistent.class)
+				.withFeature(Retriable.class)
+				.withFeature(PathAware.class)
+				.withFeature(TransactionAware.class)
+				.asDefault();
+	}
+
+	private void disconnectWorkerTransferManagers(BlockingQueue<TransferManager> workerTransferManagers) {
+		for (TransferManager workerTransferManager : workerTransferManagers) {
+			try {
+				workerTransferManager.disconnect();
+			}
+			catch (StorageException e) {
+				logger.log(Level.FINE, "Could not disconnect worker transfer manager.", e);
+			}
+		}
+	}
+
+	private void setStatus(ActionTO action, ActionStatus status) {
+		synchronized (transactionTO) {
+			action.setStatus(status);
 		}
 	}
 
@@ -327,6 +540,10 @@ public class RemoteTransaction {
 		}
 	}
 
+	private interface ActionRunner {
+		public void run(ActionTO action, TransferManager transferManager) throws StorageException;
+	}
+
 	private static class TransactionStats {
 		private long totalUploadSize;
 		private int totalUploadFileCount;
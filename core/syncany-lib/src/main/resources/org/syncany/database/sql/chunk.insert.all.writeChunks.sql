@@ -6,6 +6,6 @@
 -- + http://stackoverflow.com/a/2655567/1440785
 
 merge into chunk as chunk_target
-using (values(?)) as chunk_ref(checksum)
+using (values(cast(? as varbinary(20)))) as chunk_ref(checksum)
 on (chunk_target.checksum = chunk_ref.checksum)
 when not matched then insert (checksum, databaseversion_id, size) values (chunk_ref.checksum, ?, ?)
@@ -0,0 +1,5 @@
+-- Selects the number of chunks and the highest database version ID referenced
+-- by a chunk. Both values are used to check if a persisted chunk index is still
+-- in sync with the chunk table.
+
+select count(*) as chunkcount, coalesce(max(databaseversion_id), -1) as maxdatabaseversionid from chunk
@@ -1,9 +1,13 @@
-SELECT fv.filehistory_id as filehistory_id, MAX(fv.version) AS version
+-- Selects the current (= last MASTER) file versions of all file histories that match
+-- the given checksum, size and modified date, if they are not deleted.
+
+SELECT fv.*
  FROM fileversion AS fv
- JOIN databaseversion AS dbv
-  ON fv.databaseversion_id = dbv.id
- WHERE dbv.status='MASTER'
-  AND fv.filecontent_checksum = ?
+ JOIN fileversion_current AS fvc
+  ON fv.filehistory_id = fvc.filehistory_id
+   AND fv.version = fvc.version
+   AND fv.databaseversion_id = fvc.databaseversion_id
+ WHERE fv.filecontent_checksum = ?
   AND fv.size = ?
   AND fv.lastmodified = ?
- GROUP BY fv.filehistory_id;
\ No newline at end of file
+  AND fvc.status <> 'DELETED';
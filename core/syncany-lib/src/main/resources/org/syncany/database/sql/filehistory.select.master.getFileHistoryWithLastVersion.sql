@@ -1,3 +1,8 @@
-select *
-from fileversion_master_last
-where path=?
+select fv.*
+from fileversion_current fvc
+join fileversion fv 
+	on fvc.filehistory_id=fv.filehistory_id 
+	and fvc.version=fv.version 
+	and fvc.databaseversion_id=fv.databaseversion_id
+where fvc.path=?
+	and fvc.status<>'DELETED'
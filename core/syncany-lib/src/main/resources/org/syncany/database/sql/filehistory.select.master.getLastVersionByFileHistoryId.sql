@@ -1,11 +1,7 @@
-SELECT *
- FROM fileversion
- WHERE filehistory_id = ?
-  AND version IN (
-   SELECT MAX(fv.version) AS version
-    FROM fileversion AS fv
-    JOIN databaseversion AS dbv
-     ON fv.databaseversion_id = dbv.id
-    WHERE fv.filehistory_id = ?
-     AND dbv.status = 'MASTER'
-  );
\ No newline at end of file
+SELECT fv.*
+ FROM fileversion_current AS fvc
+ JOIN fileversion AS fv
+  ON fvc.filehistory_id = fv.filehistory_id
+   AND fvc.version = fv.version
+   AND fvc.databaseversion_id = fv.databaseversion_id
+ WHERE fvc.filehistory_id = ?;
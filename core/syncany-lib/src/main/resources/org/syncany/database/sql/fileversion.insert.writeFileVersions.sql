@@ -1,5 +1,5 @@
 insert into fileversion (
 	filehistory_id, version, databaseversion_id, path, type, status, 
 	size, lastmodified, linktarget, filecontent_checksum, updated, 
-	posixperms, dosattrs) 
-values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+	posixperms, dosattrs, depth, parent_path) 
+values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
@@ -0,0 +1,7 @@
+-- Selects the number of file versions, the highest database version ID referenced
+-- by a file version, and the sum of all MASTER database version IDs. The values are
+-- used to check if a persisted file tree index is still in sync with the current file tree.
+
+select fv.fileversioncount, fv.maxdatabaseversionid, dbv.masterdatabaseversionidsum
+from (select count(*) as fileversioncount, coalesce(max(databaseversion_id), -1) as maxdatabaseversionid from fileversion) fv
+cross join (select coalesce(sum(id), 0) as masterdatabaseversionidsum from databaseversion where status='MASTER') dbv
@@ -0,0 +1,3 @@
+select *
+from fileversion_master_last
+where filehistory_id in (unnest(?))
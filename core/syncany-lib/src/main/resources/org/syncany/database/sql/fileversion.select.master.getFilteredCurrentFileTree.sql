@@ -0,0 +1,13 @@
+select fv.*
+from fileversion_current fvc
+join fileversion fv 
+	on fvc.filehistory_id=fv.filehistory_id 
+	and fvc.version=fv.version 
+	and fvc.databaseversion_id=fv.databaseversion_id
+where 
+	fvc.status<>?
+	and fvc.path like ?
+	and fvc.filehistory_id like ?	
+	and fv.depth>=?
+	and fv.depth<=?		
+	and fv.type in (unnest(?))
@@ -0,0 +1,17 @@
+-- Like getFilteredCurrentFileTree, but only selects files directly in the given
+-- parent folder. The parent path is the only selective filter, and it is indexed.
+
+select fv.*
+from fileversion fv
+join fileversion_current fvc 
+	on fvc.filehistory_id=fv.filehistory_id 
+	and fvc.version=fv.version 
+	and fvc.databaseversion_id=fv.databaseversion_id
+where 
+	fv.parent_path=?
+	and fvc.status<>?
+	and fvc.path like ?
+	and fvc.filehistory_id like ?	
+	and fv.depth>=?
+	and fv.depth<=?		
+	and fv.type in (unnest(?))
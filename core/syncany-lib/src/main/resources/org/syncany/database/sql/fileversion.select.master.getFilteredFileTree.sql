@@ -1,16 +1,20 @@
-select *
-from fileversion 
+-- Selects the last MASTER version of all file histories (up to a given date) that match the
+-- given filters. The last version is looked up per file history (using the primary key), 
+-- instead of aggregating over all file versions.
+
+select fv.*
+from fileversion fv
+join databaseversion dbv on fv.databaseversion_id=dbv.id and dbv.status='MASTER'
 where 
-	status<>?
-	and path like ?
-	and filehistory_id like ?	
-	and substr_count(path, '/')>=?
-	and substr_count(path, '/')<=?		
-	and type in (unnest(?))			
-	and (filehistory_id, version) in (
-		select filehistory_id, max(version)
-		from fileversion_master
-		where updated<=?
-		group by filehistory_id				
+	fv.status<>?
+	and fv.path like ?
+	and fv.filehistory_id like ?	
+	and fv.depth>=?
+	and fv.depth<=?		
+	and fv.type in (unnest(?))			
+	and fv.version=(
+		select max(fvm.version)
+		from fileversion_master fvm
+		where fvm.filehistory_id=fv.filehistory_id
+			and fvm.updated<=?
 	)
-	
@@ -0,0 +1,20 @@
+-- Like getFilteredFileTree, but only selects files directly in the given
+-- parent folder. The parent path is the only selective filter, and it is indexed.
+
+select fv.*
+from fileversion fv
+join databaseversion dbv on fv.databaseversion_id=dbv.id and dbv.status='MASTER'
+where 
+	fv.parent_path=?
+	and fv.status<>?
+	and fv.path like ?
+	and fv.filehistory_id like ?	
+	and fv.depth>=?
+	and fv.depth<=?		
+	and fv.type in (unnest(?))			
+	and fv.version=(
+		select max(fvm.version)
+		from fileversion_master fvm
+		where fvm.filehistory_id=fv.filehistory_id
+			and fvm.updated<=?
+	)
@@ -0,0 +1,2 @@
+delete from fileversion_current
+where filehistory_id=?
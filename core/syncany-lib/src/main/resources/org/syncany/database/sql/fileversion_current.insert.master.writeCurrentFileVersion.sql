@@ -0,0 +1,10 @@
+-- Selects the last file version of the given file history in MASTER database versions
+-- and inserts it into the current file version table. If two database versions contain
+-- the same file version, the newer database version wins.
+
+insert into fileversion_current (filehistory_id, version, databaseversion_id, path, status)
+select fv.filehistory_id, fv.version, fv.databaseversion_id, fv.path, fv.status
+from fileversion_master fv
+where fv.filehistory_id=?
+order by fv.version desc, fv.databaseversion_id desc
+limit 1
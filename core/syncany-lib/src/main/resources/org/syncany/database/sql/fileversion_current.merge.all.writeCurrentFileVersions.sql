@@ -0,0 +1,15 @@
+-- Inserts or replaces the current file version of a file history, unless the 
+-- current file version is newer than the given version (e.g. if a database version
+-- with older file versions is added).
+
+merge into fileversion_current fvc
+using (values (cast(? as varchar(40)), cast(? as int), cast(? as int), cast(? as varchar(1024)), cast(? as varchar(45)))) 
+	as fv (filehistory_id, version, databaseversion_id, path, status)
+on fvc.filehistory_id=fv.filehistory_id
+when matched then update set 
+	fvc.version=case when fv.version>=fvc.version then fv.version else fvc.version end,
+	fvc.databaseversion_id=case when fv.version>=fvc.version then fv.databaseversion_id else fvc.databaseversion_id end,
+	fvc.path=case when fv.version>=fvc.version then fv.path else fvc.path end,
+	fvc.status=case when fv.version>=fvc.version then fv.status else fvc.status end
+when not matched then insert (filehistory_id, version, databaseversion_id, path, status)
+	values (fv.filehistory_id, fv.version, fv.databaseversion_id, fv.path, fv.status)
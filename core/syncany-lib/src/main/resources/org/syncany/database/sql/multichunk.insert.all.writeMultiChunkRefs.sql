@@ -1,5 +1,5 @@
 merge into multichunk_chunk as multichunk_chunk_target
-using (values(?, ?)) as multichunk_chunk_ref(multichunk_id, chunk_checksum)
+using (values(cast(? as varbinary(20)), cast(? as varbinary(20)))) as multichunk_chunk_ref(multichunk_id, chunk_checksum)
 on (
 	multichunk_chunk_target.multichunk_id = multichunk_chunk_ref.multichunk_id
 	and multichunk_chunk_target.chunk_checksum = multichunk_chunk_ref.chunk_checksum
@@ -0,0 +1,15 @@
+-- Determine all multichunks (and their remaining chunks) whose remaining chunks
+-- use less than the given ratio of the multichunk size
+
+select mc.databaseversion_id, mcc.multichunk_id, mc.size, mcc.chunk_checksum
+from multichunk mc
+join multichunk_chunk mcc on mc.id=mcc.multichunk_id
+where mc.id in (
+	select mcc2.multichunk_id
+	from multichunk_chunk mcc2
+	join multichunk mc2 on mcc2.multichunk_id=mc2.id
+	join chunk c on mcc2.chunk_checksum=c.checksum
+	group by mcc2.multichunk_id, mc2.size
+	having sum(c.size) < cast(? as double) * mc2.size
+)
+order by mc.databaseversion_id, mcc.multichunk_id
@@ -10,7 +10,7 @@ CREATE CACHED TABLE IF NOT EXISTS databaseversion (
 );
 
 CREATE CACHED TABLE IF NOT EXISTS  chunk (
-  checksum varchar(40) NOT NULL,
+  checksum varbinary(20) NOT NULL,
   databaseversion_id int NOT NULL,
   size bigint NOT NULL,
   PRIMARY KEY (checksum),
@@ -26,7 +26,7 @@ CREATE CACHED TABLE IF NOT EXISTS  databaseversion_vectorclock (
 );
 
 CREATE CACHED TABLE IF NOT EXISTS  filecontent (
-  checksum varchar(40) NOT NULL,
+  checksum varbinary(20) NOT NULL,
   databaseversion_id int NOT NULL,
   size bigint NOT NULL,
   PRIMARY KEY (checksum),
@@ -34,8 +34,8 @@ CREATE CACHED TABLE IF NOT EXISTS  filecontent (
 );
 
 CREATE CACHED TABLE IF NOT EXISTS  filecontent_chunk (
-  filecontent_checksum varchar(40) NOT NULL,
-  chunk_checksum varchar(40) NOT NULL,
+  filecontent_checksum varbinary(20) NOT NULL,
+  chunk_checksum varbinary(20) NOT NULL,
   num int NOT NULL,
   PRIMARY KEY (filecontent_checksum, chunk_checksum, num),
   FOREIGN KEY (filecontent_checksum) REFERENCES filecontent (checksum) ON DELETE NO ACTION ON UPDATE NO ACTION,
@@ -59,17 +59,32 @@ CREATE CACHED TABLE IF NOT EXISTS  fileversion (
   size bigint NOT NULL,
   lastmodified datetime NOT NULL,
   linktarget varchar(1024),
-  filecontent_checksum varchar(40) DEFAULT NULL,
+  filecontent_checksum varbinary(20) DEFAULT NULL,
   updated datetime NOT NULL,
   posixperms varchar(45) DEFAULT NULL,
   dosattrs varchar(45) DEFAULT NULL,
+  depth int DEFAULT 0 NOT NULL,
+  parent_path varchar(1024) DEFAULT '' NOT NULL,
   PRIMARY KEY (filehistory_id, version, databaseversion_id),
   FOREIGN KEY (filehistory_id, databaseversion_id) REFERENCES filehistory (id, databaseversion_id) ON DELETE NO ACTION ON UPDATE NO ACTION,
   FOREIGN KEY (filecontent_checksum) REFERENCES filecontent (checksum) ON DELETE NO ACTION ON UPDATE NO ACTION
 );
 
+-- Last file version of each file history in MASTER database versions (incl. DELETED versions);
+-- maintained by the file version DAO. No foreign key to fileversion, because purged file
+-- versions are removed before this table is updated.
+
+CREATE CACHED TABLE IF NOT EXISTS  fileversion_current (
+  filehistory_id varchar(40) NOT NULL,
+  version int NOT NULL,
+  databaseversion_id int NOT NULL,
+  path varchar(1024) NOT NULL,
+  status varchar(45) NOT NULL,
+  PRIMARY KEY (filehistory_id)
+);
+
 CREATE CACHED TABLE IF NOT EXISTS  multichunk (
-  id varchar(40) NOT NULL,
+  id varbinary(20) NOT NULL,
   databaseversion_id int NOT NULL,
   size bigint NOT NULL,  
   PRIMARY KEY (id),
@@ -77,15 +92,15 @@ CREATE CACHED TABLE IF NOT EXISTS  multichunk (
 );
 
 CREATE CACHED TABLE IF NOT EXISTS  multichunk_chunk (
-  multichunk_id varchar(40) NOT NULL,
-  chunk_checksum varchar(40) NOT NULL,
+  multichunk_id varbinary(20) NOT NULL,
+  chunk_checksum varbinary(20) NOT NULL,
   PRIMARY KEY (multichunk_id, chunk_checksum),
   FOREIGN KEY (multichunk_id) REFERENCES multichunk (id) ON DELETE NO ACTION ON UPDATE NO ACTION,
   FOREIGN KEY (chunk_checksum) REFERENCES chunk (checksum) ON DELETE NO ACTION ON UPDATE NO ACTION
 );
 
 CREATE CACHED TABLE IF NOT EXISTS  multichunk_muddy (
-  id varchar(40) NOT NULL,
+  id varbinary(20) NOT NULL,
   machine_name varchar(255) NOT NULL,
   machine_version int NOT NULL,
   PRIMARY KEY (id)
@@ -104,6 +119,10 @@ CREATE CACHED TABLE IF NOT EXISTS  general_settings (
   PRIMARY KEY (key)
 );
 
+-- Schema version (see DatabaseConnectionFactory)
+
+INSERT INTO general_settings (key, value) VALUES ('schemaVersion', '2');
+
 -- Non-primary indices                              
 
 CREATE INDEX idx_databaseversion_status ON databaseversion (status);
@@ -111,6 +130,9 @@ CREATE INDEX idx_databaseversion_vectorclock_serialized ON databaseversion (vect
 CREATE INDEX idx_fileversion_path ON fileversion (path);
 CREATE INDEX idx_fileversion_status ON fileversion (status);
 CREATE INDEX idx_fileversion_filecontent_checksum ON fileversion (filecontent_checksum);
+CREATE INDEX idx_fileversion_depth ON fileversion (depth);
+CREATE INDEX idx_fileversion_parent_path ON fileversion (parent_path);
+CREATE INDEX idx_fileversion_current_path ON fileversion_current (path);
 
 
 -- Views
@@ -135,11 +157,12 @@ CREATE VIEW fileversion_master_maxversion AS
   
 CREATE VIEW fileversion_master_last AS
   SELECT fv.* 
-  FROM fileversion_master_maxversion fvmax
-  JOIN fileversion_master fv 
-    ON fvmax.filehistory_id=fv.filehistory_id 
-       AND fvmax.version=fv.version 
-  WHERE fv.status<>'DELETED';    
+  FROM fileversion_current fvc
+  JOIN fileversion fv 
+    ON fvc.filehistory_id=fv.filehistory_id 
+       AND fvc.version=fv.version 
+       AND fvc.databaseversion_id=fv.databaseversion_id 
+  WHERE fvc.status<>'DELETED';    
   
   
 -- Full Views   
@@ -189,3 +212,24 @@ begin atomic
 
 	return strCount;
 end;
+
+create function substr_before_last(haystack varchar(1024), needle varchar(255))
+returns varchar(1024)
+begin atomic
+	declare lastIndex integer;
+	declare nextIndex integer;
+
+	set lastIndex = 0;
+	set nextIndex = locate(needle, haystack, 1);
+
+	while nextIndex <> 0 do
+		set lastIndex = nextIndex;
+		set nextIndex = locate(needle, haystack, nextIndex + length(needle));
+	end while;
+
+	if lastIndex = 0 then
+		return '';
+	else
+		return substring(haystack, 1, lastIndex - 1);
+	end if;
+end;
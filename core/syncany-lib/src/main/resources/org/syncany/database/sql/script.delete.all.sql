@@ -1,4 +1,5 @@
 DELETE FROM multichunk_muddy;
+DELETE FROM fileversion_current;
 DELETE FROM multichunk_chunk;
 DELETE FROM multichunk;
 DELETE FROM fileversion;
@@ -0,0 +1,17 @@
+-- Rebuilds the current file version table from the fileversion table: Selects the 
+-- last file version of each file history in MASTER database versions. If two database
+-- versions contain the same file version, the newer database version wins.
+
+DELETE FROM fileversion_current;
+
+INSERT INTO fileversion_current (filehistory_id, version, databaseversion_id, path, status)
+  SELECT fv.filehistory_id, fv.version, fv.databaseversion_id, fv.path, fv.status
+  FROM fileversion_master fv
+  WHERE (fv.filehistory_id, fv.version, fv.databaseversion_id) IN (
+    SELECT fvm.filehistory_id, fvm.version, MAX(fvm.databaseversion_id)
+    FROM fileversion_master_maxversion fvmax
+    JOIN fileversion_master fvm
+      ON fvmax.filehistory_id=fvm.filehistory_id
+         AND fvmax.version=fvm.version
+    GROUP BY fvm.filehistory_id, fvm.version
+  );
@@ -0,0 +1,59 @@
+-- Finishes the conversion of hex checksums to binary checksums (see script.upgrade.binary_checksums.sql),
+-- after the old tables have been replaced: Recreates the file version indexes and the views on the 
+-- file version table, and sets the schema version. All statements can be re-run if the upgrade is
+-- interrupted; the schema version is only set by the very last statement.
+
+DROP INDEX idx_fileversion_path IF EXISTS;
+DROP INDEX idx_fileversion_status IF EXISTS;
+DROP INDEX idx_fileversion_filecontent_checksum IF EXISTS;
+DROP INDEX idx_fileversion_depth IF EXISTS;
+DROP INDEX idx_fileversion_parent_path IF EXISTS;
+
+CREATE INDEX idx_fileversion_path ON fileversion (path);
+CREATE INDEX idx_fileversion_status ON fileversion (status);
+CREATE INDEX idx_fileversion_filecontent_checksum ON fileversion (filecontent_checksum);
+CREATE INDEX idx_fileversion_depth ON fileversion (depth);
+CREATE INDEX idx_fileversion_parent_path ON fileversion (parent_path);
+
+-- Recreate views
+
+DROP VIEW fileversion_full IF EXISTS;
+DROP VIEW fileversion_master_last IF EXISTS;
+DROP VIEW fileversion_master_maxversion IF EXISTS;
+DROP VIEW fileversion_master IF EXISTS;
+
+CREATE VIEW fileversion_master AS
+  SELECT fv0.* 
+  FROM fileversion fv0
+  JOIN databaseversion dbv 
+    ON fv0.databaseversion_id=dbv.id 
+       AND dbv.status='MASTER';   
+       
+CREATE VIEW fileversion_master_maxversion AS
+  SELECT DISTINCT filehistory_id, MAX(version) version
+  FROM fileversion_master
+  GROUP BY filehistory_id;     
+  
+CREATE VIEW fileversion_master_last AS
+  SELECT fv.* 
+  FROM fileversion_current fvc
+  JOIN fileversion fv 
+    ON fvc.filehistory_id=fv.filehistory_id 
+       AND fvc.version=fv.version 
+       AND fvc.databaseversion_id=fv.databaseversion_id 
+  WHERE fvc.status<>'DELETED';    
+
+create view fileversion_full as
+	select 		
+		fhf.databaseversion_status, 
+		fhf.databaseversion_localtime, 
+		fhf.databaseversion_client, 	
+		fhf.databaseversion_vectorclock_serialized, 	
+		fv.*
+	from filehistory_full fhf
+	join fileversion fv on fhf.id=fv.filehistory_id and fhf.databaseversion_id=fv.databaseversion_id;
+
+-- Set schema version (last step)
+
+DELETE FROM general_settings WHERE key='upgradeBinaryChecksumsCopied';
+INSERT INTO general_settings (key, value) VALUES ('schemaVersion', '2');
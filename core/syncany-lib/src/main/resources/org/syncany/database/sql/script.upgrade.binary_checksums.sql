@@ -0,0 +1,117 @@
+-- Converts the checksum and multichunk ID columns of databases created before schema
+-- version 2 from hex strings (varchar(40)) to raw bytes (varbinary(20)). Since these
+-- columns are used in primary and foreign keys, the affected tables are copied to new
+-- tables, which then replace the old ones.
+
+-- Since HSQLDB commits every DDL statement, the upgrade is split into resumable steps:
+-- This script copies the tables and marks the copy as complete (in the same transaction
+-- as the copied data). DatabaseConnectionFactory then drops the views and replaces the
+-- old tables table by table, and script.upgrade.binary_checksums.finish.sql recreates
+-- the indexes and views, and sets the schema version. If the copy is interrupted, this script is simply re-run:
+-- Leftovers of the previous attempt are dropped first.
+
+DROP TABLE fileversion_binary IF EXISTS;
+DROP TABLE filecontent_chunk_binary IF EXISTS;
+DROP TABLE multichunk_chunk_binary IF EXISTS;
+DROP TABLE filecontent_binary IF EXISTS;
+DROP TABLE multichunk_binary IF EXISTS;
+DROP TABLE chunk_binary IF EXISTS;
+DROP TABLE multichunk_muddy_binary IF EXISTS;
+
+-- New tables
+
+CREATE CACHED TABLE chunk_binary (
+  checksum varbinary(20) NOT NULL,
+  databaseversion_id int NOT NULL,
+  size bigint NOT NULL,
+  PRIMARY KEY (checksum),
+  FOREIGN KEY (databaseversion_id) REFERENCES databaseversion (id) ON DELETE NO ACTION ON UPDATE NO ACTION
+);
+
+CREATE CACHED TABLE filecontent_binary (
+  checksum varbinary(20) NOT NULL,
+  databaseversion_id int NOT NULL,
+  size bigint NOT NULL,
+  PRIMARY KEY (checksum),
+  FOREIGN KEY (databaseversion_id) REFERENCES databaseversion (id) ON DELETE NO ACTION ON UPDATE NO ACTION
+);
+
+CREATE CACHED TABLE filecontent_chunk_binary (
+  filecontent_checksum varbinary(20) NOT NULL,
+  chunk_checksum varbinary(20) NOT NULL,
+  num int NOT NULL,
+  PRIMARY KEY (filecontent_checksum, chunk_checksum, num),
+  FOREIGN KEY (filecontent_checksum) REFERENCES filecontent_binary (checksum) ON DELETE NO ACTION ON UPDATE NO ACTION,
+  FOREIGN KEY (chunk_checksum) REFERENCES chunk_binary (checksum) ON DELETE NO ACTION ON UPDATE NO ACTION
+);
+
+CREATE CACHED TABLE fileversion_binary (
+  filehistory_id varchar(40) NOT NULL,
+  version int NOT NULL,
+  databaseversion_id int NOT NULL,
+  path varchar(1024) NOT NULL,
+  type varchar(45) NOT NULL,
+  status varchar(45) NOT NULL,
+  size bigint NOT NULL,
+  lastmodified datetime NOT NULL,
+  linktarget varchar(1024),
+  filecontent_checksum varbinary(20) DEFAULT NULL,
+  updated datetime NOT NULL,
+  posixperms varchar(45) DEFAULT NULL,
+  dosattrs varchar(45) DEFAULT NULL,
+  depth int DEFAULT 0 NOT NULL,
+  parent_path varchar(1024) DEFAULT '' NOT NULL,
+  PRIMARY KEY (filehistory_id, version, databaseversion_id),
+  FOREIGN KEY (filehistory_id, databaseversion_id) REFERENCES filehistory (id, databaseversion_id) ON DELETE NO ACTION ON UPDATE NO ACTION,
+  FOREIGN KEY (filecontent_checksum) REFERENCES filecontent_binary (checksum) ON DELETE NO ACTION ON UPDATE NO ACTION
+);
+
+CREATE CACHED TABLE multichunk_binary (
+  id varbinary(20) NOT NULL,
+  databaseversion_id int NOT NULL,
+  size bigint NOT NULL,  
+  PRIMARY KEY (id),
+  FOREIGN KEY (databaseversion_id) REFERENCES databaseversion (id) ON DELETE NO ACTION ON UPDATE NO ACTION
+);
+
+CREATE CACHED TABLE multichunk_chunk_binary (
+  multichunk_id varbinary(20) NOT NULL,
+  chunk_checksum varbinary(20) NOT NULL,
+  PRIMARY KEY (multichunk_id, chunk_checksum),
+  FOREIGN KEY (multichunk_id) REFERENCES multichunk_binary (id) ON DELETE NO ACTION ON UPDATE NO ACTION,
+  FOREIGN KEY (chunk_checksum) REFERENCES chunk_binary (checksum) ON DELETE NO ACTION ON UPDATE NO ACTION
+);
+
+CREATE CACHED TABLE multichunk_muddy_binary (
+  id varbinary(20) NOT NULL,
+  machine_name varchar(255) NOT NULL,
+  machine_version int NOT NULL,
+  PRIMARY KEY (id)
+);
+
+-- Copy data (casting a hex string to a binary type parses the hex digits)
+
+INSERT INTO chunk_binary 
+  SELECT CAST(checksum AS varbinary(20)), databaseversion_id, size FROM chunk;
+  
+INSERT INTO filecontent_binary 
+  SELECT CAST(checksum AS varbinary(20)), databaseversion_id, size FROM filecontent;
+  
+INSERT INTO filecontent_chunk_binary 
+  SELECT CAST(filecontent_checksum AS varbinary(20)), CAST(chunk_checksum AS varbinary(20)), num FROM filecontent_chunk;
+  
+INSERT INTO fileversion_binary 
+  SELECT filehistory_id, version, databaseversion_id, path, type, status, size, lastmodified, linktarget, 
+    CAST(filecontent_checksum AS varbinary(20)), updated, posixperms, dosattrs, depth, parent_path 
+  FROM fileversion;
+  
+INSERT INTO multichunk_binary 
+  SELECT CAST(id AS varbinary(20)), databaseversion_id, size FROM multichunk;
+  
+INSERT INTO multichunk_chunk_binary 
+  SELECT CAST(multichunk_id AS varbinary(20)), CAST(chunk_checksum AS varbinary(20)) FROM multichunk_chunk;
+  
+INSERT INTO multichunk_muddy_binary 
+  SELECT CAST(id AS varbinary(20)), machine_name, machine_version FROM multichunk_muddy;
+
+INSERT INTO general_settings (key, value) VALUES ('upgradeBinaryChecksumsCopied', 'true');
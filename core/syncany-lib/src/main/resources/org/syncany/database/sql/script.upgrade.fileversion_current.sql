@@ -0,0 +1,27 @@
+-- Adds the current file version table to databases created before it existed. The
+-- table is filled by running script.rebuild.fileversion_current.sql afterwards.
+-- All statements can be re-run, in case an earlier upgrade was interrupted.
+
+CREATE CACHED TABLE IF NOT EXISTS  fileversion_current (
+  filehistory_id varchar(40) NOT NULL,
+  version int NOT NULL,
+  databaseversion_id int NOT NULL,
+  path varchar(1024) NOT NULL,
+  status varchar(45) NOT NULL,
+  PRIMARY KEY (filehistory_id)
+);
+
+DROP INDEX idx_fileversion_current_path IF EXISTS;
+
+CREATE INDEX idx_fileversion_current_path ON fileversion_current (path);
+
+DROP VIEW fileversion_master_last IF EXISTS;
+
+CREATE VIEW fileversion_master_last AS
+  SELECT fv.* 
+  FROM fileversion_current fvc
+  JOIN fileversion fv 
+    ON fvc.filehistory_id=fv.filehistory_id 
+       AND fvc.version=fv.version 
+       AND fvc.databaseversion_id=fv.databaseversion_id 
+  WHERE fvc.status<>'DELETED';
@@ -0,0 +1,40 @@
+-- Fills the path depth and parent path columns of existing file versions, and creates
+-- their indexes. The columns are added by DatabaseConnectionFactory (one by one, if they
+-- are missing) before this script runs. All statements can be re-run if the upgrade is
+-- interrupted: Only file versions that have not been filled are updated.
+
+DROP FUNCTION substr_before_last IF EXISTS;
+
+--!DELIMITER=end;
+
+create function substr_before_last(haystack varchar(1024), needle varchar(255))
+returns varchar(1024)
+begin atomic
+	declare lastIndex integer;
+	declare nextIndex integer;
+
+	set lastIndex = 0;
+	set nextIndex = locate(needle, haystack, 1);
+
+	while nextIndex <> 0 do
+		set lastIndex = nextIndex;
+		set nextIndex = locate(needle, haystack, nextIndex + length(needle));
+	end while;
+
+	if lastIndex = 0 then
+		return '';
+	else
+		return substring(haystack, 1, lastIndex - 1);
+	end if;
+end;
+
+--!DELIMITER=;
+
+UPDATE fileversion SET depth=length(path)-length(replace(path, '/', '')), parent_path=substr_before_last(path, '/')
+  WHERE parent_path='' AND locate('/', path) > 0;
+
+DROP INDEX idx_fileversion_depth IF EXISTS;
+DROP INDEX idx_fileversion_parent_path IF EXISTS;
+
+CREATE INDEX idx_fileversion_depth ON fileversion (depth);
+CREATE INDEX idx_fileversion_parent_path ON fileversion (parent_path);
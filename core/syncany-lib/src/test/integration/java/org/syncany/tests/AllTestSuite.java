@@ -24,7 +24,8 @@ import org.junit.runners.Suite.SuiteClasses;
 @RunWith(Suite.class)
 @SuiteClasses({	
 	AllExceptLongRunningTestSuite.class,
-	LongRunningTestSuite.class
+	LongRunningTestSuite.class,
+	PerformanceTestSuite.class
 })
 public class AllTestSuite {
 	// This class executes all tests
@@ -20,31 +20,43 @@ package org.syncany.tests;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
+import org.syncany.tests.integration.database.DatabaseConnectionFactoryTest;
 import org.syncany.tests.integration.database.DatabaseReconciliatorTest;
 import org.syncany.tests.integration.database.FileVersionComparatorTest;
 import org.syncany.tests.integration.database.MemoryDatabaseCacheTest;
+import org.syncany.tests.integration.database.MemoryDatabasePerformanceTest;
 import org.syncany.tests.integration.database.PartialFileHistoryTest;
 import org.syncany.tests.integration.database.dao.ApplicationDaoTest;
+import org.syncany.tests.integration.database.dao.BinaryDatabaseDaoTest;
 import org.syncany.tests.integration.database.dao.ChunkDaoTest;
 import org.syncany.tests.integration.database.dao.DatabaseVersionDaoTest;
 import org.syncany.tests.integration.database.dao.FileContentDaoTest;
 import org.syncany.tests.integration.database.dao.FileVersionDaoTest;
 import org.syncany.tests.integration.database.dao.MultiChunkDaoTest;
 import org.syncany.tests.integration.database.dao.XmlDatabaseDaoTest;
+import org.syncany.tests.unit.database.BloomFilterTest;
+import org.syncany.tests.unit.database.ChunkIndexTest;
+import org.syncany.tests.unit.database.FileTreeIndexTest;
 import org.syncany.tests.unit.database.ObjectIdTest;
 import org.syncany.tests.unit.database.VectorClockTest;
 
 @RunWith(Suite.class)
 @SuiteClasses({
 	ApplicationDaoTest.class,
+	BinaryDatabaseDaoTest.class,
+	BloomFilterTest.class,
 	ChunkDaoTest.class,
+	ChunkIndexTest.class,
+	DatabaseConnectionFactoryTest.class,
 	DatabaseReconciliatorTest.class,
 	DatabaseVersionDaoTest.class,
 	FileVersionComparatorTest.class,
 	FileVersionDaoTest.class,
 	FileContentDaoTest.class,
+	FileTreeIndexTest.class,
 	MultiChunkDaoTest.class,
 	MemoryDatabaseCacheTest.class,
+	MemoryDatabasePerformanceTest.class,
 	ObjectIdTest.class,
 	PartialFileHistoryTest.class,
 	VectorClockTest.class,
@@ -23,6 +23,7 @@ import org.junit.runners.Suite.SuiteClasses;
 import org.syncany.tests.integration.operations.AssemblerTest;
 import org.syncany.tests.integration.operations.CleanupOperationTest;
 import org.syncany.tests.integration.operations.ConnectOperationTest;
+import org.syncany.tests.integration.operations.DownloaderTest;
 import org.syncany.tests.integration.operations.FileSystemActionComparatorTest;
 import org.syncany.tests.integration.operations.FileSystemActionReconciliatorTest;
 import org.syncany.tests.integration.operations.IndexerTest;
@@ -44,6 +45,7 @@ import org.syncany.tests.unit.operations.daemon.DaemonOperationTest;
 		CleanupOperationTest.class,
 		ConnectOperationTest.class,
 		DaemonOperationTest.class,
+		DownloaderTest.class,
 		FileSystemActionComparatorTest.class,
 		FileSystemActionReconciliatorTest.class,
 		IndexerTest.class,
@@ -27,6 +27,9 @@ import org.syncany.tests.integration.plugins.TransferSettingsTest;
 import org.syncany.tests.integration.plugins.local.LocalTransferManagerPluginTest;
 import org.syncany.tests.integration.plugins.unreliable_local.CleanupInterruptedTest;
 import org.syncany.tests.integration.plugins.unreliable_local.UploadInterruptedTest;
+import org.syncany.tests.unit.chunk.ChunkDigestTest;
+import org.syncany.tests.unit.chunk.DeduperTest;
+import org.syncany.tests.unit.chunk.FastCdcChunkerTest;
 import org.syncany.tests.unit.chunk.FixedOffsetChunkerTest;
 import org.syncany.tests.unit.chunk.FrameworkCombinationTest;
 import org.syncany.tests.unit.chunk.MultiChunkerTest;
@@ -57,7 +60,10 @@ import org.syncany.tests.util.SqlRunnerTest;
 		MultiChunkerTest.class,
 		FixedOffsetChunkerTest.class,
 		TTTDChunkerTest.class,
+		FastCdcChunkerTest.class,
 		FrameworkCombinationTest.class,
+		ChunkDigestTest.class,
+		DeduperTest.class,
 
 		// Connection
 		PluginsTest.class,
@@ -0,0 +1,44 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+import org.syncany.tests.integration.chunk.ChunkerPerformanceTest;
+import org.syncany.tests.integration.database.dao.BinaryDatabaseDaoLargeDatabaseVersionTest;
+import org.syncany.tests.integration.database.dao.ChecksumSchemaPerformanceTest;
+import org.syncany.tests.integration.database.dao.DatabaseSerializerPerformanceTest;
+import org.syncany.tests.integration.database.dao.DatabaseVersionDaoPerformanceTest;
+import org.syncany.tests.integration.database.dao.FileHistoryDaoPerformanceTest;
+
+@RunWith(Suite.class)
+@SuiteClasses({
+		// Chunking Framework
+		ChunkerPerformanceTest.class,
+
+		// Database
+		DatabaseSerializerPerformanceTest.class,
+		BinaryDatabaseDaoLargeDatabaseVersionTest.class,
+		DatabaseVersionDaoPerformanceTest.class,
+		ChecksumSchemaPerformanceTest.class,
+		FileHistoryDaoPerformanceTest.class
+})
+public class PerformanceTestSuite {
+	// This class executes all tests
+}
@@ -0,0 +1,240 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.chunk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.chunk.Blake2bDigest;
+import org.syncany.chunk.Chunk;
+import org.syncany.chunk.ChunkDigest;
+import org.syncany.chunk.Chunker;
+import org.syncany.chunk.Chunker.ChunkEnumeration;
+import org.syncany.chunk.FastCdcChunker;
+import org.syncany.chunk.FixedChunker;
+import org.syncany.chunk.TttdChunker;
+import org.syncany.util.StringUtil;
+import org.syncany.tests.unit.util.TestFileUtil;
+
+public class ChunkerPerformanceTest {
+	private static final Logger logger = Logger.getLogger(ChunkerPerformanceTest.class.getSimpleName());
+
+	private static final int BENCHMARK_FILE_SIZE = 16*1024*1024;
+	private static final int BENCHMARK_ROUNDS = 2;
+	private static final int BENCHMARK_AVG_CHUNK_SIZE = 64*1024;
+	
+	private File tempDir;
+	private File benchmarkFile;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		benchmarkFile = TestFileUtil.createRandomFileInDirectory(tempDir, BENCHMARK_FILE_SIZE);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testTttdChunkerThroughput() throws Exception {
+		TttdChunker chunker = new TttdChunker(512*1024);
+		
+		long bulkChunkCount = 0;
+		long singleByteChunkCount = 0;
+		
+		long bulkDuration = 0;
+		long singleByteDuration = 0;
+		
+		for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+			long bulkStart = System.nanoTime();
+			bulkChunkCount = countChunks(chunker.createChunks(benchmarkFile));
+			bulkDuration += System.nanoTime() - bulkStart;
+			
+			long singleByteStart = System.nanoTime();
+			singleByteChunkCount = countChunks(chunker.new TTTDEnumeration(new FileInputStream(benchmarkFile), true));
+			singleByteDuration += System.nanoTime() - singleByteStart;
+		}
+		
+		double bulkThroughput = calculateThroughput(bulkDuration);
+		double singleByteThroughput = calculateThroughput(singleByteDuration);
+		
+		logger.log(Level.INFO, String.format("%s, bulk reads:        %.1f MB/s (%d chunks)", chunker, bulkThroughput, bulkChunkCount));
+		logger.log(Level.INFO, String.format("%s, single byte reads: %.1f MB/s (%d chunks)", chunker, singleByteThroughput, singleByteChunkCount));
+		
+		assertEquals("Bulk and single byte reads should create the same number of chunks.", singleByteChunkCount, bulkChunkCount);
+	}
+	
+	@Test
+	public void testChunkerDeduplicationOnInsertAndShift() throws Exception {
+		List<Chunker> chunkers = Arrays.asList(
+			new FixedChunker(BENCHMARK_AVG_CHUNK_SIZE),
+			new TttdChunker(BENCHMARK_AVG_CHUNK_SIZE),
+			new FastCdcChunker(BENCHMARK_AVG_CHUNK_SIZE)
+		);
+		
+		// Workloads: Modified versions of the benchmark file
+		byte[] benchmarkFileContents = FileUtils.readFileToByteArray(benchmarkFile);
+		
+		File insertByteFile = new File(tempDir, "insert-byte");
+		File insertBlockFile = new File(tempDir, "insert-block");
+		File removeBytesFile = new File(tempDir, "remove-bytes");
+		
+		FileUtils.writeByteArrayToFile(insertByteFile, insert(benchmarkFileContents, 4096, new byte[] { 0x42 }));
+		FileUtils.writeByteArrayToFile(insertBlockFile, insert(benchmarkFileContents, BENCHMARK_FILE_SIZE/2, new byte[100*1024]));
+		FileUtils.writeByteArrayToFile(removeBytesFile, Arrays.copyOfRange(benchmarkFileContents, 100, benchmarkFileContents.length));
+		
+		for (Chunker chunker : chunkers) {
+			long duration = 0;
+			Set<String> benchmarkFileChunks = null;
+			
+			for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+				long start = System.nanoTime();
+				benchmarkFileChunks = createChunkSet(chunker.createChunks(benchmarkFile));
+				duration += System.nanoTime() - start;
+			}
+			
+			double insertByteRatio = calculateDeduplicationRatio(chunker, benchmarkFileChunks, insertByteFile);
+			double insertBlockRatio = calculateDeduplicationRatio(chunker, benchmarkFileChunks, insertBlockFile);
+			double removeBytesRatio = calculateDeduplicationRatio(chunker, benchmarkFileChunks, removeBytesFile);
+			
+			logger.log(Level.INFO, String.format("%s: %.1f MB/s, dedup ratio: insert byte %.3f, insert block %.3f, remove bytes %.3f", 
+					chunker, calculateThroughput(duration), insertByteRatio, insertBlockRatio, removeBytesRatio));
+			
+			if (!(chunker instanceof FixedChunker)) {
+				assertTrue("Content-defined chunker should find most chunks after inserting a byte.", insertByteRatio > 0.9);
+				assertTrue("Content-defined chunker should find most chunks after removing bytes.", removeBytesRatio > 0.9);
+			}
+		}
+	}
+	
+	@Test
+	public void testDigestThroughput() throws Exception {
+		List<String> digestAlgorithms = Arrays.asList("MD5", ChunkDigest.DEFAULT_ALGORITHM, Blake2bDigest.ALGORITHM);
+		byte[] benchmarkFileContents = FileUtils.readFileToByteArray(benchmarkFile);
+		
+		for (String digestAlgorithm : digestAlgorithms) {
+			long digestDuration = 0;
+			long chunkerDuration = 0;
+			
+			for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+				// Chunk and file checksum only, in memory
+				ChunkDigest chunkDigest = ChunkDigest.getInstance(digestAlgorithm);
+				long digestStart = System.nanoTime();
+				
+				for (int offset = 0; offset < benchmarkFileContents.length; offset += BENCHMARK_AVG_CHUNK_SIZE) {
+					chunkDigest.update(benchmarkFileContents, offset, Math.min(BENCHMARK_AVG_CHUNK_SIZE, benchmarkFileContents.length - offset));
+					chunkDigest.digestChunk();
+				}
+				
+				chunkDigest.digestFile();
+				digestDuration += System.nanoTime() - digestStart;
+
+				// Entire chunking process, including reading the file
+				Chunker chunker = new FastCdcChunker(BENCHMARK_AVG_CHUNK_SIZE, digestAlgorithm);
+				long chunkerStart = System.nanoTime();
+				
+				countChunks(chunker.createChunks(benchmarkFile));
+				chunkerDuration += System.nanoTime() - chunkerStart;
+			}
+			
+			logger.log(Level.INFO, String.format("%s: digest only %.1f MB/s, with FastCDC chunker %.1f MB/s", digestAlgorithm,
+					calculateThroughput(digestDuration), calculateThroughput(chunkerDuration)));
+		}
+	}
+	
+	/**
+	 * Returns the fraction of bytes of the given file that are contained in chunks
+	 * that are already known (i.e. in the given chunk set). 
+	 */
+	private double calculateDeduplicationRatio(Chunker chunker, Set<String> knownChunks, File file) throws IOException {
+		ChunkEnumeration chunkEnumeration = chunker.createChunks(file);
+		long knownBytes = 0;
+		
+		while (chunkEnumeration.hasMoreElements()) {
+			Chunk chunk = chunkEnumeration.nextElement();
+			
+			if (chunk != null && knownChunks.contains(StringUtil.toHex(chunk.getChecksum()))) {
+				knownBytes += chunk.getSize();
+			}
+		}
+		
+		chunkEnumeration.close();		
+		return (double) knownBytes / file.length();
+	}
+	
+	private Set<String> createChunkSet(ChunkEnumeration chunkEnumeration) {
+		Set<String> chunkSet = new HashSet<String>();
+		
+		while (chunkEnumeration.hasMoreElements()) {
+			Chunk chunk = chunkEnumeration.nextElement();
+			
+			if (chunk != null) {
+				chunkSet.add(StringUtil.toHex(chunk.getChecksum()));
+			}
+		}
+		
+		chunkEnumeration.close();		
+		return chunkSet;
+	}
+	
+	private byte[] insert(byte[] contents, int offset, byte[] insertContents) {
+		byte[] newContents = new byte[contents.length + insertContents.length];
+		
+		System.arraycopy(contents, 0, newContents, 0, offset);
+		System.arraycopy(insertContents, 0, newContents, offset, insertContents.length);
+		System.arraycopy(contents, offset, newContents, offset + insertContents.length, contents.length - offset);
+		
+		return newContents;
+	}
+	
+	private long countChunks(ChunkEnumeration chunkEnumeration) throws IOException {
+		long chunkCount = 0;
+		
+		while (chunkEnumeration.hasMoreElements()) {
+			Chunk chunk = chunkEnumeration.nextElement();
+			
+			if (chunk != null) {
+				chunkCount++;
+			}
+		}
+		
+		chunkEnumeration.close();		
+		return chunkCount;
+	}
+	
+	private double calculateThroughput(long durationNanos) {
+		double totalMegabytes = (double) BENCHMARK_ROUNDS * BENCHMARK_FILE_SIZE / 1024 / 1024;
+		return totalMegabytes / (durationNanos / 1000000000.0);
+	}
+}
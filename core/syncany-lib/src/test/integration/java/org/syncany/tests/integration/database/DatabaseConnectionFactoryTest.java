@@ -0,0 +1,295 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+
+import org.junit.Test;
+import org.syncany.config.Config;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.DatabaseConnectionFactory;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.database.dao.ApplicationSqlDao;
+import org.syncany.database.dao.ChunkSqlDao;
+import org.syncany.database.dao.MultiChunkSqlDao;
+import org.syncany.tests.util.TestAssertUtil;
+import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.tests.util.TestSqlUtil;
+import org.syncany.util.FileUtil;
+import org.syncany.util.SqlRunner;
+
+import com.google.common.io.ByteStreams;
+
+public class DatabaseConnectionFactoryTest {
+	@Test
+	public void testUpgradeHexChecksumsToBinaryChecksums() throws Exception {
+		// Setup
+		Config hexTestConfig = TestConfigUtil.createTestLocalConfig();
+		Config binaryTestConfig = TestConfigUtil.createTestLocalConfig();
+
+		// Create schema version 1 database (hex checksums) without the connection factory
+		String hexDatabasePath = FileUtil.getDatabasePath(hexTestConfig.getDatabaseFile().toString());
+		Connection hexDatabaseConnection = DriverManager.getConnection(DatabaseConnectionFactory.DATABASE_CONNECTION_FILE_STRING.replaceAll(
+				"%DATABASEFILE%", hexDatabasePath));
+
+		SqlRunner.runScript(hexDatabaseConnection, createSchemaVersion1Script());
+		TestSqlUtil.runSqlFromResource(hexDatabaseConnection, "test.insert.set2.sql");
+
+		assertEquals("VARCHAR", TestSqlUtil.runSqlSelect("select type_name from information_schema.system_columns "
+				+ "where table_name='CHUNK' and column_name='CHECKSUM'", hexDatabaseConnection));
+
+		hexDatabaseConnection.createStatement().execute("shutdown");
+
+		// Run: Connection factory upgrades the database
+		Connection upgradedDatabaseConnection = hexTestConfig.createDatabaseConnection();
+		Connection binaryDatabaseConnection = binaryTestConfig.createDatabaseConnection();
+
+		TestSqlUtil.runSqlFromResource(binaryDatabaseConnection, "test.insert.set2.sql");
+
+		// Test: Schema version and column types
+		assertEquals("2", TestSqlUtil.runSqlSelect("select value from general_settings where key='schemaVersion'", upgradedDatabaseConnection));
+		assertEquals("VARBINARY", TestSqlUtil.runSqlSelect("select type_name from information_schema.system_columns "
+				+ "where table_name='CHUNK' and column_name='CHECKSUM'", upgradedDatabaseConnection));
+		assertEquals("VARBINARY", TestSqlUtil.runSqlSelect("select type_name from information_schema.system_columns "
+				+ "where table_name='FILEVERSION' and column_name='FILECONTENT_CHECKSUM'", upgradedDatabaseConnection));
+
+		// Test: Converted checksums can be queried by the DAOs
+		ChunkChecksum chunkChecksum = ChunkChecksum.parseChunkChecksum("05a79f06cf3f67f726dae68d18a2290f6c9a50c9");
+
+		assertNotNull(new ChunkSqlDao(upgradedDatabaseConnection).getChunk(chunkChecksum));
+		assertEquals(MultiChunkId.parseMultiChunkId("ff02c9fc6f3a7f8349f7a970f0b33ddf295c985a"),
+				new MultiChunkSqlDao(upgradedDatabaseConnection).getMultiChunkId(chunkChecksum));
+
+		upgradedDatabaseConnection.close();
+		binaryDatabaseConnection.close();
+
+		// Test: Upgraded database equals a database created with binary checksums
+		TestAssertUtil.assertSqlDatabaseEquals(binaryTestConfig.getDatabaseFile(), hexTestConfig.getDatabaseFile());
+
+		// Tear down
+		TestConfigUtil.deleteTestLocalConfigAndData(hexTestConfig);
+		TestConfigUtil.deleteTestLocalConfigAndData(binaryTestConfig);
+	}
+
+	@Test
+	public void testUpgradeHexChecksumsToBinaryChecksumsInterruptedDuringCopy() throws Exception {
+		// Setup
+		Config hexTestConfig = TestConfigUtil.createTestLocalConfig();
+		Config binaryTestConfig = TestConfigUtil.createTestLocalConfig();
+
+		Connection hexDatabaseConnection = createSchemaVersion1Database(hexTestConfig);
+
+		// Simulate crash during copy: Tables are created (DDL is auto-committed), copied data is not committed
+		SqlRunner.runScript(hexDatabaseConnection, DatabaseConnectionFactory.getStatementInputStream(DatabaseConnectionFactory.DATABASE_RESOURCE_UPGRADE_BINARY_CHECKSUMS));
+		hexDatabaseConnection.rollback();
+
+		assertEquals("0", TestSqlUtil.runSqlSelect("select count(*) from chunk_binary", hexDatabaseConnection));
+		hexDatabaseConnection.createStatement().execute("shutdown");
+
+		// Run & test
+		assertUpgradedDatabaseEqualsBinaryDatabase(hexTestConfig, binaryTestConfig);
+
+		// Tear down
+		TestConfigUtil.deleteTestLocalConfigAndData(hexTestConfig);
+		TestConfigUtil.deleteTestLocalConfigAndData(binaryTestConfig);
+	}
+
+	@Test
+	public void testUpgradeHexChecksumsToBinaryChecksumsInterruptedDuringTableReplace() throws Exception {
+		// Setup
+		Config hexTestConfig = TestConfigUtil.createTestLocalConfig();
+		Config binaryTestConfig = TestConfigUtil.createTestLocalConfig();
+
+		Connection hexDatabaseConnection = createSchemaVersion1Database(hexTestConfig);
+
+		// Simulate crash after copy: Views and all old tables dropped, but only some of the copies renamed
+		SqlRunner.runScript(hexDatabaseConnection, DatabaseConnectionFactory.getStatementInputStream(DatabaseConnectionFactory.DATABASE_RESOURCE_UPGRADE_BINARY_CHECKSUMS));
+		hexDatabaseConnection.commit();
+
+		for (String viewName : new String[] { "fileversion_full", "fileversion_master_last", "fileversion_master_maxversion", "fileversion_master" }) {
+			hexDatabaseConnection.createStatement().execute("drop view " + viewName);
+		}
+
+		for (String tableName : new String[] { "fileversion", "filecontent_chunk", "multichunk_chunk", "filecontent", "multichunk", "chunk", "multichunk_muddy" }) {
+			hexDatabaseConnection.createStatement().execute("drop table " + tableName);
+		}
+
+		hexDatabaseConnection.createStatement().execute("alter table chunk_binary rename to chunk");
+		hexDatabaseConnection.createStatement().execute("alter table fileversion_binary rename to fileversion");
+		hexDatabaseConnection.createStatement().execute("shutdown");
+
+		// Run & test
+		assertUpgradedDatabaseEqualsBinaryDatabase(hexTestConfig, binaryTestConfig);
+
+		// Tear down
+		TestConfigUtil.deleteTestLocalConfigAndData(hexTestConfig);
+		TestConfigUtil.deleteTestLocalConfigAndData(binaryTestConfig);
+	}
+
+	@Test
+	public void testUpgradeFileVersionDepthInterruptedBeforeFill() throws Exception {
+		// Setup
+		Config upgradeTestConfig = TestConfigUtil.createTestLocalConfig();
+		Config expectedTestConfig = TestConfigUtil.createTestLocalConfig();
+
+		Connection upgradeDatabaseConnection = upgradeTestConfig.createDatabaseConnection();
+		TestSqlUtil.runSqlFromResource(upgradeDatabaseConnection, "test.insert.set3.sql");
+
+		// Simulate crash after adding the columns (DDL is auto-committed), but before filling them
+		upgradeDatabaseConnection.createStatement().execute("drop index idx_fileversion_depth");
+		upgradeDatabaseConnection.createStatement().execute("drop index idx_fileversion_parent_path");
+		upgradeDatabaseConnection.createStatement().execute("update fileversion set depth=0, parent_path=''");
+		upgradeDatabaseConnection.commit();
+		upgradeDatabaseConnection.close();
+
+		// Run & test
+		assertUpgradedFileVersionDepthEqualsExpected(upgradeTestConfig, expectedTestConfig);
+
+		// Tear down
+		TestConfigUtil.deleteTestLocalConfigAndData(upgradeTestConfig);
+		TestConfigUtil.deleteTestLocalConfigAndData(expectedTestConfig);
+	}
+
+	@Test
+	public void testUpgradeFileVersionCurrentInterruptedBeforeFill() throws Exception {
+		// Setup
+		Config upgradeTestConfig = TestConfigUtil.createTestLocalConfig();
+		Config expectedTestConfig = TestConfigUtil.createTestLocalConfig();
+
+		Connection upgradeDatabaseConnection = upgradeTestConfig.createDatabaseConnection();
+		TestSqlUtil.runSqlFromResource(upgradeDatabaseConnection, "test.insert.set3.sql");
+
+		// Simulate crash after creating the table (DDL is auto-committed), but before creating the view and filling the table
+		upgradeDatabaseConnection.createStatement().execute("drop view fileversion_master_last");
+		upgradeDatabaseConnection.createStatement().execute("delete from fileversion_current");
+		upgradeDatabaseConnection.commit();
+		upgradeDatabaseConnection.close();
+
+		// Run
+		Connection upgradedDatabaseConnection = upgradeTestConfig.createDatabaseConnection();
+		Connection expectedDatabaseConnection = expectedTestConfig.createDatabaseConnection();
+
+		TestSqlUtil.runSqlFromResource(expectedDatabaseConnection, "test.insert.set3.sql");
+
+		// Test
+		String lastFileVersionsQuery = "select filehistory_id, version, path from fileversion_master_last order by filehistory_id";
+
+		assertEquals(TestSqlUtil.runSqlSelect(lastFileVersionsQuery, expectedDatabaseConnection),
+				TestSqlUtil.runSqlSelect(lastFileVersionsQuery, upgradedDatabaseConnection));
+
+		upgradedDatabaseConnection.close();
+		expectedDatabaseConnection.close();
+
+		TestAssertUtil.assertSqlDatabaseEquals(expectedTestConfig.getDatabaseFile(), upgradeTestConfig.getDatabaseFile());
+
+		// Tear down
+		TestConfigUtil.deleteTestLocalConfigAndData(upgradeTestConfig);
+		TestConfigUtil.deleteTestLocalConfigAndData(expectedTestConfig);
+	}
+
+	@Test(timeout = 30000)
+	public void testCreateConnectionWhileOtherConnectionHasUncommittedChanges() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set3.sql");
+
+		// Uncommitted changes lock the tables (e.g. the cleanup number written by the down operation)
+		new ApplicationSqlDao(databaseConnection).writeCleanupNumber(1);
+		databaseConnection.createStatement().execute("update fileversion set depth=depth");
+
+		// Run & test (must not wait for the locks of the other connection)
+		Connection otherDatabaseConnection = testConfig.createDatabaseConnection();
+		otherDatabaseConnection.close();
+
+		databaseConnection.commit();
+		databaseConnection.close();
+
+		// Tear down
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	private void assertUpgradedFileVersionDepthEqualsExpected(Config upgradeTestConfig, Config expectedTestConfig) throws Exception {
+		Connection upgradedDatabaseConnection = upgradeTestConfig.createDatabaseConnection();
+		Connection expectedDatabaseConnection = expectedTestConfig.createDatabaseConnection();
+
+		TestSqlUtil.runSqlFromResource(expectedDatabaseConnection, "test.insert.set3.sql");
+
+		assertEquals("3,win32/win32/sphinx_lm_convert", TestSqlUtil.runSqlSelect("select depth, parent_path from fileversion "
+				+ "where path='win32/win32/sphinx_lm_convert/sphinx_lm_convert.vcxproj.filters' and version=1", upgradedDatabaseConnection));
+		assertEquals("2", TestSqlUtil.runSqlSelect("select count(*) from information_schema.system_indexinfo "
+				+ "where index_name in ('IDX_FILEVERSION_DEPTH', 'IDX_FILEVERSION_PARENT_PATH')", upgradedDatabaseConnection));
+
+		upgradedDatabaseConnection.close();
+		expectedDatabaseConnection.close();
+
+		TestAssertUtil.assertSqlDatabaseEquals(expectedTestConfig.getDatabaseFile(), upgradeTestConfig.getDatabaseFile());
+	}
+
+	private Connection createSchemaVersion1Database(Config testConfig) throws Exception {
+		String databasePath = FileUtil.getDatabasePath(testConfig.getDatabaseFile().toString());
+		Connection databaseConnection = DriverManager.getConnection(DatabaseConnectionFactory.DATABASE_CONNECTION_FILE_STRING.replaceAll(
+				"%DATABASEFILE%", databasePath));
+
+		databaseConnection.setAutoCommit(false);
+
+		SqlRunner.runScript(databaseConnection, createSchemaVersion1Script());
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set2.sql");
+		databaseConnection.commit();
+
+		return databaseConnection;
+	}
+
+	private void assertUpgradedDatabaseEqualsBinaryDatabase(Config upgradeTestConfig, Config binaryTestConfig) throws Exception {
+		Connection upgradedDatabaseConnection = upgradeTestConfig.createDatabaseConnection();
+		Connection binaryDatabaseConnection = binaryTestConfig.createDatabaseConnection();
+
+		TestSqlUtil.runSqlFromResource(binaryDatabaseConnection, "test.insert.set2.sql");
+
+		assertEquals("2", TestSqlUtil.runSqlSelect("select value from general_settings where key='schemaVersion'", upgradedDatabaseConnection));
+		assertEquals("0", TestSqlUtil.runSqlSelect("select count(*) from information_schema.system_tables where table_name like '%_BINARY'",
+				upgradedDatabaseConnection));
+		assertEquals("0", TestSqlUtil.runSqlSelect("select count(*) from general_settings where key='"
+				+ DatabaseConnectionFactory.DATABASE_UPGRADE_BINARY_CHECKSUMS_COPIED_KEY + "'", upgradedDatabaseConnection));
+
+		upgradedDatabaseConnection.close();
+		binaryDatabaseConnection.close();
+
+		TestAssertUtil.assertSqlDatabaseEquals(binaryTestConfig.getDatabaseFile(), upgradeTestConfig.getDatabaseFile());
+	}
+
+	private InputStream createSchemaVersion1Script() throws IOException {
+		InputStream createScriptInputStream = DatabaseConnectionFactory.getStatementInputStream(DatabaseConnectionFactory.DATABASE_RESOURCE_CREATE_ALL);
+		String createScript = new String(ByteStreams.toByteArray(createScriptInputStream), StandardCharsets.UTF_8);
+
+		String schemaVersion1Script = createScript
+				.replace("varbinary(20)", "varchar(40)")
+				.replace("INSERT INTO general_settings (key, value) VALUES ('schemaVersion', '2');", "");
+
+		return new ByteArrayInputStream(schemaVersion1Script.getBytes(StandardCharsets.UTF_8));
+	}
+}
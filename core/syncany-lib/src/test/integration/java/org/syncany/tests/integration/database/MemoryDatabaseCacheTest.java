@@ -232,6 +232,64 @@ public class MemoryDatabaseCacheTest {
 		assertEquals(fileHistory3, database.getFileHistory("file1.jpg"));
 	}
 
+	@Test
+	public void testFilenameCacheTwoFileHistoriesWithSamePath() throws IOException {
+		MemoryDatabase database = new MemoryDatabase();
+
+		// Round 1: Add two file histories with the same path (e.g. created on two clients)
+		DatabaseVersion databaseVersion1 = TestDatabaseUtil.createDatabaseVersion();
+
+		FileVersion fileVersion1 = TestDatabaseUtil.createFileVersion("file1.jpg");
+		PartialFileHistory fileHistory1 = new PartialFileHistory(FileHistoryId.parseFileId("1111111111111111"));
+
+		fileHistory1.addFileVersion(fileVersion1);
+		databaseVersion1.addFileHistory(fileHistory1);
+
+		FileVersion fileVersion2 = TestDatabaseUtil.createFileVersion("file1.jpg");
+		PartialFileHistory fileHistory2 = new PartialFileHistory(FileHistoryId.parseFileId("2222222222222222"));
+
+		fileHistory2.addFileVersion(fileVersion2);
+		databaseVersion1.addFileHistory(fileHistory2);
+
+		database.addDatabaseVersion(databaseVersion1);
+
+		// Round 2: Move the file history that the path currently refers to
+		PartialFileHistory movedFileHistory = database.getFileHistory("file1.jpg");
+		PartialFileHistory remainingFileHistory = (movedFileHistory.getFileHistoryId().equals(fileHistory1.getFileHistoryId())) ? fileHistory2
+				: fileHistory1;
+
+		DatabaseVersion databaseVersion2 = TestDatabaseUtil.createDatabaseVersion(databaseVersion1);
+
+		FileVersion fileVersion3 = TestDatabaseUtil.createFileVersion("file2.jpg", movedFileHistory.getLastVersion());
+		PartialFileHistory fileHistory3 = new PartialFileHistory(movedFileHistory.getFileHistoryId());
+
+		fileHistory3.addFileVersion(fileVersion3);
+		databaseVersion2.addFileHistory(fileHistory3);
+
+		database.addDatabaseVersion(databaseVersion2);
+
+		// The remaining file history must still be found by its path
+		assertNotNull(database.getFileHistory("file1.jpg"));
+		assertEquals(remainingFileHistory.getFileHistoryId(), database.getFileHistory("file1.jpg").getFileHistoryId());
+		assertEquals(movedFileHistory.getFileHistoryId(), database.getFileHistory("file2.jpg").getFileHistoryId());
+
+		// Round 3: Delete the remaining file history
+		DatabaseVersion databaseVersion3 = TestDatabaseUtil.createDatabaseVersion(databaseVersion2);
+
+		FileVersion fileVersion4 = TestDatabaseUtil.createFileVersion("file1.jpg", remainingFileHistory.getLastVersion());
+		fileVersion4.setStatus(FileStatus.DELETED);
+
+		PartialFileHistory fileHistory4 = new PartialFileHistory(remainingFileHistory.getFileHistoryId());
+
+		fileHistory4.addFileVersion(fileVersion4);
+		databaseVersion3.addFileHistory(fileHistory4);
+
+		database.addDatabaseVersion(databaseVersion3);
+
+		assertNull(database.getFileHistory("file1.jpg"));
+		assertNotNull(database.getFileHistory("file2.jpg"));
+	}
+
 	@Test
 	public void testContentChecksumCache() throws IOException {
 		MemoryDatabase database = new MemoryDatabase();
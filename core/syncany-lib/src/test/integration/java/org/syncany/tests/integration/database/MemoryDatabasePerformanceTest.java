@@ -0,0 +1,146 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.MemoryDatabase;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.database.VectorClock;
+
+public class MemoryDatabasePerformanceTest {
+	private static final Logger logger = Logger.getLogger(MemoryDatabasePerformanceTest.class.getSimpleName());
+
+	private static final int BENCHMARK_DATABASE_VERSIONS = 10000;
+	private static final int BENCHMARK_SLICES = 10;
+	private static final int BENCHMARK_NEW_FILES_PER_DATABASE_VERSION = 5;
+	private static final int BENCHMARK_CHANGED_FILES_PER_DATABASE_VERSION = 5;
+
+	@Test
+	public void testAddDatabaseVersionsUpdatesCaches() {
+		Random random = new Random(42);
+		MemoryDatabase database = new MemoryDatabase();
+
+		List<FileVersion> lastFileVersions = new ArrayList<FileVersion>();
+		List<FileHistoryId> fileHistoryIds = new ArrayList<FileHistoryId>();
+
+		VectorClock vectorClock = new VectorClock();
+		long[] sliceDurations = new long[BENCHMARK_SLICES];
+		int databaseVersionsPerSlice = BENCHMARK_DATABASE_VERSIONS / BENCHMARK_SLICES;
+
+		for (int i = 0; i < BENCHMARK_DATABASE_VERSIONS; i++) {
+			vectorClock = vectorClock.clone();
+			vectorClock.incrementClock("A");
+
+			DatabaseVersion databaseVersion = new DatabaseVersion();
+			databaseVersion.setClient("A");
+			databaseVersion.setTimestamp(new Date(1400000000000L + i * 1000L));
+			databaseVersion.setVectorClock(vectorClock);
+
+			// New files
+			for (int j = 0; j < BENCHMARK_NEW_FILES_PER_DATABASE_VERSION; j++) {
+				FileVersion fileVersion = createFileVersion("folder-" + (i % 100) + "/file-" + i + "-" + j, 1L, random);
+				PartialFileHistory fileHistory = new PartialFileHistory(FileHistoryId.secureRandomFileId());
+
+				fileHistory.addFileVersion(fileVersion);
+				databaseVersion.addFileHistory(fileHistory);
+
+				lastFileVersions.add(fileVersion);
+				fileHistoryIds.add(fileHistory.getFileHistoryId());
+			}
+
+			// Changed and renamed files
+			for (int j = 0; i > 0 && j < BENCHMARK_CHANGED_FILES_PER_DATABASE_VERSION; j++) {
+				int fileIndex = random.nextInt(lastFileVersions.size() - BENCHMARK_NEW_FILES_PER_DATABASE_VERSION);
+				FileHistoryId fileHistoryId = fileHistoryIds.get(fileIndex);
+
+				if (databaseVersion.getFileHistory(fileHistoryId) == null) {
+					FileVersion lastFileVersion = lastFileVersions.get(fileIndex);
+					FileVersion fileVersion = createFileVersion(lastFileVersion.getPath() + "-" + i, lastFileVersion.getVersion() + 1, random);
+					PartialFileHistory fileHistory = new PartialFileHistory(fileHistoryId);
+
+					fileHistory.addFileVersion(fileVersion);
+					databaseVersion.addFileHistory(fileHistory);
+
+					lastFileVersions.set(fileIndex, fileVersion);
+				}
+			}
+
+			long addStart = System.nanoTime();
+			database.addDatabaseVersion(databaseVersion);
+			sliceDurations[i / databaseVersionsPerSlice] += System.nanoTime() - addStart;
+		}
+
+		for (int slice = 0; slice < BENCHMARK_SLICES; slice++) {
+			logger.log(Level.INFO, String.format("Database versions %5d-%5d: %d ms", slice * databaseVersionsPerSlice, (slice + 1)
+					* databaseVersionsPerSlice - 1, sliceDurations[slice] / 1000000L));
+		}
+
+		// Caches must reflect the last version of each file (the timings above are only logged)
+		assertEquals(BENCHMARK_DATABASE_VERSIONS * BENCHMARK_NEW_FILES_PER_DATABASE_VERSION, database.getFileHistories().size());
+		assertEquals(BENCHMARK_DATABASE_VERSIONS, database.getDatabaseVersions().size());
+
+		for (int i = 0; i < lastFileVersions.size(); i++) {
+			FileVersion lastFileVersion = lastFileVersions.get(i);
+			PartialFileHistory fileHistory = database.getFileHistory(lastFileVersion.getPath());
+
+			assertEquals(fileHistoryIds.get(i), fileHistory.getFileHistoryId());
+			assertEquals(lastFileVersion.getVersion(), fileHistory.getLastVersion().getVersion());
+			assertEquals(1, database.getFileHistories(lastFileVersion.getChecksum()).size());
+
+			for (long version = 1; version < lastFileVersion.getVersion(); version++) {
+				FileVersion previousFileVersion = fileHistory.getFileVersion(version);
+
+				assertNull(database.getFileHistory(previousFileVersion.getPath()));
+				assertNull(database.getFileHistories(previousFileVersion.getChecksum()));
+			}
+		}
+	}
+
+	private FileVersion createFileVersion(String path, long version, Random random) {
+		byte[] checksum = new byte[20];
+		random.nextBytes(checksum);
+
+		FileVersion fileVersion = new FileVersion();
+		fileVersion.setVersion(version);
+		fileVersion.setPath(path);
+		fileVersion.setType(FileType.FILE);
+		fileVersion.setStatus((version == 1) ? FileStatus.NEW : FileStatus.CHANGED);
+		fileVersion.setSize(1024L);
+		fileVersion.setChecksum(new FileChecksum(checksum));
+		fileVersion.setLastModified(new Date(1400000000000L + version));
+		fileVersion.setUpdated(new Date(1400000000000L + version));
+
+		return fileVersion;
+	}
+}
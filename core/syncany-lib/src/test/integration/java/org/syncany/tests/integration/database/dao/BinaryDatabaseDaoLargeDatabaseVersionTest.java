@@ -0,0 +1,136 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.database.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.MemoryDatabase;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.database.VectorClock;
+import org.syncany.database.dao.DatabaseBinaryReader;
+import org.syncany.database.dao.DatabaseXmlSerializer;
+import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseFormat;
+import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
+import org.syncany.tests.unit.util.TestFileUtil;
+
+/**
+ * Tests the binary database format with a database file larger than
+ * {@link DatabaseBinaryReader#MAX_FIELD_LENGTH} (64 MB). Because of the size of
+ * the file, the test is not part of the {@link BinaryDatabaseDaoTest}.
+ */
+public class BinaryDatabaseDaoLargeDatabaseVersionTest {
+	private File tempDir;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+	}
+
+	@After
+	public void tearDown() {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testWriteAndReadDatabaseVersionLargerThanMaxFieldLength() throws IOException {
+		// Two file versions with long paths; each path is below the field length limit, 
+		// but the content of the database version is (just) above it
+		char[] longPathChars = new char[DatabaseBinaryReader.MAX_FIELD_LENGTH / 2 + 1024];
+		Arrays.fill(longPathChars, 'a');
+		
+		String longPath = new String(longPathChars);
+
+		MemoryDatabase newDatabase = new MemoryDatabase();
+		DatabaseVersion largeDatabaseVersion = createDatabaseVersion();
+		PartialFileHistory fileHistory = new PartialFileHistory(FileHistoryId.secureRandomFileId());
+
+		for (long version = 1; version <= 2; version++) {
+			FileVersion fileVersion = new FileVersion();
+			fileVersion.setVersion(version);
+			fileVersion.setType(FileType.FILE);
+			fileVersion.setPath(longPath);
+			fileVersion.setStatus(version == 1 ? FileStatus.NEW : FileStatus.CHANGED);
+			fileVersion.setSize(0L);
+			fileVersion.setLastModified(new Date(1234567890L));
+
+			fileHistory.addFileVersion(fileVersion);
+		}
+
+		largeDatabaseVersion.addFileHistory(fileHistory);
+
+		DatabaseVersion smallDatabaseVersion = createDatabaseVersion(largeDatabaseVersion);
+		smallDatabaseVersion.addChunk(new ChunkEntry(new ChunkChecksum(new byte[] { 1, 2, 3 }), 123));
+
+		newDatabase.addDatabaseVersion(largeDatabaseVersion);
+		newDatabase.addDatabaseVersion(smallDatabaseVersion);
+
+		File databaseFile = new File(tempDir, "db-binary-large");
+		new DatabaseXmlSerializer(null, DatabaseFormat.BINARY).save(newDatabase.getDatabaseVersions(), databaseFile);
+
+		assertTrue(databaseFile.length() > DatabaseBinaryReader.MAX_FIELD_LENGTH);
+		// Read fully: Large content is parsed
+		MemoryDatabase loadedDatabase = new MemoryDatabase();
+		new DatabaseXmlSerializer().load(loadedDatabase, databaseFile, null, null, DatabaseReadType.FULL);
+
+		assertEquals(2, loadedDatabase.getDatabaseVersions().size());
+		assertEquals(2, loadedDatabase.getFileHistory(fileHistory.getFileHistoryId()).getFileVersions().size());
+		assertEquals(longPath, loadedDatabase.getFileHistory(fileHistory.getFileHistoryId()).getLastVersion().getPath());
+		assertNotNull(loadedDatabase.getChunk(new ChunkChecksum(new byte[] { 1, 2, 3 })));
+
+		// Read headers only: Large content is skipped
+		MemoryDatabase loadedHeaderDatabase = new MemoryDatabase();
+		new DatabaseXmlSerializer().load(loadedHeaderDatabase, databaseFile, null, null, DatabaseReadType.HEADER_ONLY);
+
+		assertEquals(2, loadedHeaderDatabase.getDatabaseVersions().size());
+		assertEquals(smallDatabaseVersion.getHeader(), loadedHeaderDatabase.getDatabaseVersions().get(1).getHeader());
+	}
+
+	private DatabaseVersion createDatabaseVersion() {
+		return createDatabaseVersion(null);
+	}
+
+	private DatabaseVersion createDatabaseVersion(DatabaseVersion basedOnDatabaseVersion) {
+		VectorClock vectorClock = (basedOnDatabaseVersion != null) ? basedOnDatabaseVersion.getVectorClock().clone() : new VectorClock();
+		vectorClock.incrementClock("someclient");
+
+		DatabaseVersion databaseVersion = new DatabaseVersion();
+
+		databaseVersion.setClient("someclient");
+		databaseVersion.setTimestamp(new Date());
+		databaseVersion.setVectorClock(vectorClock);
+
+		return databaseVersion;
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.database.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Date;
+
+import org.junit.Test;
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.MemoryDatabase;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.database.dao.DatabaseBinaryWriter;
+import org.syncany.database.dao.DatabaseXmlSerializer;
+import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseFormat;
+import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
+import org.syncany.tests.util.TestDatabaseUtil;
+
+/**
+ * Runs all tests of the {@link XmlDatabaseDaoTest} with the binary database
+ * format, and adds a few binary format specific tests. 
+ */
+public class BinaryDatabaseDaoTest extends XmlDatabaseDaoTest {
+	@Override
+	protected DatabaseXmlSerializer createSerializer() {
+		return new DatabaseXmlSerializer(null, DatabaseFormat.BINARY);
+	}
+
+	@Test
+	public void testBinaryFileHeader() throws IOException {
+		MemoryDatabase newDatabase = new MemoryDatabase();
+		newDatabase.addDatabaseVersion(createDatabaseVersion());
+
+		File databaseFile = new File(tempDir, "db-binary");
+		createSerializer().save(newDatabase.getDatabaseVersions(), databaseFile);
+
+		try (DataInputStream dataInputStream = new DataInputStream(new FileInputStream(databaseFile))) {
+			assertEquals(DatabaseBinaryWriter.MAGIC, dataInputStream.readInt());
+			assertEquals(DatabaseBinaryWriter.BINARY_FORMAT_VERSION, dataInputStream.readInt());
+		}
+	}
+
+	@Test
+	public void testWriteAndReadOptionalFileVersionFields() throws IOException {
+		MemoryDatabase newDatabase = new MemoryDatabase();
+		DatabaseVersion newDatabaseVersion = createDatabaseVersion();
+
+		PartialFileHistory fileHistory = new PartialFileHistory(FileHistoryId.secureRandomFileId());
+		newDatabaseVersion.addFileHistory(fileHistory);
+
+		FileVersion symlinkVersion = new FileVersion();
+		symlinkVersion.setVersion(1L);
+		symlinkVersion.setType(FileType.SYMLINK);
+		symlinkVersion.setPath("folder/link \u0001 with restricted chars äöü");
+		symlinkVersion.setLinkTarget("/etc/hosts");
+		symlinkVersion.setStatus(FileStatus.NEW);
+		symlinkVersion.setSize(0L);
+		symlinkVersion.setLastModified(new Date(1234567890L));
+		symlinkVersion.setUpdated(new Date(1234567899L));
+		symlinkVersion.setChecksum(new FileChecksum(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 }));
+		symlinkVersion.setDosAttributes("rha-");
+		symlinkVersion.setPosixPermissions("rwxr-xr-x");
+		fileHistory.addFileVersion(symlinkVersion);
+
+		newDatabase.addDatabaseVersion(newDatabaseVersion);
+
+		MemoryDatabase loadedDatabase = writeReadAndCompareDatabase(newDatabase);
+		FileVersion loadedSymlinkVersion = loadedDatabase.getFileHistory(fileHistory.getFileHistoryId()).getLastVersion();
+
+		assertEquals(symlinkVersion.getPath(), loadedSymlinkVersion.getPath());
+		assertEquals(symlinkVersion.getLinkTarget(), loadedSymlinkVersion.getLinkTarget());
+		assertEquals(symlinkVersion.getUpdated(), loadedSymlinkVersion.getUpdated());
+		assertEquals(symlinkVersion.getChecksum(), loadedSymlinkVersion.getChecksum());
+		assertEquals(symlinkVersion.getDosAttributes(), loadedSymlinkVersion.getDosAttributes());
+		assertEquals(symlinkVersion.getPosixPermissions(), loadedSymlinkVersion.getPosixPermissions());
+	}
+
+	@Test
+	public void testReadHeaderOnly() throws IOException {
+		MemoryDatabase newDatabase = new MemoryDatabase();
+		DatabaseVersion newDatabaseVersion = createDatabaseVersion();
+
+		newDatabaseVersion.addChunk(new ChunkEntry(new ChunkChecksum(new byte[] { 1, 2, 3 }), 123));
+		newDatabase.addDatabaseVersion(newDatabaseVersion);
+		newDatabase.addDatabaseVersion(createDatabaseVersion(newDatabaseVersion));
+
+		File databaseFile = new File(tempDir, "db-binary");
+		createSerializer().save(newDatabase.getDatabaseVersions(), databaseFile);
+
+		MemoryDatabase loadedDatabase = new MemoryDatabase();
+		new DatabaseXmlSerializer().load(loadedDatabase, databaseFile, null, null, DatabaseReadType.HEADER_ONLY);
+
+		assertEquals(2, loadedDatabase.getDatabaseVersions().size());
+		assertEquals(newDatabaseVersion.getHeader(), loadedDatabase.getDatabaseVersions().get(0).getHeader());
+		assertNull(loadedDatabase.getChunk(new ChunkChecksum(new byte[] { 1, 2, 3 })));
+	}
+
+	@Test
+	public void testReadXmlAndBinaryWithSameSerializer() throws Exception {
+		MemoryDatabase newDatabase = new MemoryDatabase();
+		newDatabase.addDatabaseVersion(createDatabaseVersion());
+
+		File xmlDatabaseFile = new File(tempDir, "db-xml");
+		File binaryDatabaseFile = new File(tempDir, "db-binary");
+
+		new DatabaseXmlSerializer(null, DatabaseFormat.XML).save(newDatabase.getDatabaseVersions(), xmlDatabaseFile);
+		new DatabaseXmlSerializer(null, DatabaseFormat.BINARY).save(newDatabase.getDatabaseVersions(), binaryDatabaseFile);
+
+		assertTrue(binaryDatabaseFile.length() < xmlDatabaseFile.length());
+
+		MemoryDatabase loadedXmlDatabase = TestDatabaseUtil.readDatabaseFileFromDisk(xmlDatabaseFile, null);
+		MemoryDatabase loadedBinaryDatabase = TestDatabaseUtil.readDatabaseFileFromDisk(binaryDatabaseFile, null);
+
+		assertEquals(loadedXmlDatabase.getDatabaseVersions(), loadedBinaryDatabase.getDatabaseVersions());
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadUnsupportedFormatVersion() throws IOException {
+		File databaseFile = new File(tempDir, "db-binary");
+
+		try (DataOutputStream dataOutputStream = new DataOutputStream(new FileOutputStream(databaseFile))) {
+			dataOutputStream.writeInt(DatabaseBinaryWriter.MAGIC);
+			dataOutputStream.writeInt(DatabaseBinaryWriter.BINARY_FORMAT_VERSION + 1);
+			dataOutputStream.writeByte(0);
+		}
+
+		new DatabaseXmlSerializer().load(new MemoryDatabase(), databaseFile, null, null, DatabaseReadType.FULL);
+	}
+}
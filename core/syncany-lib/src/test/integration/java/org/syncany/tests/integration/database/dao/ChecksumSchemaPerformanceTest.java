@@ -0,0 +1,268 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.database.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+import org.syncany.config.Config;
+import org.syncany.database.DatabaseConnectionFactory;
+import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.util.FileUtil;
+import org.syncany.util.SqlRunner;
+import org.syncany.util.StringUtil;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Compares the database size and the insert/lookup latency of the chunk and multichunk
+ * tables with hex checksums (schema version 1, <tt>varchar(40)</tt>) and with binary
+ * checksums (schema version 2, <tt>varbinary(20)</tt>).
+ */
+public class ChecksumSchemaPerformanceTest {
+	private static final Logger logger = Logger.getLogger(ChecksumSchemaPerformanceTest.class.getSimpleName());
+
+	// Scaled down from a database with millions of chunks to keep the test short
+	private static final int BENCHMARK_CHUNKS = 200000;
+	private static final int BENCHMARK_CHUNKS_PER_MULTICHUNK = 100;
+	private static final int BENCHMARK_LOOKUPS = 2000;
+	private static final int BENCHMARK_WARMUP_CHUNKS = 20000;
+
+	private static final String INSERT_DATABASE_VERSION_QUERY = "insert into databaseversion (status, localtime, client, vectorclock_serialized) "
+			+ "values ('MASTER', ?, 'A', '(A1)')";
+	private static final String INSERT_CHUNK_QUERY = "insert into chunk (checksum, databaseversion_id, size) values (?, ?, ?)";
+	private static final String INSERT_MULTICHUNK_QUERY = "insert into multichunk (id, databaseversion_id, size) values (?, ?, ?)";
+	private static final String INSERT_MULTICHUNK_CHUNK_QUERY = "insert into multichunk_chunk (multichunk_id, chunk_checksum) values (?, ?)";
+
+	@Test
+	public void testHexAndBinaryChecksumPerformance() throws Exception {
+		List<byte[]> chunkChecksums = createRandomChecksums(new Random(42), BENCHMARK_CHUNKS);
+		List<byte[]> multiChunkIds = createRandomChecksums(new Random(43), BENCHMARK_CHUNKS / BENCHMARK_CHUNKS_PER_MULTICHUNK);
+
+		// Warm up (JIT, HSQLDB), so that the first schema is not at a disadvantage
+		runBenchmark(false, chunkChecksums.subList(0, BENCHMARK_WARMUP_CHUNKS), multiChunkIds);
+		runBenchmark(true, chunkChecksums.subList(0, BENCHMARK_WARMUP_CHUNKS), multiChunkIds);
+
+		BenchmarkResult hexResult = runBenchmark(false, chunkChecksums, multiChunkIds);
+		BenchmarkResult binaryResult = runBenchmark(true, chunkChecksums, multiChunkIds);
+
+		logger.log(Level.INFO, String.format("%d chunks, hex checksums (varchar(40)): %s", BENCHMARK_CHUNKS, hexResult));
+		logger.log(Level.INFO, String.format("%d chunks, binary checksums (varbinary(20)): %s", BENCHMARK_CHUNKS, binaryResult));
+	}
+
+	private BenchmarkResult runBenchmark(boolean binaryChecksums, List<byte[]> chunkChecksums, List<byte[]> multiChunkIds) throws Exception {
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		BenchmarkResult result = new BenchmarkResult();
+
+		try {
+			// Create database without the connection factory (which would upgrade the hex schema)
+			String databasePath = FileUtil.getDatabasePath(testConfig.getDatabaseFile().toString());
+			Connection connection = DriverManager.getConnection(DatabaseConnectionFactory.DATABASE_CONNECTION_FILE_STRING.replaceAll(
+					"%DATABASEFILE%", databasePath));
+
+			connection.setAutoCommit(false);
+			SqlRunner.runScript(connection, createSchemaScript(binaryChecksums));
+
+			int databaseVersionId = insertDatabaseVersion(connection);
+
+			// Inserts
+			long insertStart = System.nanoTime();
+
+			try (PreparedStatement preparedStatement = connection.prepareStatement(INSERT_CHUNK_QUERY)) {
+				for (byte[] chunkChecksum : chunkChecksums) {
+					setChecksum(preparedStatement, 1, chunkChecksum, binaryChecksums);
+					preparedStatement.setInt(2, databaseVersionId);
+					preparedStatement.setLong(3, 1024L);
+
+					preparedStatement.addBatch();
+				}
+
+				preparedStatement.executeBatch();
+			}
+
+			try (PreparedStatement preparedStatement = connection.prepareStatement(INSERT_MULTICHUNK_QUERY)) {
+				for (byte[] multiChunkId : multiChunkIds) {
+					setChecksum(preparedStatement, 1, multiChunkId, binaryChecksums);
+					preparedStatement.setInt(2, databaseVersionId);
+					preparedStatement.setLong(3, 1024L * BENCHMARK_CHUNKS_PER_MULTICHUNK);
+
+					preparedStatement.addBatch();
+				}
+
+				preparedStatement.executeBatch();
+			}
+
+			try (PreparedStatement preparedStatement = connection.prepareStatement(INSERT_MULTICHUNK_CHUNK_QUERY)) {
+				for (int i = 0; i < chunkChecksums.size(); i++) {
+					setChecksum(preparedStatement, 1, multiChunkIds.get(i / BENCHMARK_CHUNKS_PER_MULTICHUNK), binaryChecksums);
+					setChecksum(preparedStatement, 2, chunkChecksums.get(i), binaryChecksums);
+
+					preparedStatement.addBatch();
+				}
+
+				preparedStatement.executeBatch();
+			}
+
+			connection.commit();
+			result.insertDuration = System.nanoTime() - insertStart;
+
+			// Lookups (multichunk ID for a chunk checksum, as used by the down and cleanup operations)
+			Random random = new Random(44);
+			long lookupStart = System.nanoTime();
+
+			try (PreparedStatement preparedStatement = connection.prepareStatement(DatabaseConnectionFactory
+					.getStatement("multichunk.select.all.getMultiChunkIdForChunk.sql"))) {
+
+				for (int i = 0; i < BENCHMARK_LOOKUPS; i++) {
+					int chunkIndex = random.nextInt(chunkChecksums.size());
+					setChecksum(preparedStatement, 1, chunkChecksums.get(chunkIndex), binaryChecksums);
+
+					try (ResultSet resultSet = preparedStatement.executeQuery()) {
+						assertTrue(resultSet.next());
+						assertEquals(StringUtil.toHex(multiChunkIds.get(chunkIndex / BENCHMARK_CHUNKS_PER_MULTICHUNK)),
+								getChecksum(resultSet, "multichunk_id", binaryChecksums));
+					}
+				}
+			}
+
+			result.lookupDuration = System.nanoTime() - lookupStart;
+
+			// Database size (after compacting, i.e. without the transaction log and unused space)
+			connection.createStatement().execute("shutdown compact");
+			connection.close();
+
+			result.databaseSize = getDatabaseSize(testConfig.getDatabaseFile());
+			return result;
+		}
+		finally {
+			TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+		}
+	}
+
+	/**
+	 * Returns the create script of the current schema, or -- if <tt>binaryChecksums</tt> is false --
+	 * the create script of schema version 1 (hex checksums).
+	 */
+	private InputStream createSchemaScript(boolean binaryChecksums) throws IOException {
+		InputStream createScriptInputStream = DatabaseConnectionFactory.getStatementInputStream(DatabaseConnectionFactory.DATABASE_RESOURCE_CREATE_ALL);
+
+		if (binaryChecksums) {
+			return createScriptInputStream;
+		}
+
+		String createScript = new String(ByteStreams.toByteArray(createScriptInputStream), StandardCharsets.UTF_8);
+		String schemaVersion1Script = createScript
+				.replace("varbinary(20)", "varchar(40)")
+				.replace("INSERT INTO general_settings (key, value) VALUES ('schemaVersion', '2');", "");
+
+		return new ByteArrayInputStream(schemaVersion1Script.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private int insertDatabaseVersion(Connection connection) throws SQLException {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(INSERT_DATABASE_VERSION_QUERY)) {
+			preparedStatement.setTimestamp(1, new Timestamp(1400000000000L));
+			preparedStatement.executeUpdate();
+		}
+
+		try (PreparedStatement preparedStatement = connection.prepareStatement("select id from databaseversion")) {
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				resultSet.next();
+				return resultSet.getInt(1);
+			}
+		}
+	}
+
+	private void setChecksum(PreparedStatement preparedStatement, int parameterIndex, byte[] checksum, boolean binaryChecksums)
+			throws SQLException {
+
+		if (binaryChecksums) {
+			preparedStatement.setBytes(parameterIndex, checksum);
+		}
+		else {
+			preparedStatement.setString(parameterIndex, StringUtil.toHex(checksum));
+		}
+	}
+
+	private String getChecksum(ResultSet resultSet, String columnLabel, boolean binaryChecksums) throws SQLException {
+		if (binaryChecksums) {
+			return StringUtil.toHex(resultSet.getBytes(columnLabel));
+		}
+		else {
+			return resultSet.getString(columnLabel);
+		}
+	}
+
+	private List<byte[]> createRandomChecksums(Random random, int count) {
+		List<byte[]> checksums = new ArrayList<byte[]>();
+
+		for (int i = 0; i < count; i++) {
+			byte[] checksum = new byte[20];
+			random.nextBytes(checksum);
+
+			checksums.add(checksum);
+		}
+
+		return checksums;
+	}
+
+	/**
+	 * Returns the total size of the HSQLDB files of the given database,
+	 * i.e. of all files named <tt>&lt;database file&gt;.*</tt>.
+	 */
+	private long getDatabaseSize(File databaseFile) {
+		long databaseSize = 0;
+
+		for (File file : databaseFile.getParentFile().listFiles()) {
+			if (file.getName().startsWith(databaseFile.getName() + ".")) {
+				databaseSize += file.length();
+			}
+		}
+
+		return databaseSize;
+	}
+
+	private static class BenchmarkResult {
+		private long databaseSize;
+		private long insertDuration;
+		private long lookupDuration;
+
+		@Override
+		public String toString() {
+			return String.format("database size: %d KB, insert: %d ms, %d lookups: %d ms", databaseSize / 1024, insertDuration / 1000000L,
+					BENCHMARK_LOOKUPS, lookupDuration / 1000000L);
+		}
+	}
+}
@@ -20,8 +20,10 @@ package org.syncany.tests.integration.database.dao;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.sql.Connection;
+import java.util.Arrays;
 import java.util.Map;
 
 import org.junit.Test;
@@ -105,4 +107,49 @@ public class ChunkDaoTest {
 		databaseConnection.close();
 		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
 	}	
+
+	@Test
+	public void testPersistedChunkIndex() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set3.sql");
+		
+		ChunkChecksum existingChecksum = ChunkChecksum.parseChunkChecksum("615fba8c2281d5bee891eb092a252d235c237457");
+		ChunkChecksum newChecksum = ChunkChecksum.parseChunkChecksum("beefbeefbeefbeefbeefbeefbeefbeefbeefbeef");
+
+		// Run: Load cache, write a new chunk and persist the index
+		ChunkSqlDao chunkDao = new ChunkSqlDao(databaseConnection, testConfig.getChunkIndexFile(), testConfig.getChunkFilterFile());
+
+		assertNotNull(chunkDao.getChunk(existingChecksum));
+		assertNull(chunkDao.getChunk(newChecksum));
+		assertEquals(1, chunkDao.getChunkFilterNegatives() + chunkDao.getChunkFilterFalsePositives());
+		
+		chunkDao.writeChunks(databaseConnection, 1, Arrays.asList(new ChunkEntry(newChecksum, 1234)));
+		databaseConnection.commit();
+		chunkDao.saveCache();
+		
+		// Test: New chunk is in cache, and index file is re-used by another DAO
+		assertNotNull(chunkDao.getChunk(newChecksum));
+		assertTrue(testConfig.getChunkIndexFile().exists());
+		assertTrue(testConfig.getChunkFilterFile().exists());
+		
+		ChunkSqlDao otherChunkDao = new ChunkSqlDao(databaseConnection, testConfig.getChunkIndexFile(), testConfig.getChunkFilterFile());
+		
+		assertEquals(1234, otherChunkDao.getChunk(newChecksum).getSize());
+		assertEquals(8387, otherChunkDao.getChunk(existingChecksum).getSize());
+		
+		// Test: Outdated index file is not used
+		databaseConnection.prepareStatement("delete from chunk where checksum=X'beefbeefbeefbeefbeefbeefbeefbeefbeefbeef'").execute();
+		
+		ChunkSqlDao outdatedChunkDao = new ChunkSqlDao(databaseConnection, testConfig.getChunkIndexFile(), testConfig.getChunkFilterFile());
+		
+		assertNull(outdatedChunkDao.getChunk(newChecksum));
+		assertNotNull(outdatedChunkDao.getChunk(existingChecksum));
+		
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
 }
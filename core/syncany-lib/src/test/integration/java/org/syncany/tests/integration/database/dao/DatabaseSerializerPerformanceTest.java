@@ -0,0 +1,181 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.database.dao;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.FileContent;
+import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.MemoryDatabase;
+import org.syncany.database.MultiChunkEntry;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.database.VectorClock;
+import org.syncany.database.dao.DatabaseXmlSerializer;
+import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseFormat;
+import org.syncany.tests.unit.util.TestFileUtil;
+import org.syncany.tests.util.TestAssertUtil;
+import org.syncany.tests.util.TestDatabaseUtil;
+
+public class DatabaseSerializerPerformanceTest {
+	private static final Logger logger = Logger.getLogger(DatabaseSerializerPerformanceTest.class.getSimpleName());
+
+	private static final int BENCHMARK_DATABASE_VERSIONS = 20;
+	private static final int BENCHMARK_FILES_PER_DATABASE_VERSION = 500;
+	private static final int BENCHMARK_ROUNDS = 3;
+
+	private File tempDir;
+	private MemoryDatabase benchmarkDatabase;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		benchmarkDatabase = createBenchmarkDatabase();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testXmlAndBinarySerializerThroughput() throws Exception {
+		File xmlDatabaseFile = new File(tempDir, "db-xml");
+		File binaryDatabaseFile = new File(tempDir, "db-binary");
+
+		DatabaseXmlSerializer xmlSerializer = new DatabaseXmlSerializer(null, DatabaseFormat.XML);
+		DatabaseXmlSerializer binarySerializer = new DatabaseXmlSerializer(null, DatabaseFormat.BINARY);
+
+		long xmlSaveDuration = 0;
+		long xmlLoadDuration = 0;
+		long binarySaveDuration = 0;
+		long binaryLoadDuration = 0;
+
+		MemoryDatabase xmlLoadedDatabase = null;
+		MemoryDatabase binaryLoadedDatabase = null;
+
+		for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+			long xmlSaveStart = System.nanoTime();
+			xmlSerializer.save(benchmarkDatabase.getDatabaseVersions(), xmlDatabaseFile);
+			xmlSaveDuration += System.nanoTime() - xmlSaveStart;
+
+			long xmlLoadStart = System.nanoTime();
+			xmlLoadedDatabase = TestDatabaseUtil.readDatabaseFileFromDisk(xmlDatabaseFile, null);
+			xmlLoadDuration += System.nanoTime() - xmlLoadStart;
+
+			long binarySaveStart = System.nanoTime();
+			binarySerializer.save(benchmarkDatabase.getDatabaseVersions(), binaryDatabaseFile);
+			binarySaveDuration += System.nanoTime() - binarySaveStart;
+
+			long binaryLoadStart = System.nanoTime();
+			binaryLoadedDatabase = TestDatabaseUtil.readDatabaseFileFromDisk(binaryDatabaseFile, null);
+			binaryLoadDuration += System.nanoTime() - binaryLoadStart;
+		}
+
+		logger.log(Level.INFO, String.format("XML database:    %.1f MB, save %d ms, load %d ms", toMegabytes(xmlDatabaseFile.length()),
+				toMillisPerRound(xmlSaveDuration), toMillisPerRound(xmlLoadDuration)));
+		logger.log(Level.INFO, String.format("Binary database: %.1f MB, save %d ms, load %d ms", toMegabytes(binaryDatabaseFile.length()),
+				toMillisPerRound(binarySaveDuration), toMillisPerRound(binaryLoadDuration)));
+
+		assertEquals(BENCHMARK_DATABASE_VERSIONS, binaryLoadedDatabase.getDatabaseVersions().size());
+		TestAssertUtil.assertDatabaseEquals(xmlLoadedDatabase, binaryLoadedDatabase);
+	}
+
+	private MemoryDatabase createBenchmarkDatabase() {
+		Random random = new Random(42);
+		MemoryDatabase database = new MemoryDatabase();
+		VectorClock vectorClock = new VectorClock();
+
+		for (int i = 0; i < BENCHMARK_DATABASE_VERSIONS; i++) {
+			vectorClock = vectorClock.clone();
+			vectorClock.incrementClock("A");
+
+			DatabaseVersion databaseVersion = new DatabaseVersion();
+			databaseVersion.setClient("A");
+			databaseVersion.setTimestamp(new Date(1400000000000L + i * 1000L));
+			databaseVersion.setVectorClock(vectorClock);
+
+			MultiChunkEntry multiChunk = new MultiChunkEntry(new MultiChunkId(createChecksum(random)), 0);
+
+			for (int j = 0; j < BENCHMARK_FILES_PER_DATABASE_VERSION; j++) {
+				ChunkEntry chunk = new ChunkEntry(new ChunkChecksum(createChecksum(random)), 8192 + j);
+				FileContent fileContent = new FileContent();
+
+				fileContent.setChecksum(new FileChecksum(createChecksum(random)));
+				fileContent.setSize(chunk.getSize());
+				fileContent.addChunk(chunk.getChecksum());
+				multiChunk.addChunk(chunk.getChecksum());
+
+				FileVersion fileVersion = new FileVersion();
+				fileVersion.setVersion(1L);
+				fileVersion.setPath("some/folder-" + i + "/file-" + j + ".txt");
+				fileVersion.setType(FileType.FILE);
+				fileVersion.setStatus(FileStatus.NEW);
+				fileVersion.setSize(fileContent.getSize());
+				fileVersion.setChecksum(fileContent.getChecksum());
+				fileVersion.setLastModified(new Date(1400000000000L + j));
+				fileVersion.setUpdated(new Date(1400000000000L + j));
+				fileVersion.setPosixPermissions("rw-r--r--");
+
+				PartialFileHistory fileHistory = new PartialFileHistory(FileHistoryId.secureRandomFileId());
+				fileHistory.addFileVersion(fileVersion);
+
+				databaseVersion.addChunk(chunk);
+				databaseVersion.addFileContent(fileContent);
+				databaseVersion.addFileHistory(fileHistory);
+			}
+
+			databaseVersion.addMultiChunk(multiChunk);
+			database.addDatabaseVersion(databaseVersion);
+		}
+
+		return database;
+	}
+
+	private byte[] createChecksum(Random random) {
+		byte[] checksum = new byte[20];
+		random.nextBytes(checksum);
+
+		return checksum;
+	}
+
+	private double toMegabytes(long bytes) {
+		return bytes / 1024.0 / 1024.0;
+	}
+
+	private long toMillisPerRound(long durationNanos) {
+		return durationNanos / BENCHMARK_ROUNDS / 1000000L;
+	}
+}
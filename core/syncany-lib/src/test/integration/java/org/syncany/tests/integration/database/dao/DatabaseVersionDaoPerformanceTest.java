@@ -0,0 +1,171 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.database.dao;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+import org.syncany.config.Config;
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.FileContent;
+import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.MultiChunkEntry;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.database.SqlDatabase;
+import org.syncany.database.VectorClock;
+import org.syncany.database.dao.AbstractSqlDao;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class DatabaseVersionDaoPerformanceTest {
+	private static final Logger logger = Logger.getLogger(DatabaseVersionDaoPerformanceTest.class.getSimpleName());
+
+	private static final int BENCHMARK_FILES = 5000;
+	private static final int BENCHMARK_CHUNKS_PER_FILE = 4;
+
+	@Test
+	public void testWriteDatabaseVersionThroughput() throws Exception {
+		// Batch size 1 corresponds to one statement execution per row
+		long unbatchedRowsPerSecond = writeAndMeasureDatabaseVersion(1);
+		long batchedRowsPerSecond = writeAndMeasureDatabaseVersion(AbstractSqlDao.DEFAULT_BATCH_SIZE);
+
+		logger.log(Level.INFO, String.format("Writing database version: batch size 1: %d rows/s, batch size %d: %d rows/s", unbatchedRowsPerSecond,
+				AbstractSqlDao.DEFAULT_BATCH_SIZE, batchedRowsPerSecond));
+	}
+
+	@Test
+	public void testWriteDatabaseVersionUnevenBatchSize() throws Exception {
+		// Batch size does not divide the number of rows; last batch must be written, too
+		writeAndMeasureDatabaseVersion(7);
+	}
+
+	private long writeAndMeasureDatabaseVersion(int batchSize) throws Exception {
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		SqlDatabase database = new SqlDatabase(testConfig);
+
+		try {
+			database.setBatchSize(batchSize);
+
+			DatabaseVersion databaseVersion = createBenchmarkDatabaseVersion();
+			int rowCount = countRows(databaseVersion);
+
+			long writeStart = System.nanoTime();
+
+			database.writeDatabaseVersion(databaseVersion);
+			database.commit();
+
+			long writeDuration = System.nanoTime() - writeStart;
+
+			assertEquals(BENCHMARK_FILES * BENCHMARK_CHUNKS_PER_FILE, countTableRows(database, "chunk"));
+			assertEquals(BENCHMARK_FILES * BENCHMARK_CHUNKS_PER_FILE, countTableRows(database, "filecontent_chunk"));
+			assertEquals(BENCHMARK_FILES * BENCHMARK_CHUNKS_PER_FILE, countTableRows(database, "multichunk_chunk"));
+			assertEquals(BENCHMARK_FILES, countTableRows(database, "filecontent"));
+			assertEquals(BENCHMARK_FILES, countTableRows(database, "filehistory"));
+			assertEquals(BENCHMARK_FILES, countTableRows(database, "fileversion"));
+
+			return rowCount * 1000000000L / Math.max(1, writeDuration);
+		}
+		finally {
+			database.getConnection().close();
+			TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+		}
+	}
+
+	private DatabaseVersion createBenchmarkDatabaseVersion() {
+		Random random = new Random(42);
+
+		VectorClock vectorClock = new VectorClock();
+		vectorClock.setClock("A", 1);
+
+		DatabaseVersion databaseVersion = new DatabaseVersion();
+		databaseVersion.setClient("A");
+		databaseVersion.setTimestamp(new Date(1400000000000L));
+		databaseVersion.setVectorClock(vectorClock);
+
+		MultiChunkEntry multiChunk = new MultiChunkEntry(new MultiChunkId(createChecksum(random)), 0);
+
+		for (int i = 0; i < BENCHMARK_FILES; i++) {
+			FileContent fileContent = new FileContent();
+			fileContent.setChecksum(new FileChecksum(createChecksum(random)));
+			fileContent.setSize(BENCHMARK_CHUNKS_PER_FILE * 8192L);
+
+			for (int j = 0; j < BENCHMARK_CHUNKS_PER_FILE; j++) {
+				ChunkEntry chunk = new ChunkEntry(new ChunkChecksum(createChecksum(random)), 8192);
+
+				databaseVersion.addChunk(chunk);
+				fileContent.addChunk(chunk.getChecksum());
+				multiChunk.addChunk(chunk.getChecksum());
+			}
+
+			FileVersion fileVersion = new FileVersion();
+			fileVersion.setVersion(1L);
+			fileVersion.setPath("some/folder-" + (i % 100) + "/file-" + i + ".txt");
+			fileVersion.setType(FileType.FILE);
+			fileVersion.setStatus(FileStatus.NEW);
+			fileVersion.setSize(fileContent.getSize());
+			fileVersion.setChecksum(fileContent.getChecksum());
+			fileVersion.setLastModified(new Date(1400000000000L + i));
+			fileVersion.setUpdated(new Date(1400000000000L + i));
+
+			PartialFileHistory fileHistory = new PartialFileHistory(FileHistoryId.secureRandomFileId());
+			fileHistory.addFileVersion(fileVersion);
+
+			databaseVersion.addFileContent(fileContent);
+			databaseVersion.addFileHistory(fileHistory);
+		}
+
+		databaseVersion.addMultiChunk(multiChunk);
+		return databaseVersion;
+	}
+
+	private int countRows(DatabaseVersion databaseVersion) {
+		int chunkRefCount = BENCHMARK_FILES * BENCHMARK_CHUNKS_PER_FILE;
+		return databaseVersion.getChunks().size() + 2 * chunkRefCount + databaseVersion.getMultiChunks().size()
+				+ databaseVersion.getFileContents().size() + 2 * databaseVersion.getFileHistories().size();
+	}
+
+	private int countTableRows(SqlDatabase database, String table) throws SQLException {
+		try (PreparedStatement preparedStatement = database.getConnection().prepareStatement("select count(*) from " + table)) {
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				resultSet.next();
+				return resultSet.getInt(1);
+			}
+		}
+	}
+
+	private byte[] createChecksum(Random random) {
+		byte[] checksum = new byte[20];
+		random.nextBytes(checksum);
+
+		return checksum;
+	}
+}
@@ -0,0 +1,483 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.database.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+import org.syncany.config.Config;
+import org.syncany.database.DatabaseConnectionFactory;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.database.SqlDatabase;
+import org.syncany.database.VectorClock;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class FileHistoryDaoPerformanceTest {
+	private static final Logger logger = Logger.getLogger(FileHistoryDaoPerformanceTest.class.getSimpleName());
+
+	// Written through the DAO, to check the current file version table against the file versions
+	private static final int BENCHMARK_FILES = 2000;
+	private static final int BENCHMARK_DATABASE_VERSIONS = 100;
+	private static final int BENCHMARK_CHANGED_FILES_PER_DATABASE_VERSION = 200;
+
+	// Inserted directly, to compare the queries on a large database: 500k files with 10 versions each, i.e. 5M file versions. The
+	// current file versions are inserted along with them; rebuilding them (as the upgrade does) takes too long at this size
+	private static final int LARGE_BENCHMARK_FILES = 500000;
+	private static final int LARGE_BENCHMARK_VERSIONS_PER_FILE = 10;
+	private static final int LARGE_BENCHMARK_DATABASE_VERSIONS_PER_FILE_VERSION = 100;
+	private static final int LARGE_BENCHMARK_BATCH_SIZE = 10000;
+
+	private static final int BENCHMARK_LOOKUPS = 1000;
+	private static final int BENCHMARK_WARMUP_LOOKUPS = 100;
+
+	// Queries before the current file version table (aggregating over all MASTER file versions)
+	private static final String AGGREGATING_FIND_BY_PATH_QUERY = "select fvmax.version, fvmax.filehistory_id, dbv.vectorclock_serialized from ("
+			+ "select fv.filehistory_id, max(fv.version) as version from fileversion fv join databaseversion dbv on fv.databaseversion_id=dbv.id "
+			+ "where dbv.status='MASTER' and fv.path=? group by fv.filehistory_id) fvmax "
+			+ "join fileversion fv on fvmax.filehistory_id=fv.filehistory_id and fvmax.version=fv.version "
+			+ "join databaseversion dbv on fv.databaseversion_id=dbv.id where fv.status<>'DELETED'";
+
+	private static final String CURRENT_FILE_TREE_QUERY = "select * from fileversion_master_last";
+
+	private static final String INSERT_DATABASE_VERSION_QUERY = "insert into databaseversion (status, localtime, client, vectorclock_serialized) "
+			+ "values ('MASTER', ?, 'A', ?)";
+	private static final String INSERT_FILE_HISTORY_QUERY = "insert into filehistory (id, databaseversion_id) values (?, ?)";
+	private static final String INSERT_FILE_VERSION_QUERY = "insert into fileversion (filehistory_id, version, databaseversion_id, path, type, "
+			+ "status, size, lastmodified, updated, depth, parent_path) values (?, ?, ?, ?, 'FILE', ?, 0, ?, ?, 1, ?)";
+	private static final String INSERT_CURRENT_FILE_VERSION_QUERY = "insert into fileversion_current (filehistory_id, version, databaseversion_id, "
+			+ "path, status) values (?, ?, ?, ?, ?)";
+
+	@Test
+	public void testGetFileHistoryByPathAndCurrentFileTree() throws Exception {
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		SqlDatabase database = new SqlDatabase(testConfig);
+
+		try {
+			Random random = new Random(42);
+			List<FileVersion> lastFileVersions = writeDatabaseVersions(database, random, BENCHMARK_FILES, BENCHMARK_DATABASE_VERSIONS,
+					BENCHMARK_CHANGED_FILES_PER_DATABASE_VERSION, 0);
+
+			assertCurrentFileVersionsMatchFileVersions(database);
+
+			for (int i = 0; i < BENCHMARK_LOOKUPS; i++) {
+				FileVersion expectedFileVersion = lastFileVersions.get(random.nextInt(lastFileVersions.size()));
+				PartialFileHistory fileHistory = database.getFileHistoriesWithLastVersionByPath(expectedFileVersion.getPath());
+
+				assertNotNull(fileHistory);
+				assertEquals(expectedFileVersion.getFileHistoryId(), fileHistory.getFileHistoryId());
+				assertEquals(expectedFileVersion.getVersion(), fileHistory.getLastVersion().getVersion());
+			}
+
+			Map<String, FileVersion> currentFileTree = database.getCurrentFileTree();
+			assertEquals(BENCHMARK_FILES, currentFileTree.size());
+
+			for (FileVersion expectedFileVersion : lastFileVersions) {
+				assertEquals(expectedFileVersion.getVersion(), currentFileTree.get(expectedFileVersion.getPath()).getVersion());
+			}
+		}
+		finally {
+			database.getConnection().close();
+			TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+		}
+	}
+
+	@Test
+	public void testLastFileVersionQueriesPerformanceOnLargeDatabase() throws Exception {
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		SqlDatabase database = new SqlDatabase(testConfig);
+
+		try {
+			Connection connection = database.getConnection();
+
+			// Insert file versions and current file versions
+			long insertStart = System.nanoTime();
+			insertLargeDatabase(connection);
+			long insertDuration = System.nanoTime() - insertStart;
+
+			assertEquals(LARGE_BENCHMARK_FILES * LARGE_BENCHMARK_VERSIONS_PER_FILE, countTableRows(database, "fileversion"));
+			assertEquals(LARGE_BENCHMARK_FILES, countTableRows(database, "fileversion_current"));
+
+			// Lookups by path (warm up both queries first)
+			String findByPathQuery = DatabaseConnectionFactory.getStatement("filehistory.select.master.findLatestFileVersionsForPath.sql");
+
+			runFindByPathQueries(connection, AGGREGATING_FIND_BY_PATH_QUERY, new Random(45), BENCHMARK_WARMUP_LOOKUPS);
+			runFindByPathQueries(connection, findByPathQuery, new Random(45), BENCHMARK_WARMUP_LOOKUPS);
+
+			long aggregatingLookupStart = System.nanoTime();
+			int aggregatingLookupResults = runFindByPathQueries(connection, AGGREGATING_FIND_BY_PATH_QUERY, new Random(46), BENCHMARK_LOOKUPS);
+			long aggregatingLookupDuration = System.nanoTime() - aggregatingLookupStart;
+
+			long lookupStart = System.nanoTime();
+			int lookupResults = runFindByPathQueries(connection, findByPathQuery, new Random(46), BENCHMARK_LOOKUPS);
+			long lookupDuration = System.nanoTime() - lookupStart;
+
+			assertEquals(aggregatingLookupResults, lookupResults);
+
+			// Current file tree (every tenth file is deleted in its last version)
+			long fileTreeStart = System.nanoTime();
+			int fileTreeSize = countRows(database, "select count(*) from (" + CURRENT_FILE_TREE_QUERY + ")");
+			long fileTreeDuration = System.nanoTime() - fileTreeStart;
+
+			assertEquals(LARGE_BENCHMARK_FILES - LARGE_BENCHMARK_FILES / 10, fileTreeSize);
+
+			logger.log(Level.INFO, String.format("%d file versions: insert: %d ms", LARGE_BENCHMARK_FILES * LARGE_BENCHMARK_VERSIONS_PER_FILE,
+					insertDuration / 1000000L));
+			logger.log(Level.INFO, String.format("%d lookups by path: %d ms (aggregating query: %d ms)", BENCHMARK_LOOKUPS,
+					lookupDuration / 1000000L, aggregatingLookupDuration / 1000000L));
+			logger.log(Level.INFO, String.format("Current file tree (%d files): %d ms", fileTreeSize, fileTreeDuration / 1000000L));
+		}
+		finally {
+			database.getConnection().close();
+			TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+		}
+	}
+
+	@Test
+	public void testCurrentFileVersionsAfterMarkDirty() throws Exception {
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		SqlDatabase database = new SqlDatabase(testConfig);
+
+		try {
+			List<FileVersion> lastFileVersions = writeDatabaseVersions(database, new Random(43), 100, 10, 20, 10);
+
+			assertEquals(90, database.getCurrentFileTree().size());
+			assertEquals(100, countTableRows(database, "fileversion_current"));
+			assertCurrentFileVersionsMatchFileVersions(database);
+
+			// Last database version deleted files; marking it dirty restores them
+			database.markDatabaseVersionDirty(database.getLastDatabaseVersionHeader().getVectorClock());
+
+			assertEquals(100, database.getCurrentFileTree().size());
+			assertCurrentFileVersionsMatchFileVersions(database);
+
+			for (FileVersion deletedFileVersion : lastFileVersions) {
+				if (deletedFileVersion.getStatus() == FileStatus.DELETED) {
+					PartialFileHistory fileHistory = database.getFileHistoriesWithLastVersionByPath(deletedFileVersion.getPath());
+
+					assertNotNull(fileHistory);
+					assertEquals((Long) (deletedFileVersion.getVersion() - 1), fileHistory.getLastVersion().getVersion());
+				}
+			}
+		}
+		finally {
+			database.getConnection().close();
+			TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+		}
+	}
+
+	@Test
+	public void testCurrentFileVersionsAfterPurge() throws Exception {
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		SqlDatabase database = new SqlDatabase(testConfig);
+
+		try {
+			List<FileVersion> lastFileVersions = writeDatabaseVersions(database, new Random(44), 100, 10, 20, 10);
+
+			// Remove deleted file histories entirely
+			database.removeSmallerOrEqualFileVersions(database.getDeletedFileVersions());
+			database.commit();
+
+			assertEquals(90, countTableRows(database, "fileversion_current"));
+			assertCurrentFileVersionsMatchFileVersions(database);
+
+			// Remove all but the last version of each file
+			database.removeSmallerOrEqualFileVersions(database.getFileHistoriesWithMaxPurgeVersion(1));
+			database.commit();
+
+			assertEquals(90, countTableRows(database, "fileversion"));
+			assertCurrentFileVersionsMatchFileVersions(database);
+
+			for (FileVersion lastFileVersion : lastFileVersions) {
+				PartialFileHistory fileHistory = database.getFileHistoriesWithLastVersionByPath(lastFileVersion.getPath());
+
+				if (lastFileVersion.getStatus() == FileStatus.DELETED) {
+					assertNull(fileHistory);
+				}
+				else {
+					assertEquals(lastFileVersion.getVersion(), fileHistory.getLastVersion().getVersion());
+				}
+			}
+		}
+		finally {
+			database.getConnection().close();
+			TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+		}
+	}
+
+	/**
+	 * Writes database versions that add the given number of files, change (and partly rename)
+	 * random files, and finally delete the given number of files. Returns the last file version
+	 * of each file.
+	 */
+	private List<FileVersion> writeDatabaseVersions(SqlDatabase database, Random random, int fileCount, int databaseVersionCount,
+			int changedFilesPerDatabaseVersion, int deletedFileCount) throws SQLException {
+
+		List<FileVersion> lastFileVersions = new ArrayList<FileVersion>();
+		VectorClock vectorClock = new VectorClock();
+
+		for (int i = 0; i < databaseVersionCount; i++) {
+			vectorClock = vectorClock.clone();
+			vectorClock.incrementClock("A");
+
+			DatabaseVersion databaseVersion = new DatabaseVersion();
+			databaseVersion.setClient("A");
+			databaseVersion.setTimestamp(new Date(1400000000000L + i * 1000L));
+			databaseVersion.setVectorClock(vectorClock);
+
+			if (i == 0) {
+				for (int j = 0; j < fileCount; j++) {
+					FileVersion fileVersion = createFileVersion(FileHistoryId.secureRandomFileId(), 1L, "folder-" + (j % 20) + "/file-" + j,
+							FileStatus.NEW);
+
+					addFileVersion(databaseVersion, fileVersion);
+					lastFileVersions.add(fileVersion);
+				}
+			}
+			else {
+				boolean deleteFiles = (i == databaseVersionCount - 1 && deletedFileCount > 0);
+				int affectedFileCount = (deleteFiles) ? deletedFileCount : changedFilesPerDatabaseVersion;
+
+				for (int j = 0; j < affectedFileCount; j++) {
+					int fileIndex = random.nextInt(fileCount);
+					FileVersion lastFileVersion = lastFileVersions.get(fileIndex);
+
+					if (databaseVersion.getFileHistory(lastFileVersion.getFileHistoryId()) != null) {
+						j--;
+						continue;
+					}
+
+					FileVersion fileVersion = null;
+
+					if (deleteFiles) {
+						fileVersion = createFileVersion(lastFileVersion.getFileHistoryId(), lastFileVersion.getVersion() + 1,
+								lastFileVersion.getPath(), FileStatus.DELETED);
+					}
+					else if (j % 3 == 0) {
+						fileVersion = createFileVersion(lastFileVersion.getFileHistoryId(), lastFileVersion.getVersion() + 1, "renamed-" + i + "/file-"
+								+ fileIndex, FileStatus.RENAMED);
+					}
+					else {
+						fileVersion = createFileVersion(lastFileVersion.getFileHistoryId(), lastFileVersion.getVersion() + 1,
+								lastFileVersion.getPath(), FileStatus.CHANGED);
+					}
+
+					addFileVersion(databaseVersion, fileVersion);
+					lastFileVersions.set(fileIndex, fileVersion);
+				}
+			}
+
+			database.writeDatabaseVersion(databaseVersion);
+		}
+
+		database.commit();
+		return lastFileVersions;
+	}
+
+	/**
+	 * Inserts {@link #LARGE_BENCHMARK_FILES} files with {@link #LARGE_BENCHMARK_VERSIONS_PER_FILE} versions each.
+	 * Each version of the files is spread over {@link #LARGE_BENCHMARK_DATABASE_VERSIONS_PER_FILE_VERSION}
+	 * database versions. Every third file is moved to another folder in its last version, and every tenth
+	 * file is deleted.
+	 */
+	private void insertLargeDatabase(Connection connection) throws SQLException {
+		int databaseVersionCount = LARGE_BENCHMARK_VERSIONS_PER_FILE * LARGE_BENCHMARK_DATABASE_VERSIONS_PER_FILE_VERSION;
+		int[] databaseVersionIds = new int[databaseVersionCount];
+
+		try (PreparedStatement preparedStatement = connection.prepareStatement(INSERT_DATABASE_VERSION_QUERY, Statement.RETURN_GENERATED_KEYS)) {
+			for (int i = 0; i < databaseVersionCount; i++) {
+				preparedStatement.setTimestamp(1, new Timestamp(1400000000000L + i * 1000L));
+				preparedStatement.setString(2, "(A" + (i + 1) + ")");
+				preparedStatement.executeUpdate();
+
+				try (ResultSet resultSet = preparedStatement.getGeneratedKeys()) {
+					resultSet.next();
+					databaseVersionIds[i] = resultSet.getInt(1);
+				}
+			}
+		}
+
+		try (PreparedStatement fileHistoryStatement = connection.prepareStatement(INSERT_FILE_HISTORY_QUERY);
+				PreparedStatement fileVersionStatement = connection.prepareStatement(INSERT_FILE_VERSION_QUERY);
+				PreparedStatement currentFileVersionStatement = connection.prepareStatement(INSERT_CURRENT_FILE_VERSION_QUERY)) {
+
+			int batchCount = 0;
+			int currentFileVersionBatchCount = 0;
+
+			for (int databaseVersionIndex = 0; databaseVersionIndex < databaseVersionCount; databaseVersionIndex++) {
+				int version = databaseVersionIndex / LARGE_BENCHMARK_DATABASE_VERSIONS_PER_FILE_VERSION + 1;
+				int databaseVersionId = databaseVersionIds[databaseVersionIndex];
+
+				for (int fileIndex = databaseVersionIndex % LARGE_BENCHMARK_DATABASE_VERSIONS_PER_FILE_VERSION; fileIndex < LARGE_BENCHMARK_FILES; fileIndex += LARGE_BENCHMARK_DATABASE_VERSIONS_PER_FILE_VERSION) {
+					String fileHistoryId = String.format("%040x", fileIndex);
+					boolean lastVersion = version == LARGE_BENCHMARK_VERSIONS_PER_FILE;
+
+					String parentPath = getLargeBenchmarkParentPath(fileIndex, version);
+					String status = (version == 1) ? "NEW" : (lastVersion && fileIndex % 10 == 0) ? "DELETED" : "CHANGED";
+					Timestamp timestamp = new Timestamp(1400000000000L + version);
+
+					fileHistoryStatement.setString(1, fileHistoryId);
+					fileHistoryStatement.setInt(2, databaseVersionId);
+					fileHistoryStatement.addBatch();
+
+					fileVersionStatement.setString(1, fileHistoryId);
+					fileVersionStatement.setInt(2, version);
+					fileVersionStatement.setInt(3, databaseVersionId);
+					fileVersionStatement.setString(4, parentPath + "/file-" + fileIndex);
+					fileVersionStatement.setString(5, status);
+					fileVersionStatement.setTimestamp(6, timestamp);
+					fileVersionStatement.setTimestamp(7, timestamp);
+					fileVersionStatement.setString(8, parentPath);
+					fileVersionStatement.addBatch();
+
+					if (lastVersion) {
+						currentFileVersionStatement.setString(1, fileHistoryId);
+						currentFileVersionStatement.setInt(2, version);
+						currentFileVersionStatement.setInt(3, databaseVersionId);
+						currentFileVersionStatement.setString(4, parentPath + "/file-" + fileIndex);
+						currentFileVersionStatement.setString(5, status);
+						currentFileVersionStatement.addBatch();
+						currentFileVersionBatchCount++;
+					}
+
+					if (++batchCount % LARGE_BENCHMARK_BATCH_SIZE == 0) {
+						fileHistoryStatement.executeBatch();
+						fileVersionStatement.executeBatch();
+
+						if (currentFileVersionBatchCount > 0) {
+							currentFileVersionStatement.executeBatch();
+							currentFileVersionBatchCount = 0;
+						}
+
+						connection.commit();
+					}
+				}
+			}
+
+			if (batchCount % LARGE_BENCHMARK_BATCH_SIZE != 0) {
+				fileHistoryStatement.executeBatch();
+				fileVersionStatement.executeBatch();
+
+				if (currentFileVersionBatchCount > 0) {
+					currentFileVersionStatement.executeBatch();
+				}
+
+				connection.commit();
+			}
+		}
+	}
+
+	private String getLargeBenchmarkParentPath(int fileIndex, int version) {
+		boolean renamed = version == LARGE_BENCHMARK_VERSIONS_PER_FILE && fileIndex % 3 == 0;
+		return ((renamed) ? "renamed-" : "folder-") + (fileIndex % 1000);
+	}
+
+	/**
+	 * Runs the given find-by-path query for the current paths of random files of the
+	 * large database, and returns the total number of result rows.
+	 */
+	private int runFindByPathQueries(Connection connection, String findByPathQuery, Random random, int lookupCount) throws SQLException {
+		int resultCount = 0;
+
+		try (PreparedStatement preparedStatement = connection.prepareStatement(findByPathQuery)) {
+			for (int i = 0; i < lookupCount; i++) {
+				int fileIndex = random.nextInt(LARGE_BENCHMARK_FILES);
+				preparedStatement.setString(1, getLargeBenchmarkParentPath(fileIndex, LARGE_BENCHMARK_VERSIONS_PER_FILE) + "/file-" + fileIndex);
+
+				try (ResultSet resultSet = preparedStatement.executeQuery()) {
+					while (resultSet.next()) {
+						resultSet.getString("filehistory_id");
+						resultCount++;
+					}
+				}
+			}
+		}
+
+		return resultCount;
+	}
+
+	private void addFileVersion(DatabaseVersion databaseVersion, FileVersion fileVersion) {
+		PartialFileHistory fileHistory = new PartialFileHistory(fileVersion.getFileHistoryId());
+		fileHistory.addFileVersion(fileVersion);
+
+		databaseVersion.addFileHistory(fileHistory);
+	}
+
+	private FileVersion createFileVersion(FileHistoryId fileHistoryId, long version, String path, FileStatus status) {
+		FileVersion fileVersion = new FileVersion();
+
+		fileVersion.setFileHistoryId(fileHistoryId);
+		fileVersion.setVersion(version);
+		fileVersion.setPath(path);
+		fileVersion.setType(FileType.FOLDER);
+		fileVersion.setStatus(status);
+		fileVersion.setSize(0L);
+		fileVersion.setLastModified(new Date(1400000000000L + version));
+		fileVersion.setUpdated(new Date(1400000000000L + version));
+
+		return fileVersion;
+	}
+
+	/**
+	 * Compares the current file version table to the last versions determined by
+	 * aggregating over all MASTER file versions.
+	 */
+	private void assertCurrentFileVersionsMatchFileVersions(SqlDatabase database) throws SQLException {
+		int lastFileVersionCount = countRows(database, "select count(*) from fileversion_master_maxversion");
+		int matchingCurrentFileVersionCount = countRows(database, "select count(*) from fileversion_current fvc "
+				+ "join fileversion_master_maxversion fvmax on fvc.filehistory_id=fvmax.filehistory_id and fvc.version=fvmax.version "
+				+ "join fileversion_master fv on fvc.filehistory_id=fv.filehistory_id and fvc.version=fv.version "
+				+ "and fvc.databaseversion_id=fv.databaseversion_id and fvc.path=fv.path and fvc.status=fv.status");
+
+		assertEquals(lastFileVersionCount, countTableRows(database, "fileversion_current"));
+		assertEquals(lastFileVersionCount, matchingCurrentFileVersionCount);
+	}
+
+	private int countTableRows(SqlDatabase database, String table) throws SQLException {
+		return countRows(database, "select count(*) from " + table);
+	}
+
+	private int countRows(SqlDatabase database, String countQuery) throws SQLException {
+		try (PreparedStatement preparedStatement = database.getConnection().prepareStatement(countQuery)) {
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				resultSet.next();
+				return resultSet.getInt(1);
+			}
+		}
+	}
+}
@@ -19,17 +19,27 @@ package org.syncany.tests.integration.database.dao;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Test;
 import org.syncany.config.Config;
+import org.syncany.database.FileTreeIndex;
 import org.syncany.database.FileVersion;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
 import org.syncany.database.dao.FileVersionSqlDao;
 import org.syncany.tests.util.TestConfigUtil;
 import org.syncany.tests.util.TestSqlUtil;
+import org.syncany.util.StringUtil;
 
 /**
  * Tests the {@link FileVersionSqlDao}
@@ -61,4 +71,99 @@ public class FileVersionDaoTest {
 		databaseConnection.close();
 		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
 	}	
+
+	@Test
+	public void testFileVersionGetFileListInFolder() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+				
+		// Run
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set3.sql");
+
+		FileVersionSqlDao fileVersionDao = new FileVersionSqlDao(databaseConnection);
+		Date farFutureDate = new Date(4133984461000L);
+		
+		// Test: Non-recursive listings (parent path lookup) must match recursive listings filtered by depth
+		for (String pathExpression : new String[] { "%", "win32/%", "win32/win32/%", "win32/%/%" }) {
+			int depth = StringUtil.substrCount(pathExpression, "/");
+			
+			List<String> expectedPaths = getPathsWithDepth(fileVersionDao.getFileList(pathExpression, null, false, true, true, null), depth);
+			List<String> currentPaths = getPathsWithDepth(fileVersionDao.getFileList(pathExpression, null, false, false, true, null), -1);
+			List<String> datedPaths = getPathsWithDepth(fileVersionDao.getFileList(pathExpression, farFutureDate, false, false, true, null), -1);
+
+			assertTrue(expectedPaths.size() > 0);
+			assertEquals(expectedPaths, currentPaths);
+			assertEquals(expectedPaths, datedPaths);
+		}
+		
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+	
+	@Test
+	public void testFileTreeIndexUpdatedOnCommit() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set2.sql");
+
+		FileVersionSqlDao fileVersionDao = new FileVersionSqlDao(databaseConnection, testConfig.getFileTreeIndexFile());
+		assertEquals(50, fileVersionDao.getCurrentFileTreeIndex().size());
+
+		// Run: Move a file in a new file version
+		FileVersion file1 = fileVersionDao.getCurrentFileTree().get("file1");
+		FileVersion movedFile1 = file1.clone();
+
+		movedFile1.setPath("file1-moved");
+		movedFile1.setVersion(file1.getVersion() + 1);
+
+		long databaseVersionId = Long.parseLong(TestSqlUtil.runSqlSelect("select max(databaseversion_id) from filehistory where id='"
+				+ file1.getFileHistoryId() + "'", databaseConnection));
+
+		fileVersionDao.writeFileVersions(databaseConnection, file1.getFileHistoryId(), databaseVersionId, Arrays.asList(movedFile1));
+		databaseConnection.commit();
+		fileVersionDao.saveFileTreeIndex();
+
+		// Test: A new DAO loads the updated index (with the change in its overlay) instead of rebuilding it
+		FileVersionSqlDao newFileVersionDao = new FileVersionSqlDao(databaseConnection, testConfig.getFileTreeIndexFile());
+		FileTreeIndex fileTreeIndex = newFileVersionDao.getUpToDateFileTreeIndex();
+
+		assertNotNull(fileTreeIndex);
+		assertEquals(1, fileTreeIndex.getChangeCount());
+		assertEquals(50, fileTreeIndex.size());
+
+		assertNull(fileTreeIndex.get("file1"));
+		assertEquals("file1-moved", fileTreeIndex.get(file1.getFileHistoryId()).getPath());
+		assertEquals(new ArrayList<String>(newFileVersionDao.getCurrentFileTree().keySet()), getPaths(fileTreeIndex.iterator()));
+
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	private List<String> getPaths(Iterator<FileVersion> fileVersions) {
+		List<String> paths = new ArrayList<String>();
+
+		while (fileVersions.hasNext()) {
+			paths.add(fileVersions.next().getPath());
+		}
+
+		return paths;
+	}
+
+	private List<String> getPathsWithDepth(List<FileVersion> fileVersions, int depth) {
+		List<String> paths = new ArrayList<String>();
+		
+		for (FileVersion fileVersion : fileVersions) {
+			if (depth < 0 || StringUtil.substrCount(fileVersion.getPath(), "/") == depth) {
+				paths.add(fileVersion.getPath());
+			}
+		}
+		
+		Collections.sort(paths);
+		return paths;
+	}
 }
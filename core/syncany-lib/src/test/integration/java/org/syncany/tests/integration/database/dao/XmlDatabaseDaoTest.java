@@ -20,6 +20,7 @@ package org.syncany.tests.integration.database.dao;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.syncany.tests.util.TestAssertUtil.assertDatabaseVersionEquals;
 
 import java.io.File;
@@ -47,6 +48,7 @@ import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.database.PartialFileHistory;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
 import org.syncany.database.VectorClock;
+import org.syncany.database.dao.DatabaseHeaderIndex;
 import org.syncany.database.dao.DatabaseXmlSerializer;
 import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
 import org.syncany.tests.unit.util.TestFileUtil;
@@ -54,7 +56,7 @@ import org.syncany.tests.util.TestAssertUtil;
 import org.syncany.tests.util.TestDatabaseUtil;
 
 public class XmlDatabaseDaoTest {
-	private File tempDir;
+	protected File tempDir;
 
 	static {
 		Logging.init();
@@ -100,11 +102,11 @@ public class XmlDatabaseDaoTest {
 		assertEquals("Chunk not found in database loaded.", chunkA4, loadedDatabase.getChunk(chunkA4.getChecksum()));
 	}
 
-	private DatabaseVersion createDatabaseVersion() {
+	protected DatabaseVersion createDatabaseVersion() {
 		return createDatabaseVersion(null);
 	}
 
-	private DatabaseVersion createDatabaseVersion(DatabaseVersion basedOnDatabaseVersion) {
+	protected DatabaseVersion createDatabaseVersion(DatabaseVersion basedOnDatabaseVersion) {
 		VectorClock vectorClock = (basedOnDatabaseVersion != null) ? basedOnDatabaseVersion.getVectorClock().clone() : new VectorClock();
 		vectorClock.incrementClock("someclient");
 
@@ -394,7 +396,7 @@ public class XmlDatabaseDaoTest {
 		// Write database to disk, read it again, and compare them
 		File writtenDatabaseFile = new File(tempDir + "/db-" + Math.random() + "-" + Math.abs(new Random().nextInt(Integer.MAX_VALUE)));
 
-		DatabaseXmlSerializer writeDAO = new DatabaseXmlSerializer();
+		DatabaseXmlSerializer writeDAO = createSerializer();
 		writeDAO.save(writtenDatabase.getDatabaseVersions(), writtenDatabaseFile);
 
 		// Read again
@@ -414,9 +416,74 @@ public class XmlDatabaseDaoTest {
 		assertEquals(10, readDatabase.getDatabaseVersions().size());
 	}
 
-	private MemoryDatabase writeReadAndCompareDatabase(MemoryDatabase writtenDatabase) throws IOException {
+	@Test
+	public void testReadWithHeaderIndex() throws IOException {
+		MemoryDatabase writtenDatabase = new MemoryDatabase();
+		List<DatabaseVersion> writtenDatabaseVersions = new ArrayList<DatabaseVersion>();
+
+		for (int i = 0; i < 5; i++) {
+			DatabaseVersion basedOnDatabaseVersion = (i > 0) ? writtenDatabaseVersions.get(i - 1) : null;
+			DatabaseVersion newDatabaseVersion = createDatabaseVersion(basedOnDatabaseVersion);
+
+			newDatabaseVersion.addChunk(new ChunkEntry(new ChunkChecksum(TestFileUtil.createRandomArray(20)), 32 * 1024));
+
+			writtenDatabase.addDatabaseVersion(newDatabaseVersion);
+			writtenDatabaseVersions.add(newDatabaseVersion);
+		}
+
+		File writtenDatabaseFile = new File(tempDir, "db-indexed");
+		createSerializer().save(writtenDatabase.getDatabaseVersions(), writtenDatabaseFile);
+
+		// First read creates the index
+		MemoryDatabase headersDatabase = new MemoryDatabase();
+		new DatabaseXmlSerializer().load(headersDatabase, writtenDatabaseFile, null, null, DatabaseReadType.HEADER_ONLY, true);
+
+		assertTrue(DatabaseHeaderIndex.getIndexFile(writtenDatabaseFile).exists());
+		assertEquals(5, headersDatabase.getDatabaseVersions().size());
+
+		// Second read is answered from the index
+		MemoryDatabase indexedHeadersDatabase = new MemoryDatabase();
+		new DatabaseXmlSerializer().load(indexedHeadersDatabase, writtenDatabaseFile, null, null, DatabaseReadType.HEADER_ONLY, true);
+
+		assertEquals(5, indexedHeadersDatabase.getDatabaseVersions().size());
+
+		for (int i = 0; i < 5; i++) {
+			assertEquals(headersDatabase.getDatabaseVersions().get(i).getHeader(), indexedHeadersDatabase.getDatabaseVersions().get(i).getHeader());
+		}
+
+		// Range read uses the index
+		VectorClock fromVersion = writtenDatabaseVersions.get(1).getVectorClock();
+		VectorClock toVersion = writtenDatabaseVersions.get(3).getVectorClock();
+
+		MemoryDatabase rangeDatabase = new MemoryDatabase();
+		new DatabaseXmlSerializer().load(rangeDatabase, writtenDatabaseFile, fromVersion, toVersion, DatabaseReadType.FULL, true);
+
+		assertEquals(3, rangeDatabase.getDatabaseVersions().size());
+
+		for (int i = 1; i <= 3; i++) {
+			assertDatabaseVersionEquals(writtenDatabaseVersions.get(i), rangeDatabase.getDatabaseVersion(writtenDatabaseVersions.get(i).getVectorClock()));
+		}
+
+		// Replaced database file invalidates the index
+		MemoryDatabase replacingDatabase = new MemoryDatabase();
+		replacingDatabase.addDatabaseVersion(createDatabaseVersion());
+
+		createSerializer().save(replacingDatabase.getDatabaseVersions(), writtenDatabaseFile);
+
+		MemoryDatabase replacedHeadersDatabase = new MemoryDatabase();
+		new DatabaseXmlSerializer().load(replacedHeadersDatabase, writtenDatabaseFile, null, null, DatabaseReadType.HEADER_ONLY, true);
+
+		assertEquals(1, replacedHeadersDatabase.getDatabaseVersions().size());
+	}
+
+	protected DatabaseXmlSerializer createSerializer() {
+		return new DatabaseXmlSerializer();
+	}
+
+	protected MemoryDatabase writeReadAndCompareDatabase(MemoryDatabase writtenDatabase) throws IOException {
 		File writtenDatabaseFile = new File(tempDir + "/db-" + Math.random() + "-" + Math.abs(new Random().nextInt(Integer.MAX_VALUE)));
-		TestDatabaseUtil.writeDatabaseFileToDisk(writtenDatabase, writtenDatabaseFile, null);
+		createSerializer().save(writtenDatabase.getDatabaseVersions(), writtenDatabaseFile);
+		
 		MemoryDatabase readDatabase = TestDatabaseUtil.readDatabaseFileFromDisk(writtenDatabaseFile, null);
 
 		TestAssertUtil.assertDatabaseEquals(writtenDatabase, readDatabase);
@@ -18,6 +18,7 @@
 package org.syncany.tests.integration.operations;
 
 import static org.junit.Assert.*;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -80,5 +81,41 @@ public class AssemblerTest {
 		
 		clientA.deleteTestData();
 		clientB.deleteTestData();
-	}	
+	}
+	
+	/**
+	 * Assembles files whose chunks are spread over multiple multichunks, and
+	 * a file whose chunks alternate between these multichunks.
+	 */
+	@Test
+	public void testAssembleFromMultipleMultiChunks() throws Exception {
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+		
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+		
+		clientA.createNewFile("file1", 10 * 1024 * 1024); // more than two multichunks
+		clientA.up();
+		
+		File repoMultiChunksFolder = new File(testConnection.getPath(), "multichunks");
+		assertTrue(repoMultiChunksFolder.list().length > 1);
+		
+		// Create a file from the second half and the first half of the first file  
+		byte[] file1Content = FileUtils.readFileToByteArray(clientA.getLocalFile("file1"));
+		int halfLength = file1Content.length / 2;
+		
+		try (FileOutputStream file2OutputStream = new FileOutputStream(clientA.getLocalFile("file2"))) {
+			file2OutputStream.write(file1Content, halfLength, file1Content.length - halfLength);
+			file2OutputStream.write(file1Content, 0, halfLength);
+		}
+		
+		clientA.up();		
+		clientB.down();
+		
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
 }
@@ -743,4 +743,58 @@ public class CleanupOperationTest {
 		// Tear down
 		clientA.deleteTestData();
 	}
+
+	@Test
+	public void testRepackSparseMultiChunks() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+		java.sql.Connection databaseConnectionA = clientA.getConfig().createDatabaseConnection();
+
+		CleanupOperationOptions options = new CleanupOperationOptions();
+		options.setRemoveOldVersions(true);
+		options.setPurgeFileVersionSettings(new TreeMap<Long, TimeUnit>());
+		options.setMinKeepSeconds(0);
+		options.setRepackMultiChunks(true);
+
+		File remoteMultiChunksDir = new File(testConnection.getPath() + "/multichunks/");
+
+		// A: Create five files in one multichunk, then delete four of them (multichunk is 80% useless)
+		for (int i = 1; i <= 5; i++) {
+			clientA.createNewFile("file" + i + ".jpg", 100 * 1024);
+		}
+
+		clientA.up();
+		assertEquals("1", TestSqlUtil.runSqlSelect("select count(*) from multichunk", databaseConnectionA));
+		String[] sparseMultiChunkFiles = remoteMultiChunksDir.list();
+
+		for (int i = 2; i <= 5; i++) {
+			clientA.deleteFile("file" + i + ".jpg");
+		}
+
+		clientA.up();
+
+		// A: Cleanup and repack
+		CleanupOperationResult cleanupOperationResult = clientA.cleanup(options);
+		assertEquals(CleanupResultCode.OK, cleanupOperationResult.getResultCode());
+		assertEquals(0, cleanupOperationResult.getRemovedMultiChunksCount());
+		assertEquals(1, cleanupOperationResult.getRepackedMultiChunksCount());
+		assertTrue(cleanupOperationResult.getRepackedMultiChunksFreedSize() >= 4 * 100 * 1024);
+
+		// Only the chunks of "file1.jpg" remain, in a new multichunk
+		assertEquals("1", TestSqlUtil.runSqlSelect("select count(*) from multichunk", databaseConnectionA));
+		assertEquals("1", TestSqlUtil.runSqlSelect("select count(*) from fileversion", databaseConnectionA));
+		assertEquals(1, remoteMultiChunksDir.list().length);
+		assertTrue(!Arrays.asList(sparseMultiChunkFiles).contains(remoteMultiChunksDir.list()[0]));
+
+		// B: Sync down, must assemble "file1.jpg" from the repacked multichunk
+		clientB.down();
+		TestAssertUtil.assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		TestAssertUtil.assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
 }
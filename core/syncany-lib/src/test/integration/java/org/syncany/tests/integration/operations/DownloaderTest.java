@@ -0,0 +1,151 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.operations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.syncany.operations.down.DownOperationOptions;
+import org.syncany.plugins.local.LocalTransferSettings;
+import org.syncany.tests.util.TestAssertUtil;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class DownloaderTest {
+	@Test
+	public void testConcurrentDownload() throws Exception {
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		for (int i = 0; i < 10; i++) {
+			clientA.createNewFile("file" + i, 2 * 1024 * 1024);
+		}
+
+		clientA.up();
+
+		File repoMultiChunksFolder = new File(testConnection.getPath(), "multichunks");
+		assertTrue(repoMultiChunksFolder.list().length > 1);
+
+		// Download with a tiny cache limit, so that at most one multichunk waits for decryption
+		DownOperationOptions downOptions = new DownOperationOptions();
+		downOptions.setDownloadThreads(4);
+		downOptions.setDownloadCacheSizeLimit(1);
+
+		clientB.down(downOptions);
+
+		TestAssertUtil.assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertEquals(0, countEncryptedMultiChunks(clientB.getConfig().getCacheDir()));
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testConcurrentDownloadMissingMultiChunk() throws Exception {
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		for (int i = 0; i < 10; i++) {
+			clientA.createNewFile("file" + i, 2 * 1024 * 1024);
+		}
+
+		clientA.up();
+
+		// Delete one multichunk, download must fail
+		File repoMultiChunksFolder = new File(testConnection.getPath(), "multichunks");
+		File[] repoMultiChunkFiles = repoMultiChunksFolder.listFiles();
+
+		assertTrue(repoMultiChunkFiles.length > 1);
+		assertTrue(repoMultiChunkFiles[0].delete());
+
+		DownOperationOptions downOptions = new DownOperationOptions();
+		downOptions.setDownloadThreads(4);
+
+		boolean exceptionThrown = false;
+
+		try {
+			clientB.down(downOptions);
+		}
+		catch (Exception e) {
+			exceptionThrown = true;
+		}
+
+		assertTrue(exceptionThrown);
+		assertEquals(0, countEncryptedMultiChunks(clientB.getConfig().getCacheDir()));
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testConcurrentDatabaseDownload() throws Exception {
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+		TestClient clientC = new TestClient("C", testConnection);
+
+		// Create many database files from two clients
+		for (int i = 0; i < 10; i++) {
+			clientA.createNewFile("fileA" + i);
+			clientA.up();
+		}
+
+		clientC.down();
+
+		for (int i = 0; i < 5; i++) {
+			clientC.createNewFile("fileC" + i);
+			clientC.up();
+		}
+
+		DownOperationOptions downOptions = new DownOperationOptions();
+		downOptions.setDownloadThreads(4);
+
+		clientB.down(downOptions);
+		clientA.down();
+
+		TestAssertUtil.assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		TestAssertUtil.assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+		clientC.deleteTestData();
+	}
+
+	private int countEncryptedMultiChunks(File cacheDir) {
+		int encryptedMultiChunkCount = 0;
+
+		for (String fileName : cacheDir.list()) {
+			if (fileName.startsWith("multichunk-") && !fileName.endsWith("-decrypted")) {
+				encryptedMultiChunkCount++;
+			}
+		}
+
+		return encryptedMultiChunkCount;
+	}
+}
@@ -23,9 +23,18 @@ import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -33,6 +42,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.junit.Test;
 import org.syncany.config.Logging;
 import org.syncany.operations.watch.DefaultRecursiveWatcher;
+import org.syncany.operations.watch.RecursiveWatcher;
 import org.syncany.operations.watch.RecursiveWatcher.WatchListener;
 import org.syncany.tests.unit.util.TestFileUtil;
 
@@ -52,7 +62,7 @@ public class RecursiveWatcherTest {
 		
 		DefaultRecursiveWatcher watcher = new DefaultRecursiveWatcher(Paths.get(tempDir.getAbsolutePath()), new ArrayList<Path>(), 300, new WatchListener() {
 			@Override
-			public void watchEventsOccurred() {
+			public void watchEventsOccurred(List<Path> changedPaths) {
 				eventOccurred.set(true);
 			}			
 		});
@@ -86,7 +96,7 @@ public class RecursiveWatcherTest {
 		
 		DefaultRecursiveWatcher watcher = new DefaultRecursiveWatcher(Paths.get(tempDir.getAbsolutePath()), new ArrayList<Path>(), 300, new WatchListener() {
 			@Override
-			public void watchEventsOccurred() {
+			public void watchEventsOccurred(List<Path> changedPaths) {
 				eventOccurred.set(true);
 			}			
 		});
@@ -123,7 +133,7 @@ public class RecursiveWatcherTest {
 		
 		DefaultRecursiveWatcher watcher = new DefaultRecursiveWatcher(Paths.get(tempDir.getAbsolutePath()), new ArrayList<Path>(), 300, new WatchListener() {
 			@Override
-			public void watchEventsOccurred() {
+			public void watchEventsOccurred(List<Path> changedPaths) {
 				eventOccurred.set(true);
 			}			
 		});
@@ -163,7 +173,7 @@ public class RecursiveWatcherTest {
 		
 		DefaultRecursiveWatcher watcher = new DefaultRecursiveWatcher(Paths.get(tempDir.getAbsolutePath()), new ArrayList<Path>(), 300, new WatchListener() {
 			@Override
-			public void watchEventsOccurred() {
+			public void watchEventsOccurred(List<Path> changedPaths) {
 				eventOccurred.set(true);
 			}			
 		});
@@ -212,7 +222,7 @@ public class RecursiveWatcherTest {
 		
 		DefaultRecursiveWatcher watcher = new DefaultRecursiveWatcher(Paths.get(tempDir.getAbsolutePath()), new ArrayList<Path>(), 300, new WatchListener() {
 			@Override
-			public void watchEventsOccurred() { 
+			public void watchEventsOccurred(List<Path> changedPaths) { 
 				watcherEventOccurredCount.addAndGet(1);
 				watcherEventOccurredTime.set(System.currentTimeMillis());
 			}			
@@ -251,7 +261,7 @@ public class RecursiveWatcherTest {
 		
 		DefaultRecursiveWatcher watcher = new DefaultRecursiveWatcher(Paths.get(tempDir.getAbsolutePath()), new ArrayList<Path>(), 300, new WatchListener() {
 			@Override
-			public void watchEventsOccurred() { 
+			public void watchEventsOccurred(List<Path> changedPaths) { 
 				watcherEventOccurredCount.addAndGet(1);
 			}			
 		});
@@ -273,5 +283,199 @@ public class RecursiveWatcherTest {
 		
 		// Tear down	
 		TestFileUtil.deleteDirectory(tempDir);
-	}	
+	}
+
+	@Test
+	public void testWatchFileInNewNestedSubfolder() throws Exception {
+		// Setup
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		Path rootPath = Paths.get(tempDir.getAbsolutePath());
+
+		// Test
+		final List<Path> changedPaths = Collections.synchronizedList(new ArrayList<Path>());
+
+		DefaultRecursiveWatcher watcher = new DefaultRecursiveWatcher(rootPath, new ArrayList<Path>(), 300, new WatchListener() {
+			@Override
+			public void watchEventsOccurred(List<Path> eventChangedPaths) {
+				changedPaths.addAll(eventChangedPaths);
+			}
+		});
+
+		// Start watcher and wait for watch service to set watch on all folders
+		watcher.start();
+		Thread.sleep(1000);
+
+		// Create nested sub folders and a file in the deepest folder (before the folders are watched)
+		File nestedSubDir = new File(tempDir + "/subdir1/subdir2/subdir3");
+		nestedSubDir.mkdirs();
+
+		TestFileUtil.createRandomFileInDirectory(nestedSubDir, 10);
+		Thread.sleep(500);
+
+		// The entire new subtree is reported (as its topmost folder)
+		assertEquals(Arrays.asList(rootPath.resolve("subdir1")), changedPaths);
+		assertTrue(getWatchedPaths(watcher).contains(nestedSubDir.toPath()));
+
+		changedPaths.clear();
+
+		// Event on a file in the (now watched) deepest folder
+		File newFile = TestFileUtil.createRandomFileInDirectory(nestedSubDir, 10);
+		Thread.sleep(500);
+
+		assertEquals(Arrays.asList(newFile.toPath()), changedPaths);
+
+		// Stop watcher (close watches)
+		watcher.stop();
+
+		// Tear down
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testWatchDeletedSubfolderCancelsWatches() throws Exception {
+		// Setup
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		Path rootPath = Paths.get(tempDir.getAbsolutePath());
+
+		File subDir1 = new File(tempDir + "/subdir1");
+		new File(subDir1 + "/subdir2/subdir3").mkdirs();
+		new File(tempDir + "/otherdir").mkdir();
+
+		// Test
+		final List<Path> changedPaths = Collections.synchronizedList(new ArrayList<Path>());
+
+		DefaultRecursiveWatcher watcher = new DefaultRecursiveWatcher(rootPath, new ArrayList<Path>(), 300, new WatchListener() {
+			@Override
+			public void watchEventsOccurred(List<Path> eventChangedPaths) {
+				changedPaths.addAll(eventChangedPaths);
+			}
+		});
+
+		// Start watcher and wait for watch service to set watch on all folders
+		watcher.start();
+		Thread.sleep(1000);
+
+		assertEquals(5, getWatchedPaths(watcher).size());
+
+		// Delete sub folder (and its sub folders)
+		TestFileUtil.deleteDirectory(subDir1);
+		Thread.sleep(500);
+
+		Set<Path> expectedWatchedPaths = new HashSet<Path>(Arrays.asList(rootPath, rootPath.resolve("otherdir")));
+
+		assertEquals(expectedWatchedPaths, getWatchedPaths(watcher));
+		assertEquals(Arrays.asList(rootPath.resolve("subdir1")), changedPaths);
+
+		// Stop watcher (close watches)
+		watcher.stop();
+
+		// Tear down
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testWatchRenamedSubfolder() throws Exception {
+		// Setup
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		Path rootPath = Paths.get(tempDir.getAbsolutePath());
+
+		new File(tempDir + "/subdir1/subdir2").mkdirs();
+
+		// Test
+		final List<Path> changedPaths = Collections.synchronizedList(new ArrayList<Path>());
+
+		DefaultRecursiveWatcher watcher = new DefaultRecursiveWatcher(rootPath, new ArrayList<Path>(), 300, new WatchListener() {
+			@Override
+			public void watchEventsOccurred(List<Path> eventChangedPaths) {
+				changedPaths.addAll(eventChangedPaths);
+			}
+		});
+
+		// Start watcher and wait for watch service to set watch on all folders
+		watcher.start();
+		Thread.sleep(1000);
+
+		// Rename sub folder
+		Files.move(rootPath.resolve("subdir1"), rootPath.resolve("renamed1"));
+		Thread.sleep(500);
+
+		Set<Path> expectedWatchedPaths = new HashSet<Path>(Arrays.asList(rootPath, rootPath.resolve("renamed1"),
+				rootPath.resolve("renamed1/subdir2")));
+
+		assertEquals(expectedWatchedPaths, getWatchedPaths(watcher));
+		assertEquals(new HashSet<Path>(Arrays.asList(rootPath.resolve("subdir1"), rootPath.resolve("renamed1"))), new HashSet<Path>(changedPaths));
+
+		changedPaths.clear();
+
+		// Event on a file in the renamed folder is reported with the new path
+		File newFile = TestFileUtil.createRandomFileInDirectory(new File(tempDir + "/renamed1/subdir2"), 10);
+		Thread.sleep(500);
+
+		assertEquals(Arrays.asList(newFile.toPath()), changedPaths);
+
+		// Stop watcher (close watches)
+		watcher.stop();
+
+		// Tear down
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testDirtyPathsMergedIntoParentFolders() throws Exception {
+		Path rootPath = Paths.get("/tmp/root");
+		DefaultRecursiveWatcher watcher = new DefaultRecursiveWatcher(rootPath, new ArrayList<Path>(), 300, null);
+
+		// Child paths are merged into their dirty parents
+		addDirtyPath(watcher, rootPath.resolve("folder1/subfolder/file1"));
+		addDirtyPath(watcher, rootPath.resolve("folder1"));
+		addDirtyPath(watcher, rootPath.resolve("folder2/file2"));
+		addDirtyPath(watcher, rootPath.resolve("folder1/file3"));
+		addDirtyPath(watcher, rootPath.resolve("file4"));
+
+		List<Path> dirtyPaths = takeDirtyPaths(watcher);
+
+		assertEquals(3, dirtyPaths.size());
+		assertEquals(new HashSet<Path>(Arrays.asList(rootPath.resolve("folder1"), rootPath.resolve("file4"))),
+				new HashSet<Path>(dirtyPaths.subList(0, 2)));
+		assertEquals(rootPath.resolve("folder2/file2"), dirtyPaths.get(2));
+
+		// Taking the dirty paths resets them
+		assertEquals(0, takeDirtyPaths(watcher).size());
+
+		// Too many dirty paths fall back to the root folder
+		Field maxDirtyPathsField = RecursiveWatcher.class.getDeclaredField("MAX_DIRTY_PATHS");
+		maxDirtyPathsField.setAccessible(true);
+
+		int maxDirtyPaths = maxDirtyPathsField.getInt(null);
+
+		for (int i = 0; i <= maxDirtyPaths; i++) {
+			addDirtyPath(watcher, rootPath.resolve("folder-" + i + "/file"));
+		}
+
+		assertEquals(Arrays.asList(rootPath), takeDirtyPaths(watcher));
+	}
+
+	@SuppressWarnings("unchecked")
+	private Set<Path> getWatchedPaths(DefaultRecursiveWatcher watcher) throws Exception {
+		Field watchPathKeyMapField = DefaultRecursiveWatcher.class.getDeclaredField("watchPathKeyMap");
+		watchPathKeyMapField.setAccessible(true);
+
+		synchronized (watcher) {
+			return new HashSet<Path>(((Map<Path, ?>) watchPathKeyMapField.get(watcher)).keySet());
+		}
+	}
+
+	private void addDirtyPath(RecursiveWatcher watcher, Path path) throws Exception {
+		Method addDirtyPathMethod = RecursiveWatcher.class.getDeclaredMethod("addDirtyPath", Path.class);
+		addDirtyPathMethod.setAccessible(true);
+		addDirtyPathMethod.invoke(watcher, path);
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Path> takeDirtyPaths(RecursiveWatcher watcher) throws Exception {
+		Method takeDirtyPathsMethod = RecursiveWatcher.class.getDeclaredMethod("takeDirtyPaths");
+		takeDirtyPathsMethod.setAccessible(true);
+
+		return (List<Path>) takeDirtyPathsMethod.invoke(watcher);
+	}
 }
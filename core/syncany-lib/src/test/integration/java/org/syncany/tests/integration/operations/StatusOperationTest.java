@@ -18,8 +18,11 @@
 package org.syncany.tests.integration.operations;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Test;
@@ -161,4 +164,104 @@ public class StatusOperationTest {
 		// Cleanup 
 		TestConfigUtil.deleteTestLocalConfigAndData(config);
 	}
+	
+	@Test
+	public void testQuickStatusWithSnapshot() throws Exception {
+		// Setup
+		Config config = TestConfigUtil.createTestLocalConfig();
+		List<File> originalFiles = TestFileUtil.createRandomFilesInDirectory(config.getLocalDir(), 50*1024, 3);
+		new File(config.getLocalDir()+"/somefolder").mkdir();
+		
+		StatusOperationOptions quickStatusOptions = new StatusOperationOptions();
+		quickStatusOptions.setQuick(true);
+		
+		new UpOperation(config).execute();
+		
+		// Run 'status' twice: The first run creates the snapshot, the second uses it
+		for (int i = 0; i < 2; i++) {
+			ChangeSet changeSet = (new StatusOperation(config, quickStatusOptions).execute()).getChangeSet();
+			
+			assertEquals(changeSet.getNewFiles().size(), 0);
+			assertEquals(changeSet.getChangedFiles().size(), 0);
+			assertEquals(changeSet.getDeletedFiles().size(), 0);
+			assertEquals(changeSet.getUnchangedFiles().size(), originalFiles.size() + 1);
+			assertTrue(config.getStatusSnapshotFile().exists());
+		}
+		
+		// Change, delete and add a file; changes must be detected despite the snapshot
+		Thread.sleep(2000);
+		
+		TestFileUtil.changeRandomPartOfBinaryFile(originalFiles.get(0));
+		TestFileUtil.deleteFile(originalFiles.get(1));
+		TestFileUtil.createRandomFileInDirectory(config.getLocalDir(), 1024);
+		
+		ChangeSet changeSet = (new StatusOperation(config, quickStatusOptions).execute()).getChangeSet();
+		
+		assertEquals(changeSet.getNewFiles().size(), 1);
+		assertEquals(changeSet.getChangedFiles().size(), 1);
+		assertEquals(changeSet.getDeletedFiles().size(), 1);
+		assertEquals(changeSet.getUnchangedFiles().size(), 2);
+		
+		// Cleanup 
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+	}
+	
+	@Test
+	public void testScopedStatus() throws Exception {
+		// Setup
+		Config config = TestConfigUtil.createTestLocalConfig();
+		
+		File folder1 = new File(config.getLocalDir(), "folder1");
+		File folder2 = new File(config.getLocalDir(), "folder2");
+		
+		folder1.mkdir();
+		folder2.mkdir();
+		
+		List<File> folder1Files = TestFileUtil.createRandomFilesInDirectory(folder1, 50*1024, 3);
+		List<File> folder2Files = TestFileUtil.createRandomFilesInDirectory(folder2, 50*1024, 3);
+		
+		new UpOperation(config).execute();
+		
+		// Change and delete files in both folders, and add a file to folder 1
+		Thread.sleep(2000);
+		
+		TestFileUtil.changeRandomPartOfBinaryFile(folder1Files.get(0));
+		TestFileUtil.deleteFile(folder1Files.get(1));
+		TestFileUtil.changeRandomPartOfBinaryFile(folder2Files.get(0));
+		TestFileUtil.deleteFile(folder2Files.get(1));
+		File newFile = TestFileUtil.createRandomFileInDirectory(folder1, 1024);
+
+		// Status scoped to folder 1 must only find changes in folder 1
+		StatusOperationOptions scopedStatusOptions = new StatusOperationOptions();
+		scopedStatusOptions.setPaths(Arrays.asList("folder1"));
+		
+		ChangeSet changeSet = (new StatusOperation(config, scopedStatusOptions).execute()).getChangeSet();
+		
+		assertEquals(1, changeSet.getNewFiles().size());
+		assertEquals(1, changeSet.getChangedFiles().size());
+		assertEquals(1, changeSet.getDeletedFiles().size());
+		assertEquals(2, changeSet.getUnchangedFiles().size()); // folder1 and the unchanged file
+		assertTrue(changeSet.getNewFiles().contains("folder1/" + newFile.getName()));
+		assertTrue(changeSet.getDeletedFiles().contains("folder1/" + folder1Files.get(1).getName()));
+		
+		// Status scoped to a deleted file must only find this file
+		scopedStatusOptions.setPaths(Arrays.asList("folder2/" + folder2Files.get(1).getName()));
+		changeSet = (new StatusOperation(config, scopedStatusOptions).execute()).getChangeSet();
+
+		assertEquals(0, changeSet.getNewFiles().size());
+		assertEquals(0, changeSet.getChangedFiles().size());
+		assertEquals(1, changeSet.getDeletedFiles().size());
+		assertFalse(changeSet.getDeletedFiles().contains("folder1/" + folder1Files.get(1).getName()));
+		
+		// Status scoped to the root folder is a full status
+		scopedStatusOptions.setPaths(Arrays.asList(""));
+		changeSet = (new StatusOperation(config, scopedStatusOptions).execute()).getChangeSet();
+		
+		assertEquals(1, changeSet.getNewFiles().size());
+		assertEquals(2, changeSet.getChangedFiles().size());
+		assertEquals(2, changeSet.getDeletedFiles().size());
+		
+		// Cleanup 
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+	}
 }
@@ -20,9 +20,11 @@ package org.syncany.tests.integration.plugins.unreliable_local;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.logging.Level;
@@ -602,4 +604,70 @@ public class UploadInterruptedTest {
 		clientA.deleteTestData();
 		clientB.deleteTestData();
 	}
+
+	@Test
+	public void testUnreliableUpload_ConcurrentUploadFailResume() throws Exception {
+		/*
+		 * This test uploads multichunks with three threads. The first two multichunk
+		 * uploads succeed, all later ones fail. The transaction must be resumed with only
+		 * the missing multichunks.
+		 */
+
+		// Setup
+		UnreliableLocalTransferSettings testConnection = TestConfigUtil.createTestUnreliableLocalConnection(
+				Arrays.asList(new String[] {
+						// List of failing operations (regex)
+						// Format: abs=<count> rel=<count> op=<connect|init|upload|...> <operation description>
+
+						"rel=([5-9]|[1-9][0-9]) .+upload.+multichunk" // << rel=1 is the action file, rel=2 the transaction file
+				}
+						));
+
+		TestClient clientA = new TestClient("A", testConnection);
+		clientA.createNewFile("A-original", 20 * 1024 * 1024); // << several multichunks
+
+		UpOperationOptions upOptions = new UpOperationOptions();
+		upOptions.setUploadThreads(3);
+
+		boolean upFailed = false;
+
+		try {
+			clientA.up(upOptions);
+		}
+		catch (StorageException e) {
+			upFailed = true;
+			logger.log(Level.INFO, e.getMessage());
+		}
+
+		assertTrue(upFailed);
+		assertEquals(0, new File(testConnection.getPath() + "/databases/").listFiles().length);
+		assertEquals(0, new File(testConnection.getPath() + "/multichunks/").listFiles().length);
+		assertEquals(1, new File(testConnection.getPath() + "/transactions/").listFiles().length);
+		assertTrue(new File(testConnection.getPath() + "/temporary/").listFiles().length >= 2); // << database file might have been started
+
+		File transactionFile = new File(testConnection.getPath() + "/transactions/").listFiles()[0];
+		TransactionTO transactionTO = new Persister().read(TransactionTO.class, transactionFile);
+
+		int multiChunkCount = transactionTO.getActions().size() - 1;
+		assertTrue(multiChunkCount > 3);
+
+		// 2. Resume with the remaining multichunks must succeed
+		testConnection.setFailingOperationPatterns(new ArrayList<String>());
+		clientA.up(upOptions);
+
+		assertEquals(1, new File(testConnection.getPath() + "/databases/").listFiles().length);
+		assertEquals(multiChunkCount, new File(testConnection.getPath() + "/multichunks/").listFiles().length);
+		assertEquals(0, new File(testConnection.getPath() + "/actions/").listFiles().length);
+		assertEquals(0, new File(testConnection.getPath() + "/transactions/").listFiles().length);
+		assertEquals(0, new File(testConnection.getPath() + "/temporary/").listFiles().length);
+
+		TestClient clientB = new TestClient("B", testConnection);
+		clientB.down();
+
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
 }
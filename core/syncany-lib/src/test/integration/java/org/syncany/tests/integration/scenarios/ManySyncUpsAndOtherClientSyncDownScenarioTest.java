@@ -17,10 +17,19 @@
  */
 package org.syncany.tests.integration.scenarios;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
 import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseEquals;
 
+import java.io.File;
+import java.io.FilenameFilter;
+
 import org.junit.Test;
+import org.syncany.operations.cleanup.CleanupOperationOptions;
+import org.syncany.operations.down.DownOperationOptions;
+import org.syncany.operations.down.DownOperationResult;
+import org.syncany.operations.up.UpOperationOptions;
 import org.syncany.plugins.local.LocalTransferSettings;
 import org.syncany.tests.util.TestClient;
 import org.syncany.tests.util.TestConfigUtil;
@@ -87,4 +96,61 @@ public class ManySyncUpsAndOtherClientSyncDownScenarioTest {
 		clientA.deleteTestData();
 		clientB.deleteTestData();
 	}
+	
+	@Test
+	public void testManySyncUpsAndOtherClientSyncDownInSmallApplyWindows() throws Exception {
+		// Setup 
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();		
+		
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+		
+		UpOperationOptions upOptionsNoCleanup = new UpOperationOptions();
+		upOptionsNoCleanup.setForceUploadEnabled(true);
+		
+		// ROUND 1: many sync up, with moves and deletes of files of previous rounds
+		for (int i=1; i<=30; i++) {
+			clientA.createNewFile("file"+i, 100);
+			
+			if (i % 3 == 0) {
+				clientA.moveFile("file"+(i-1), "file"+(i-1)+"-moved");
+			}
+			
+			if (i % 5 == 0) {
+				clientA.deleteFile("file"+(i-2));
+			}
+			
+			clientA.up(upOptionsNoCleanup);		
+		}
+		
+		// ROUND 2: merge all database files into one, so the windows must split the file
+		CleanupOperationOptions cleanupOptions = new CleanupOperationOptions();
+		cleanupOptions.setRemoveOldVersions(false);
+		cleanupOptions.setMaxDatabaseFiles(1);
+		cleanupOptions.setMinSecondsBetweenCleanups(0);
+		
+		clientA.cleanup(cleanupOptions);
+		assertEquals(1, new File(testConnection.getPath(), "databases").list(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith("database-");
+			}
+		}).length);
+		
+		// ROUND 3: sync down by B in small windows
+		DownOperationOptions downOptions = new DownOperationOptions();
+		downOptions.setApplyWindowSize(4);
+		
+		DownOperationResult downResult = clientB.down(downOptions);
+		
+		assertTrue(downResult.getApplyWindowCount() >= 30 / 4);
+		assertTrue(downResult.getPeakHeapUsage() > 0);
+		
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());		
+		
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
 }
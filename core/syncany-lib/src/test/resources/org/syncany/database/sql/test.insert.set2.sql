@@ -271,56 +271,56 @@ INSERT INTO FILEHISTORY VALUES('f05594af97abcb739a2f234764545a49069c90c4',8);
 INSERT INTO FILEHISTORY VALUES('f0c1180fa0c68eb293d2762e28f70292d6f226b8',7);
 INSERT INTO FILEHISTORY VALUES('f55923dadd7bb9a41a2242886d9d69eee129baa3',4);
 INSERT INTO FILEHISTORY VALUES('fe64176e587bb2c6c01a65bcaf9bc8b9f1a54de4',27);
-INSERT INTO FILEVERSION VALUES('09cac14496a74a2fb10f993904aa4724cb87a78a',1,22,'file23','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540372),NULL,'f5efcd994fca895f644b0ccc362aba5d6f4ae0c6',TIMESTAMP_WITH_ZONE(1389540372),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('0ec97a4a65996b09c136f4f8def321926499f77a',1,38,'file39','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540374),NULL,'655f2b71ddfafbcbd5af517f02eb9386a2a7a2a1',TIMESTAMP_WITH_ZONE(1389540374),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('11c922a90efc89168e70bfa164979926f42a5502',1,9,'file10','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540370),NULL,'42099b4af021e53fd8fd4e056c2568d7c2e3ffa8',TIMESTAMP_WITH_ZONE(1389540370),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('164e075abb25100b11e560096f04db812fe7a64f',1,48,'file49','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540375),NULL,'bf8b4530d8d246dd74ac53a13471bba17941dff7',TIMESTAMP_WITH_ZONE(1389540375),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('1747efdc5761daa913542e0c7a77db98d939fd17',1,11,'file12','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540370),NULL,'30140397fe38ee61f01eff44b5cfa48285e47889',TIMESTAMP_WITH_ZONE(1389540371),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('190259bae46f8f16a47e0d0d9482f867cf42e6ff',1,19,'file20','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540372),NULL,'53a0acfad59379b3e050338bf9f23cfc172ee787',TIMESTAMP_WITH_ZONE(1389540372),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('2e589793c3cda0fa0a21edd89cfaf1ce26fc6fd4',1,26,'file27','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540373),NULL,'ab461f6b8a6842a473257a2561c1fbdf91bdfe77',TIMESTAMP_WITH_ZONE(1389540373),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('33f4f1877e11f34fcf52ec81051c63ff79b096f9',1,5,'file6','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540369),NULL,'3cdf2936da2fc556bfa533ab1eb59ce710ac80e5',TIMESTAMP_WITH_ZONE(1389540369),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('40b7745398de0d7f56c2186033b6ab8d34d4e920',1,33,'file34','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540373),NULL,'d160e0986aca4714714a16f29ec605af90be704d',TIMESTAMP_WITH_ZONE(1389540373),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('45a6df5a57572b5cbbe0507da8e21ae3a1ce9e76',1,25,'file26','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540372),NULL,'a0f1490a20d0211c997b44bc357e1972deab8ae3',TIMESTAMP_WITH_ZONE(1389540372),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('4a620b7126e1936bda7a2fe65e31d270ab009f32',1,49,'file50','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540375),NULL,'ca632d28f91c1b8d638df71525fe22fd2473af10',TIMESTAMP_WITH_ZONE(1389540375),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('4e0d277d1723d5163df04cae7af91d7c0690d811',1,6,'file7','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540369),NULL,'13cba177bcfad90e7b3de70616b2e54ba4bb107f',TIMESTAMP_WITH_ZONE(1389540370),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('4f9408f6488f70ba5fe97655c0263185575e8418',1,37,'file38','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540374),NULL,'1b6453892473a467d07372d45eb05abc2031647a',TIMESTAMP_WITH_ZONE(1389540374),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('4fef2d605640813464792b18b16e1a5e07aa4e53',1,2,'file3','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540369),NULL,'8ce24fc0ea8e685eb23bf6346713ad9fef920425',TIMESTAMP_WITH_ZONE(1389540369),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('64a7903d4e95bdea0c9daf62151dec968eb8276f',1,3,'file4','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540369),NULL,'f11d1c80a3eeec16ed6079a52005d446886c3a4f',TIMESTAMP_WITH_ZONE(1389540369),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('699f02963d645125ce3990e76f722533be85068a',1,12,'file13','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540371),NULL,'a8abd012eb59b862bf9bc1ea443d2f35a1a2e222',TIMESTAMP_WITH_ZONE(1389540371),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('6a16ed133bd18cc027b221e99669f4d48ee07d9e',1,14,'file15','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540371),NULL,'b753d636f6ee46bb9242d01ff8b61f715e9a88c3',TIMESTAMP_WITH_ZONE(1389540371),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('6b9a458bd2ba648a63145c05a43c7bf72f59a5ed',1,15,'file16','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540371),NULL,'05a79f06cf3f67f726dae68d18a2290f6c9a50c9',TIMESTAMP_WITH_ZONE(1389540371),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('6ed43f1018f22fa0552f74ecd0bfc27643aebd45',1,40,'file41','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540374),NULL,'a42c6cf1de3abfdea9b95f34687cbbe92b9a7383',TIMESTAMP_WITH_ZONE(1389540374),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('71fbb82e1dbcb38c0844caa9a2d9a3fe3ce6f0b0',1,42,'file43','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540374),NULL,'a42c6cf1de3abfdea9b95f34687cbbe92b9a7383',TIMESTAMP_WITH_ZONE(1389540374),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('76335d77da785e1a1f0795c35351b87fca699d70',1,41,'file42','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540374),NULL,'953efe8f531a5a87f6d2d5a65b78b05e55599abc',TIMESTAMP_WITH_ZONE(1389540374),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('7b0b68878181ef87ac8c8ec15755fb72232597fb',1,24,'file25','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540372),NULL,'c4ea21bb365bbeeaf5f2c654883e56d11e43c44e',TIMESTAMP_WITH_ZONE(1389540372),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('7d62ec4c91a98333e2c87eb33a8276bc8c557249',1,32,'file33','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540373),NULL,'e2415cb7f63df0c9de23362326ad3c37a9adfc96',TIMESTAMP_WITH_ZONE(1389540373),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('851c441915478a539a5bab2b263ffa4cc48e282f',1,0,'file1','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540367),NULL,'fe83f217d464f6fdfa5b2b1f87fe3a1a47371196',TIMESTAMP_WITH_ZONE(1389540368),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('86a3ae57281cb06a99e1617d4be8dc6dc95da04f',1,46,'file47','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540375),NULL,'3cdf2936da2fc556bfa533ab1eb59ce710ac80e5',TIMESTAMP_WITH_ZONE(1389540375),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('96820ff4b86e12b35bc5f2156feb72c328d9e9da',1,18,'file19','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540372),NULL,'1b6453892473a467d07372d45eb05abc2031647a',TIMESTAMP_WITH_ZONE(1389540372),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('9931dd99f97c312d14d4f58d689c6343b4c886fa',1,10,'file11','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540370),NULL,'10687feb9716c9502d9a40fdfe3bb339055c8651',TIMESTAMP_WITH_ZONE(1389540370),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('a1524f0fee5e91958a44f78f682d9dce4809fb22',1,45,'file46','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540375),NULL,'c4488af0c158e8c2832cb927cfb3ce534104cd1e',TIMESTAMP_WITH_ZONE(1389540375),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('a33a902fa3613ec3f83ef8b568f9b2d3ad46edc4',1,21,'file22','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540372),NULL,'77a55e8dd56f4428497116b91d4c0c3ba932425c',TIMESTAMP_WITH_ZONE(1389540372),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('a455aa30b9b68ddf96b8e5df3e48fc70671d213a',1,28,'file29','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540373),NULL,'320355ced694aa69924f6bb82e7b74f420303fd9',TIMESTAMP_WITH_ZONE(1389540373),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('b16b0675c14b624a2b2bac03e37046984142e7f1',1,13,'file14','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540371),NULL,'ab461f6b8a6842a473257a2561c1fbdf91bdfe77',TIMESTAMP_WITH_ZONE(1389540371),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('b255a5575dc35915ef1dbb593962c20b32f08505',1,17,'file18','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540371),NULL,'1216aa524aef75e75aa9214fb78ad1ac3ba1e34b',TIMESTAMP_WITH_ZONE(1389540372),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('bde6dc0d38ade4b9f8938e109be58b61ad7e35b7',1,47,'file48','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540375),NULL,'30140397fe38ee61f01eff44b5cfa48285e47889',TIMESTAMP_WITH_ZONE(1389540375),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('c021aecb2ae36f2a8430eb10309923454b93b61e',1,1,'file2','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540369),NULL,'bf8b4530d8d246dd74ac53a13471bba17941dff7',TIMESTAMP_WITH_ZONE(1389540369),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('c14d63367c87a89942fd10e232c4994c0b597b3a',1,30,'file31','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540373),NULL,'13cba177bcfad90e7b3de70616b2e54ba4bb107f',TIMESTAMP_WITH_ZONE(1389540373),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('c1d301efb8216b3ce988babe894b67c78b564840',1,35,'file36','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540374),NULL,'19da91f2603889267dfd77786e07a5b8f067d62a',TIMESTAMP_WITH_ZONE(1389540374),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('d0422912de116ca867eaab65c64c3d79e4c72bc0',1,16,'file17','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540371),NULL,'bf8b4530d8d246dd74ac53a13471bba17941dff7',TIMESTAMP_WITH_ZONE(1389540371),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('d15d79a159a574f64c0682b8106b460fecbac725',1,44,'file45','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540375),NULL,'c4dd3c8cdd8d7c95603dd67f1cd873d5f9148b29',TIMESTAMP_WITH_ZONE(1389540375),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('d3911d16875137092ee349c1981bf2e0d0088e0c',1,43,'file44','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540374),NULL,'897f9399aebb2b6163b8175b8e50c52b54aeda2d',TIMESTAMP_WITH_ZONE(1389540375),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('d3cde88c51e46aea131b5525e4ec9e9a92612392',1,36,'file37','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540374),NULL,'5e6f80a34a9798cafc6a5db96cc57ba4c4db59c2',TIMESTAMP_WITH_ZONE(1389540374),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('d6831c7bea0b9aff37b1aeae145d2e334134eaf5',1,23,'file24','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540372),NULL,'3c363836cf4e16666669a25da280a1865c2d2874',TIMESTAMP_WITH_ZONE(1389540372),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('dfaf1abdf32d3f8f2a1e9a3ab4d0acb02176d2aa',1,29,'file30','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540373),NULL,'c7da1ff95a25c353f1319604703e8bfd287ee1a1',TIMESTAMP_WITH_ZONE(1389540373),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('e2170d9325707df6ff1593babcaebe3d8f54cdfa',1,34,'file35','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540373),NULL,'c4488af0c158e8c2832cb927cfb3ce534104cd1e',TIMESTAMP_WITH_ZONE(1389540373),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('e3b7ffba4e32b5e323d873308b41af4c0e0d5a90',1,20,'file21','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540372),NULL,'d57a281360b0397e17fd449153eb58a47dd5b12c',TIMESTAMP_WITH_ZONE(1389540372),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('ec997746f21b23872f9eaf6f644fc67576569c04',1,39,'file40','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540374),NULL,'d50591ff745cc83091f4ee12b2ee702cb24b0b45',TIMESTAMP_WITH_ZONE(1389540374),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('ee927b16af5058e87a0995296c2bb8f8ca05dbe0',1,31,'file32','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540373),NULL,'d07e4bc786c88b8d2304f84c7db2098666f822c0',TIMESTAMP_WITH_ZONE(1389540373),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('f05594af97abcb739a2f234764545a49069c90c4',1,8,'file9','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540370),NULL,'8bf7b464aaa2c2b536aa1d76a1297c19155f5603',TIMESTAMP_WITH_ZONE(1389540370),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('f0c1180fa0c68eb293d2762e28f70292d6f226b8',1,7,'file8','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540370),NULL,'64b68bf5b882b9bd0b37267287980ecfa0e44a85',TIMESTAMP_WITH_ZONE(1389540370),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('f55923dadd7bb9a41a2242886d9d69eee129baa3',1,4,'file5','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540369),NULL,'f5efcd994fca895f644b0ccc362aba5d6f4ae0c6',TIMESTAMP_WITH_ZONE(1389540369),'rw-r--r--',NULL);
-INSERT INTO FILEVERSION VALUES('fe64176e587bb2c6c01a65bcaf9bc8b9f1a54de4',1,27,'file28','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540373),NULL,'c78ebd3c85a39a596d9f5cfd2b8d240bc1b9c125',TIMESTAMP_WITH_ZONE(1389540373),'rw-r--r--',NULL);
+INSERT INTO FILEVERSION VALUES('09cac14496a74a2fb10f993904aa4724cb87a78a',1,22,'file23','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540372),NULL,'f5efcd994fca895f644b0ccc362aba5d6f4ae0c6',TIMESTAMP_WITH_ZONE(1389540372),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('0ec97a4a65996b09c136f4f8def321926499f77a',1,38,'file39','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540374),NULL,'655f2b71ddfafbcbd5af517f02eb9386a2a7a2a1',TIMESTAMP_WITH_ZONE(1389540374),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('11c922a90efc89168e70bfa164979926f42a5502',1,9,'file10','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540370),NULL,'42099b4af021e53fd8fd4e056c2568d7c2e3ffa8',TIMESTAMP_WITH_ZONE(1389540370),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('164e075abb25100b11e560096f04db812fe7a64f',1,48,'file49','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540375),NULL,'bf8b4530d8d246dd74ac53a13471bba17941dff7',TIMESTAMP_WITH_ZONE(1389540375),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('1747efdc5761daa913542e0c7a77db98d939fd17',1,11,'file12','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540370),NULL,'30140397fe38ee61f01eff44b5cfa48285e47889',TIMESTAMP_WITH_ZONE(1389540371),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('190259bae46f8f16a47e0d0d9482f867cf42e6ff',1,19,'file20','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540372),NULL,'53a0acfad59379b3e050338bf9f23cfc172ee787',TIMESTAMP_WITH_ZONE(1389540372),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('2e589793c3cda0fa0a21edd89cfaf1ce26fc6fd4',1,26,'file27','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540373),NULL,'ab461f6b8a6842a473257a2561c1fbdf91bdfe77',TIMESTAMP_WITH_ZONE(1389540373),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('33f4f1877e11f34fcf52ec81051c63ff79b096f9',1,5,'file6','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540369),NULL,'3cdf2936da2fc556bfa533ab1eb59ce710ac80e5',TIMESTAMP_WITH_ZONE(1389540369),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('40b7745398de0d7f56c2186033b6ab8d34d4e920',1,33,'file34','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540373),NULL,'d160e0986aca4714714a16f29ec605af90be704d',TIMESTAMP_WITH_ZONE(1389540373),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('45a6df5a57572b5cbbe0507da8e21ae3a1ce9e76',1,25,'file26','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540372),NULL,'a0f1490a20d0211c997b44bc357e1972deab8ae3',TIMESTAMP_WITH_ZONE(1389540372),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('4a620b7126e1936bda7a2fe65e31d270ab009f32',1,49,'file50','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540375),NULL,'ca632d28f91c1b8d638df71525fe22fd2473af10',TIMESTAMP_WITH_ZONE(1389540375),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('4e0d277d1723d5163df04cae7af91d7c0690d811',1,6,'file7','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540369),NULL,'13cba177bcfad90e7b3de70616b2e54ba4bb107f',TIMESTAMP_WITH_ZONE(1389540370),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('4f9408f6488f70ba5fe97655c0263185575e8418',1,37,'file38','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540374),NULL,'1b6453892473a467d07372d45eb05abc2031647a',TIMESTAMP_WITH_ZONE(1389540374),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('4fef2d605640813464792b18b16e1a5e07aa4e53',1,2,'file3','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540369),NULL,'8ce24fc0ea8e685eb23bf6346713ad9fef920425',TIMESTAMP_WITH_ZONE(1389540369),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('64a7903d4e95bdea0c9daf62151dec968eb8276f',1,3,'file4','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540369),NULL,'f11d1c80a3eeec16ed6079a52005d446886c3a4f',TIMESTAMP_WITH_ZONE(1389540369),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('699f02963d645125ce3990e76f722533be85068a',1,12,'file13','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540371),NULL,'a8abd012eb59b862bf9bc1ea443d2f35a1a2e222',TIMESTAMP_WITH_ZONE(1389540371),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('6a16ed133bd18cc027b221e99669f4d48ee07d9e',1,14,'file15','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540371),NULL,'b753d636f6ee46bb9242d01ff8b61f715e9a88c3',TIMESTAMP_WITH_ZONE(1389540371),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('6b9a458bd2ba648a63145c05a43c7bf72f59a5ed',1,15,'file16','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540371),NULL,'05a79f06cf3f67f726dae68d18a2290f6c9a50c9',TIMESTAMP_WITH_ZONE(1389540371),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('6ed43f1018f22fa0552f74ecd0bfc27643aebd45',1,40,'file41','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540374),NULL,'a42c6cf1de3abfdea9b95f34687cbbe92b9a7383',TIMESTAMP_WITH_ZONE(1389540374),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('71fbb82e1dbcb38c0844caa9a2d9a3fe3ce6f0b0',1,42,'file43','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540374),NULL,'a42c6cf1de3abfdea9b95f34687cbbe92b9a7383',TIMESTAMP_WITH_ZONE(1389540374),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('76335d77da785e1a1f0795c35351b87fca699d70',1,41,'file42','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540374),NULL,'953efe8f531a5a87f6d2d5a65b78b05e55599abc',TIMESTAMP_WITH_ZONE(1389540374),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('7b0b68878181ef87ac8c8ec15755fb72232597fb',1,24,'file25','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540372),NULL,'c4ea21bb365bbeeaf5f2c654883e56d11e43c44e',TIMESTAMP_WITH_ZONE(1389540372),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('7d62ec4c91a98333e2c87eb33a8276bc8c557249',1,32,'file33','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540373),NULL,'e2415cb7f63df0c9de23362326ad3c37a9adfc96',TIMESTAMP_WITH_ZONE(1389540373),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('851c441915478a539a5bab2b263ffa4cc48e282f',1,0,'file1','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540367),NULL,'fe83f217d464f6fdfa5b2b1f87fe3a1a47371196',TIMESTAMP_WITH_ZONE(1389540368),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('86a3ae57281cb06a99e1617d4be8dc6dc95da04f',1,46,'file47','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540375),NULL,'3cdf2936da2fc556bfa533ab1eb59ce710ac80e5',TIMESTAMP_WITH_ZONE(1389540375),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('96820ff4b86e12b35bc5f2156feb72c328d9e9da',1,18,'file19','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540372),NULL,'1b6453892473a467d07372d45eb05abc2031647a',TIMESTAMP_WITH_ZONE(1389540372),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('9931dd99f97c312d14d4f58d689c6343b4c886fa',1,10,'file11','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540370),NULL,'10687feb9716c9502d9a40fdfe3bb339055c8651',TIMESTAMP_WITH_ZONE(1389540370),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('a1524f0fee5e91958a44f78f682d9dce4809fb22',1,45,'file46','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540375),NULL,'c4488af0c158e8c2832cb927cfb3ce534104cd1e',TIMESTAMP_WITH_ZONE(1389540375),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('a33a902fa3613ec3f83ef8b568f9b2d3ad46edc4',1,21,'file22','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540372),NULL,'77a55e8dd56f4428497116b91d4c0c3ba932425c',TIMESTAMP_WITH_ZONE(1389540372),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('a455aa30b9b68ddf96b8e5df3e48fc70671d213a',1,28,'file29','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540373),NULL,'320355ced694aa69924f6bb82e7b74f420303fd9',TIMESTAMP_WITH_ZONE(1389540373),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('b16b0675c14b624a2b2bac03e37046984142e7f1',1,13,'file14','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540371),NULL,'ab461f6b8a6842a473257a2561c1fbdf91bdfe77',TIMESTAMP_WITH_ZONE(1389540371),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('b255a5575dc35915ef1dbb593962c20b32f08505',1,17,'file18','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540371),NULL,'1216aa524aef75e75aa9214fb78ad1ac3ba1e34b',TIMESTAMP_WITH_ZONE(1389540372),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('bde6dc0d38ade4b9f8938e109be58b61ad7e35b7',1,47,'file48','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540375),NULL,'30140397fe38ee61f01eff44b5cfa48285e47889',TIMESTAMP_WITH_ZONE(1389540375),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('c021aecb2ae36f2a8430eb10309923454b93b61e',1,1,'file2','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540369),NULL,'bf8b4530d8d246dd74ac53a13471bba17941dff7',TIMESTAMP_WITH_ZONE(1389540369),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('c14d63367c87a89942fd10e232c4994c0b597b3a',1,30,'file31','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540373),NULL,'13cba177bcfad90e7b3de70616b2e54ba4bb107f',TIMESTAMP_WITH_ZONE(1389540373),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('c1d301efb8216b3ce988babe894b67c78b564840',1,35,'file36','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540374),NULL,'19da91f2603889267dfd77786e07a5b8f067d62a',TIMESTAMP_WITH_ZONE(1389540374),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('d0422912de116ca867eaab65c64c3d79e4c72bc0',1,16,'file17','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540371),NULL,'bf8b4530d8d246dd74ac53a13471bba17941dff7',TIMESTAMP_WITH_ZONE(1389540371),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('d15d79a159a574f64c0682b8106b460fecbac725',1,44,'file45','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540375),NULL,'c4dd3c8cdd8d7c95603dd67f1cd873d5f9148b29',TIMESTAMP_WITH_ZONE(1389540375),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('d3911d16875137092ee349c1981bf2e0d0088e0c',1,43,'file44','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540374),NULL,'897f9399aebb2b6163b8175b8e50c52b54aeda2d',TIMESTAMP_WITH_ZONE(1389540375),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('d3cde88c51e46aea131b5525e4ec9e9a92612392',1,36,'file37','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540374),NULL,'5e6f80a34a9798cafc6a5db96cc57ba4c4db59c2',TIMESTAMP_WITH_ZONE(1389540374),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('d6831c7bea0b9aff37b1aeae145d2e334134eaf5',1,23,'file24','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540372),NULL,'3c363836cf4e16666669a25da280a1865c2d2874',TIMESTAMP_WITH_ZONE(1389540372),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('dfaf1abdf32d3f8f2a1e9a3ab4d0acb02176d2aa',1,29,'file30','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540373),NULL,'c7da1ff95a25c353f1319604703e8bfd287ee1a1',TIMESTAMP_WITH_ZONE(1389540373),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('e2170d9325707df6ff1593babcaebe3d8f54cdfa',1,34,'file35','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540373),NULL,'c4488af0c158e8c2832cb927cfb3ce534104cd1e',TIMESTAMP_WITH_ZONE(1389540373),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('e3b7ffba4e32b5e323d873308b41af4c0e0d5a90',1,20,'file21','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540372),NULL,'d57a281360b0397e17fd449153eb58a47dd5b12c',TIMESTAMP_WITH_ZONE(1389540372),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('ec997746f21b23872f9eaf6f644fc67576569c04',1,39,'file40','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540374),NULL,'d50591ff745cc83091f4ee12b2ee702cb24b0b45',TIMESTAMP_WITH_ZONE(1389540374),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('ee927b16af5058e87a0995296c2bb8f8ca05dbe0',1,31,'file32','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540373),NULL,'d07e4bc786c88b8d2304f84c7db2098666f822c0',TIMESTAMP_WITH_ZONE(1389540373),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('f05594af97abcb739a2f234764545a49069c90c4',1,8,'file9','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540370),NULL,'8bf7b464aaa2c2b536aa1d76a1297c19155f5603',TIMESTAMP_WITH_ZONE(1389540370),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('f0c1180fa0c68eb293d2762e28f70292d6f226b8',1,7,'file8','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540370),NULL,'64b68bf5b882b9bd0b37267287980ecfa0e44a85',TIMESTAMP_WITH_ZONE(1389540370),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('f55923dadd7bb9a41a2242886d9d69eee129baa3',1,4,'file5','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540369),NULL,'f5efcd994fca895f644b0ccc362aba5d6f4ae0c6',TIMESTAMP_WITH_ZONE(1389540369),'rw-r--r--',NULL,0,'');
+INSERT INTO FILEVERSION VALUES('fe64176e587bb2c6c01a65bcaf9bc8b9f1a54de4',1,27,'file28','FILE','NEW',1,TIMESTAMP_WITH_ZONE(1389540373),NULL,'c78ebd3c85a39a596d9f5cfd2b8d240bc1b9c125',TIMESTAMP_WITH_ZONE(1389540373),'rw-r--r--',NULL,0,'');
 INSERT INTO MULTICHUNK VALUES('02b2c35b816adf3e576fb59a7902aef67c20ec74',36,123);
 INSERT INTO MULTICHUNK VALUES('1395494917cc9d791ab94aa50493a903da89917e',21,123);
 INSERT INTO MULTICHUNK VALUES('17a42ce1d17ed0c6fa1792de6e585e5f36fcdce5',47,123);
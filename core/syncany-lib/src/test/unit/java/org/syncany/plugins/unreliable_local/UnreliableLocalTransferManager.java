@@ -37,29 +37,32 @@ public class UnreliableLocalTransferManager extends LocalTransferManager {
 	}
 
 	private boolean isNextOperationSuccessful(String operationType, String operationDescription) {
-		// Increase absolute/overall operation counter
-		connection.increaseTotalOperationCounter();
-
-		// Increase type-relative operation counter
-		Integer typeOperationCounter = connection.getTypeOperationCounters().get(operationType);
-
-		typeOperationCounter = (typeOperationCounter != null) ? typeOperationCounter + 1 : 1;
-		connection.getTypeOperationCounters().put(operationType, typeOperationCounter);
-
-		// Construct operation line
-		String operationLine = String.format("abs=%d rel=%d op=%s %s", connection.getTotalOperationCounter(), typeOperationCounter, operationType,
-				operationDescription);
-
-		// Check if it fails
-		for (String failingOperationPattern : connection.getFailingOperationPatterns()) {
-			if (operationLine.matches(".*" + failingOperationPattern + ".*")) {
-				logger.log(Level.INFO, "Operation NOT successful: " + operationLine);
-				return false;
+		// Synchronized, because multiple transfer managers may share the same settings (e.g. concurrent uploads)
+		synchronized (connection) {
+			// Increase absolute/overall operation counter
+			connection.increaseTotalOperationCounter();
+
+			// Increase type-relative operation counter
+			Integer typeOperationCounter = connection.getTypeOperationCounters().get(operationType);
+
+			typeOperationCounter = (typeOperationCounter != null) ? typeOperationCounter + 1 : 1;
+			connection.getTypeOperationCounters().put(operationType, typeOperationCounter);
+
+			// Construct operation line
+			String operationLine = String.format("abs=%d rel=%d op=%s %s", connection.getTotalOperationCounter(), typeOperationCounter, operationType,
+					operationDescription);
+
+			// Check if it fails
+			for (String failingOperationPattern : connection.getFailingOperationPatterns()) {
+				if (operationLine.matches(".*" + failingOperationPattern + ".*")) {
+					logger.log(Level.INFO, "Operation NOT successful: " + operationLine);
+					return false;
+				}
 			}
-		}
 
-		logger.log(Level.INFO, "Operation successful:     " + operationLine);
-		return true;
+			logger.log(Level.INFO, "Operation successful:     " + operationLine);
+			return true;
+		}
 	}
 
 	@Override
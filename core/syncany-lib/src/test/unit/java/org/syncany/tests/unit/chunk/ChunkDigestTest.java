@@ -0,0 +1,183 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.chunk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.chunk.Blake2bDigest;
+import org.syncany.chunk.Chunk;
+import org.syncany.chunk.ChunkDigest;
+import org.syncany.chunk.Chunker;
+import org.syncany.chunk.Chunker.ChunkEnumeration;
+import org.syncany.chunk.FastCdcChunker;
+import org.syncany.chunk.FixedChunker;
+import org.syncany.chunk.TttdChunker;
+import org.syncany.tests.unit.util.TestFileUtil;
+import org.syncany.util.FileUtil;
+import org.syncany.util.StringUtil;
+
+public class ChunkDigestTest {
+	private File tempDir;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testBlake2bTestVectors() throws Exception {
+		// Reference values calculated with Python's hashlib.blake2b(data, digest_size=20)
+		byte[] sequence = new byte[1000];
+
+		for (int i = 0; i < sequence.length; i++) {
+			sequence[i] = (byte) i;
+		}
+
+		assertEquals("3345524abf6bbe1809449224b5972c41790b6cf2", StringUtil.toHex(new Blake2bDigest().digest(new byte[0])));
+		assertEquals("384264f676f39536840523f284921cdc68b6846b", StringUtil.toHex(new Blake2bDigest().digest("abc".getBytes("UTF-8"))));
+		assertEquals("bf2818c04dc2fa6dfb864eee4f8901b6a27b0d08", StringUtil.toHex(new Blake2bDigest().digest(sequence)));
+	}
+
+	@Test
+	public void testBlake2bIncrementalUpdates() throws Exception {
+		byte[] data = createRandomBytes(10 * 1024 + 17);
+		byte[] expectedChecksum = new Blake2bDigest().digest(data);
+
+		for (int updateSize : new int[] { 1, 127, 128, 129, 1000 }) {
+			Blake2bDigest digest = new Blake2bDigest();
+
+			for (int offset = 0; offset < data.length; offset += updateSize) {
+				digest.update(data, offset, Math.min(updateSize, data.length - offset));
+			}
+
+			assertArrayEquals("Checksum differs for update size " + updateSize, expectedChecksum, digest.digest());
+		}
+	}
+
+	@Test
+	public void testBlake2bAvailableAsMessageDigest() throws Exception {
+		ChunkDigest.init();
+
+		MessageDigest messageDigest = MessageDigest.getInstance("blake2b-160");
+		byte[] data = createRandomBytes(4096);
+
+		assertEquals(20, messageDigest.getDigestLength());
+		assertArrayEquals(new Blake2bDigest().digest(data), messageDigest.digest(data));
+	}
+
+	@Test
+	public void testFusedUpdateEqualsSeparateDigests() throws Exception {
+		byte[] chunk1 = createRandomBytes(100 * 1024 + 3);
+		byte[] chunk2 = createRandomBytes(5);
+
+		for (String algorithm : Arrays.asList(ChunkDigest.DEFAULT_ALGORITHM, Blake2bDigest.ALGORITHM)) {
+			ChunkDigest chunkDigest = ChunkDigest.getInstance(algorithm);
+			MessageDigest fileDigest = MessageDigest.getInstance(algorithm);
+
+			chunkDigest.update(chunk1, 0, chunk1.length);
+			assertArrayEquals(MessageDigest.getInstance(algorithm).digest(chunk1), chunkDigest.digestChunk());
+
+			chunkDigest.update(chunk2, 0, chunk2.length);
+			assertArrayEquals(MessageDigest.getInstance(algorithm).digest(chunk2), chunkDigest.digestChunk());
+
+			fileDigest.update(chunk1);
+			fileDigest.update(chunk2);
+			assertArrayEquals(fileDigest.digest(), chunkDigest.digestFile());
+		}
+	}
+
+	@Test
+	public void testChunkersWithBlake2b() throws Exception {
+		List<Chunker> chunkers = new ArrayList<Chunker>();
+		chunkers.add(new FixedChunker(64 * 1024, Blake2bDigest.ALGORITHM));
+		chunkers.add(new TttdChunker(64 * 1024, TttdChunker.DEFAULT_WINDOW_SIZE, Blake2bDigest.ALGORITHM, TttdChunker.DEFAULT_FINGERPRINT_ALG));
+		chunkers.add(new FastCdcChunker(64 * 1024, Blake2bDigest.ALGORITHM));
+
+		// Loading the chunker classes makes the algorithm available to FileUtil
+		File inputFile = TestFileUtil.createRandomFileInDirectory(tempDir, 2 * 1024 * 1024 + 123);
+		byte[] expectedFileChecksum = FileUtil.createChecksum(inputFile, Blake2bDigest.ALGORITHM);
+
+		for (Chunker chunker : chunkers) {
+			ChunkEnumeration chunkEnumeration = chunker.createChunks(inputFile);
+			Chunk lastChunk = null;
+
+			while (chunkEnumeration.hasMoreElements()) {
+				Chunk chunk = chunkEnumeration.nextElement();
+
+				if (chunk != null) {
+					byte[] chunkContents = Arrays.copyOf(chunk.getContent(), chunk.getSize());
+					assertArrayEquals(chunker + ": Chunk checksum wrong.", new Blake2bDigest().digest(chunkContents), chunk.getChecksum());
+
+					lastChunk = chunk;
+				}
+			}
+
+			chunkEnumeration.close();
+			assertArrayEquals(chunker + ": Last chunk's getFileChecksum() should be the file checksum.", expectedFileChecksum,
+					lastChunk.getFileChecksum());
+		}
+	}
+
+	@Test
+	public void testChunkerGetInstanceWithDigest() {
+		Map<String, String> settings = new HashMap<String, String>();
+		settings.put(Chunker.PROPERTY_SIZE, "8192");
+		settings.put(Chunker.PROPERTY_DIGEST, Blake2bDigest.ALGORITHM);
+
+		assertEquals(Blake2bDigest.ALGORITHM, Chunker.getInstance(FastCdcChunker.TYPE, settings).getChecksumAlgorithm());
+		assertTrue(ChunkDigest.isSupported(Blake2bDigest.ALGORITHM));
+		assertFalse(ChunkDigest.isSupported("DOES-NOT-EXIST"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testChunkerGetInstanceWithInvalidDigest() {
+		Map<String, String> settings = new HashMap<String, String>();
+		settings.put(Chunker.PROPERTY_SIZE, "8192");
+		settings.put(Chunker.PROPERTY_DIGEST, "DOES-NOT-EXIST");
+
+		assertNull(Chunker.getInstance(FixedChunker.TYPE, settings));
+	}
+
+	private byte[] createRandomBytes(int size) {
+		byte[] bytes = new byte[size];
+		new Random(size).nextBytes(bytes);
+
+		return bytes;
+	}
+}
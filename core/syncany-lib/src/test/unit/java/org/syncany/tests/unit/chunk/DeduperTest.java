@@ -0,0 +1,232 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.chunk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.chunk.Chunk;
+import org.syncany.chunk.Chunker;
+import org.syncany.chunk.Deduper;
+import org.syncany.chunk.DeduperListener;
+import org.syncany.chunk.FixedChunker;
+import org.syncany.chunk.GzipTransformer;
+import org.syncany.chunk.MultiChunk;
+import org.syncany.chunk.MultiChunker;
+import org.syncany.chunk.Transformer;
+import org.syncany.chunk.TttdChunker;
+import org.syncany.chunk.ZipMultiChunker;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.tests.unit.util.TestFileUtil;
+import org.syncany.util.StringUtil;
+
+public class DeduperTest {
+	private File tempDir;
+	private File inputDir;
+	private MultiChunker multiChunker;
+	private Transformer transformer;
+	private List<File> inputFiles;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		multiChunker = new ZipMultiChunker(32); // in KB
+		transformer = new GzipTransformer();
+		
+		inputDir = new File(tempDir, "input");
+		inputDir.mkdir();
+		
+		inputFiles = new ArrayList<File>();
+		
+		for (int i = 0; i < 20; i++) {
+			inputFiles.add(TestFileUtil.createRandomFileInDirectory(inputDir, 10*1024 + i*7*1024));
+			
+			if (i % 5 == 0) {
+				File subFolder = new File(inputDir, "folder" + i);
+				subFolder.mkdir();
+				
+				inputFiles.add(subFolder);
+			}
+		}
+		
+		File duplicateFile = new File(inputDir, "duplicate");
+		TestFileUtil.copyFile(inputFiles.get(3), duplicateFile);
+		inputFiles.add(duplicateFile);
+		
+		File emptyFile = new File(inputDir, "empty");
+		emptyFile.createNewFile();
+		inputFiles.add(emptyFile);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testParallelDeduplicationEqualsSequential() throws Exception {
+		Chunker[] chunkers = new Chunker[] { new FixedChunker(8*1024), new TttdChunker(8*1024) };
+		
+		for (Chunker chunker : chunkers) {
+			RecordingDeduperListener sequentialListener = deduplicate(chunker, Long.MAX_VALUE, Long.MAX_VALUE, 1, "sequential");
+			RecordingDeduperListener parallelListener = deduplicate(chunker, Long.MAX_VALUE, Long.MAX_VALUE, 4, "parallel");
+			
+			assertEventsAndMultiChunksEqual(sequentialListener, parallelListener);
+		}
+	}
+	
+	@Test
+	public void testParallelDeduplicationWithTransactionLimitsEqualsSequential() throws Exception {
+		Chunker chunker = new TttdChunker(8*1024);
+		
+		RecordingDeduperListener sequentialListener = deduplicate(chunker, 50*1024, 5, 1, "sequential");
+		RecordingDeduperListener parallelListener = deduplicate(chunker, 50*1024, 5, 3, "parallel");
+		
+		assertEventsAndMultiChunksEqual(sequentialListener, parallelListener);
+	}
+	
+	private RecordingDeduperListener deduplicate(Chunker chunker, long maxTotalSize, long maxNumberOfFiles, int chunkerThreads, String name) throws IOException {
+		File multiChunkDir = new File(tempDir, name + "-" + chunker);
+		multiChunkDir.mkdir();
+		
+		Deduper deduper = new Deduper(chunker, multiChunker, transformer, maxTotalSize, maxNumberOfFiles, chunkerThreads);
+		RecordingDeduperListener listener = new RecordingDeduperListener(multiChunkDir);
+		
+		List<File> files = new ArrayList<File>(inputFiles);
+		
+		while (!files.isEmpty()) {
+			deduper.deduplicate(files, listener);
+			listener.events.add("return");
+		}
+		
+		return listener;
+	}
+	
+	private void assertEventsAndMultiChunksEqual(RecordingDeduperListener expectedListener, RecordingDeduperListener actualListener) throws IOException {
+		assertTrue(expectedListener.multiChunkFiles.size() > 1);
+		assertEquals(expectedListener.events, actualListener.events);		
+		assertEquals(expectedListener.multiChunkFiles.size(), actualListener.multiChunkFiles.size());
+		
+		for (int i = 0; i < expectedListener.multiChunkFiles.size(); i++) {
+			List<String> expectedChunks = readMultiChunk(expectedListener.multiChunkFiles.get(i));
+			List<String> actualChunks = readMultiChunk(actualListener.multiChunkFiles.get(i));
+			
+			assertEquals("Multichunk contents should be identical.", expectedChunks, actualChunks);
+		}
+	}
+	
+	private List<String> readMultiChunk(File multiChunkFile) throws IOException {
+		List<String> chunks = new ArrayList<String>();
+		MultiChunk multiChunk = multiChunker.createMultiChunk(transformer.createInputStream(new FileInputStream(multiChunkFile)));
+		Chunk chunk = null;
+		
+		while ((chunk = multiChunk.read()) != null) {
+			chunks.add(StringUtil.toHex(chunk.getChecksum()) + " " + StringUtil.toHex(chunk.getContent()));
+		}
+		
+		multiChunk.close();
+		return chunks;
+	}
+	
+	private static class RecordingDeduperListener implements DeduperListener {
+		private File multiChunkDir;
+		private List<String> events = new ArrayList<String>();
+		private List<File> multiChunkFiles = new ArrayList<File>();
+		private Set<String> knownChunks = new HashSet<String>();
+		
+		public RecordingDeduperListener(File multiChunkDir) {
+			this.multiChunkDir = multiChunkDir;
+		}
+
+		@Override
+		public boolean onFileFilter(File file) {
+			events.add("filter " + file.getName());
+			return true;
+		}
+
+		@Override
+		public boolean onFileStart(File file) {
+			events.add("start " + file.getName());
+			return file.isFile();
+		}
+
+		@Override
+		public void onFileAddChunk(File file, Chunk chunk) {
+			events.add("add " + file.getName() + " " + StringUtil.toHex(chunk.getChecksum()) + " " + chunk.getSize());
+		}
+
+		@Override
+		public void onFileEnd(File file, byte[] checksum) {
+			events.add("end " + file.getName() + " " + ((checksum != null) ? StringUtil.toHex(checksum) : "null"));
+		}
+
+		@Override
+		public boolean onChunk(Chunk chunk) {
+			return knownChunks.add(StringUtil.toHex(chunk.getChecksum()));
+		}
+
+		@Override
+		public void onMultiChunkOpen(MultiChunk multiChunk) {
+			events.add("open " + multiChunk.getId());
+		}
+
+		@Override
+		public MultiChunkId createNewMultiChunkId(Chunk firstChunk) {
+			return new MultiChunkId(firstChunk.getChecksum());
+		}
+
+		@Override
+		public File getMultiChunkFile(MultiChunkId multiChunkId) {
+			File multiChunkFile = new File(multiChunkDir, "multichunk-" + multiChunkId);
+			multiChunkFiles.add(multiChunkFile);
+			
+			return multiChunkFile;
+		}
+
+		@Override
+		public void onMultiChunkWrite(MultiChunk multiChunk, Chunk chunk) {
+			events.add("write " + multiChunk.getId() + " " + StringUtil.toHex(chunk.getChecksum()));
+		}
+
+		@Override
+		public void onMultiChunkClose(MultiChunk multiChunk) {
+			events.add("close " + multiChunk.getId());
+		}
+
+		@Override
+		public void onStart(int fileCount) {
+			// Not called by the deduper
+		}
+
+		@Override
+		public void onFinish() {
+			events.add("finish");
+		}		
+	}
+}
@@ -0,0 +1,215 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.chunk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.chunk.Chunk;
+import org.syncany.chunk.Chunker;
+import org.syncany.chunk.FastCdcChunker;
+import org.syncany.chunk.FastCdcChunker.FastCdcEnumeration;
+import org.syncany.tests.unit.util.TestFileUtil;
+import org.syncany.util.FileUtil;
+import org.syncany.util.StringUtil;
+
+public class FastCdcChunkerTest {
+	private File tempDir;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testStringSerialization() {
+		Chunker chunker = new FastCdcChunker(64 * 1024);
+		assertEquals("Other toString() result expected.", "FastCDC-16384-65536-524288-" + FastCdcChunker.DEFAULT_DIGEST_ALG, chunker.toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidChunkSizes() {
+		new FastCdcChunker(64 * 1024, 32 * 1024, 128 * 1024, FastCdcChunker.DEFAULT_DIGEST_ALG);
+	}
+
+	@Test
+	public void testCreateChunksFrom5MBFileAndTestChunkSize() throws Exception {
+		// Test Constants
+		final int TOTAL_FILE_SIZE = 5 * 1024 * 1024;
+		final int AVG_CHUNK_SIZE = 64 * 1024;
+
+		// Setup
+		File inputRandom5MBFile = TestFileUtil.createRandomFileInDirectory(tempDir, TOTAL_FILE_SIZE);
+
+		File outputCopyOfRandom5MBFile = TestFileUtil.getRandomFilenameInDirectory(tempDir);
+		FileOutputStream outputCopyOfRandom5MBFileOutputStream = new FileOutputStream(outputCopyOfRandom5MBFile);
+
+		Chunker chunker = new FastCdcChunker(AVG_CHUNK_SIZE);
+
+		// Create chunks
+		Enumeration<Chunk> chunkEnumeration = chunker.createChunks(inputRandom5MBFile);
+		Chunk lastChunk = null;
+		int chunkCount = 0;
+
+		while (chunkEnumeration.hasMoreElements()) {
+			lastChunk = chunkEnumeration.nextElement();
+			chunkCount++;
+
+			assertNotNull("Chunk checksum should not be null.", lastChunk.getChecksum());
+			assertTrue("Chunk must not be larger than max. chunk size.", lastChunk.getSize() <= 8 * AVG_CHUNK_SIZE);
+
+			outputCopyOfRandom5MBFileOutputStream.write(lastChunk.getContent(), 0, lastChunk.getSize());
+		}
+
+		outputCopyOfRandom5MBFileOutputStream.close();
+
+		// Number of chunks (average chunk size should be roughly right)
+		int expectedChunkCount = TOTAL_FILE_SIZE / AVG_CHUNK_SIZE;
+		assertTrue("Unexpected number of chunks: " + chunkCount, chunkCount > expectedChunkCount / 2 && chunkCount < expectedChunkCount * 2);
+
+		// Checksums
+		byte[] inputFileChecksum = FileUtil.createChecksum(inputRandom5MBFile, FastCdcChunker.DEFAULT_DIGEST_ALG);
+		byte[] outputFileChecksum = FileUtil.createChecksum(outputCopyOfRandom5MBFile, FastCdcChunker.DEFAULT_DIGEST_ALG);
+
+		assertArrayEquals("Checksums of input and output file do not match.", inputFileChecksum, outputFileChecksum);
+		assertArrayEquals("Last chunk's getFileChecksum() should be the file checksum.", inputFileChecksum, lastChunk.getFileChecksum());
+	}
+
+	@Test
+	public void testNextChunkEvenIfThereAreNone() throws IOException {
+		File inputFile = TestFileUtil.createRandomFileInDirectory(tempDir, 5 * 1024);
+		Chunker chunker = new FastCdcChunker(512 * 1024);
+
+		Enumeration<Chunk> chunkEnumeration = chunker.createChunks(inputFile);
+
+		while (chunkEnumeration.hasMoreElements()) {
+			chunkEnumeration.nextElement();
+		}
+
+		assertNull("No chunk expected, but data received.", chunkEnumeration.nextElement());
+		assertFalse("hasElements() should return 'false' if no chunk available.", chunkEnumeration.hasMoreElements());
+	}
+
+	@Test
+	public void testEmptyFile() throws IOException {
+		File inputFile = TestFileUtil.createRandomFileInDirectory(tempDir, 0);
+		Enumeration<Chunk> chunkEnumeration = new FastCdcChunker(8 * 1024).createChunks(inputFile);
+
+		assertFalse("No chunks expected for empty file.", chunkEnumeration.hasMoreElements());
+	}
+
+	@Test
+	public void testBulkAndShortReadsCreateIdenticalChunks() throws Exception {
+		File inputFile = TestFileUtil.createRandomFileInDirectory(tempDir, 3 * 1024 * 1024 + 123);
+		FastCdcChunker chunker = new FastCdcChunker(16 * 1024);
+
+		List<String> bulkChunks = createChunkList(chunker.createChunks(inputFile));
+		List<String> shortReadChunks = createChunkList(chunker.new FastCdcEnumeration(new ShortReadInputStream(new FileInputStream(inputFile))));
+
+		assertTrue("Expected more than one chunk.", bulkChunks.size() > 1);
+		assertEquals("Chunks of bulk and short bulk reads should be identical.", shortReadChunks, bulkChunks);
+	}
+
+	@Test
+	public void testUnderestimatedLengthCreatesIdenticalChunks() throws Exception {
+		File inputFile = TestFileUtil.createRandomFileInDirectory(tempDir, 3 * 1024 * 1024 + 123);
+		FastCdcChunker chunker = new FastCdcChunker(16 * 1024);
+
+		List<String> expectedChunks = createChunkList(chunker.createChunks(inputFile));
+		List<String> underestimatedChunks = createChunkList(chunker.new FastCdcEnumeration(new FileInputStream(inputFile), 1000));
+
+		assertTrue("Expected more than one chunk.", expectedChunks.size() > 1);
+		assertEquals("Chunks should not depend on the expected length.", expectedChunks, underestimatedChunks);
+	}
+
+	@Test
+	public void testInsertedBytesOnlyChangeNearbyChunks() throws Exception {
+		File inputFile = TestFileUtil.createRandomFileInDirectory(tempDir, 4 * 1024 * 1024);
+		File modifiedFile = TestFileUtil.getRandomFilenameInDirectory(tempDir);
+
+		// Insert a single byte near the start of the file
+		byte[] inputFileContents = FileUtils.readFileToByteArray(inputFile);
+		byte[] modifiedFileContents = new byte[inputFileContents.length + 1];
+
+		System.arraycopy(inputFileContents, 0, modifiedFileContents, 0, 1000);
+		modifiedFileContents[1000] = 0x42;
+		System.arraycopy(inputFileContents, 1000, modifiedFileContents, 1001, inputFileContents.length - 1000);
+
+		FileUtils.writeByteArrayToFile(modifiedFile, modifiedFileContents);
+
+		// Compare chunks
+		FastCdcChunker chunker = new FastCdcChunker(16 * 1024);
+
+		List<String> inputChunks = createChunkList(chunker.createChunks(inputFile));
+		List<String> modifiedChunks = createChunkList(chunker.createChunks(modifiedFile));
+
+		Set<String> newChunks = new HashSet<String>(modifiedChunks);
+		newChunks.removeAll(inputChunks);
+
+		assertTrue("Expected more than 100 chunks.", inputChunks.size() > 100);
+		assertTrue("Expected only a few changed chunks, but got " + newChunks.size(), newChunks.size() <= 2);
+	}
+
+	private List<String> createChunkList(Enumeration<Chunk> chunkEnumeration) {
+		List<String> chunkList = new ArrayList<String>();
+
+		while (chunkEnumeration.hasMoreElements()) {
+			Chunk chunk = chunkEnumeration.nextElement();
+			chunkList.add(StringUtil.toHex(chunk.getChecksum()) + "-" + chunk.getSize());
+		}
+
+		((FastCdcEnumeration) chunkEnumeration).close();
+		return chunkList;
+	}
+
+	private static class ShortReadInputStream extends FilterInputStream {
+		public ShortReadInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return super.read(b, off, Math.min(len, 1000));
+		}
+	}
+}
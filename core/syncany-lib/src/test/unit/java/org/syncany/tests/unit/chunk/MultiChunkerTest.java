@@ -17,13 +17,18 @@
  */
 package org.syncany.tests.unit.chunk;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
@@ -35,10 +40,12 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 import org.syncany.chunk.Chunk;
 import org.syncany.chunk.Chunker;
 import org.syncany.chunk.FixedChunker;
+import org.syncany.chunk.IndexedMultiChunker;
 import org.syncany.chunk.MultiChunk;
 import org.syncany.chunk.MultiChunker;
 import org.syncany.chunk.NoTransformer;
@@ -61,7 +68,8 @@ public class MultiChunkerTest {
 		
 		MultiChunker[] multiChunkers = new MultiChunker[] { 
 			//new CustomMultiChunker(minMultiChunkSize),
-			new ZipMultiChunker(minMultiChunkSize) 
+			new ZipMultiChunker(minMultiChunkSize),
+			new IndexedMultiChunker(minMultiChunkSize)
 		};
 		
 		for (Chunker chunker : chunkers) {
@@ -122,6 +130,75 @@ public class MultiChunkerTest {
 		TestFileUtil.deleteDirectory(tempDir);
 	}	
 	
+	@Test
+	public void testIndexedRandomAccess() throws Exception {
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File multiChunkFile = new File(tempDir, "multichunk");
+		
+		// Write multichunk with 100 chunks
+		File inputFile = TestFileUtil.createRandomFileInDirectory(tempDir, 100 * 8 * 1024);
+		List<byte[]> chunkChecksums = new ArrayList<byte[]>();
+		List<byte[]> chunkContents = new ArrayList<byte[]>();
+		
+		MultiChunker multiChunker = new IndexedMultiChunker(1024);
+		MultiChunk multiChunk = multiChunker.createMultiChunk(MultiChunkId.secureRandomMultiChunkId(), new FileOutputStream(multiChunkFile));
+		Enumeration<Chunk> chunkEnumeration = new FixedChunker(8 * 1024).createChunks(inputFile);
+		
+		while (chunkEnumeration.hasMoreElements()) {
+			Chunk chunk = chunkEnumeration.nextElement();
+			
+			multiChunk.write(chunk);
+			chunkChecksums.add(chunk.getChecksum());
+			chunkContents.add(Arrays.copyOf(chunk.getContent(), chunk.getSize()));
+		}
+		
+		multiChunk.close();
+		assertEquals(100, chunkChecksums.size());
+		
+		// Read it randomly
+		MultiChunk readMultiChunk = multiChunker.createMultiChunk(multiChunkFile);
+		Random random = new Random();
+		
+		for (int i = 0; i < 200; i++) {
+			int chunkIndex = random.nextInt(chunkChecksums.size());
+			
+			try (InputStream chunkInputStream = readMultiChunk.getChunkInputStream(chunkChecksums.get(chunkIndex))) {
+				assertArrayEquals(chunkContents.get(chunkIndex), IOUtils.toByteArray(chunkInputStream));
+			}
+		}
+		
+		assertNull(readMultiChunk.getChunkInputStream(new byte[20]));
+		readMultiChunk.close();
+		
+		// Read it sequentially from a stream
+		MultiChunk sequentialMultiChunk = multiChunker.createMultiChunk(new FileInputStream(multiChunkFile));
+		
+		for (int i = 0; i < chunkChecksums.size(); i++) {
+			Chunk chunk = sequentialMultiChunk.read();
+			
+			assertArrayEquals(chunkChecksums.get(i), chunk.getChecksum());
+			assertArrayEquals(chunkContents.get(i), chunk.getContent());
+		}
+		
+		assertNull(sequentialMultiChunk.read());
+		sequentialMultiChunk.close();
+		
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+	
+	@Test(expected = IOException.class)
+	public void testIndexedInvalidFile() throws Exception {
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File invalidMultiChunkFile = TestFileUtil.createRandomFileInDirectory(tempDir, 10 * 1024);
+		
+		try {
+			new IndexedMultiChunker(1024).createMultiChunk(invalidMultiChunkFile);
+		}
+		finally {
+			TestFileUtil.deleteDirectory(tempDir);
+		}
+	}
+	
 	public void chunkFileIntoMultiChunks(Chunker chunker, MultiChunker multiChunker, int minMultiChunkSize) throws Exception {
 		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
 		
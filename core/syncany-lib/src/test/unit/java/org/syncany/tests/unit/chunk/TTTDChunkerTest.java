@@ -22,12 +22,18 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 
 import org.junit.After;
 import org.junit.Before;
@@ -36,8 +42,10 @@ import org.junit.Test;
 import org.syncany.chunk.Chunk;
 import org.syncany.chunk.Chunker;
 import org.syncany.chunk.TttdChunker;
+import org.syncany.chunk.TttdChunker.TTTDEnumeration;
 import org.syncany.tests.unit.util.TestFileUtil;
 import org.syncany.util.FileUtil;
+import org.syncany.util.StringUtil;
 
 public class TTTDChunkerTest {
 	private File tempDir;
@@ -127,4 +135,47 @@ public class TTTDChunkerTest {
 		assertNull("No chunk expected, but data received.", chunkEnumeration.nextElement());
 		assertFalse("hasElements() should return 'false' if no chunk available.", chunkEnumeration.hasMoreElements());
 	}
+
+	@Test
+	public void testBulkAndSingleByteReadsCreateIdenticalChunks() throws Exception {
+		// Test Constants
+		final int TOTAL_FILE_SIZE = 3*1024*1024 + 123;
+		final int AVG_CHUNK_SIZE = 16*1024;
+		
+		// Setup				
+		File inputFile = TestFileUtil.createRandomFileInDirectory(tempDir, TOTAL_FILE_SIZE);		
+		TttdChunker chunker = new TttdChunker(AVG_CHUNK_SIZE);
+		
+		// Create chunks (bulk reads, single byte reads, short bulk reads)
+		List<String> bulkChunks = createChunkList(chunker.createChunks(inputFile));
+		List<String> singleByteChunks = createChunkList(chunker.new TTTDEnumeration(new FileInputStream(inputFile), true));
+		List<String> shortReadChunks = createChunkList(chunker.new TTTDEnumeration(new ShortReadInputStream(new FileInputStream(inputFile)), false));
+		
+		assertTrue("Expected more than one chunk.", bulkChunks.size() > 1);
+		assertEquals("Chunks of bulk and single byte reads should be identical.", singleByteChunks, bulkChunks);
+		assertEquals("Chunks of bulk and short bulk reads should be identical.", shortReadChunks, bulkChunks);
+	}
+	
+	private List<String> createChunkList(Enumeration<Chunk> chunkEnumeration) {
+		List<String> chunkList = new ArrayList<String>();
+		
+		while (chunkEnumeration.hasMoreElements()) {
+			Chunk chunk = chunkEnumeration.nextElement();
+			chunkList.add(StringUtil.toHex(chunk.getChecksum()) + "-" + chunk.getSize());
+		}
+		
+		((TTTDEnumeration) chunkEnumeration).close();		
+		return chunkList;
+	}
+	
+	private static class ShortReadInputStream extends FilterInputStream {
+		public ShortReadInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return super.read(b, off, Math.min(len, 1000));
+		}		
+	}
 }
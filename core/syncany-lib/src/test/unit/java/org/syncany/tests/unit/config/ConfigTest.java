@@ -19,6 +19,7 @@ package org.syncany.tests.unit.config;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
@@ -28,12 +29,15 @@ import java.util.List;
 
 import javax.crypto.spec.SecretKeySpec;
 
-import org.junit.Ignore;
 import org.junit.Test;
+import org.syncany.chunk.Chunker;
+import org.syncany.chunk.FastCdcChunker;
+import org.syncany.chunk.FixedChunker;
 import org.syncany.config.Config;
 import org.syncany.config.ConfigException;
 import org.syncany.config.to.ConfigTO;
 import org.syncany.config.to.RepoTO;
+import org.syncany.config.to.RepoTO.ChunkerTO;
 import org.syncany.config.to.RepoTO.TransformerTO;
 import org.syncany.crypto.SaltedSecretKey;
 import org.syncany.tests.util.TestAssertUtil;
@@ -166,9 +170,7 @@ public class ConfigTest {
 	}
 
 	@Test
-	@Ignore
-	// TODO [low] ChunkerTO is not used yet; so no test for it.
-	public void testConfigChunkerNull() throws Exception {
+	public void testConfigChunkerNullUsesDefault() throws Exception {
 		// Setup
 		File localDir = new File("/some/folder");
 		ConfigTO configTO = new ConfigTO();
@@ -180,7 +182,85 @@ public class ConfigTest {
 		repoTO.setRepoId(new byte[] { 0x01, 0x02 }); // <<< valid
 		repoTO.setTransformers(null); // <<< valid
 
-		repoTO.setChunkerTO(null); // <<< INVALID !!
+		repoTO.setChunkerTO(null); // <<< valid, default chunker
+
+		// Run!
+		Config config = new Config(localDir, configTO, repoTO);
+
+		// Test
+		assertEquals(new FixedChunker(Config.DEFAULT_CHUNK_SIZE).toString(), config.getChunker().toString());
+	}
+
+	@Test
+	public void testConfigChunkerLegacyPlaceholderUsesDefault() throws Exception {
+		// Setup
+		File localDir = new File("/some/folder");
+		ConfigTO configTO = new ConfigTO();
+		RepoTO repoTO = new RepoTO();
+
+		configTO.setMachineName("somevalidmachinename"); // <<< valid
+
+		repoTO.setMultiChunker(TestConfigUtil.createZipMultiChunkerTO()); // <<< valid
+		repoTO.setRepoId(new byte[] { 0x01, 0x02 }); // <<< valid
+		repoTO.setTransformers(null); // <<< valid
+
+		ChunkerTO chunkerTO = TestConfigUtil.createFixedChunkerTO();
+		chunkerTO.getSettings().put(Chunker.PROPERTY_SIZE, "16"); // <<< written by older versions, never used
+
+		repoTO.setChunkerTO(chunkerTO);
+
+		// Run!
+		Config config = new Config(localDir, configTO, repoTO);
+
+		// Test
+		assertEquals(new FixedChunker(Config.DEFAULT_CHUNK_SIZE).toString(), config.getChunker().toString());
+	}
+
+	@Test
+	public void testConfigChunkerFastCdc() throws Exception {
+		// Setup
+		File localDir = new File("/some/folder");
+		ConfigTO configTO = new ConfigTO();
+		RepoTO repoTO = new RepoTO();
+
+		configTO.setMachineName("somevalidmachinename"); // <<< valid
+
+		repoTO.setMultiChunker(TestConfigUtil.createZipMultiChunkerTO()); // <<< valid
+		repoTO.setRepoId(new byte[] { 0x01, 0x02 }); // <<< valid
+		repoTO.setTransformers(null); // <<< valid
+
+		ChunkerTO chunkerTO = new ChunkerTO();
+		chunkerTO.setType(FastCdcChunker.TYPE);
+		chunkerTO.setSettings(new HashMap<String, String>());
+		chunkerTO.getSettings().put(Chunker.PROPERTY_SIZE, "65536");
+
+		repoTO.setChunkerTO(chunkerTO); // <<< valid
+
+		// Run!
+		Config config = new Config(localDir, configTO, repoTO);
+
+		// Test
+		assertTrue(config.getChunker() instanceof FastCdcChunker);
+		assertEquals(new FastCdcChunker(65536).toString(), config.getChunker().toString());
+	}
+
+	@Test
+	public void testConfigChunkerInvalidType() throws Exception {
+		// Setup
+		File localDir = new File("/some/folder");
+		ConfigTO configTO = new ConfigTO();
+		RepoTO repoTO = new RepoTO();
+
+		configTO.setMachineName("somevalidmachinename"); // <<< valid
+
+		repoTO.setMultiChunker(TestConfigUtil.createZipMultiChunkerTO()); // <<< valid
+		repoTO.setRepoId(new byte[] { 0x01, 0x02 }); // <<< valid
+		repoTO.setTransformers(null); // <<< valid
+
+		ChunkerTO chunkerTO = TestConfigUtil.createFixedChunkerTO();
+		chunkerTO.setType("invalid-typeXXX"); // <<< INVALID !!
+
+		repoTO.setChunkerTO(chunkerTO);
 
 		// Run!
 		try {
@@ -188,7 +268,7 @@ public class ConfigTest {
 			fail("Config should not been have initialized.");
 		}
 		catch (ConfigException e) {
-			TestAssertUtil.assertErrorStackTraceContains("No multichunker", e);
+			TestAssertUtil.assertErrorStackTraceContains("invalid-typeXXX", e);
 		}
 	}
 
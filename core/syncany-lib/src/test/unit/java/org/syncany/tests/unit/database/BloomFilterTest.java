@@ -0,0 +1,114 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.Test;
+import org.syncany.database.BloomFilter;
+import org.syncany.tests.unit.util.TestFileUtil;
+
+public class BloomFilterTest {
+	@Test
+	public void testNoFalseNegatives() {
+		BloomFilter bloomFilter = new BloomFilter(10000);
+		Random random = new Random(1);
+
+		for (int i = 0; i < 10000; i++) {
+			bloomFilter.put(createChecksum(random));
+		}
+
+		random = new Random(1);
+
+		for (int i = 0; i < 10000; i++) {
+			assertTrue(bloomFilter.mightContain(createChecksum(random)));
+		}
+
+		assertEquals(10000, bloomFilter.size());
+	}
+
+	@Test
+	public void testFalsePositiveRate() {
+		BloomFilter bloomFilter = new BloomFilter(10000);
+		Random random = new Random(2);
+
+		for (int i = 0; i < 10000; i++) {
+			bloomFilter.put(createChecksum(random));
+		}
+
+		int falsePositives = 0;
+
+		for (int i = 0; i < 100000; i++) {
+			if (bloomFilter.mightContain(createChecksum(random))) {
+				falsePositives++;
+			}
+		}
+
+		double falsePositiveRate = falsePositives / 100000.0;
+
+		assertTrue("False positive rate too high: " + falsePositiveRate, falsePositiveRate < 0.02);
+		assertEquals(bloomFilter.getExpectedFalsePositiveRate(), falsePositiveRate, 0.01);
+	}
+
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File filterFile = new File(tempDir, "chunk-filter");
+
+		BloomFilter bloomFilter = new BloomFilter(1000);
+		Random random = new Random(3);
+
+		for (int i = 0; i < 1000; i++) {
+			bloomFilter.put(createChecksum(random));
+		}
+
+		bloomFilter.setTag(99);
+		bloomFilter.save(filterFile);
+
+		BloomFilter loadedBloomFilter = BloomFilter.load(filterFile);
+
+		assertNotNull(loadedBloomFilter);
+		assertEquals(1000, loadedBloomFilter.size());
+		assertEquals(99, loadedBloomFilter.getTag());
+
+		random = new Random(3);
+
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(loadedBloomFilter.mightContain(createChecksum(random)));
+		}
+
+		filterFile.delete();
+		TestFileUtil.createRandomFile(filterFile, 100);
+		assertNull(BloomFilter.load(filterFile));
+
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	private byte[] createChecksum(Random random) {
+		byte[] checksum = new byte[20];
+		random.nextBytes(checksum);
+
+		return checksum;
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.ChunkIndex;
+import org.syncany.tests.unit.util.TestFileUtil;
+
+public class ChunkIndexTest {
+	@Test
+	public void testPutAndGet() {
+		ChunkIndex chunkIndex = new ChunkIndex(20, 10);
+		ChunkChecksum checksum1 = ChunkChecksum.parseChunkChecksum("615fba8c2281d5bee891eb092a252d235c237457");
+		ChunkChecksum checksum2 = ChunkChecksum.parseChunkChecksum("ab85720d3f31bd08ca1cd25dcd8a490e5f00783b");
+
+		chunkIndex.put(checksum1.getBytes(), 8387);
+		chunkIndex.put(checksum1.getBytes(), 8387);
+		chunkIndex.put(new ChunkEntry(checksum2, 0));
+
+		ChunkEntry chunk1 = chunkIndex.get(checksum1);
+		ChunkEntry chunk2 = chunkIndex.get(checksum2);
+
+		assertEquals(2, chunkIndex.size());
+
+		assertNotNull(chunk1);
+		assertEquals(checksum1, chunk1.getChecksum());
+		assertEquals(8387, chunk1.getSize());
+
+		assertNotNull(chunk2);
+		assertEquals(0, chunk2.getSize());
+
+		assertNull(chunkIndex.get(ChunkChecksum.parseChunkChecksum("beefbeefbeefbeefbeefbeefbeefbeefbeefbeef")));
+		assertNull(chunkIndex.get(ChunkChecksum.parseChunkChecksum("beef")));
+	}
+
+	@Test
+	public void testChecksumLengthFromFirstEntry() {
+		ChunkIndex chunkIndex = new ChunkIndex(0);
+
+		assertTrue(chunkIndex.accepts(new byte[32]));
+		assertFalse(chunkIndex.contains(new byte[32]));
+
+		chunkIndex.put(new byte[32], 123);
+
+		assertEquals(32, chunkIndex.getChecksumLength());
+		assertEquals(123, chunkIndex.getSize(new byte[32]));
+		assertFalse(chunkIndex.accepts(new byte[20]));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPutInvalidChecksumLength() {
+		ChunkIndex chunkIndex = new ChunkIndex(20, 10);
+
+		chunkIndex.put(new byte[20], 1);
+		chunkIndex.put(new byte[16], 1);
+	}
+
+	@Test
+	public void testGrow() {
+		ChunkIndex chunkIndex = new ChunkIndex(20, 0);
+		List<byte[]> checksums = createRandomChecksums(50000, 20);
+
+		long initialMemorySize = chunkIndex.getMemorySize();
+
+		for (int i = 0; i < checksums.size(); i++) {
+			chunkIndex.put(checksums.get(i), i);
+		}
+
+		assertEquals(checksums.size(), chunkIndex.size());
+		assertTrue(chunkIndex.getMemorySize() > initialMemorySize);
+
+		for (int i = 0; i < checksums.size(); i++) {
+			assertEquals(i, chunkIndex.getSize(checksums.get(i)));
+		}
+	}
+
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File indexFile = new File(tempDir, "chunk-index");
+
+		ChunkIndex chunkIndex = new ChunkIndex(20, 0);
+		List<byte[]> checksums = createRandomChecksums(5000, 20);
+
+		for (int i = 0; i < checksums.size(); i++) {
+			chunkIndex.put(checksums.get(i), i);
+		}
+
+		chunkIndex.setTag(1234);
+		chunkIndex.save(indexFile);
+
+		ChunkIndex loadedChunkIndex = ChunkIndex.load(indexFile);
+
+		assertNotNull(loadedChunkIndex);
+		assertEquals(chunkIndex.size(), loadedChunkIndex.size());
+		assertEquals(1234, loadedChunkIndex.getTag());
+
+		for (int i = 0; i < checksums.size(); i++) {
+			assertEquals(i, loadedChunkIndex.getSize(checksums.get(i)));
+		}
+
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testLoadInvalidFile() throws Exception {
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File indexFile = new File(tempDir, "chunk-index");
+
+		assertNull(ChunkIndex.load(indexFile));
+
+		TestFileUtil.createRandomFile(indexFile, 100);
+		assertNull(ChunkIndex.load(indexFile));
+
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	private List<byte[]> createRandomChecksums(int count, int length) {
+		Random random = new Random(42);
+		List<byte[]> checksums = new ArrayList<byte[]>();
+
+		for (int i = 0; i < count; i++) {
+			byte[] checksum = new byte[length];
+			random.nextBytes(checksum);
+
+			checksums.add(checksum);
+		}
+
+		return checksums;
+	}
+}
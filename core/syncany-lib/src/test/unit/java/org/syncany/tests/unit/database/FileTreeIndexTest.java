@@ -0,0 +1,288 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.database;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileTreeIndex;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.tests.unit.util.TestFileUtil;
+
+public class FileTreeIndexTest {
+	private File tempDir;
+	private File indexFile;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		indexFile = new File(tempDir, "filetree-index");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testCreateAndGet() throws Exception {
+		FileVersion file = createFileVersion("folder/file.txt", FileType.FILE);
+		file.setChecksum(FileChecksum.parseFileChecksum("fe83f217d464f6fdfa5b2b1f87fe3a1a47371196"));
+		file.setPosixPermissions("rw-r--r--");
+		file.setUpdated(new Date(1234567890L));
+
+		FileVersion folder = createFileVersion("folder", FileType.FOLDER);
+		folder.setDosAttributes("--a-");
+		folder.setSize(null);
+
+		FileVersion symlink = createFileVersion("folder/link", FileType.SYMLINK);
+		symlink.setLinkTarget("/etc/hosts");
+
+		FileTreeIndex fileTreeIndex = FileTreeIndex.create(indexFile, new long[] { 1, 2, 3 }, Arrays.asList(folder, file, symlink).iterator());
+
+		assertEquals(3, fileTreeIndex.size());
+		assertArrayEquals(new long[] { 1, 2, 3 }, fileTreeIndex.getTag());
+
+		for (FileVersion expectedFileVersion : Arrays.asList(folder, file, symlink)) {
+			FileVersion fileVersionByPath = fileTreeIndex.get(expectedFileVersion.getPath());
+			FileVersion fileVersionByHistoryId = fileTreeIndex.get(expectedFileVersion.getFileHistoryId());
+
+			assertEquals(expectedFileVersion, fileVersionByPath);
+			assertEquals(expectedFileVersion.getFileHistoryId(), fileVersionByPath.getFileHistoryId());
+			assertEquals(expectedFileVersion, fileVersionByHistoryId);
+		}
+
+		assertNull(fileTreeIndex.get("does-not-exist"));
+		assertNull(fileTreeIndex.get("folder/file"));
+		assertNull(fileTreeIndex.get(FileHistoryId.secureRandomFileId()));
+	}
+
+	@Test
+	public void testLoadAndIterate() throws Exception {
+		List<FileVersion> fileVersions = new ArrayList<FileVersion>();
+
+		for (int i = 0; i < 5000; i++) {
+			fileVersions.add(createFileVersion(String.format("folder%d/file%04d", i % 10, i), FileType.FILE));
+		}
+
+		// Index must sort unordered input itself
+		Collections.shuffle(fileVersions);
+		FileTreeIndex.create(indexFile, new long[] { 5000, 7, 9 }, fileVersions.iterator());
+
+		FileTreeIndex loadedFileTreeIndex = FileTreeIndex.load(indexFile);
+
+		assertNotNull(loadedFileTreeIndex);
+		assertEquals(5000, loadedFileTreeIndex.size());
+		assertArrayEquals(new long[] { 5000, 7, 9 }, loadedFileTreeIndex.getTag());
+
+		for (FileVersion fileVersion : fileVersions) {
+			assertEquals(fileVersion.getPath(), loadedFileTreeIndex.get(fileVersion.getFileHistoryId()).getPath());
+		}
+
+		String previousPath = null;
+		int count = 0;
+
+		for (Iterator<FileVersion> iterator = loadedFileTreeIndex.iterator(); iterator.hasNext(); count++) {
+			String path = iterator.next().getPath();
+
+			assertFalse(previousPath != null && previousPath.compareTo(path) >= 0);
+			previousPath = path;
+		}
+
+		assertEquals(5000, count);
+	}
+
+	@Test
+	public void testFolderIterator() throws Exception {
+		List<FileVersion> fileVersions = Arrays.asList(createFileVersion("a", FileType.FOLDER), createFileVersion("a-file", FileType.FILE),
+				createFileVersion("a.txt", FileType.FILE), createFileVersion("a/b", FileType.FOLDER), createFileVersion("a/b/c", FileType.FILE),
+				createFileVersion("a/d", FileType.FILE), createFileVersion("ab/c", FileType.FILE));
+
+		FileTreeIndex fileTreeIndex = FileTreeIndex.create(indexFile, new long[] { 0, 0, 0 }, fileVersions.iterator());
+
+		assertEquals(Arrays.asList("a/b", "a/b/c", "a/d"), getPaths(fileTreeIndex.iterator("a")));
+		assertEquals(Arrays.asList("a/b/c"), getPaths(fileTreeIndex.iterator("a/b")));
+		assertEquals(Arrays.asList(), getPaths(fileTreeIndex.iterator("a/d")));
+		assertEquals(Arrays.asList(), getPaths(fileTreeIndex.iterator("x")));
+	}
+
+	@Test
+	public void testUpdateAndLoad() throws Exception {
+		FileVersion folder = createFileVersion("a", FileType.FOLDER);
+		FileVersion file = createFileVersion("a/b", FileType.FILE);
+		FileVersion deletedFile = createFileVersion("a/c", FileType.FILE);
+		FileVersion otherFile = createFileVersion("b", FileType.FILE);
+
+		FileTreeIndex fileTreeIndex = FileTreeIndex.create(indexFile, new long[] { 1, 1, 1 }, Arrays.asList(folder, file, deletedFile, otherFile).iterator());
+
+		// Move file, delete file and add a new file
+		FileVersion movedFile = file.clone();
+		movedFile.setPath("a/d");
+		movedFile.setVersion(2L);
+
+		FileVersion newFile = createFileVersion("a/a", FileType.FILE);
+
+		Map<FileHistoryId, FileVersion> changes = new HashMap<FileHistoryId, FileVersion>();
+		changes.put(movedFile.getFileHistoryId(), movedFile);
+		changes.put(deletedFile.getFileHistoryId(), null);
+		changes.put(newFile.getFileHistoryId(), newFile);
+
+		FileTreeIndex updatedFileTreeIndex = fileTreeIndex.update(new long[] { 2, 2, 2 }, changes);
+
+		// Old index is unchanged
+		assertEquals(4, fileTreeIndex.size());
+		assertEquals(Arrays.asList("a", "a/b", "a/c", "b"), getPaths(fileTreeIndex.iterator()));
+
+		// Updated index and the index loaded from index and delta file contain the changes
+		for (FileTreeIndex expectedFileTreeIndex : Arrays.asList(updatedFileTreeIndex, FileTreeIndex.load(indexFile))) {
+			assertEquals(4, expectedFileTreeIndex.size());
+			assertEquals(3, expectedFileTreeIndex.getChangeCount());
+			assertArrayEquals(new long[] { 2, 2, 2 }, expectedFileTreeIndex.getTag());
+
+			assertEquals(Arrays.asList("a", "a/a", "a/d", "b"), getPaths(expectedFileTreeIndex.iterator()));
+			assertEquals(Arrays.asList("a/a", "a/d"), getPaths(expectedFileTreeIndex.iterator("a")));
+
+			assertNull(expectedFileTreeIndex.get("a/b"));
+			assertNull(expectedFileTreeIndex.get("a/c"));
+			assertNull(expectedFileTreeIndex.get(deletedFile.getFileHistoryId()));
+
+			assertEquals(movedFile, expectedFileTreeIndex.get("a/d"));
+			assertEquals(movedFile, expectedFileTreeIndex.get(file.getFileHistoryId()));
+			assertEquals(newFile, expectedFileTreeIndex.get(newFile.getFileHistoryId()));
+			assertEquals(otherFile, expectedFileTreeIndex.get("b"));
+		}
+
+		assertArrayEquals(new long[] { 2, 2, 2 }, FileTreeIndex.readTag(indexFile));
+	}
+
+	@Test
+	public void testUpdateMergesLargeOverlay() throws Exception {
+		List<FileVersion> fileVersions = new ArrayList<FileVersion>();
+
+		for (int i = 0; i < 100; i++) {
+			fileVersions.add(createFileVersion(String.format("file%04d", i), FileType.FILE));
+		}
+
+		FileTreeIndex fileTreeIndex = FileTreeIndex.create(indexFile, new long[] { 1, 1, 1 }, fileVersions.iterator());
+
+		// Small update is kept in the overlay
+		FileVersion smallUpdateFile = createFileVersion("small-update", FileType.FILE);
+		fileTreeIndex = fileTreeIndex.update(new long[] { 2, 2, 2 }, Collections.singletonMap(smallUpdateFile.getFileHistoryId(), smallUpdateFile));
+
+		assertEquals(1, fileTreeIndex.getChangeCount());
+		assertEquals(101, fileTreeIndex.size());
+
+		// Large update is merged into a new index file
+		Map<FileHistoryId, FileVersion> changes = new HashMap<FileHistoryId, FileVersion>();
+
+		for (int i = 0; i < 2000; i++) {
+			FileVersion newFile = createFileVersion(String.format("new%04d", i), FileType.FILE);
+			changes.put(newFile.getFileHistoryId(), newFile);
+		}
+
+		changes.put(fileVersions.get(0).getFileHistoryId(), null);
+		fileTreeIndex = fileTreeIndex.update(new long[] { 3, 3, 3 }, changes);
+
+		FileTreeIndex loadedFileTreeIndex = FileTreeIndex.load(indexFile);
+
+		assertEquals(0, fileTreeIndex.getChangeCount());
+		assertEquals(0, loadedFileTreeIndex.getChangeCount());
+		assertEquals(2100, loadedFileTreeIndex.size());
+		assertArrayEquals(new long[] { 3, 3, 3 }, loadedFileTreeIndex.getTag());
+
+		assertNull(loadedFileTreeIndex.get(fileVersions.get(0).getPath()));
+		assertEquals(smallUpdateFile, loadedFileTreeIndex.get(smallUpdateFile.getFileHistoryId()));
+		assertEquals(fileVersions.get(1), loadedFileTreeIndex.get(fileVersions.get(1).getPath()));
+	}
+
+	@Test
+	public void testLoadIgnoresDeltaOfOtherIndexFile() throws Exception {
+		FileVersion file = createFileVersion("file", FileType.FILE);
+		FileVersion newFile = createFileVersion("new-file", FileType.FILE);
+
+		FileTreeIndex fileTreeIndex = FileTreeIndex.create(indexFile, new long[] { 1, 1, 1 }, Arrays.asList(file).iterator());
+		fileTreeIndex.update(new long[] { 2, 2, 2 }, Collections.singletonMap(newFile.getFileHistoryId(), newFile));
+
+		// Replace index file, but keep delta file (e.g. interrupted merge)
+		File otherIndexFile = new File(tempDir, "other-filetree-index");
+
+		FileTreeIndex.create(otherIndexFile, new long[] { 3, 3, 3 }, Arrays.asList(file).iterator());
+		Files.move(otherIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		FileTreeIndex loadedFileTreeIndex = FileTreeIndex.load(indexFile);
+
+		assertEquals(1, loadedFileTreeIndex.size());
+		assertNull(loadedFileTreeIndex.get("new-file"));
+		assertArrayEquals(new long[] { 3, 3, 3 }, loadedFileTreeIndex.getTag());
+		assertArrayEquals(new long[] { 3, 3, 3 }, FileTreeIndex.readTag(indexFile));
+	}
+
+	@Test
+	public void testLoadInvalidFile() throws Exception {
+		assertNull(FileTreeIndex.load(indexFile));
+
+		TestFileUtil.createRandomFile(indexFile, 100);
+		assertNull(FileTreeIndex.load(indexFile));
+	}
+
+	private FileVersion createFileVersion(String path, FileType type) {
+		FileVersion fileVersion = new FileVersion();
+
+		fileVersion.setFileHistoryId(FileHistoryId.secureRandomFileId());
+		fileVersion.setVersion(1L);
+		fileVersion.setPath(path);
+		fileVersion.setType(type);
+		fileVersion.setStatus(FileStatus.NEW);
+		fileVersion.setSize(512L);
+		fileVersion.setLastModified(new Date(1400000000000L));
+
+		return fileVersion;
+	}
+
+	private List<String> getPaths(Iterator<FileVersion> fileVersions) {
+		List<String> paths = new ArrayList<String>();
+
+		while (fileVersions.hasNext()) {
+			paths.add(fileVersions.next().getPath());
+		}
+
+		return paths;
+	}
+}
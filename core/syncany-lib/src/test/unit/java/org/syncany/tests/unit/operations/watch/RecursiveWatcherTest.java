@@ -19,8 +19,11 @@ package org.syncany.tests.unit.operations.watch;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
@@ -36,7 +39,7 @@ public class RecursiveWatcherTest {
 		
 		RecursiveWatcher watcher = RecursiveWatcher.createRecursiveWatcher(tempDir, new ArrayList<Path>(), 300, new WatchListener() {			
 			@Override
-			public void watchEventsOccurred() {
+			public void watchEventsOccurred(List<Path> changedPaths) {
 				eventCount.incrementAndGet();
 			}
 		});
@@ -56,5 +59,33 @@ public class RecursiveWatcherTest {
 		
 		TestFileUtil.deleteDirectory(tempDir.toFile());
 	}
-
+	
+	@Test
+	public void testChangedPaths() throws Exception {
+		final List<Path> changedPaths = Collections.synchronizedList(new ArrayList<Path>());
+		final Path tempDir = TestFileUtil.createTempDirectoryInSystemTemp("RecursiveWatcherTest").toPath();
+		
+		File subFolder = tempDir.resolve("folder").toFile();
+		subFolder.mkdir();
+		
+		RecursiveWatcher watcher = RecursiveWatcher.createRecursiveWatcher(tempDir, new ArrayList<Path>(), 300, new WatchListener() {			
+			@Override
+			public void watchEventsOccurred(List<Path> eventChangedPaths) {
+				changedPaths.addAll(eventChangedPaths);
+			}
+		});
+		
+		// Start watcher and wait for watch service to set watch on all folders
+		watcher.start();
+		Thread.sleep(1000);
+		
+		File newFile = TestFileUtil.createRandomFileInDirectory(subFolder, 111);		
+		Thread.sleep(500);
+		
+		assertEquals(1, changedPaths.size());
+		assertEquals(newFile.toPath(), changedPaths.get(0));
+		
+		watcher.stop();
+		TestFileUtil.deleteDirectory(tempDir.toFile());
+	}
 }
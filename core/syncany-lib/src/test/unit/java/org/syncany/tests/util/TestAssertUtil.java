@@ -222,6 +222,7 @@ public class TestAssertUtil {
 				new String[] { "filecontent_chunk" },
 				new String[] { "filehistory", "DATABASEVERSION_ID" },
 				new String[] { "fileversion", "DATABASEVERSION_ID" },
+				new String[] { "fileversion_current", "DATABASEVERSION_ID" },
 				// skipped known_databases
 				new String[] { "multichunk", "DATABASEVERSION_ID" },
 				new String[] { "multichunk_chunk" }
@@ -96,7 +96,7 @@ public class TestConfigUtil {
 
 	public static ChunkerTO createFixedChunkerTO() {
 		Map<String, String> settings = new HashMap<String, String>();
-		settings.put(Chunker.PROPERTY_SIZE, "32768");
+		settings.put(Chunker.PROPERTY_SIZE, Integer.toString(Config.DEFAULT_CHUNK_SIZE));
 
 		ChunkerTO chunkerTO = new ChunkerTO();
 		chunkerTO.setType("fixed");
@@ -113,7 +113,7 @@ public class TestConfigUtil {
 		// Create ChunkerTO and MultiChunkerTO
 		MultiChunkerTO multiChunkerTO = createZipMultiChunkerTO();
 		ChunkerTO chunkerTO = createFixedChunkerTO();
-		repoTO.setChunkerTO(chunkerTO); // TODO [low] Chunker not configurable right now. Not used.
+		repoTO.setChunkerTO(chunkerTO);
 		repoTO.setMultiChunker(multiChunkerTO);
 
 		// Create TransformerTO
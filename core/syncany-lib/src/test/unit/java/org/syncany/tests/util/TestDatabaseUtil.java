@@ -150,8 +150,6 @@ public class TestDatabaseUtil {
 		return fileVersion;
 	}
 
-	// TODO [medium] Add performance tests for the cache and optimize Database.addDatabaseVersion()-cache handling
-
 	public static DatabaseVersion createDatabaseVersion() {
 		return createDatabaseVersion(null, new Date());
 	}
@@ -38,6 +38,9 @@ public class TestSqlUtil {
 		}
 
 		SqlRunner.runScript(connection, inputStream);
+
+		// Test scripts insert file versions directly; derive current file versions from them
+		SqlRunner.runScript(connection, DatabaseConnectionFactory.getStatementInputStream(DatabaseConnectionFactory.DATABASE_RESOURCE_REBUILD_FILEVERSION_CURRENT));
 		connection.commit();
 	}
 
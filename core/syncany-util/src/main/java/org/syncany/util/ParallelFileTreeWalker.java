@@ -0,0 +1,211 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.util;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Walks a file tree using multiple threads. Each directory is listed by a separate
+ * fork/join task, so that the file system can serve many directory listings and
+ * <tt>lstat</tt> calls at once. This is significantly faster than {@link Files#walkFileTree(Path, java.nio.file.FileVisitor) walkFileTree()}
+ * on network-attached storage or SSD arrays, which need many outstanding requests
+ * to reach their full throughput.
+ *
+ * <p>Similar to <tt>walkFileTree()</tt>, symbolic links are not followed, and the
+ * {@link FileTreeVisitor} is called for the root, each directory and each file with its
+ * {@link BasicFileAttributes}. Unlike <tt>walkFileTree()</tt>, the visitor is called
+ * <b>concurrently</b> and in no particular order. Visitors must be thread-safe and
+ * should collect their results in sorted collections if a deterministic result
+ * is required.
+ *
+ * <p>Excluded paths (such as the <tt>.syncany</tt> folder) are skipped entirely, i.e. they
+ * are neither visited nor descended into.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class ParallelFileTreeWalker {
+	private static final Logger logger = Logger.getLogger(ParallelFileTreeWalker.class.getSimpleName());
+
+	/**
+	 * Default number of threads. Walking a file tree is I/O-bound, so more
+	 * threads than processors are used to keep the storage busy.
+	 */
+	public static final int DEFAULT_PARALLELISM = Math.min(32, 4 * Runtime.getRuntime().availableProcessors());
+
+	private int parallelism;
+
+	public ParallelFileTreeWalker() {
+		this(DEFAULT_PARALLELISM);
+	}
+
+	public ParallelFileTreeWalker(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Walks the file tree below the given root and calls the visitor for each file and
+	 * directory (including the root). The method returns when the entire tree has been
+	 * visited, or when the visitor returned {@link FileVisitResult#TERMINATE TERMINATE}.
+	 *
+	 * <p>If the visitor returns {@link FileVisitResult#SKIP_SUBTREE SKIP_SUBTREE} for a directory,
+	 * its entries are not visited. Files or directories that cannot be read are skipped.
+	 *
+	 * @param root Directory to walk
+	 * @param excludedPaths Paths to skip, including their subtrees (may be <tt>null</tt>)
+	 * @param visitor Thread-safe visitor to be called for each file and directory
+	 * @throws IOException If the visitor throws an exception, or the root cannot be read
+	 */
+	public void walk(Path root, Collection<Path> excludedPaths, FileTreeVisitor visitor) throws IOException {
+		Set<Path> excludedPathSet = (excludedPaths != null) ? new HashSet<Path>(excludedPaths) : new HashSet<Path>();
+		WalkState walkState = new WalkState(excludedPathSet, visitor);
+
+		BasicFileAttributes rootAttributes = Files.readAttributes(root, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+
+		if (excludedPathSet.contains(root) || visitor.visit(root, rootAttributes) != FileVisitResult.CONTINUE || !rootAttributes.isDirectory()) {
+			return;
+		}
+
+		ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
+
+		try {
+			forkJoinPool.invoke(new DirectoryTask(root, walkState));
+		}
+		finally {
+			forkJoinPool.shutdown();
+		}
+
+		if (walkState.visitorException.get() != null) {
+			throw walkState.visitorException.get();
+		}
+	}
+
+	/**
+	 * Visitor called by the {@link ParallelFileTreeWalker} for each file and directory.
+	 * Implementations must be thread-safe.
+	 */
+	public interface FileTreeVisitor {
+		/**
+		 * Called for each file and directory in the file tree.
+		 *
+		 * @return {@link FileVisitResult#CONTINUE CONTINUE} to continue, {@link FileVisitResult#SKIP_SUBTREE SKIP_SUBTREE} to not
+		 *         descend into a directory, or {@link FileVisitResult#TERMINATE TERMINATE} to stop the entire walk
+		 */
+		public FileVisitResult visit(Path path, BasicFileAttributes attrs) throws IOException;
+	}
+
+	private static class WalkState {
+		private Set<Path> excludedPaths;
+		private FileTreeVisitor visitor;
+		private volatile boolean terminated;
+		private AtomicReference<IOException> visitorException;
+
+		public WalkState(Set<Path> excludedPaths, FileTreeVisitor visitor) {
+			this.excludedPaths = excludedPaths;
+			this.visitor = visitor;
+			this.terminated = false;
+			this.visitorException = new AtomicReference<IOException>();
+		}
+	}
+
+	private static class DirectoryTask extends RecursiveAction {
+		private static final long serialVersionUID = 2412806522178420347L;
+
+		private Path directory;
+		private WalkState walkState;
+
+		public DirectoryTask(Path directory, WalkState walkState) {
+			this.directory = directory;
+			this.walkState = walkState;
+		}
+
+		@Override
+		protected void compute() {
+			List<DirectoryTask> subdirectoryTasks = new ArrayList<DirectoryTask>();
+
+			try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory)) {
+				for (Path path : directoryStream) {
+					if (walkState.terminated) {
+						return;
+					}
+
+					if (walkState.excludedPaths.contains(path)) {
+						continue;
+					}
+
+					BasicFileAttributes attrs = readAttributes(path);
+
+					if (attrs == null) {
+						continue;
+					}
+
+					FileVisitResult visitResult = visit(path, attrs);
+
+					if (visitResult == FileVisitResult.TERMINATE) {
+						walkState.terminated = true;
+						return;
+					}
+					else if (visitResult == FileVisitResult.CONTINUE && attrs.isDirectory()) {
+						subdirectoryTasks.add(new DirectoryTask(path, walkState));
+					}
+				}
+			}
+			catch (IOException | DirectoryIteratorException e) {
+				logger.log(Level.FINE, "Cannot list directory " + directory + ", skipping.", e);
+			}
+
+			invokeAll(subdirectoryTasks);
+		}
+
+		private FileVisitResult visit(Path path, BasicFileAttributes attrs) {
+			try {
+				return walkState.visitor.visit(path, attrs);
+			}
+			catch (IOException e) {
+				walkState.visitorException.compareAndSet(null, e);
+				return FileVisitResult.TERMINATE;
+			}
+		}
+
+		private BasicFileAttributes readAttributes(Path path) {
+			try {
+				return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			}
+			catch (IOException e) {
+				logger.log(Level.FINE, "Cannot read attributes of " + path + ", skipping.", e);
+				return null;
+			}
+		}
+	}
+}
@@ -26,6 +26,7 @@ import org.syncany.tests.unit.util.FileUtilTest;
 import org.syncany.tests.unit.util.LimitedDosFileAttributesTest;
 import org.syncany.tests.unit.util.LimitedSortedSetTest;
 import org.syncany.tests.unit.util.NormalizedPathTest;
+import org.syncany.tests.unit.util.ParallelFileTreeWalkerTest;
 import org.syncany.tests.unit.util.PidFileUtilTest;
 import org.syncany.tests.unit.util.ReflectionUtilTest;
 import org.syncany.tests.unit.util.StringUtilTest;
@@ -38,6 +39,7 @@ import org.syncany.tests.unit.util.StringUtilTest;
 	LimitedSortedSetTest.class,
 	LimitedDosFileAttributesTest.class,
 	NormalizedPathTest.class,
+	ParallelFileTreeWalkerTest.class,
 	PidFileUtilTest.class,
 	StringUtilTest.class,
 	ReflectionUtilTest.class
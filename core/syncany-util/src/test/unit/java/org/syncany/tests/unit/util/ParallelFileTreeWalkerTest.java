@@ -0,0 +1,146 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.util.ParallelFileTreeWalker;
+import org.syncany.util.ParallelFileTreeWalker.FileTreeVisitor;
+
+public class ParallelFileTreeWalkerTest {
+	private File tempDir;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+
+		for (int i = 0; i < 20; i++) {
+			File folder = new File(tempDir, "folder" + i + "/subfolder" + i);
+			folder.mkdirs();
+
+			TestFileUtil.createRandomFilesInDirectory(folder, 100, 5);
+			TestFileUtil.createRandomFilesInDirectory(folder.getParentFile(), 100, 2);
+		}
+
+		new File(tempDir, ".syncany/db").mkdirs();
+		TestFileUtil.createRandomFilesInDirectory(new File(tempDir, ".syncany/db"), 100, 2);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testWalkEqualsWalkFileTree() throws Exception {
+		final SortedSet<Path> expectedPaths = new TreeSet<Path>();
+
+		Files.walkFileTree(tempDir.toPath(), new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				expectedPaths.add(dir);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				expectedPaths.add(file);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+
+		assertEquals(expectedPaths, walk(null));
+	}
+
+	@Test
+	public void testWalkWithExcludedPath() throws Exception {
+		Path appDir = tempDir.toPath().resolve(".syncany");
+		SortedSet<Path> visitedPaths = walk(Arrays.asList(appDir));
+
+		assertFalse(visitedPaths.contains(appDir));
+		assertFalse(visitedPaths.contains(appDir.resolve("db")));
+		assertTrue(visitedPaths.contains(tempDir.toPath().resolve("folder3/subfolder3")));
+		assertEquals(1 + 20 * (2 + 5 + 2), visitedPaths.size());
+	}
+
+	@Test
+	public void testWalkSkipSubtree() throws Exception {
+		final Set<Path> visitedPaths = Collections.synchronizedSet(new TreeSet<Path>());
+
+		new ParallelFileTreeWalker(4).walk(tempDir.toPath(), null, new FileTreeVisitor() {
+			@Override
+			public FileVisitResult visit(Path path, BasicFileAttributes attrs) throws IOException {
+				visitedPaths.add(path);
+				return path.getFileName().toString().startsWith("subfolder") ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+			}
+		});
+
+		assertTrue(visitedPaths.contains(tempDir.toPath().resolve("folder7/subfolder7")));
+
+		for (Path visitedPath : visitedPaths) {
+			assertFalse(visitedPath.getParent().getFileName().toString().startsWith("subfolder"));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testVisitorExceptionIsThrown() throws Exception {
+		new ParallelFileTreeWalker(4).walk(tempDir.toPath(), null, new FileTreeVisitor() {
+			@Override
+			public FileVisitResult visit(Path path, BasicFileAttributes attrs) throws IOException {
+				if (path.getFileName().toString().equals("subfolder5")) {
+					throw new IOException("Visitor failed");
+				}
+
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private SortedSet<Path> walk(Collection<Path> excludedPaths) throws IOException {
+		final SortedSet<Path> visitedPaths = Collections.synchronizedSortedSet(new TreeSet<Path>());
+
+		new ParallelFileTreeWalker(4).walk(tempDir.toPath(), excludedPaths, new FileTreeVisitor() {
+			@Override
+			public FileVisitResult visit(Path path, BasicFileAttributes attrs) {
+				visitedPaths.add(path);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+
+		return visitedPaths;
+	}
+}